@@ -0,0 +1,57 @@
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Times neighbour and bond lookups on an AtomContainer: for every atom the
+ * connected atoms are listed and for every neighbour the bond is looked up,
+ * which is the access pattern of most graph traversals.
+ *
+ * Usage: java PerfAtomContainerAdjacency [nResidues] [nRounds]
+ */
+public class PerfAtomContainerAdjacency {
+
+	IAtomContainer container;
+
+	public PerfAtomContainerAdjacency(int nResidues) throws Exception {
+		// poly-alanine, grows linearly with the number of residues
+		StringBuilder smi = new StringBuilder("N");
+		for (int i = 0; i < nResidues; i++)
+			smi.append("C(C)C(=O)N");
+		smi.append("C(C)C(=O)O");
+		SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+		container = sp.parseSmiles(smi.toString());
+		System.out.println("Atoms: " + container.getAtomCount()
+		                   + ", bonds: " + container.getBondCount());
+	}
+
+	public void run(int nRounds) throws Exception {
+		long startTime = System.currentTimeMillis();
+		long checksum = 0;
+		for (int round = 0; round < nRounds; round++) {
+			for (IAtom atom : container.atoms()) {
+				checksum += container.getAtomNumber(atom);
+				checksum += container.getConnectedAtomsCount(atom);
+				for (IAtom nbr : container.getConnectedAtomsList(atom)) {
+					IBond bond = container.getBond(atom, nbr);
+					checksum += container.getBondNumber(bond);
+				}
+			}
+		}
+		long endTime = System.currentTimeMillis();
+		System.out.println("Time consumed (ms): " + (endTime - startTime));
+		System.out.println("rounds/s: " +
+			(int)(1000.0*(double)nRounds/Math.max(1, endTime - startTime))
+		);
+		System.out.println("checksum: " + checksum);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nResidues = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int nRounds   = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		PerfAtomContainerAdjacency test = new PerfAtomContainerAdjacency(nResidues);
+		test.run(nRounds);
+	}
+}
@@ -0,0 +1,108 @@
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openscience.cdk.graph.ConnectivityChecker;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.layout.StructureDiagramGenerator;
+import org.openscience.cdk.renderer.AtomContainerRenderer;
+import org.openscience.cdk.renderer.BatchDepictor;
+import org.openscience.cdk.renderer.font.AWTFontManager;
+import org.openscience.cdk.renderer.generators.BasicAtomGenerator;
+import org.openscience.cdk.renderer.generators.BasicBondGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator;
+import org.openscience.cdk.renderer.generators.IGenerator;
+import org.openscience.cdk.renderer.visitor.AWTDrawVisitor;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Measures the throughput of depicting the molecules of a SMILES file (laid
+ * out once, not timed): one renderer and image per molecule drawn with the
+ * AWT visitor, and the batch depictor to SVG and to a PNG grid, with an empty
+ * and with a filled cache of rendering elements.
+ *
+ * Usage: java -Djava.awt.headless=true PerfBatchDepictor file.smi [nThreads] [nRepeats]
+ */
+public class PerfBatchDepictor {
+
+	static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+	static final int SIZE = 200;
+
+	public static void main(String[] args) throws Exception {
+		int nThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int nRepeats = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+		SmilesParser parser = new SmilesParser(builder);
+		StructureDiagramGenerator sdg = new StructureDiagramGenerator();
+		BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			try {
+				IAtomContainer molecule = parser.parseSmiles(line.trim().split("\\s+")[0]);
+				if (!ConnectivityChecker.isConnected(molecule))
+					continue;
+				sdg.setMolecule(molecule, false);
+				sdg.generateCoordinates();
+				molecules.add(molecule);
+			} catch (Exception e) {
+				// skipped
+			}
+		}
+		reader.close();
+		System.out.println("molecules: " + molecules.size() + ", threads: " + nThreads);
+
+		for (int r = 0; r < nRepeats; r++) {
+			long t0 = System.nanoTime();
+			long n = 0;
+			for (IAtomContainer molecule : molecules) {
+				List<IGenerator<IAtomContainer>> generators = new ArrayList<IGenerator<IAtomContainer>>();
+				generators.add(new BasicSceneGenerator());
+				generators.add(new BasicBondGenerator());
+				generators.add(new BasicAtomGenerator());
+				AtomContainerRenderer renderer = new AtomContainerRenderer(generators, new AWTFontManager());
+				BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+				Graphics2D g2 = image.createGraphics();
+				renderer.paint(molecule, new AWTDrawVisitor(g2), new Rectangle2D.Double(0, 0, SIZE, SIZE), true);
+				g2.dispose();
+				n += image.getRGB(SIZE / 2, SIZE / 2);
+			}
+			report("renderer per molecule (AWT)", molecules.size(), t0, n);
+		}
+
+		ExecutorService executor = nThreads > 1 ? Executors.newFixedThreadPool(nThreads) : null;
+		for (int r = 0; r < nRepeats; r++) {
+			BatchDepictor depictor = new BatchDepictor(executor);
+			long t0 = System.nanoTime();
+			long n = 0;
+			for (String svg : depictor.toSVG(molecules, SIZE, SIZE))
+				n += svg.length();
+			report("batch SVG, empty cache", molecules.size(), t0, n);
+			t0 = System.nanoTime();
+			for (String svg : depictor.toSVG(molecules, SIZE, SIZE))
+				n += svg.length();
+			report("batch SVG, filled cache", molecules.size(), t0, n);
+			t0 = System.nanoTime();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			depictor.writePNG(molecules, 10, SIZE, SIZE, out);
+			report("batch PNG grid, filled cache", molecules.size(), t0, out.size());
+		}
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	static void report(String name, int nMolecules, long t0, long check) {
+		double seconds = (System.nanoTime() - t0) / 1e9;
+		System.out.println(String.format("%-30s %8.0f mol/s (%d)", name, nMolecules / seconds, check));
+	}
+}
@@ -0,0 +1,86 @@
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.modeling.builder3d.BatchModelBuilder3D;
+import org.openscience.cdk.modeling.builder3d.TemplateHandler3D;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.CDKHydrogenAdder;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+/**
+ * Measures the throughput of generating 3D coordinates for the molecules of
+ * an SD file with the batch model builder on one and on several threads. The
+ * molecules are given explicit hydrogens and are repeated to reach the
+ * requested count.
+ *
+ * Usage: java PerfBatchModelBuilder3D file.sdf[.gz] [nMolecules] [nThreads] [timeout (s)]
+ */
+public class PerfBatchModelBuilder3D {
+
+	List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+
+	public PerfBatchModelBuilder3D(String filename, int nMolecules) throws Exception {
+		InputStream in = new FileInputStream(filename);
+		if (filename.endsWith(".gz"))
+			in = new GZIPInputStream(in);
+		IteratingSDFReader reader = new IteratingSDFReader(in, SilentChemObjectBuilder.getInstance());
+		List<IAtomContainer> read = new ArrayList<IAtomContainer>();
+		while (reader.hasNext()) {
+			IAtomContainer molecule = reader.next();
+			AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(molecule);
+			CDKHydrogenAdder.getInstance(molecule.getBuilder()).addImplicitHydrogens(molecule);
+			AtomContainerManipulator.convertImplicitToExplicitHydrogens(molecule);
+			read.add(molecule);
+		}
+		reader.close();
+		while (molecules.size() < nMolecules)
+			molecules.add(read.get(molecules.size() % read.size()));
+		System.out.println("Molecules: " + molecules.size());
+	}
+
+	public void run(int nThreads, long timeout) throws Exception {
+		// load the templates before timing
+		TemplateHandler3D.getInstance().mapTemplates(SilentChemObjectBuilder.getInstance().newInstance(IAtomContainer.class), 0);
+		for (int threads = 1; threads <= nThreads; threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				BatchModelBuilder3D batch = new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2",
+				                                                    SilentChemObjectBuilder.getInstance(), executor);
+				batch.setTimeout(timeout, TimeUnit.SECONDS);
+				SDFWriter writer = new SDFWriter(new NullOutputStream());
+				long startTime = System.currentTimeMillis();
+				int nWritten = batch.generate(molecules.iterator(), writer, null);
+				long endTime = System.currentTimeMillis();
+				writer.close();
+				System.out.println(threads + " threads, written: " + nWritten
+				                   + ", time consumed (ms): " + (endTime - startTime)
+				                   + ", mol/s: " + (int) (1000.0 * nWritten / (endTime - startTime)));
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int  nMolecules = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int  nThreads   = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long timeout    = args.length > 3 ? Long.parseLong(args[3]) : 10;
+		PerfBatchModelBuilder3D test = new PerfBatchModelBuilder3D(args[0], nMolecules);
+		test.run(nThreads, timeout);
+	}
+
+	static class NullOutputStream extends OutputStream {
+		@Override public void write(int b) {}
+		@Override public void write(byte[] b, int off, int len) {}
+	}
+}
@@ -0,0 +1,59 @@
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.iterator.IteratingSMILESReader;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * Times path fingerprint generation for the molecules of a SMILES file.
+ * Molecules for which a fingerprint can not be generated (too many paths)
+ * are skipped before timing.
+ *
+ * Usage: java PerfFingerprinter file.smi [nRounds]
+ */
+public class PerfFingerprinter {
+
+	List<IAtomContainer> containers = new ArrayList<IAtomContainer>();
+	Fingerprinter fingerprinter = new Fingerprinter();
+
+	public PerfFingerprinter(String filename) throws Exception {
+		IteratingSMILESReader reader = new IteratingSMILESReader(
+			new FileInputStream(filename), SilentChemObjectBuilder.getInstance()
+		);
+		while (reader.hasNext()) {
+			IAtomContainer container = reader.next();
+			try {
+				fingerprinter.getBitFingerprint(container);
+				containers.add(container);
+			} catch (Exception e) {
+				// skipped
+			}
+		}
+		reader.close();
+		System.out.println("Molecules: " + containers.size());
+	}
+
+	public void run(int nRounds) throws Exception {
+		long startTime = System.currentTimeMillis();
+		long checksum = 0;
+		for (int round = 0; round < nRounds; round++) {
+			for (IAtomContainer container : containers)
+				checksum += fingerprinter.getBitFingerprint(container).cardinality();
+		}
+		long endTime = System.currentTimeMillis();
+		System.out.println("Time consumed (ms): " + (endTime - startTime));
+		System.out.println("fingerprints/s: " +
+			(int)(1000.0*(double)nRounds*containers.size()/Math.max(1, endTime - startTime))
+		);
+		System.out.println("checksum: " + checksum);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nRounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		PerfFingerprinter test = new PerfFingerprinter(args[0]);
+		test.run(nRounds);
+	}
+}
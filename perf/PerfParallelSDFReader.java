@@ -0,0 +1,98 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.io.iterator.ParallelSDFReader;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * Measures the time to read the records of an SD file with the serial
+ * iterating reader and with the parallel reader on one and on several
+ * threads. The file is held in memory and repeated to reach the requested
+ * number of records, each measurement is the best of several runs.
+ *
+ * Usage: java PerfParallelSDFReader file.sdf[.gz] [nRecords] [nThreads] [nRuns]
+ */
+public class PerfParallelSDFReader {
+
+	byte[] input;
+	int    nRecords;
+
+	public PerfParallelSDFReader(String filename, int nRecords) throws Exception {
+		InputStream in = new FileInputStream(filename);
+		if (filename.endsWith(".gz"))
+			in = new GZIPInputStream(in);
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		byte[] buffer = new byte[65536];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			file.write(buffer, 0, n);
+		in.close();
+		byte[] bytes = file.toByteArray();
+		int nFile = read(new IteratingSDFReader(new ByteArrayInputStream(bytes), SilentChemObjectBuilder.getInstance()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < Math.max(1, nRecords / nFile); i++)
+			out.write(bytes);
+		this.input    = out.toByteArray();
+		this.nRecords = Math.max(1, nRecords / nFile) * nFile;
+		System.out.println("Records: " + this.nRecords + ", available processors: "
+		                   + Runtime.getRuntime().availableProcessors());
+	}
+
+	static int read(Iterator<IAtomContainer> reader) {
+		int n = 0;
+		while (reader.hasNext()) {
+			reader.next();
+			n++;
+		}
+		return n;
+	}
+
+	public void run(int nThreads, int nRuns) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < nRuns; i++) {
+			long startTime = System.currentTimeMillis();
+			read(new IteratingSDFReader(new ByteArrayInputStream(input), SilentChemObjectBuilder.getInstance()));
+			best = Math.min(best, System.currentTimeMillis() - startTime);
+		}
+		System.out.println("serial, time consumed (ms): " + best);
+		for (int threads = 1; threads <= nThreads; threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for (boolean ordered : new boolean[]{true, false}) {
+					best = Long.MAX_VALUE;
+					for (int i = 0; i < nRuns; i++) {
+						long startTime = System.currentTimeMillis();
+						ParallelSDFReader reader = new ParallelSDFReader(new ByteArrayInputStream(input),
+						                                                 SilentChemObjectBuilder.getInstance(),
+						                                                 executor, ordered);
+						int n = read(reader);
+						reader.close();
+						best = Math.min(best, System.currentTimeMillis() - startTime);
+						if (n != nRecords)
+							throw new IllegalStateException("read " + n + " of " + nRecords + " records");
+					}
+					System.out.println(threads + " threads, " + (ordered ? "ordered" : "unordered")
+					                   + ", time consumed (ms): " + best);
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nRecords = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int nThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int nRuns    = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		PerfParallelSDFReader test = new PerfParallelSDFReader(args[0], nRecords);
+		test.run(nThreads, nRuns);
+	}
+}
@@ -0,0 +1,88 @@
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import javax.vecmath.Point3d;
+
+import org.openscience.cdk.ChemFile;
+import org.openscience.cdk.config.AtomTypeFactory;
+import org.openscience.cdk.graph.rebond.RebondTool;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomType;
+import org.openscience.cdk.io.PDBReader;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.tools.manipulator.AtomTypeManipulator;
+import org.openscience.cdk.tools.manipulator.ChemFileManipulator;
+
+/**
+ * Compares rebonding a structure read from a PDB file with the binary space
+ * partition tree (Bspt) and with the cell list, on one and on several
+ * threads. The structure may be copied side by side to reach PDB scale
+ * (e.g. 100,000 atoms).
+ *
+ * Usage: java PerfRebondTool file.pdb[.gz] [nCopies] [nThreads] [nRounds]
+ */
+public class PerfRebondTool {
+
+	IAtomContainer container = new AtomContainer();
+	RebondTool rebonder = new RebondTool(2.0, 0.5, 0.5);
+
+	public PerfRebondTool(String filename, int nCopies) throws Exception {
+		InputStream in = new FileInputStream(filename);
+		if (filename.endsWith(".gz"))
+			in = new GZIPInputStream(in);
+		PDBReader reader = new PDBReader(in);
+		ChemFile chemFile = reader.read(new ChemFile());
+		reader.close();
+		AtomTypeFactory factory = AtomTypeFactory.getInstance(
+			"org/openscience/cdk/config/data/jmol_atomtypes.txt", container.getBuilder()
+		);
+		for (int copy = 0; copy < nCopies; copy++) {
+			for (IAtomContainer part : ChemFileManipulator.getAllAtomContainers(chemFile)) {
+				for (IAtom atom : part.atoms()) {
+					IAtomType[] types = factory.getAtomTypes(atom.getSymbol());
+					if (types.length == 0)
+						continue;
+					IAtom copied = container.getBuilder().newInstance(IAtom.class, atom.getSymbol());
+					AtomTypeManipulator.configure(copied, types[0]);
+					Point3d p = atom.getPoint3d();
+					copied.setPoint3d(new Point3d(p.x + 100 * copy, p.y, p.z));
+					container.addAtom(copied);
+				}
+			}
+		}
+		System.out.println("Atoms: " + container.getAtomCount());
+	}
+
+	public void run(int nThreads, int nRounds) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try {
+			for (int mode = 0; mode < 3; mode++) {
+				long startTime = System.currentTimeMillis();
+				for (int round = 0; round < nRounds; round++) {
+					if (mode == 0)
+						rebonder.rebond(container);
+					else
+						rebonder.rebond(container, mode == 1 ? null : executor);
+				}
+				long endTime = System.currentTimeMillis();
+				System.out.println((mode == 0 ? "Bspt" : mode == 1 ? "cells" : "cells, " + nThreads + " threads")
+				                   + ", bonds: " + container.getBondCount()
+				                   + ", time consumed (ms): " + (endTime - startTime) / nRounds);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nCopies  = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		int nThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int nRounds  = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		PerfRebondTool test = new PerfRebondTool(args[0], nCopies);
+		test.run(nThreads, nRounds);
+	}
+}
@@ -0,0 +1,263 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.openscience.cdk.atomtype.CDKAtomTypeMatcher;
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.hash.HashGeneratorMaker;
+import org.openscience.cdk.hash.MoleculeHashGenerator;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.io.MDLV2000Writer;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Benchmarks of the hot paths of the library on a compound corpus (a SMILES
+ * file, by default the 140 drugs of src/test/data/smiles/drugs.smi). Each
+ * benchmark processes the whole corpus per operation; after the warm up
+ * iterations every measured iteration repeats the operation for at least the
+ * iteration time and the mean and standard deviation of the throughput are
+ * reported in molecules per second. The results of two releases are
+ * comparable when they are run on the same machine and corpus.
+ *
+ * Usage: java PerfSuite [-c corpus.smi] [-w warmups] [-i iterations] [-t iteration time (ms)] [regex]
+ *
+ * The regex selects the benchmarks to run by name, e.g. "smiles|hash".
+ */
+public class PerfSuite {
+
+	static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+	/** A benchmark which processes the corpus. */
+	abstract class Benchmark {
+
+		final String name;
+
+		Benchmark(String name) {
+			this.name = name;
+		}
+
+		/** Prepare the input, not timed. */
+		void setUp() throws Exception {
+		}
+
+		/** Number of molecules processed by an operation. */
+		int size() {
+			return molecules.size();
+		}
+
+		/** Process the corpus once, the returned value is used to prevent dead code elimination. */
+		abstract long run() throws Exception;
+	}
+
+	List<String>         smiles    = new ArrayList<String>();
+	List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+	List<Benchmark>      benchmarks = new ArrayList<Benchmark>();
+	long                 blackhole;
+
+	public PerfSuite(String filename) throws Exception {
+		SmilesParser parser = new SmilesParser(builder);
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.trim().split("\\s+");
+			if (fields[0].length() == 0)
+				continue;
+			try {
+				molecules.add(parser.parseSmiles(fields[0]));
+				smiles.add(fields[0]);
+			} catch (Exception e) {
+				// skipped
+			}
+		}
+		reader.close();
+		System.out.println("Corpus: " + filename + ", molecules: " + molecules.size());
+
+		benchmarks.add(new Benchmark("smilesParser") {
+			SmilesParser parser = new SmilesParser(builder);
+			long run() throws Exception {
+				long n = 0;
+				for (String s : smiles)
+					n += parser.parseSmiles(s).getAtomCount();
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("atomTypes") {
+			CDKAtomTypeMatcher matcher = CDKAtomTypeMatcher.getInstance(builder);
+			long run() throws Exception {
+				long n = 0;
+				for (IAtomContainer molecule : molecules)
+					n += matcher.findMatchingAtomTypes(molecule).length;
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("smilesGenerator.unique") {
+			SmilesGenerator generator = SmilesGenerator.unique();
+			long run() throws Exception {
+				long n = 0;
+				for (IAtomContainer molecule : molecules)
+					n += generator.create(molecule).length();
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("fingerprinter") {
+			Fingerprinter fingerprinter = new Fingerprinter();
+			List<IAtomContainer> input = new ArrayList<IAtomContainer>();
+			void setUp() {
+				// molecules with too many paths are excluded
+				for (IAtomContainer molecule : molecules) {
+					try {
+						fingerprinter.getBitFingerprint(molecule);
+						input.add(molecule);
+					} catch (Exception e) {
+						// skipped
+					}
+				}
+			}
+			int size() {
+				return input.size();
+			}
+			long run() throws Exception {
+				long n = 0;
+				for (IAtomContainer molecule : input)
+					n += fingerprinter.getBitFingerprint(molecule).cardinality();
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("ventoFoggia.substructure") {
+			List<org.openscience.cdk.isomorphism.Pattern> patterns = new ArrayList<org.openscience.cdk.isomorphism.Pattern>();
+			void setUp() throws Exception {
+				SmilesParser parser = new SmilesParser(builder);
+				for (String query : new String[]{"c1ccccc1", "C(=O)N", "C(=O)O", "c1ccncc1", "NC(=O)C(C)N"})
+					patterns.add(VentoFoggia.findSubstructure(parser.parseSmiles(query)));
+			}
+			long run() {
+				long n = 0;
+				for (IAtomContainer molecule : molecules) {
+					for (org.openscience.cdk.isomorphism.Pattern pattern : patterns) {
+						if (pattern.matches(molecule))
+							n++;
+					}
+				}
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("cycles.all") {
+			long run() throws Exception {
+				long n = 0;
+				for (IAtomContainer molecule : molecules)
+					n += Cycles.all(molecule).numberOfCycles();
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("hash.elemental") {
+			MoleculeHashGenerator generator = new HashGeneratorMaker().depth(8).elemental().molecular();
+			long run() {
+				long n = 0;
+				for (IAtomContainer molecule : molecules)
+					n ^= generator.generate(molecule);
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("hash.perturbed") {
+			MoleculeHashGenerator generator = new HashGeneratorMaker().depth(8).elemental().charged().chiral()
+				.perturbed().molecular();
+			long run() {
+				long n = 0;
+				for (IAtomContainer molecule : molecules)
+					n ^= generator.generate(molecule);
+				return n;
+			}
+		});
+		benchmarks.add(new Benchmark("mdlV2000Reader") {
+			List<String> molfiles = new ArrayList<String>();
+			void setUp() throws Exception {
+				for (IAtomContainer molecule : molecules) {
+					StringWriter out = new StringWriter();
+					MDLV2000Writer writer = new MDLV2000Writer(out);
+					writer.write(molecule);
+					writer.close();
+					molfiles.add(out.toString());
+				}
+			}
+			long run() throws Exception {
+				long n = 0;
+				for (String molfile : molfiles) {
+					MDLV2000Reader reader = new MDLV2000Reader(new StringReader(molfile));
+					n += reader.read(builder.newInstance(IAtomContainer.class)).getAtomCount();
+					reader.close();
+				}
+				return n;
+			}
+		});
+	}
+
+	public void run(Pattern filter, int nWarmups, int nIterations, long iterationTime) throws Exception {
+		System.out.println(String.format(Locale.ROOT, "%-28s %5s %12s %10s  %s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+		for (Benchmark benchmark : benchmarks) {
+			if (!filter.matcher(benchmark.name).find())
+				continue;
+			benchmark.setUp();
+			for (int i = 0; i < nWarmups; i++)
+				iteration(benchmark, iterationTime);
+			double[] scores = new double[nIterations];
+			double mean = 0;
+			for (int i = 0; i < nIterations; i++) {
+				scores[i] = iteration(benchmark, iterationTime);
+				mean += scores[i] / nIterations;
+			}
+			double variance = 0;
+			for (double score : scores)
+				variance += (score - mean) * (score - mean) / Math.max(1, nIterations - 1);
+			System.out.println(String.format(Locale.ROOT, "%-28s %5d %12.1f %10.1f  %s",
+			                                 benchmark.name, nIterations, mean, Math.sqrt(variance), "mol/s"));
+		}
+		System.out.println("(" + blackhole + ")");
+	}
+
+	/**
+	 * Repeat the benchmark for at least the given time.
+	 *
+	 * @return throughput in molecules per second
+	 */
+	double iteration(Benchmark benchmark, long iterationTime) throws Exception {
+		long start = System.nanoTime(), end = start + iterationTime * 1000000L, now;
+		int nOps = 0;
+		do {
+			blackhole += benchmark.run();
+			nOps++;
+		} while ((now = System.nanoTime()) < end);
+		return 1e9 * nOps * benchmark.size() / (now - start);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String corpus = "src/test/data/smiles/drugs.smi";
+		int nWarmups = 5, nIterations = 10;
+		long iterationTime = 1000;
+		String filter = "";
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-c"))
+				corpus = args[++i];
+			else if (args[i].equals("-w"))
+				nWarmups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i"))
+				nIterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t"))
+				iterationTime = Long.parseLong(args[++i]);
+			else
+				filter = args[i];
+		}
+		PerfSuite suite = new PerfSuite(corpus);
+		suite.run(Pattern.compile(filter), nWarmups, nIterations, iterationTime);
+	}
+}
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -127,6 +128,30 @@ public class AtomContainer extends ChemObject
      */
     protected Set<IStereoElement> stereoElements;
 
+    /**
+     * Containers with fewer atoms (bonds) than this are searched linearly, for
+     * larger containers the position and adjacency indices below are used.
+     */
+    private static final int INDEX_THRESHOLD = 16;
+
+    /**
+     * Lazily built index of atom positions, maintained by addAtom and removeAtom.
+     */
+    private transient Map<IAtom,Integer> atomIndex;
+
+    /**
+     * Lazily built index of bond positions, maintained by addBond and removeBond.
+     */
+    private transient Map<IBond,Integer> bondIndex;
+
+    /**
+     * Lazily built index of the bonds connected to each atom, in the order the
+     * bonds appear in this container. Maintained by addBond and removeBond,
+     * and cleared when a bond notifies this container of a change, e.g. its
+     * atoms were set.
+     */
+    private transient Map<IAtom,List<IBond>> connectedBonds;
+
 
 	/**
 	 *  Constructs an empty AtomContainer.
@@ -237,6 +262,8 @@ public class AtomContainer extends ChemObject
             atom.addListener(this);
         }
 		this.atomCount = atoms.length;
+		this.atomIndex = null;
+		this.connectedBonds = null;
 		notifyChanged();
 	}
 
@@ -254,6 +281,8 @@ public class AtomContainer extends ChemObject
             bond.addListener(this);
         }
 		this.bondCount = bonds.length;
+		this.bondIndex = null;
+		this.connectedBonds = null;
 	}
 
 	/**
@@ -286,6 +315,9 @@ public class AtomContainer extends ChemObject
 	{
 		atom.addListener(this);
 		atoms[number] = atom;
+		atomIndex = null;
+		// bonds of the replaced atom are usually rewired by the caller next
+		connectedBonds = null;
 		notifyChanged();
 	}
 
@@ -596,6 +628,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getAtomNumber(IAtom atom)
 	{
+		if (atomCount >= INDEX_THRESHOLD) {
+			Integer position = atomIndex().get(atom);
+			return position != null ? position : -1;
+		}
 		for (int f = 0; f < atomCount; f++)
 		{
 			if (atoms[f] == atom) return f;
@@ -628,6 +664,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getBondNumber(IBond bond)
 	{
+		if (bondCount >= INDEX_THRESHOLD) {
+			Integer position = bondIndex().get(bond);
+			return position != null ? position : -1;
+		}
 		for (int f = 0; f < bondCount; f++)
 		{
 			if (bonds[f] == bond) return f;
@@ -694,11 +734,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public IBond getBond(IAtom atom1, IAtom atom2)
 	{
-		for (int i = 0; i < getBondCount(); i++)
+		for (IBond bond : connectedBonds(atom1))
 		{
-			if (bonds[i].contains(atom1) &&
-			    bonds[i].getConnectedAtom(atom1) == atom2) {
-				return bonds[i];
+			if (bond.getConnectedAtom(atom1) == atom2) {
+				return bond;
 			}
 		}
 		return null;
@@ -762,10 +801,11 @@ public class AtomContainer extends ChemObject
 	 */
 	public List<IAtom> getConnectedAtomsList(IAtom atom)
 	{
-		List<IAtom> atomsList = new ArrayList<IAtom>();
-		for (int i = 0; i < bondCount; i++)
+		List<IBond> bondsList = connectedBonds(atom);
+		List<IAtom> atomsList = new ArrayList<IAtom>(bondsList.size());
+		for (IBond bond : bondsList)
 		{
-			if (bonds[i].contains(atom)) atomsList.add(bonds[i].getConnectedAtom(atom));
+			atomsList.add(bond.getConnectedAtom(atom));
 		}
 		return atomsList;
 	}
@@ -778,12 +818,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public List<IBond> getConnectedBondsList(IAtom atom)
 	{
-		List<IBond> bondsList = new ArrayList<IBond>();
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) bondsList.add(bonds[i]);
-		}
-		return bondsList;
+		return new ArrayList<IBond>(connectedBonds(atom));
 	}
 
     /**
@@ -828,10 +863,7 @@ public class AtomContainer extends ChemObject
 	public List<IElectronContainer> getConnectedElectronContainersList(IAtom atom)
 	{
 		List<IElectronContainer> lps = new ArrayList<IElectronContainer>();
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) lps.add(bonds[i]);
-		}
+		lps.addAll(connectedBonds(atom));
 		for (int i = 0; i < lonePairCount; i++)
 		{
 			if (lonePairs[i].contains(atom)) lps.add(lonePairs[i]);
@@ -851,12 +883,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getConnectedAtomsCount(IAtom atom)
 	{
-		int count = 0;
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) ++count;
-		}
-		return count;
+		return connectedBonds(atom).size();
 	}
 
 	/**
@@ -925,15 +952,13 @@ public class AtomContainer extends ChemObject
 	public double getBondOrderSum(IAtom atom)
 	{
 		double count = 0;
-		for (int i = 0; i < bondCount; i++)
+		for (IBond bond : connectedBonds(atom))
 		{
-            if(bonds[i].contains(atom)) {
-                IBond.Order order = bonds[i].getOrder();
-                if(order != null){
-                    count += order.numeric();
-                }
-            }
- 		}
+			IBond.Order order = bond.getOrder();
+			if (order != null) {
+				count += order.numeric();
+			}
+		}
 		return count;
 	}
 
@@ -946,10 +971,9 @@ public class AtomContainer extends ChemObject
 	 */
 	public Order getMaximumBondOrder(IAtom atom) {
 		IBond.Order max = IBond.Order.SINGLE;
-		for (int i = 0; i < bondCount; i++) {
-			if (bonds[i].contains(atom) && 
-				bonds[i].getOrder().numeric() > max.numeric()) {
-				max = bonds[i].getOrder();
+		for (IBond bond : connectedBonds(atom)) {
+			if (bond.getOrder().numeric() > max.numeric()) {
+				max = bond.getOrder();
 			}
 		}
 		return max;
@@ -966,10 +990,9 @@ public class AtomContainer extends ChemObject
 	public Order getMinimumBondOrder(IAtom atom)
 	{
 		IBond.Order min = IBond.Order.QUADRUPLE;
-		for (int i = 0; i < bondCount; i++) {
-			if (bonds[i].contains(atom) &&
-				bonds[i].getOrder().numeric() < min.numeric()) {
-				min = bonds[i].getOrder();
+		for (IBond bond : connectedBonds(atom)) {
+			if (bond.getOrder().numeric() < min.numeric()) {
+				min = bond.getOrder();
 			}
 		}
 		return min;
@@ -1049,6 +1072,7 @@ public class AtomContainer extends ChemObject
 		}
 		atom.addListener(this);
 		atoms[atomCount] = atom;
+		if (atomIndex != null) atomIndex.put(atom, atomCount);
 		atomCount++;
 		notifyChanged();
 	}
@@ -1063,6 +1087,9 @@ public class AtomContainer extends ChemObject
 	{
 		if (bondCount >= bonds.length) growBondArray();
 		bonds[bondCount] = bond;
+		if (bondIndex != null) bondIndex.put(bond, bondCount);
+		if (connectedBonds != null) indexConnectedBond(bond);
+		bond.addListener(this);
 		++bondCount;
 		notifyChanged();
 	}
@@ -1141,13 +1168,19 @@ public class AtomContainer extends ChemObject
 	 */
 	public void removeAtom(int position)
 	{
-		atoms[position].removeListener(this);
+		IAtom atom = atoms[position];
+		atom.removeListener(this);
 		for (int i = position; i < atomCount - 1; i++)
 		{
 			atoms[i] = atoms[i + 1];
 		}
 		atoms[atomCount - 1] = null;
 		atomCount--;
+		if (atomIndex != null) {
+			atomIndex.remove(atom);
+			for (int i = position; i < atomCount; i++)
+				atomIndex.put(atoms[i], i);
+		}
 		notifyChanged();
 	}
 	
@@ -1182,6 +1215,12 @@ public class AtomContainer extends ChemObject
 		}
 		bonds[bondCount - 1] = null;
 		bondCount--;
+		if (bondIndex != null) {
+			bondIndex.remove(bond);
+			for (int i = position; i < bondCount; i++)
+				bondIndex.put(bonds[i], i);
+		}
+		if (connectedBonds != null) unindexConnectedBond(bond);
 		notifyChanged();
 		return bond;
 	}
@@ -1353,6 +1392,7 @@ public class AtomContainer extends ChemObject
 		}
         atoms = new IAtom[growArraySize];
         atomCount = 0;
+        atomIndex = null;
         stereoElements.clear();
 		notifyChanged();
 	}
@@ -1386,6 +1426,8 @@ public class AtomContainer extends ChemObject
 		}
     	bonds = new IBond[growArraySize];
     	bondCount = 0;
+    	bondIndex = null;
+    	connectedBonds = null;
     	notifyChanged();
     }
 
@@ -1459,11 +1501,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public boolean contains(IAtom atom)
 	{
-		for (int i = 0; i < getAtomCount(); i++)
-		{
-			if (atom == atoms[i]) return true;
-		}
-		return false;
+		return getAtomNumber(atom) >= 0;
 	}
 	
 	/**
@@ -1474,11 +1512,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public boolean contains(IBond bond)
 	{
-		for (int i = 0; i < getBondCount(); i++)
-		{
-			if (bond == bonds[i]) return true;
-		}
-		return false;
+		return getBondNumber(bond) >= 0;
 	}
 	
 	/**
@@ -1687,6 +1721,115 @@ public class AtomContainer extends ChemObject
 //	}
 
 
+	/**
+	 *  Access the atom position index, building it if needed.
+	 *
+	 *@return    map of each atom to its position in the atoms array
+	 */
+	private Map<IAtom,Integer> atomIndex()
+	{
+		if (atomIndex == null) {
+			atomIndex = new IdentityHashMap<IAtom,Integer>(atomCount);
+			for (int f = atomCount - 1; f >= 0; f--)
+				atomIndex.put(atoms[f], f);
+		}
+		return atomIndex;
+	}
+
+	/**
+	 *  Access the bond position index, building it if needed.
+	 *
+	 *@return    map of each bond to its position in the bonds array
+	 */
+	private Map<IBond,Integer> bondIndex()
+	{
+		if (bondIndex == null) {
+			bondIndex = new IdentityHashMap<IBond,Integer>(bondCount);
+			for (int f = bondCount - 1; f >= 0; f--)
+				bondIndex.put(bonds[f], f);
+		}
+		return bondIndex;
+	}
+
+	/**
+	 *  The bonds connected to the given atom, in bond array order. For small
+	 *  containers a new list is built by scanning the bonds, otherwise the
+	 *  (read-only) list is taken from the adjacency index.
+	 *
+	 *@param  atom  the atom whose bonds are to be found
+	 *@return       the connected bonds, never null
+	 */
+	private List<IBond> connectedBonds(IAtom atom)
+	{
+		if (bondCount < INDEX_THRESHOLD) {
+			List<IBond> bondsList = new ArrayList<IBond>(4);
+			for (int i = 0; i < bondCount; i++)
+			{
+				if (bonds[i].contains(atom)) bondsList.add(bonds[i]);
+			}
+			return bondsList;
+		}
+		if (connectedBonds == null) {
+			connectedBonds = new IdentityHashMap<IAtom,List<IBond>>(atomCount);
+			for (int i = 0; i < bondCount; i++)
+				indexConnectedBond(bonds[i]);
+		}
+		List<IBond> bondsList = connectedBonds.get(atom);
+		return bondsList != null ? bondsList : Collections.<IBond>emptyList();
+	}
+
+	/**
+	 *  Appends a bond to the adjacency entries of each of its atoms.
+	 *
+	 *@param  bond  the bond to index
+	 */
+	private void indexConnectedBond(IBond bond)
+	{
+		for (int i = 0; i < bond.getAtomCount(); i++) {
+			IAtom atom = bond.getAtom(i);
+			if (atom == null || isRepeated(bond, atom, i)) continue;
+			List<IBond> bondsList = connectedBonds.get(atom);
+			if (bondsList == null) {
+				bondsList = new ArrayList<IBond>(4);
+				connectedBonds.put(atom, bondsList);
+			}
+			bondsList.add(bond);
+		}
+	}
+
+	/**
+	 *  Removes a bond from the adjacency entries of each of its atoms.
+	 *
+	 *@param  bond  the bond to remove from the index
+	 */
+	private void unindexConnectedBond(IBond bond)
+	{
+		for (int i = 0; i < bond.getAtomCount(); i++) {
+			IAtom atom = bond.getAtom(i);
+			if (atom == null || isRepeated(bond, atom, i)) continue;
+			List<IBond> bondsList = connectedBonds.get(atom);
+			if (bondsList == null) continue;
+			for (int j = 0; j < bondsList.size(); j++) {
+				if (bondsList.get(j) == bond) {
+					bondsList.remove(j);
+					break;
+				}
+			}
+			if (bondsList.isEmpty()) connectedBonds.remove(atom);
+		}
+	}
+
+	/**
+	 *  Whether the atom also occurs in the bond before the given position.
+	 */
+	private static boolean isRepeated(IBond bond, IAtom atom, int position)
+	{
+		for (int i = 0; i < position; i++) {
+			if (bond.getAtom(i) == atom) return true;
+		}
+		return false;
+	}
+
 	/**
 	 *  Grows the atom array by a given size.
 	 *
@@ -1747,6 +1890,8 @@ public class AtomContainer extends ChemObject
 	 */
 	public void stateChanged(IChemObjectChangeEvent event)
 	{
+		// the atoms of the bond may have changed
+		if (event.getSource() instanceof IBond) connectedBonds = null;
 		notifyChanged(event);
 	}
 
@@ -21,10 +21,13 @@
 package org.openscience.cdk.atomtype;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.annotations.TestClass;
@@ -49,6 +52,10 @@ import org.openscience.cdk.tools.manipulator.BondManipulator;
  * If there is not an atom type defined for the tested atom, then NULL 
  * is returned.
  *
+ * <p>Typing a whole molecule with {@link #findMatchingAtomTypes(IAtomContainer)}
+ * computes the neighbours, bond orders and ring membership of all atoms once,
+ * which is much faster than typing the atoms one by one.
+ *
  * @author         egonw
  * @cdk.created    2007-07-20
  * @cdk.module     core
@@ -63,6 +70,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	
 	private AtomTypeFactory factory;
 	private int mode;
+
+	/** Atom types by identifier, with their valency set. */
+	private final Map<String,IAtomType> types = new ConcurrentHashMap<String,IAtomType>();
+
+	/** The properties of the molecule being typed by the calling thread. */
+	private final ThreadLocal<MoleculeProperties> properties = new ThreadLocal<MoleculeProperties>();
 	
     private static Map<Integer,Map<IChemObjectBuilder,CDKAtomTypeMatcher>> 
     	factories = new Hashtable<Integer,Map<IChemObjectBuilder,CDKAtomTypeMatcher>>(1); 
@@ -93,10 +106,24 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     @TestMethod("testFindMatchingAtomType_IAtomContainer")
     public IAtomType[] findMatchingAtomTypes(IAtomContainer atomContainer) throws CDKException {
         IAtomType[] types = new IAtomType[atomContainer.getAtomCount()];
-        int typeCounter = 0;
-        for (IAtom atom : atomContainer.atoms()) {
-            types[typeCounter] = findMatchingAtomType(atomContainer, atom);
-            typeCounter++;
+        // the neighbourhood of all atoms is computed once, instead of once
+        // for every query while perceiving each atom
+        MoleculeProperties previous = properties.get();
+        MoleculeProperties molecule = MoleculeProperties.of(atomContainer);
+        properties.set(molecule);
+        try {
+            int typeCounter = 0;
+            for (IAtom atom : atomContainer.atoms()) {
+                if (molecule != null)
+                    molecule.current(atom, typeCounter);
+                types[typeCounter] = findMatchingAtomType(atomContainer, atom);
+                typeCounter++;
+            }
+        } finally {
+            if (previous != null)
+                properties.set(previous);
+            else
+                properties.remove();
         }
         return types;
     }
@@ -217,9 +244,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
     
     private IAtomType perceiveGallium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
         if (!isCharged(atom) && maxBondOrder == IBond.Order.SINGLE &&
-            atomContainer.getConnectedAtomsCount(atom) <= 3) {
+            connectedAtomsCount(atomContainer, atom) <= 3) {
             IAtomType type = getAtomType("Ga");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() == 3) {
@@ -230,13 +257,13 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private IAtomType perceiveGermanium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
         if (!isCharged(atom) && maxBondOrder == IBond.Order.SINGLE &&
-            atomContainer.getConnectedAtomsCount(atom) <= 4) {
+            connectedAtomsCount(atomContainer, atom) <= 4) {
             IAtomType type = getAtomType("Ge");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
-        if (atom.getFormalCharge() == 0 && atomContainer.getConnectedAtomsCount(atom) == 3) {
+        if (atom.getFormalCharge() == 0 && connectedAtomsCount(atomContainer, atom) == 3) {
             IAtomType type = getAtomType("Ge.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -248,7 +275,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             int doublebondcount = countAttachedDoubleBonds(atomContainer, atom);
             if (atom.getFormalCharge() != CDKConstants.UNSET
                     && atom.getFormalCharge() == 0) {
-                if (atomContainer.getConnectedAtomsCount(atom) == 0) {
+                if (connectedAtomsCount(atomContainer, atom) == 0) {
                 	if (atom.getImplicitHydrogenCount() != null && atom.getImplicitHydrogenCount() == 0 ) {
                 		IAtomType type = getAtomType("Se.2");
                 		if (isAcceptable(atom, atomContainer, type)) return type;
@@ -256,7 +283,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 		IAtomType type = getAtomType("Se.3");
                 		if (isAcceptable(atom, atomContainer, type)) return type;
                 	}
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 1) {
+                } else if (connectedAtomsCount(atomContainer, atom) == 1) {
 
                     if (doublebondcount == 1) {
                         IAtomType type = getAtomType("Se.1");
@@ -265,7 +292,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                         IAtomType type = getAtomType("Se.3");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 2) {
+                } else if (connectedAtomsCount(atomContainer, atom) == 2) {
                     if (doublebondcount == 0) {
                         IAtomType type = getAtomType("Se.3");
                         if (isAcceptable(atom, atomContainer, type)) return type;
@@ -273,10 +300,10 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                         IAtomType type = getAtomType("Se.sp2.2");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 3) {
+                } else if (connectedAtomsCount(atomContainer, atom) == 3) {
                     IAtomType type = getAtomType("Se.sp3.3");
                     if (isAcceptable(atom, atomContainer, type)) return type;
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 4) {
+                } else if (connectedAtomsCount(atomContainer, atom) == 4) {
                     if (doublebondcount == 2) {
                         IAtomType type = getAtomType("Se.sp3.4");
                         if (isAcceptable(atom, atomContainer, type)) return type;
@@ -284,20 +311,20 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                         IAtomType type = getAtomType("Se.sp3d1.4");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 5) {
+                } else if (connectedAtomsCount(atomContainer, atom) == 5) {
                     IAtomType type = getAtomType("Se.5");
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET && atom.getFormalCharge() == 4)
-                    && atomContainer.getConnectedAtomsCount(atom) == 0) {
+                    && connectedAtomsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Se.4plus");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET && atom.getFormalCharge() == 1)
-                    && atomContainer.getConnectedAtomsCount(atom) == 3) {
+                    && connectedAtomsCount(atomContainer, atom) == 3) {
                 IAtomType type = getAtomType("Se.plus.3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET && atom.getFormalCharge() == -2)
-                    && atomContainer.getConnectedAtomsCount(atom) == 0) {
+                    && connectedAtomsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Se.2minus");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
@@ -306,12 +333,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private IAtomType perceiveTellurium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
-        if (!isCharged(atom) && maxBondOrder == IBond.Order.SINGLE && atomContainer.getConnectedAtomsCount(atom) <= 2) {
+        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
+        if (!isCharged(atom) && maxBondOrder == IBond.Order.SINGLE && connectedAtomsCount(atomContainer, atom) <= 2) {
             IAtomType type = getAtomType("Te.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() == 4) {
-            if (atomContainer.getConnectedAtomsCount(atom) == 0) {
+            if (connectedAtomsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Te.4plus");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
@@ -321,17 +348,17 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
 	private IAtomType perceiveBorons(IAtomContainer atomContainer, IAtom atom)
 		throws CDKException {
-	    IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	    IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	    if (atom.getFormalCharge() == -1 && 
 	        maxBondOrder == IBond.Order.SINGLE &&
-	        atomContainer.getConnectedAtomsCount(atom) <= 4) {
+	        connectedAtomsCount(atomContainer, atom) <= 4) {
 	        IAtomType type = getAtomType("B.minus");
 	        if (isAcceptable(atom, atomContainer, type)) return type;
 	    } else if (atom.getFormalCharge() == +3
-                && atomContainer.getConnectedAtomsCount(atom) == 4) {
+                && connectedAtomsCount(atomContainer, atom) == 4) {
             IAtomType type = getAtomType("B.3plus");
             if (isAcceptable(atom, atomContainer, type)) return type;
-	    } else if (atomContainer.getConnectedAtomsCount(atom) <= 3) {
+	    } else if (connectedAtomsCount(atomContainer, atom) <= 3) {
 	        IAtomType type = getAtomType("B");
 	        if (isAcceptable(atom, atomContainer, type)) return type;
 	    }
@@ -341,12 +368,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveBeryllium(IAtomContainer atomContainer, IAtom atom)
     	throws CDKException {
 		if (atom.getFormalCharge() == -2 &&
-		    atomContainer.getMaximumBondOrder(atom) == IBond.Order.SINGLE &&
-		    atomContainer.getConnectedAtomsCount(atom) <= 4) {
+		    maximumBondOrder(atomContainer, atom) == IBond.Order.SINGLE &&
+		    connectedAtomsCount(atomContainer, atom) <= 4) {
 		    IAtomType type = getAtomType("Be.2minus");
 		    if (isAcceptable(atom, atomContainer, type)) return type;
 		} else if (atom.getFormalCharge() == 0 &&
-                   atomContainer.getConnectedAtomsCount(atom) == 0) {
+                   connectedAtomsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Be.neutral");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -354,11 +381,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private IAtomType perceiveCarbonRadicals(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        if (atomContainer.getConnectedBondsCount(atom) == 0) {
+        if (connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("C.radical.planar");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atomContainer.getConnectedBondsCount(atom) <= 3) {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        } else if (connectedBondsCount(atomContainer, atom) <= 3) {
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (maxBondOrder == IBond.Order.SINGLE) {
                 IAtomType type = getAtomType("C.radical.planar");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -386,7 +413,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	            IAtomType type = getAtomType("C.sp3");
 	            if (isAcceptable(atom, atomContainer, type)) return type;
 	        } else if (atom.getHybridization() == Hybridization.SP1) {
-	        	IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	        	IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	        	if (maxBondOrder == Order.TRIPLE) {
 		            IAtomType type = getAtomType("C.sp");
 		            if (isAcceptable(atom, atomContainer, type)) return type;
@@ -397,11 +424,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	        }
 	    } else if (isCharged(atom)) {
 	        if (atom.getFormalCharge() == 1) {
-	            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+	            if (connectedBondsCount(atomContainer, atom) == 0) {
 	                IAtomType type = getAtomType("C.plus.sp2");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            } else {
-	                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	                if (maxBondOrder == CDKConstants.BONDORDER_TRIPLE) {
 	                    IAtomType type = getAtomType("C.plus.sp1");
 	                    if (isAcceptable(atom, atomContainer, type)) return type;
@@ -414,9 +441,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	                } 
 	            }
 	        } else if (atom.getFormalCharge() == -1) {
-	            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	            if (maxBondOrder == CDKConstants.BONDORDER_SINGLE &&
-	                    atomContainer.getConnectedBondsCount(atom) <= 3) {
+	                    connectedBondsCount(atomContainer, atom) <= 3) {
 	                if (isRingAtom(atom, atomContainer) && bothNeighborsAreSp2(atom, atomContainer)) {
 	                    IAtomType type = getAtomType("C.minus.planar");
 	                    if (isAcceptable(atom, atomContainer, type)) return type;
@@ -424,11 +451,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	                IAtomType type = getAtomType("C.minus.sp3");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            } else if (maxBondOrder == CDKConstants.BONDORDER_DOUBLE &&
-	                    atomContainer.getConnectedBondsCount(atom) <= 3) {
+	                    connectedBondsCount(atomContainer, atom) <= 3) {
 	                IAtomType type = getAtomType("C.minus.sp2");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            } else if (maxBondOrder == CDKConstants.BONDORDER_TRIPLE &&
-	                    atomContainer.getConnectedBondsCount(atom) <= 1) {
+	                    connectedBondsCount(atomContainer, atom) <= 1) {
 	                IAtomType type = getAtomType("C.minus.sp1");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            }
@@ -440,11 +467,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         } else if (hasOneOrMoreSingleOrDoubleBonds(atomContainer, atom)) {
             IAtomType type = getAtomType("C.sp2");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        }  else if (atomContainer.getConnectedBondsCount(atom) > 4) {
+        }  else if (connectedBondsCount(atomContainer, atom) > 4) {
 	        // FIXME: I don't perceive carbons with more than 4 connections yet
 	        return null;
 	    } else { // OK, use bond order info
-	        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	        if (maxBondOrder == IBond.Order.QUADRUPLE) {
 	            // WTF??
 	            return null;
@@ -474,13 +501,16 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private boolean hasOneOrMoreSingleOrDoubleBonds(IAtomContainer atomContainer, IAtom atom) {
-    	for (IBond bond : atomContainer.getConnectedBondsList(atom)) {
+    	for (IBond bond : connectedBondsList(atomContainer, atom)) {
     		if (bond.getFlag(CDKConstants.SINGLE_OR_DOUBLE)) return true;
     	}
 		return false;
 	}
 
 	private boolean hasOneSingleElectron(IAtomContainer atomContainer, IAtom atom) {
+	    MoleculeProperties molecule = properties(atomContainer);
+	    if (molecule != null && molecule.index(atom) >= 0)
+	        return molecule.singleElectrons[molecule.index(atom)] > 0;
 	    Iterator<ISingleElectron> singleElectrons = atomContainer.singleElectrons().iterator();
 	    while (singleElectrons.hasNext()) {
 	    	if (singleElectrons.next().contains(atom)) return true;
@@ -489,6 +519,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private int countSingleElectrons(IAtomContainer atomContainer, IAtom atom) {
+	    MoleculeProperties molecule = properties(atomContainer);
+	    if (molecule != null && molecule.index(atom) >= 0)
+	        return molecule.singleElectrons[molecule.index(atom)];
 	    Iterator<ISingleElectron> singleElectrons = atomContainer.singleElectrons().iterator();
 	    int count = 0;
 	    while (singleElectrons.hasNext()) {
@@ -499,16 +532,16 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private IAtomType perceiveOxygenRadicals(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() == 0) {
-            if (atomContainer.getConnectedBondsCount(atom) <= 1) {
+            if (connectedBondsCount(atomContainer, atom) <= 1) {
                 IAtomType type = getAtomType("O.sp3.radical");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
         } else if (atom.getFormalCharge() == +1) {
-            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+            if (connectedBondsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("O.plus.radical");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedBondsCount(atom) <= 2) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            } else if (connectedBondsCount(atomContainer, atom) <= 2) {
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == IBond.Order.SINGLE) {
                     IAtomType type = getAtomType("O.plus.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -537,7 +570,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	    // if hybridization is given, use that
 	    if (hasHybridization(atom) && !isCharged(atom)) {
 	        if (atom.getHybridization() == Hybridization.SP2) {
-	            int connectedAtomsCount = atomContainer.getConnectedAtomsCount(atom);
+	            int connectedAtomsCount = connectedAtomsCount(atomContainer, atom);
 	            if (connectedAtomsCount == 1) {
 	                if (isCarboxylate(atom, atomContainer)) {
 	                    IAtomType type = getAtomType("O.sp2.co2");
@@ -559,7 +592,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	        }
 	    } else if (isCharged(atom)) {
 	        if (atom.getFormalCharge() == -1 &&
-	                atomContainer.getConnectedAtomsCount(atom) <= 1) {
+	                connectedAtomsCount(atomContainer, atom) <= 1) {
 	            if (isCarboxylate(atom, atomContainer)) {
 	                IAtomType type = getAtomType("O.minus.co2");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
@@ -568,15 +601,15 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            }
 	        } else if (atom.getFormalCharge() == -2 &&
-	                atomContainer.getConnectedAtomsCount(atom) == 0) {
+	                connectedAtomsCount(atomContainer, atom) == 0) {
 	            IAtomType type = getAtomType("O.minus2");
 	            if (isAcceptable(atom, atomContainer, type)) return type;
 	        } else if (atom.getFormalCharge() == +1) {
-	            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+	            if (connectedBondsCount(atomContainer, atom) == 0) {
 	                IAtomType type = getAtomType("O.plus");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
 	            }
-	            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	            if (maxBondOrder == CDKConstants.BONDORDER_DOUBLE) {
 	                IAtomType type = getAtomType("O.plus.sp2");
 	                if (isAcceptable(atom, atomContainer, type)) return type;
@@ -589,14 +622,14 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	            }
 	        }
 	        return null;
-	    } else if (atomContainer.getConnectedBondsCount(atom) > 2) {
+	    } else if (connectedBondsCount(atomContainer, atom) > 2) {
 	        // FIXME: I don't perceive carbons with more than 4 connections yet
 	        return null;
-	    } else if (atomContainer.getConnectedBondsCount(atom) == 0) {
+	    } else if (connectedBondsCount(atomContainer, atom) == 0) {
 	        IAtomType type = getAtomType("O.sp3");
 	        if (isAcceptable(atom, atomContainer, type)) return type;
 	    } else { // OK, use bond order info
-	        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+	        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 	        if (maxBondOrder == CDKConstants.BONDORDER_DOUBLE) {
 	            if (isCarboxylate(atom, atomContainer)) {
 	                IAtomType type = getAtomType("O.sp2.co2");
@@ -607,7 +640,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 	            }
 	        } else if (maxBondOrder == CDKConstants.BONDORDER_SINGLE) {
 	            int explicitHydrogens = countExplicitHydrogens(atom, atomContainer);
-	            int connectedHeavyAtoms = atomContainer.getConnectedBondsCount(atom) - explicitHydrogens; 
+	            int connectedHeavyAtoms = connectedBondsCount(atomContainer, atom) - explicitHydrogens; 
 	            if (connectedHeavyAtoms == 2) {
 	                // a O.sp3 which is expected to take part in an aromatic system
 	                if (isRingAtom(atom, atomContainer) && bothNeighborsAreSp2(atom, atomContainer)) {
@@ -627,7 +660,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private boolean isCarboxylate(IAtom atom, IAtomContainer container) {
         // assumes that the oxygen only has one neighbor (C=O, or C-[O-])
-        List<IAtom> neighbors = container.getConnectedAtomsList(atom);
+        List<IAtom> neighbors = connectedAtomsList(container, atom);
         if (neighbors.size() != 1) return false;
         IAtom carbon = neighbors.get(0);
         if (!"C".equals(carbon.getSymbol())) return false;
@@ -635,7 +668,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         int oxygenCount = 0;
         int singleBondedNegativeOxygenCount = 0;
         int doubleBondedOxygenCount = 0;
-        for (IBond cBond : container.getConnectedBondsList(carbon)) {
+        for (IBond cBond : connectedBondsList(container, carbon)) {
             IAtom neighbor = cBond.getConnectedAtom(carbon);
             if ("O".equals(neighbor.getSymbol())) {
                 oxygenCount++;
@@ -653,7 +686,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private boolean atLeastTwoNeighborsAreSp2(IAtom atom, IAtomContainer atomContainer) {
     	int count = 0;
-    	Iterator<IAtom> atoms = atomContainer.getConnectedAtomsList(atom).iterator();
+    	Iterator<IAtom> atoms = connectedAtomsList(atomContainer, atom).iterator();
     	while (atoms.hasNext() && (count < 2)) {
     		IAtom nextAtom = atoms.next();
     		if (!nextAtom.getSymbol().equals("H")) {
@@ -678,9 +711,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private IAtomType perceiveNitrogenRadicals(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        if (atomContainer.getConnectedBondsCount(atom) >= 1 &&
-                atomContainer.getConnectedBondsCount(atom) <= 2) {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        if (connectedBondsCount(atomContainer, atom) >= 1 &&
+                connectedBondsCount(atomContainer, atom) <= 2) {
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (atom.getFormalCharge() != CDKConstants.UNSET &&
                     atom.getFormalCharge() == +1) {
                 if (maxBondOrder == IBond.Order.DOUBLE) {
@@ -701,7 +734,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 }
             }
         } else {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (atom.getFormalCharge() != CDKConstants.UNSET &&
                     atom.getFormalCharge() == +1 && maxBondOrder == IBond.Order.SINGLE) {
                 IAtomType type = getAtomType("N.plus.sp3.radical");
@@ -713,7 +746,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveMolybdenum(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 4) {
                 IAtomType type = getAtomType("Mo.4");
                 if (isAcceptable(atom, atomContainer, type)) {
@@ -733,7 +766,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return perceiveNitrogenRadicals(atomContainer, atom);
         } else if (hasHybridization(atom) && !isCharged(atom)) {
             if (atom.getHybridization() == Hybridization.SP1) {
-                int neighborCount = atomContainer.getConnectedAtomsCount(atom);
+                int neighborCount = connectedAtomsCount(atomContainer, atom);
                 if (neighborCount > 1) {
                     IAtomType type = getAtomType("N.sp1.2");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -750,16 +783,16 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
                 // but an sp2 hyb N might N.sp2 or N.planar3 (pyrrole), so check for the latter
-            	int neighborCount = atomContainer.getConnectedAtomsCount(atom);
+            	int neighborCount = connectedAtomsCount(atomContainer, atom);
             	if (neighborCount == 4 &&
-            	    IBond.Order.DOUBLE == atomContainer.getMaximumBondOrder(atom)) {
+            	    IBond.Order.DOUBLE == maximumBondOrder(atomContainer, atom)) {
             	    IAtomType type = getAtomType("N.oxide");
                     if (isAcceptable(atom, atomContainer, type)) return type;
             	} else
             	if (neighborCount > 1 && bothNeighborsAreSp2(atom, atomContainer)) {
             		if (isRingAtom(atom, atomContainer)) {
             			if (neighborCount == 3) {
-                            IBond.Order maxOrder = atomContainer.getMaximumBondOrder(atom);
+                            IBond.Order maxOrder = maximumBondOrder(atomContainer, atom);
                             if (maxOrder == IBond.Order.DOUBLE) {
                                 IAtomType type = getAtomType("N.sp2.3");
                                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -768,7 +801,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                                 if (isAcceptable(atom, atomContainer, type)) return type;
                             }
             			} else if (neighborCount == 2) {
-            				IBond.Order maxOrder = atomContainer.getMaximumBondOrder(atom);
+            				IBond.Order maxOrder = maximumBondOrder(atomContainer, atom);
             				if (maxOrder == IBond.Order.SINGLE) {
             				    if (atom.getImplicitHydrogenCount() != CDKConstants.UNSET && atom.getImplicitHydrogenCount() == 1) {
             						IAtomType type = getAtomType("N.planar3");
@@ -790,8 +823,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 IAtomType type = getAtomType("N.sp3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             } else if (atom.getHybridization() == Hybridization.PLANAR3) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
-                if (atomContainer.getConnectedAtomsCount(atom) == 3 &&
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
+                if (connectedAtomsCount(atomContainer, atom) == 3 &&
                         maxBondOrder == CDKConstants.BONDORDER_DOUBLE &&
                         countAttachedDoubleBonds(atomContainer, atom, "O") == 2) {
                     IAtomType type = getAtomType("N.nitro");
@@ -802,9 +835,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if (isCharged(atom)) {
             if (atom.getFormalCharge() == 1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == CDKConstants.BONDORDER_SINGLE ||
-                        atomContainer.getConnectedBondsCount(atom) == 0) {
+                        connectedBondsCount(atomContainer, atom) == 0) {
                     if (atom.getHybridization() == IAtomType.Hybridization.SP2) {
                         IAtomType type = getAtomType("N.plus.sp2");
                         if (isAcceptable(atom, atomContainer, type)) return type;
@@ -821,42 +854,42 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
                 } else if (maxBondOrder == CDKConstants.BONDORDER_TRIPLE) {
-                    if (atomContainer.getConnectedBondsCount(atom) == 2) {
+                    if (connectedBondsCount(atomContainer, atom) == 2) {
                         IAtomType type = getAtomType("N.plus.sp1");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
                 }
             } else if (atom.getFormalCharge() == -1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == CDKConstants.BONDORDER_SINGLE) {
-                    if (atomContainer.getConnectedAtomsCount(atom) >= 2 &&
+                    if (connectedAtomsCount(atomContainer, atom) >= 2 &&
                     		bothNeighborsAreSp2(atom,atomContainer) &&
                     		isRingAtom(atom, atomContainer)) {
                         IAtomType type = getAtomType("N.minus.planar3");
                         if (isAcceptable(atom, atomContainer, type)) return type;
-                    } else if (atomContainer.getConnectedBondsCount(atom) <= 2) {
+                    } else if (connectedBondsCount(atomContainer, atom) <= 2) {
                         IAtomType type = getAtomType("N.minus.sp3");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
                 } else if (maxBondOrder == CDKConstants.BONDORDER_DOUBLE) {
-                    if (atomContainer.getConnectedBondsCount(atom) <= 1) {
+                    if (connectedBondsCount(atomContainer, atom) <= 1) {
                         IAtomType type = getAtomType("N.minus.sp2");
                         if (isAcceptable(atom, atomContainer, type)) return type;
                     }
                 }
             }
-        } else if (atomContainer.getConnectedBondsCount(atom) > 3) {
-            if (atomContainer.getConnectedBondsCount(atom) == 4 &&
+        } else if (connectedBondsCount(atomContainer, atom) > 3) {
+            if (connectedBondsCount(atomContainer, atom) == 4 &&
                 countAttachedDoubleBonds(atomContainer, atom) == 1) {
                 IAtomType type = getAtomType("N.oxide");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
             return null;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 0) {
+        } else if (connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("N.sp3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (hasOneOrMoreSingleOrDoubleBonds(atomContainer, atom)) {
-        	int connectedAtoms = atomContainer.getConnectedAtomsCount(atom) +
+        	int connectedAtoms = connectedAtomsCount(atomContainer, atom) +
         		(atom.getImplicitHydrogenCount() == CDKConstants.UNSET
         		    ? 0
         			: atom.getImplicitHydrogenCount());
@@ -867,7 +900,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         	IAtomType type = getAtomType("N.sp2");
         	if (isAcceptable(atom, atomContainer, type)) return type;
         } else { // OK, use bond order info
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (maxBondOrder == CDKConstants.BONDORDER_SINGLE) {
                 if (isAmide(atom, atomContainer)) {
                     IAtomType type = getAtomType("N.amide");
@@ -877,7 +910,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
                 
-                List<IBond> bonds = atomContainer.getConnectedBondsList(atom); 
+                List<IBond> bonds = connectedBondsList(atomContainer, atom); 
                 List<IBond> heavy = heavyBonds(bonds);
                 
                 int expHCount = heavy.size() - bonds.size();
@@ -890,7 +923,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                         int hCount = atom.getImplicitHydrogenCount() != null ? atom.getImplicitHydrogenCount() + expHCount
                                                                              : expHCount;
                         if (hCount == 0) {
-                            if (atomContainer.getMaximumBondOrder(atom) == CDKConstants.BONDORDER_SINGLE &&
+                            if (maximumBondOrder(atomContainer, atom) == CDKConstants.BONDORDER_SINGLE &&
                                     isSingleHeteroAtom(atom, atomContainer)) {
                                 IAtomType type = getAtomType("N.planar3");
                                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -926,11 +959,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
             } else if (maxBondOrder == CDKConstants.BONDORDER_DOUBLE) {
-                if (atomContainer.getConnectedAtomsCount(atom) == 3 &&
+                if (connectedAtomsCount(atomContainer, atom) == 3 &&
                         countAttachedDoubleBonds(atomContainer, atom, "O") == 2) {
                     IAtomType type = getAtomType("N.nitro");
                     if (isAcceptable(atom, atomContainer, type)) return type;
-                } else if (atomContainer.getConnectedAtomsCount(atom) == 3 &&
+                } else if (connectedAtomsCount(atomContainer, atom) == 3 &&
                         countAttachedDoubleBonds(atomContainer, atom) > 0) {
                     IAtomType type = getAtomType("N.sp2.3");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -938,7 +971,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 IAtomType type = getAtomType("N.sp2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             } else if (maxBondOrder == CDKConstants.BONDORDER_TRIPLE) {
-                int neighborCount = atomContainer.getConnectedAtomsCount(atom);
+                int neighborCount = connectedAtomsCount(atomContainer, atom);
                 if (neighborCount > 1) {
                     IAtomType type = getAtomType("N.sp1.2");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -963,7 +996,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
      */
     private boolean isSingleHeteroAtom(IAtom atom, IAtomContainer container) {
 
-        List<IAtom> connected = container.getConnectedAtomsList(atom);
+        List<IAtom> connected = connectedAtomsList(container, atom);
 
         for (IAtom atom1 : connected) {
 
@@ -978,7 +1011,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 return false;
 
             // check the second sphere
-            for (IAtom atom2 : container.getConnectedAtomsList(atom1)) {
+            for (IAtom atom2 : connectedAtomsList(container, atom1)) {
 
                 if (atom2 != atom
                    && container.getBond(atom1, atom2).getFlag(CDKConstants.ISAROMATIC)
@@ -995,12 +1028,15 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private boolean isRingAtom(IAtom atom, IAtomContainer atomContainer) {
+        MoleculeProperties molecule = properties(atomContainer);
+        if (molecule != null && molecule.index(atom) >= 0)
+            return molecule.cyclic(molecule.index(atom));
     	RingSearch searcher = new RingSearch(atomContainer);
         return searcher.cyclic(atom);
     }
 
     private boolean isAmide(IAtom atom, IAtomContainer atomContainer) {
-    	List<IAtom> neighbors = atomContainer.getConnectedAtomsList(atom);
+    	List<IAtom> neighbors = connectedAtomsList(atomContainer, atom);
     	for (IAtom neighbor : neighbors) {
     		if (neighbor.getSymbol().equals("C")) {
     			if (countAttachedDoubleBonds(atomContainer, neighbor, "O") == 1) return true;
@@ -1010,7 +1046,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private boolean isThioAmide(IAtom atom, IAtomContainer atomContainer) {
-        List<IAtom> neighbors = atomContainer.getConnectedAtomsList(atom);
+        List<IAtom> neighbors = connectedAtomsList(atomContainer, atom);
         for (IAtom neighbor : neighbors) {
             if (neighbor.getSymbol().equals("C")) {
                 if (countAttachedDoubleBonds(atomContainer, neighbor, "S") == 1) return true;
@@ -1021,7 +1057,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private int countExplicitHydrogens(IAtom atom, IAtomContainer atomContainer) {
     	int count = 0;
-        for (IAtom aAtom : atomContainer.getConnectedAtomsList(atom)) {
+        for (IAtom aAtom : connectedAtomsList(atomContainer, atom)) {
             if (aAtom.getSymbol().equals("H")) {
                 count++;
             }
@@ -1056,7 +1092,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
                 }
-                int neighbors = atomContainer.getConnectedAtomsCount(atom);
+                int neighbors = connectedAtomsCount(atomContainer, atom);
                 if (neighbors == 2) {
                     IAtomType type5 = getAtomType("Fe.2");
                     if (isAcceptable(atom, atomContainer, type5)) {
@@ -1085,7 +1121,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 }
             } else if ((atom.getFormalCharge() != null
                     && atom.getFormalCharge() == 2)) {
-                int neighbors = atomContainer.getConnectedAtomsCount(atom);
+                int neighbors = connectedAtomsCount(atomContainer, atom);
                 if (neighbors <= 1) {
                     IAtomType type = getAtomType("Fe.2plus");
                     if (isAcceptable(atom, atomContainer, type)) {
@@ -1094,7 +1130,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 }
             } else if ((atom.getFormalCharge() != null
                     && atom.getFormalCharge() == 1)) {
-                int neighbors = atomContainer.getConnectedAtomsCount(atom);
+                int neighbors = connectedAtomsCount(atomContainer, atom);
 
                 if (neighbors == 2) {
                     IAtomType type0 = getAtomType("Fe.plus");
@@ -1151,7 +1187,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 }
             } else if ((atom.getFormalCharge() != null
                     && atom.getFormalCharge() == +1)) {
-                int neighbors = atomContainer.getConnectedAtomsCount(atom);
+                int neighbors = connectedAtomsCount(atomContainer, atom);
                 if (neighbors <= 1) {  
                     IAtomType type = getAtomType("Hg.plus");
                     if (isAcceptable(atom, atomContainer, type)) {
@@ -1160,7 +1196,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 }
             } else if ((atom.getFormalCharge() != null
                     && atom.getFormalCharge() == 0)) {
-                int neighbors = atomContainer.getConnectedAtomsCount(atom);
+                int neighbors = connectedAtomsCount(atomContainer, atom);
                 if (neighbors == 2) {
                     IAtomType type = getAtomType("Hg.2");
                     if (isAcceptable(atom, atomContainer, type)) {
@@ -1184,8 +1220,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private IAtomType perceiveSulphurs(IAtomContainer atomContainer, IAtom atom)
     throws CDKException {
-        List<IBond> neighbors = atomContainer.getConnectedBondsList(atom);
-        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        List<IBond> neighbors = connectedBondsList(atomContainer, atom);
+        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
         int neighborcount = neighbors.size();
         if (hasOneSingleElectron(atomContainer, atom)) {
             // no idea how to deal with this yet
@@ -1232,10 +1268,10 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
         } else if (neighborcount == 1) {
-            if (atomContainer.getConnectedBondsList(atom).get(0).getOrder() == CDKConstants.BONDORDER_DOUBLE) {
+            if (connectedBondsList(atomContainer, atom).get(0).getOrder() == CDKConstants.BONDORDER_DOUBLE) {
                 IAtomType type = getAtomType("S.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedBondsList(atom).get(0).getOrder() == CDKConstants.BONDORDER_SINGLE) {
+            } else if (connectedBondsList(atomContainer, atom).get(0).getOrder() == CDKConstants.BONDORDER_SINGLE) {
                 IAtomType type = getAtomType("S.3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
@@ -1321,9 +1357,9 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private IAtomType perceivePhosphors(IAtomContainer atomContainer, IAtom atom)
     throws CDKException {
-        List<IBond> neighbors = atomContainer.getConnectedBondsList(atom);
+        List<IBond> neighbors = connectedBondsList(atomContainer, atom);
         int neighborcount = neighbors.size();
-        IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
         if (countSingleElectrons(atomContainer, atom) == 3) {
         	IAtomType type = getAtomType("P.se.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
@@ -1391,7 +1427,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     
     private IAtomType perceiveHydrogens(IAtomContainer atomContainer, IAtom atom)
     throws CDKException {
-        int neighborcount = atomContainer.getConnectedBondsCount(atom);
+        int neighborcount = connectedBondsCount(atomContainer, atom);
         if (hasOneSingleElectron(atomContainer, atom)) {
             if ((atom.getFormalCharge() == CDKConstants.UNSET || atom.getFormalCharge() == 0) &&
                     neighborcount == 0) {
@@ -1424,7 +1460,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 
     private IAtomType perceiveLithium(IAtomContainer atomContainer, IAtom atom)
     	throws CDKException {
-        int neighborcount = atomContainer.getConnectedBondsCount(atom);
+        int neighborcount = connectedBondsCount(atomContainer, atom);
         if (neighborcount == 1) {
             if (atom.getFormalCharge() == CDKConstants.UNSET ||
                     atom.getFormalCharge() == 0) {
@@ -1450,7 +1486,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     throws CDKException {
     	if ("F".equals(atom.getSymbol())) {
     		if (hasOneSingleElectron(atomContainer, atom)) {
-				if (atomContainer.getConnectedBondsCount(atom) == 0) {
+				if (connectedBondsCount(atomContainer, atom) == 0) {
 					if (atom.getFormalCharge() != CDKConstants.UNSET &&
 						atom.getFormalCharge() == +1) {
 						IAtomType type = getAtomType("F.plus.radical");
@@ -1460,8 +1496,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
 						IAtomType type = getAtomType("F.radical");
 						if (isAcceptable(atom, atomContainer, type)) return type;
 					}
-				} else if (atomContainer.getConnectedBondsCount(atom) <= 1) {
-					IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+				} else if (connectedBondsCount(atomContainer, atom) <= 1) {
+					IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 					if (maxBondOrder == IBond.Order.SINGLE) {
 						IAtomType type = getAtomType("F.plus.radical");
 						if (isAcceptable(atom, atomContainer, type)) return type;
@@ -1474,7 +1510,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     				IAtomType type = getAtomType("F.minus");
     				if (isAcceptable(atom, atomContainer, type)) return type;
     			} else if (atom.getFormalCharge() == 1) {
-    				IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+    				IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
     				if (maxBondOrder == IBond.Order.DOUBLE) {
     					IAtomType type = getAtomType("F.plus.sp2");
     					if (isAcceptable(atom, atomContainer, type)) return type;
@@ -1483,8 +1519,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     					if (isAcceptable(atom, atomContainer, type)) return type;
     				}
     			}
-    		} else if (atomContainer.getConnectedBondsCount(atom) == 1 ||
-    				atomContainer.getConnectedBondsCount(atom) == 0) {
+    		} else if (connectedBondsCount(atomContainer, atom) == 1 ||
+    				connectedBondsCount(atomContainer, atom) == 0) {
     			IAtomType type = getAtomType("F");
     			if (isAcceptable(atom, atomContainer, type)) return type;
     		}
@@ -1500,14 +1536,14 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == +1
-                && atomContainer.getConnectedBondsCount(atom) <= 4)) {
+                && connectedBondsCount(atomContainer, atom) <= 4)) {
             IAtomType type = getAtomType("As.plus");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 4) {
                 IAtomType type = getAtomType("As.5");
                 if (isAcceptable(atom, atomContainer, type)) {
@@ -1543,7 +1579,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveThorium(IAtomContainer atomContainer, IAtom atom)
             throws CDKException {
         if ("Th".equals(atom.getSymbol())) {
-            if (atom.getFormalCharge() == 0 && atomContainer.getConnectedBondsCount(atom) == 0) {
+            if (atom.getFormalCharge() == 0 && connectedBondsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Th");
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
@@ -1622,7 +1658,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 1) {
                 IAtomType type = getAtomType("Cu.1");
                 if (isAcceptable(atom, atomContainer, type)) {
@@ -1658,7 +1694,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveAluminium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 3) {
-            int connectedBondsCount = atomContainer.getConnectedBondsCount(atom);
+            int connectedBondsCount = connectedBondsCount(atomContainer, atom);
             if (connectedBondsCount == 0) {
                 IAtomType type = getAtomType("Al.3plus");
                 if (isAcceptable(atom, atomContainer, type)) {
@@ -1667,14 +1703,14 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0
-                && atomContainer.getConnectedBondsCount(atom) == 3) {
+                && connectedBondsCount(atomContainer, atom) == 3) {
             IAtomType type = getAtomType("Al");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == -3
-                && atomContainer.getConnectedBondsCount(atom) == 6) {
+                && connectedBondsCount(atomContainer, atom) == 6) {
             IAtomType type = getAtomType("Al.3minus");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
@@ -1686,22 +1722,22 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         if (hasOneSingleElectron(atomContainer, atom)) {
             // no idea how to deal with this yet
             return null;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 0
+        } else if (connectedBondsCount(atomContainer, atom) == 0
                 && (atom.getFormalCharge() != null
                 && atom.getFormalCharge() == 0)) {
             IAtomType type = getAtomType("Zn.metallic");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 0
+        } else if (connectedBondsCount(atomContainer, atom) == 0
                 && (atom.getFormalCharge() != null
                 && atom.getFormalCharge() == 2)) {
             IAtomType type = getAtomType("Zn.2plus");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 1
+        } else if (connectedBondsCount(atomContainer, atom) == 1
                 && (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)) {
             IAtomType type = getAtomType("Zn.1");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 2
+        } else if (connectedBondsCount(atomContainer, atom) == 2
                 && (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)) {
             IAtomType type = getAtomType("Zn");
@@ -1712,28 +1748,28 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveChromium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0
-                && atomContainer.getConnectedBondsCount(atom) == 6) {
+                && connectedBondsCount(atomContainer, atom) == 6) {
             IAtomType type = getAtomType("Cr");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0
-                && atomContainer.getConnectedBondsCount(atom) == 4) {
+                && connectedBondsCount(atomContainer, atom) == 4) {
             IAtomType type = getAtomType("Cr.4");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 6
-                && atomContainer.getConnectedBondsCount(atom) == 0) {
+                && connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Cr.6plus");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0
-                && atomContainer.getConnectedBondsCount(atom) == 0) {
+                && connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Cr.neutral");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
@@ -1741,7 +1777,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         } else if ("Cr".equals(atom.getSymbol())) {
             if (atom.getFormalCharge() != CDKConstants.UNSET
                     && atom.getFormalCharge() == 3
-                    && atomContainer.getConnectedBondsCount(atom) == 0) {
+                    && connectedBondsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Cr.3plus");
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
@@ -1755,7 +1791,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     		if (hasOneSingleElectron(atomContainer, atom)) {
     			// no idea how to deal with this yet
     			return null;
-    		} else if (atomContainer.getConnectedBondsCount(atom) == 2) {
+    		} else if (connectedBondsCount(atomContainer, atom) == 2) {
     			IAtomType type = getAtomType("Po");
     			if (isAcceptable(atom, atomContainer, type)) return type;
     		}
@@ -1765,14 +1801,14 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     			return null;
     		} else if ((atom.getFormalCharge() != CDKConstants.UNSET &&
     				atom.getFormalCharge() == 0 &&
-    				atomContainer.getConnectedBondsCount(atom) <= 4)) {
+    				connectedBondsCount(atomContainer, atom) <= 4)) {
     			IAtomType type = getAtomType("Sn.sp3");
     			if (isAcceptable(atom, atomContainer, type)) return type;
     		}
     	} else if ("Sc".equals(atom.getSymbol())) {
     		if (atom.getFormalCharge() != CDKConstants.UNSET &&
     			atom.getFormalCharge() == -3 &&
-    			atomContainer.getConnectedBondsCount(atom) == 6) {
+    			connectedBondsCount(atomContainer, atom) == 6) {
     			IAtomType type = getAtomType("Sc.3minus");
     			if (isAcceptable(atom, atomContainer, type)) return type;
     		}
@@ -1791,21 +1827,21 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)
-                && atomContainer.getConnectedAtomsCount(atom) == 2) {
+                && connectedAtomsCount(atomContainer, atom) == 2) {
             IAtomType type = getAtomType("Ni");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)
-                && atomContainer.getConnectedAtomsCount(atom) == 0) {
+                && connectedAtomsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Ni.metallic");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
             }
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 1)
-                && atomContainer.getConnectedAtomsCount(atom) == 1) {
+                && connectedAtomsCount(atomContainer, atom) == 1) {
             IAtomType type = getAtomType("Ni.plus");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
@@ -1856,7 +1892,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     			return null;
     		} else if ((atom.getFormalCharge() == CDKConstants.UNSET ||
     				atom.getFormalCharge() == 0)) {
-            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+            if (connectedBondsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Xe");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             } else {
@@ -1883,13 +1919,13 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0) {
-            if (atomContainer.getConnectedBondsCount(atom) == 2) {
+            if (connectedBondsCount(atomContainer, atom) == 2) {
                 IAtomType type = getAtomType("Si.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedBondsCount(atom) == 3) {
+            } else if (connectedBondsCount(atomContainer, atom) == 3) {
                 IAtomType type = getAtomType("Si.3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedBondsCount(atom) == 4) {
+            } else if (connectedBondsCount(atomContainer, atom) == 4) {
                 IAtomType type = getAtomType("Si.sp3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
@@ -1907,7 +1943,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != null
                 && atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 2) {
                 IAtomType type02 = getAtomType("Mn.2");
                 if (isAcceptable(atom, atomContainer, type02)) return type02;
@@ -1937,12 +1973,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() == CDKConstants.UNSET
                 || atom.getFormalCharge() == 0)
-                && atomContainer.getConnectedAtomsCount(atom) == 1) {
+                && connectedAtomsCount(atomContainer, atom) == 1) {
             IAtomType type = getAtomType("Na");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)
-                && atomContainer.getConnectedAtomsCount(atom) == 0) {
+                && connectedAtomsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Na.neutral");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } 
@@ -1951,7 +1987,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     
     private IAtomType perceiveIodine(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (hasOneSingleElectron(atomContainer, atom)) {
-            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+            if (connectedBondsCount(atomContainer, atom) == 0) {
                 if (atom.getFormalCharge() != CDKConstants.UNSET &&
                     atom.getFormalCharge() == +1) {
                     IAtomType type = getAtomType("I.plus.radical");
@@ -1961,8 +1997,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     IAtomType type = getAtomType("I.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
-            } else if (atomContainer.getConnectedBondsCount(atom) <= 1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            } else if (connectedBondsCount(atomContainer, atom) <= 1) {
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == IBond.Order.SINGLE) {
                     IAtomType type = getAtomType("I.plus.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -1972,7 +2008,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         } else if (atom.getFormalCharge() != CDKConstants.UNSET && 
                atom.getFormalCharge() != 0) {
       if (atom.getFormalCharge() == -1) {
-          if (atomContainer.getConnectedAtomsCount(atom) == 0) {
+          if (connectedAtomsCount(atomContainer, atom) == 0) {
               IAtomType type = getAtomType("I.minus");
               if (isAcceptable(atom, atomContainer, type)) return type;
           } else {
@@ -1980,7 +2016,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
               if (isAcceptable(atom, atomContainer, type)) return type;
           }
             } else if (atom.getFormalCharge() == 1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == IBond.Order.DOUBLE) {
                     IAtomType type = getAtomType("I.plus.sp2");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -1989,7 +2025,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
             }
-        } else if (atomContainer.getConnectedBondsCount(atom) == 3) {
+        } else if (connectedBondsCount(atomContainer, atom) == 3) {
             int doubleBondCount = countAttachedDoubleBonds(atomContainer, atom);
             if (doubleBondCount == 2) {
                 IAtomType type = getAtomType("I.5");
@@ -1999,14 +2035,14 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 IAtomType type = getAtomType("I.sp3d2.3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
-        } else if (atomContainer.getConnectedBondsCount(atom) == 2) {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+        } else if (connectedBondsCount(atomContainer, atom) == 2) {
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (maxBondOrder == IBond.Order.DOUBLE) {
                 IAtomType type = getAtomType("I.3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
-        } else if (atomContainer.getConnectedBondsCount(atom) == 1 ||
-                atomContainer.getConnectedBondsCount(atom) == 0) {
+        } else if (connectedBondsCount(atomContainer, atom) == 1 ||
+                connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("I");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2040,7 +2076,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() == CDKConstants.UNSET
                 || atom.getFormalCharge() == 0) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 1) {
                 IAtomType type = getAtomType("K.neutral");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2052,7 +2088,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
     
     private IAtomType perceivePlutonium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        if (atom.getFormalCharge() == 0 && atomContainer.getConnectedBondsCount(atom) == 0) {
+        if (atom.getFormalCharge() == 0 && connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Pu");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2069,10 +2105,10 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)) {
-            if (atomContainer.getConnectedAtomsCount(atom) == 0) {
+            if (connectedAtomsCount(atomContainer, atom) == 0) {
                 IAtomType type = getAtomType("Cd.metallic");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedAtomsCount(atom) == 2) {
+            } else if (connectedAtomsCount(atomContainer, atom) == 2) {
                 IAtomType type = getAtomType("Cd.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
@@ -2081,13 +2117,13 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
     
     private IAtomType perceiveIndium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
-        if (atom.getFormalCharge() == 0 && atomContainer.getConnectedBondsCount(atom) == 3) {
+        if (atom.getFormalCharge() == 0 && connectedBondsCount(atomContainer, atom) == 3) {
             IAtomType type = getAtomType("In.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atom.getFormalCharge() == 3 && atomContainer.getConnectedBondsCount(atom) == 0) {
+        } else if (atom.getFormalCharge() == 3 && connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("In.3plus");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atom.getFormalCharge() == 0 && atomContainer.getConnectedBondsCount(atom) == 1) {
+        } else if (atom.getFormalCharge() == 0 && connectedBondsCount(atomContainer, atom) == 1) {
             IAtomType type = getAtomType("In.1");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else {
@@ -2099,19 +2135,19 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     
     private IAtomType perceiveChlorine(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (hasOneSingleElectron(atomContainer, atom)) {
-            if (atomContainer.getConnectedBondsCount(atom) > 1) {
+            if (connectedBondsCount(atomContainer, atom) > 1) {
                 if (atom.getFormalCharge() != CDKConstants.UNSET
                         && atom.getFormalCharge() == +1) {
                     IAtomType type = getAtomType("Cl.plus.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
-            } else if (atomContainer.getConnectedBondsCount(atom) == 1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            } else if (connectedBondsCount(atomContainer, atom) == 1) {
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == IBond.Order.SINGLE) {
                     IAtomType type = getAtomType("Cl.plus.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
-            } else if (atomContainer.getConnectedBondsCount(atom) == 0
+            } else if (connectedBondsCount(atomContainer, atom) == 0
                     && (atom.getFormalCharge() == CDKConstants.UNSET
                     || atom.getFormalCharge() == 0)) {
                 IAtomType type = getAtomType("Cl.radical");
@@ -2119,11 +2155,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if (atom.getFormalCharge() == CDKConstants.UNSET
                 || atom.getFormalCharge() == 0) {
-            int neighborcount = atomContainer.getConnectedBondsCount(atom);
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            int neighborcount = connectedBondsCount(atomContainer, atom);
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
 
             if (maxBondOrder == IBond.Order.DOUBLE) {
-                int neighbor = atomContainer.getConnectedAtomsCount(atom);
+                int neighbor = connectedAtomsCount(atomContainer, atom);
                 if (neighbor == 2) {
                     IAtomType type = getAtomType("Cl.2");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2143,7 +2179,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             IAtomType type = getAtomType("Cl.minus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET && atom.getFormalCharge() == 1) {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (maxBondOrder == IBond.Order.DOUBLE) {
                 IAtomType type = getAtomType("Cl.plus.sp2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2152,16 +2188,16 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
-                && atom.getFormalCharge() == +3) && atomContainer.getConnectedBondsCount(atom) == 4) {
+                && atom.getFormalCharge() == +3) && connectedBondsCount(atomContainer, atom) == 4) {
             IAtomType type = getAtomType("Cl.perchlorate.charged");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else {
             int doubleBonds = countAttachedDoubleBonds(atomContainer, atom);
-            if (atomContainer.getConnectedBondsCount(atom) == 3
+            if (connectedBondsCount(atomContainer, atom) == 3
                     && doubleBonds == 2) {
                 IAtomType type = getAtomType("Cl.chlorate");
                 if (isAcceptable(atom, atomContainer, type)) return type;
-            } else if (atomContainer.getConnectedBondsCount(atom) == 4
+            } else if (connectedBondsCount(atomContainer, atom) == 4
                     && doubleBonds == 3) {
                 IAtomType type = getAtomType("Cl.perchlorate");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2175,7 +2211,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 1) {
                 IAtomType type = getAtomType("Ag.1");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2194,7 +2230,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
         if (hasOneSingleElectron(atomContainer, atom)) {
             return null;
         }
-        int neighbors = atomContainer.getConnectedAtomsCount(atom);
+        int neighbors = connectedAtomsCount(atomContainer, atom);
         if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0) && neighbors == 1) {
             IAtomType type = getAtomType("Au.1");
@@ -2220,19 +2256,19 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 // no idea how to deal with this yet
                 return null;
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET
-                    && atom.getFormalCharge() == 2 && atomContainer.getConnectedAtomsCount(atom) == 0)) {
+                    && atom.getFormalCharge() == 2 && connectedAtomsCount(atomContainer, atom) == 0)) {
                 IAtomType type = getAtomType("Ca.2plus");
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
                 }
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET
-                    && atom.getFormalCharge() == 0 && atomContainer.getConnectedAtomsCount(atom) == 2)) {
+                    && atom.getFormalCharge() == 0 && connectedAtomsCount(atomContainer, atom) == 2)) {
                 IAtomType type = getAtomType("Ca.2");
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
                 }
             } else if ((atom.getFormalCharge() != CDKConstants.UNSET
-                    && atom.getFormalCharge() == 0 && atomContainer.getConnectedAtomsCount(atom) == 1)) {
+                    && atom.getFormalCharge() == 0 && connectedAtomsCount(atomContainer, atom) == 1)) {
                 IAtomType type = getAtomType("Ca.1");
                 if (isAcceptable(atom, atomContainer, type)) {
                     return type;
@@ -2248,7 +2284,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET &&
                 atom.getFormalCharge() == +2)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 4) {
                 IAtomType type = getAtomType("Pt.2plus.4");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2258,7 +2294,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if ((atom.getFormalCharge() == CDKConstants.UNSET ||
                 atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 2) {
                 IAtomType type = getAtomType("Pt.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2278,12 +2314,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET &&
                     atom.getFormalCharge() == 0 &&
-                    atomContainer.getConnectedBondsCount(atom) == 3)) {
+                    connectedBondsCount(atomContainer, atom) == 3)) {
             IAtomType type = getAtomType("Sb.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET && 
                     atom.getFormalCharge() == 0 &&
-                    atomContainer.getConnectedBondsCount(atom) == 4)) {
+                    connectedBondsCount(atomContainer, atom) == 4)) {
             IAtomType type = getAtomType("Sb.4");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2293,7 +2329,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveGadolinum(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET &&
             atom.getFormalCharge() == +3 &&
-            atomContainer.getConnectedBondsCount(atom) == 0) {
+            connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Gd.3plus");
             if (isAcceptable(atom, atomContainer, type)) {
                 return type;
@@ -2308,7 +2344,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             return null;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET &&
                     atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 4) {
                 IAtomType type = getAtomType("Mg.neutral");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2333,17 +2369,17 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveThallium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET &&
             atom.getFormalCharge() == +1 &&
-            atomContainer.getConnectedBondsCount(atom) == 0) {
+            connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Tl.plus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET &&
                    atom.getFormalCharge() == 0 &&
-                   atomContainer.getConnectedBondsCount(atom) == 0) {
+                   connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Tl");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET &&
                    atom.getFormalCharge() == 0 &&
-                   atomContainer.getConnectedBondsCount(atom) == 1) {
+                   connectedBondsCount(atomContainer, atom) == 1) {
             IAtomType type = getAtomType("Tl.1");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2353,17 +2389,17 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveLead(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET &&
             atom.getFormalCharge() == 0 &&
-            atomContainer.getConnectedBondsCount(atom) == 0) {
+            connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Pb.neutral");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET &&
                    atom.getFormalCharge() == 2 &&
-                   atomContainer.getConnectedBondsCount(atom) == 0) {
+                   connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Pb.2plus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET &&
                    atom.getFormalCharge() == 0 &&
-                   atomContainer.getConnectedBondsCount(atom) == 1) {
+                   connectedBondsCount(atomContainer, atom) == 1) {
             IAtomType type = getAtomType("Pb.1");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2384,17 +2420,17 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveTitanium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET &&
             atom.getFormalCharge() == -3 &&
-            atomContainer.getConnectedBondsCount(atom) == 6) {
+            connectedBondsCount(atomContainer, atom) == 6) {
             IAtomType type = getAtomType("Ti.3minus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() == CDKConstants.UNSET ||
                     atom.getFormalCharge() == 0) &&
-                   atomContainer.getConnectedBondsCount(atom) == 4) {
+                   connectedBondsCount(atomContainer, atom) == 4) {
             IAtomType type = getAtomType("Ti.sp3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == 0)
-                && atomContainer.getConnectedBondsCount(atom) == 2) {
+                && connectedBondsCount(atomContainer, atom) == 2) {
             IAtomType type = getAtomType("Ti.2");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2404,12 +2440,12 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private IAtomType perceiveVanadium(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (atom.getFormalCharge() != CDKConstants.UNSET &&
                 atom.getFormalCharge() == -3 &&
-                atomContainer.getConnectedBondsCount(atom) == 6) {
+                connectedBondsCount(atomContainer, atom) == 6) {
             IAtomType type = getAtomType("V.3minus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() != CDKConstants.UNSET
                 && atom.getFormalCharge() == -3
-                && atomContainer.getConnectedBondsCount(atom) == 4) {
+                && connectedBondsCount(atomContainer, atom) == 4) {
             IAtomType type = getAtomType("V.3minus.4");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2418,7 +2454,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     
     private IAtomType perceiveBromine(IAtomContainer atomContainer, IAtom atom) throws CDKException {
         if (hasOneSingleElectron(atomContainer, atom)) {
-            if (atomContainer.getConnectedBondsCount(atom) == 0) {
+            if (connectedBondsCount(atomContainer, atom) == 0) {
                 if (atom.getFormalCharge() != CDKConstants.UNSET &&
                         atom.getFormalCharge() == +1) {
                     IAtomType type = getAtomType("Br.plus.radical");
@@ -2428,8 +2464,8 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                     IAtomType type = getAtomType("Br.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
                 }
-            } else if (atomContainer.getConnectedBondsCount(atom) <= 1) {
-                IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            } else if (connectedBondsCount(atomContainer, atom) <= 1) {
+                IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
                 if (maxBondOrder == IBond.Order.SINGLE) {
                     IAtomType type = getAtomType("Br.plus.radical");
                     if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2441,7 +2477,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             IAtomType type = getAtomType("Br.minus");
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if (atom.getFormalCharge() == 1) {
-            IBond.Order maxBondOrder = atomContainer.getMaximumBondOrder(atom);
+            IBond.Order maxBondOrder = maximumBondOrder(atomContainer, atom);
             if (maxBondOrder == IBond.Order.DOUBLE) {
                 IAtomType type = getAtomType("Br.plus.sp2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2449,11 +2485,11 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
                 IAtomType type = getAtomType("Br.plus.sp3");
                 if (isAcceptable(atom, atomContainer, type)) return type;
             }
-        } else if (atomContainer.getConnectedBondsCount(atom) == 1 ||
-                atomContainer.getConnectedBondsCount(atom) == 0) {
+        } else if (connectedBondsCount(atomContainer, atom) == 1 ||
+                connectedBondsCount(atomContainer, atom) == 0) {
             IAtomType type = getAtomType("Br");
             if (isAcceptable(atom, atomContainer, type)) return type;
-        } else if (atomContainer.getConnectedBondsCount(atom) == 3) {
+        } else if (connectedBondsCount(atomContainer, atom) == 3) {
             IAtomType type = getAtomType("Br.3");
             if (isAcceptable(atom, atomContainer, type)) return type;
         }
@@ -2478,7 +2514,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             if (isAcceptable(atom, atomContainer, type)) return type;
         } else if ((atom.getFormalCharge() == CDKConstants.UNSET ||
                 atom.getFormalCharge() == 0)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 2) {
                 IAtomType type = getAtomType("Co.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2497,7 +2533,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
             }
         } else if ((atom.getFormalCharge() != null
                 && atom.getFormalCharge() == +1)) {
-            int neighbors = atomContainer.getConnectedAtomsCount(atom);
+            int neighbors = connectedAtomsCount(atomContainer, atom);
             if (neighbors == 2) {
                 IAtomType type = getAtomType("Co.plus.2");
                 if (isAcceptable(atom, atomContainer, type)) return type;
@@ -2530,7 +2566,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private boolean hasAromaticBond(IAtomContainer container, IAtom atom) {
-        List<IBond> neighbors = container.getConnectedBondsList(atom);
+        List<IBond> neighbors = connectedBondsList(container, atom);
         for (IBond bond : neighbors) {
             if (bond.getFlag(CDKConstants.ISAROMATIC)) return true;
         }
@@ -2548,8 +2584,13 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
      * @return the number of doubly bonded atoms
      */
     private int countAttachedBonds(IAtomContainer container, IAtom atom, IBond.Order order, String symbol) {
+        MoleculeProperties molecule = properties(container);
+        if (molecule != null && molecule.index(atom) >= 0 && symbol == null) {
+            if (order == IBond.Order.SINGLE) return molecule.singleBonds[molecule.index(atom)];
+            if (order == IBond.Order.DOUBLE) return molecule.doubleBonds[molecule.index(atom)];
+        }
     	// count the number of double bonded oxygens
-    	List<IBond> neighbors = container.getConnectedBondsList(atom);
+    	List<IBond> neighbors = connectedBondsList(container, atom);
     	int neighborcount = neighbors.size();
     	int doubleBondedAtoms = 0;
     	for (int i=neighborcount-1;i>=0;i--) {
@@ -2574,22 +2615,26 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     }
 
     private IAtomType getAtomType(String identifier) throws CDKException {
-    	IAtomType type = factory.getAtomType(identifier);
-    	type.setValency((Integer)type.getProperty(CDKConstants.PI_BOND_COUNT) +
-    			        type.getFormalNeighbourCount());
+    	IAtomType type = types.get(identifier);
+    	if (type == null) {
+    		type = factory.getAtomType(identifier);
+    		type.setValency((Integer)type.getProperty(CDKConstants.PI_BOND_COUNT) +
+    				        type.getFormalNeighbourCount());
+    		types.put(identifier, type);
+    	}
     	return type;
     }
     
     private boolean isAcceptable(IAtom atom, IAtomContainer container, IAtomType type) {
     	if (mode == REQUIRE_EXPLICIT_HYDROGENS) {
     		// make sure no implicit hydrogens were assumed
-    		int actualContainerCount = container.getConnectedAtomsCount(atom);
+    		int actualContainerCount = connectedAtomsCount(container, atom);
     		int requiredContainerCount = type.getFormalNeighbourCount();
     		if (actualContainerCount != requiredContainerCount)
     			return false;
     	} else if (atom.getImplicitHydrogenCount() != CDKConstants.UNSET) {
     		// confirm correct neighbour count
-    		int connectedAtoms = container.getConnectedAtomsCount(atom);
+    		int connectedAtoms = connectedAtomsCount(container, atom);
     		int hCount = atom.getImplicitHydrogenCount();
     		int actualNeighbourCount =  connectedAtoms + hCount;
     		int requiredNeighbourCount = type.getFormalNeighbourCount();
@@ -2600,7 +2645,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     	// confirm correct bond orders
         IBond.Order typeOrder = type.getMaxBondOrder(); 
     	if (typeOrder != null) {
-    		for (IBond bond : container.getConnectedBondsList(atom)) {
+    		for (IBond bond : connectedBondsList(container, atom)) {
     			IBond.Order order = bond.getOrder();
     			if (order != CDKConstants.UNSET && order != IBond.Order.UNSET) {
     				if (BondManipulator.isHigherOrder(order, typeOrder)) return false;
@@ -2614,7 +2659,7 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     	}
     		
     	// confirm correct valency
-    	if (type.getValency() != CDKConstants.UNSET && container.getBondOrderSum(atom) > type.getValency())
+    	if (type.getValency() != CDKConstants.UNSET && bondOrderSum(container, atom) > type.getValency())
     		return false;
 
     	// confirm correct formal charge
@@ -2628,6 +2673,173 @@ public class CDKAtomTypeMatcher implements IAtomTypeMatcher {
     private boolean isHueckelNumber(int electronCount) {
         return (electronCount % 4 == 2) && (electronCount >= 2);
     }
+
+    /**
+     * The properties of a molecule being typed by the calling thread.
+     *
+     * @param container the molecule in which to look
+     * @return the properties, or null when they were not computed and the
+     *         molecule has to be queried
+     */
+    private MoleculeProperties properties(IAtomContainer container) {
+        MoleculeProperties molecule = properties.get();
+        return molecule != null && molecule.container == container ? molecule : null;
+    }
+
+    private int connectedAtomsCount(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 ? molecule.atoms[i].length : container.getConnectedAtomsCount(atom);
+    }
+
+    private int connectedBondsCount(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 ? molecule.bonds[i].length : container.getConnectedBondsCount(atom);
+    }
+
+    private List<IAtom> connectedAtomsList(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 ? Arrays.asList(molecule.atoms[i]) : container.getConnectedAtomsList(atom);
+    }
+
+    private List<IBond> connectedBondsList(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 ? Arrays.asList(molecule.bonds[i]) : container.getConnectedBondsList(atom);
+    }
+
+    private IBond.Order maximumBondOrder(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 && molecule.maximumBondOrder[i] != null ? molecule.maximumBondOrder[i]
+                                                              : container.getMaximumBondOrder(atom);
+    }
+
+    private double bondOrderSum(IAtomContainer container, IAtom atom) {
+        MoleculeProperties molecule = properties(container);
+        int i = molecule != null ? molecule.index(atom) : -1;
+        return i >= 0 ? molecule.bondOrderSum[i] : container.getBondOrderSum(atom);
+    }
+
+    /**
+     * The neighbours, bond orders, single electrons and ring membership of
+     * all atoms of a molecule, computed in one pass over its bonds. The
+     * values are those the container itself would give for each atom.
+     */
+    private static final class MoleculeProperties {
+
+        private final IAtomContainer container;
+
+        private final Map<IAtom,Integer> indices;
+
+        private final IAtom[][] atoms;
+        private final IBond[][] bonds;
+
+        /** The maximum bond order, null if an attached bond has no order. */
+        private final IBond.Order[] maximumBondOrder;
+        private final double[] bondOrderSum;
+        private final int[] singleBonds, doubleBonds;
+        private final int[] singleElectrons;
+
+        /** Computed on first use. */
+        private boolean[] cyclic;
+
+        /** The atom being typed. */
+        private IAtom current;
+        private int currentIndex;
+
+        private MoleculeProperties(IAtomContainer container, Map<IAtom,Integer> indices, int[] degree) {
+            this.container = container;
+            this.indices = indices;
+            int n = degree.length;
+            atoms = new IAtom[n][];
+            bonds = new IBond[n][];
+            maximumBondOrder = new IBond.Order[n];
+            bondOrderSum = new double[n];
+            singleBonds = new int[n];
+            doubleBonds = new int[n];
+            singleElectrons = new int[n];
+            for (int i = 0; i < n; i++) {
+                atoms[i] = new IAtom[degree[i]];
+                bonds[i] = new IBond[degree[i]];
+                maximumBondOrder[i] = IBond.Order.SINGLE;
+                degree[i] = 0;
+            }
+            for (IBond bond : container.bonds()) {
+                IAtom a = bond.getAtom(0), b = bond.getAtom(1);
+                int u = indices.get(a), v = indices.get(b);
+                atoms[u][degree[u]] = b;
+                bonds[u][degree[u]++] = bond;
+                atoms[v][degree[v]] = a;
+                bonds[v][degree[v]++] = bond;
+                add(u, bond.getOrder());
+                add(v, bond.getOrder());
+            }
+            for (ISingleElectron singleElectron : container.singleElectrons()) {
+                Integer i = indices.get(singleElectron.getAtom());
+                if (i != null) singleElectrons[i]++;
+            }
+        }
+
+        private void add(int i, IBond.Order order) {
+            if (order == null) {
+                maximumBondOrder[i] = null;
+                return;
+            }
+            bondOrderSum[i] += order.numeric();
+            if (maximumBondOrder[i] != null && order.numeric() > maximumBondOrder[i].numeric())
+                maximumBondOrder[i] = order;
+            if (order == IBond.Order.SINGLE)
+                singleBonds[i]++;
+            else if (order == IBond.Order.DOUBLE)
+                doubleBonds[i]++;
+        }
+
+        /**
+         * Compute the properties of a molecule.
+         *
+         * @param container the molecule
+         * @return the properties, or null if the molecule has bonds which are
+         *         not between two of its atoms
+         */
+        static MoleculeProperties of(IAtomContainer container) {
+            int n = container.getAtomCount();
+            Map<IAtom,Integer> indices = new IdentityHashMap<IAtom,Integer>(2 * n);
+            for (int i = 0; i < n; i++)
+                indices.put(container.getAtom(i), i);
+            if (indices.size() != n) return null;
+            int[] degree = new int[n];
+            for (IBond bond : container.bonds()) {
+                if (bond.getAtomCount() != 2) return null;
+                Integer u = indices.get(bond.getAtom(0)), v = indices.get(bond.getAtom(1));
+                if (u == null || v == null || u.equals(v)) return null;
+                degree[u]++;
+                degree[v]++;
+            }
+            return new MoleculeProperties(container, indices, degree);
+        }
+
+        void current(IAtom atom, int i) {
+            current = atom;
+            currentIndex = i;
+        }
+
+        int index(IAtom atom) {
+            if (atom == current) return currentIndex;
+            Integer i = indices.get(atom);
+            return i != null ? i : -1;
+        }
+
+        boolean cyclic(int i) {
+            if (cyclic == null) {
+                cyclic = new boolean[atoms.length];
+                for (int v : new RingSearch(container).cyclic())
+                    cyclic[v] = true;
+            }
+            return cyclic[i];
+        }
+    }
     
 }
-
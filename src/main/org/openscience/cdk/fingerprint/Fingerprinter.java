@@ -29,7 +29,7 @@ import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.PathTools;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
@@ -40,13 +40,10 @@ import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 import org.openscience.cdk.tools.periodictable.PeriodicTable;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  *  Generates a fingerprint for a given AtomContainer. Fingerprints are
@@ -182,7 +179,7 @@ public class Fingerprinter implements IFingerprinter {
 
         int[] hashes = findPathes(container, searchDepth);
         for (int hash : hashes) {
-            position = new java.util.Random(hash).nextInt(size);
+            position = randomIndex(hash, size);
             bitSet.set(position);
         }
 
@@ -210,84 +207,255 @@ public class Fingerprinter implements IFingerprinter {
      * Get all paths of lengths 0 to the specified length.
      *
      * This method will find all paths upto length N starting from each
-     * atom in the molecule and return the unique set of such paths.
+     * atom in the molecule and return the hashes of the unique set of such
+     * paths.
+     *
+     * The paths are walked depth-first over the adjacency of the container.
+     * The hash of the path string (atom and bond symbols) and its reverse
+     * are accumulated as each atom is added, the path strings are never
+     * created. The hash of the lexicographically greater of the string and
+     * its reverse is used, and the hash values are identical to
+     * {@link String#hashCode()} of that string.
      *
      * @param container The molecule to search
      * @param searchDepth The maximum path length desired
-     * @return A Map of path strings, keyed on themselves
+     * @return the hashes of the unique paths
+     * @throws CDKException more than 150 paths were found from an atom
      */
-    protected int[] findPathes(IAtomContainer container, int searchDepth) throws CDKException{
+    protected int[] findPathes(IAtomContainer container, int searchDepth) throws CDKException {
 
-        List<StringBuffer> allPaths = new ArrayList<StringBuffer>();
+        GraphSnapshot g = GraphSnapshot.of(container);
+        int n = g.order();
 
-        Map<IAtom,Map<IAtom, IBond>> cache 
-            = new HashMap<IAtom, Map<IAtom,IBond>>();
-        
-        for (IAtom startAtom : container.atoms()) {
-                List<List<IAtom>> p 
-                    = PathTools.getLimitedPathsOfLengthUpto(container, 
-                                                            startAtom, 
-                                                            searchDepth,
-                                                            PATH_LIMIT);
-                for (List<IAtom> path : p) {
-                    StringBuffer sb = new StringBuffer();
-                    IAtom x = path.get(0);
-
-                    // TODO if we ever get more than 255 elements, this will 
-                    // fail maybe we should use 0 for pseudo atoms and 
-                    // malformed symbols? - nope a char 16 bit, up to 65,535
-                    // is okay :)
-                    if (x instanceof IPseudoAtom)
-                        sb.append((char) PeriodicTable.getElementCount() + 1);
-                    else {
-                        Integer atnum = PeriodicTable.getAtomicNumber(x.getSymbol());
-                        if (atnum != null) sb.append(convertSymbol(x.getSymbol()));
-                        else sb.append((char) 
-                                       PeriodicTable.getElementCount() + 1);
-                    }
+        // labels of each atom (at the start and in the body of a path) and
+        // each bond
+        char[][] heads = new char[n][];
+        char[][] atomLabels = new char[n][];
+        char[][] bondLabels = new char[g.size()][];
+        int maxLabel = 1;
+        for (int v = 0; v < n; v++) {
+            IAtom atom = container.getAtom(v);
+            heads[v] = headSymbol(atom).toCharArray();
+            atomLabels[v] = String.valueOf(convertSymbol(atom.getSymbol())).toCharArray();
+            maxLabel = Math.max(maxLabel, Math.max(heads[v].length, atomLabels[v].length));
+        }
+        for (int i = 0; i < bondLabels.length; i++) {
+            bondLabels[i] = getBondSymbol(container.getBond(i)).toCharArray();
+            maxLabel = Math.max(maxLabel, bondLabels[i].length);
+        }
+
+        PathHasher hasher = new PathHasher(g, heads, atomLabels, bondLabels, searchDepth, maxLabel);
+        for (int v = 0; v < n; v++)
+            hasher.walk(v);
+        return hasher.hashes();
+    }
+
+    /**
+     * The symbol of the first atom of a path.
+     */
+    private String headSymbol(IAtom atom) {
+        if (atom instanceof IPseudoAtom)
+            return Integer.toString((char) PeriodicTable.getElementCount() + 1);
+        Integer atnum = PeriodicTable.getAtomicNumber(atom.getSymbol());
+        if (atnum != null)
+            return convertSymbol(atom.getSymbol());
+        return Integer.toString((char) PeriodicTable.getElementCount() + 1);
+    }
+
+    /**
+     * Depth-first enumeration of the paths from each atom which hashes each
+     * path as it is extended. All state is held in arrays sized on
+     * construction.
+     */
+    private static final class PathHasher {
+
+        private final GraphSnapshot g;
+        private final char[][]      heads, atomLabels, bondLabels;
+        private final int           depth;
+
+        /** The current path: vertices, next adjacency entry and visit flags. */
+        private final int[]         path, next;
+        private final boolean[]     visited;
+
+        /** Characters of the path string and its length at each level. */
+        private final char[]        buf;
+        private final int[]         len;
+
+        /** Forward and reverse hashes and 31^len at each level. */
+        private final int[]         fwd, rev, pow;
+
+        /** Hashes of all paths found. */
+        private int[]               hashes = new int[64];
+        private int                 nHashes;
 
-                    for (int i = 1; i < path.size(); i++) {
-                        final IAtom[] y = {path.get(i)};
-                        Map<IAtom, IBond> m = cache.get( x );
-                        final IBond[] b = { m != null ? m.get( y[0] ) : null };
-                        if ( b[0] == null ) {
-                            b[0] = container.getBond(x, y[0]);
-                            cache.put( x, 
-                                       new HashMap<IAtom, IBond>() {
-                                {put(y[0], b[0]); }
-                            } );
-                                                }
-                     sb.append(getBondSymbol(b[0]));
-                     sb.append(convertSymbol(y[0].getSymbol()));
-                     x = y[0];
+        private PathHasher(GraphSnapshot g, char[][] heads, char[][] atomLabels, char[][] bondLabels, int depth,
+                           int maxLabel) {
+            this.g = g;
+            this.heads = heads;
+            this.atomLabels = atomLabels;
+            this.bondLabels = bondLabels;
+            this.depth = depth;
+            int maxLength = Math.min(depth, g.order()) + 1;
+            this.path = new int[maxLength];
+            this.next = new int[maxLength];
+            this.visited = new boolean[g.order()];
+            this.buf = new char[2 * maxLabel * maxLength];
+            this.len = new int[maxLength];
+            this.fwd = new int[maxLength];
+            this.rev = new int[maxLength];
+            this.pow = new int[maxLength];
+        }
+
+        /**
+         * Hash all paths starting at 'start'.
+         *
+         * @param start the first atom
+         * @throws CDKException too many paths from the atom
+         */
+        private void walk(int start) throws CDKException {
+
+            int count = 0;
+
+            path[0] = start;
+            next[0] = g.offset(start);
+            visited[start] = true;
+            append(0, -1, heads[start]);
+            add(0);
+            count++;
+
+            int d = 0;
+            while (d >= 0) {
+                int u = path[d];
+                if (d < depth && next[d] < g.offset(u + 1)) {
+                    int e = next[d]++;
+                    int w = g.neighbour(e);
+                    if (visited[w])
+                        continue;
+                    if (++count > PATH_LIMIT) {
+                        Arrays.fill(visited, false);
+                        throw new CDKException("Too many paths generate. We're working making this faster but for now try generating paths with a smaller length");
                     }
+                    path[++d] = w;
+                    next[d] = g.offset(w);
+                    visited[w] = true;
+                    append(d, g.bondIndex(e), atomLabels[w]);
+                    add(d);
+                } else {
+                    visited[u] = false;
+                    d--;
+                }
+            }
+        }
 
-                    // we store the lexicographically lower one of the
-                    // string and its reverse
-                    StringBuffer revForm = new StringBuffer(sb);
-                    revForm.reverse();
-                    if (sb.toString().compareTo(revForm.toString()) <= 0)
-                        allPaths.add(sb);
-                    else allPaths.add(revForm);
+        /**
+         * Extend the path string at level 'd' with a bond and atom label,
+         * updating the rolling hashes.
+         */
+        private void append(int d, int bond, char[] atom) {
+            int l = d == 0 ? 0 : len[d - 1];
+            int f = d == 0 ? 0 : fwd[d - 1];
+            int r = d == 0 ? 0 : rev[d - 1];
+            int p = d == 0 ? 1 : pow[d - 1];
+            if (bond >= 0) {
+                for (char c : bondLabels[bond]) {
+                    buf[l++] = c;
+                    f = 31 * f + c;
+                    r = r + c * p;
+                    p *= 31;
                 }
+            }
+            for (char c : atom) {
+                buf[l++] = c;
+                f = 31 * f + c;
+                r = r + c * p;
+                p *= 31;
+            }
+            len[d] = l;
+            fwd[d] = f;
+            rev[d] = r;
+            pow[d] = p;
         }
-        // now lets clean stuff up
-        Set<String> cleanPath = new HashSet<String>();
-        for (StringBuffer s : allPaths) {
-            String s1 = s.toString().trim();
-            if (s1.equals("")) continue;
-            if (cleanPath.contains(s1)) continue;
-            String s2 = s.reverse().toString().trim();
-            if (cleanPath.contains(s2)) continue;
-            cleanPath.add(s2);
+
+        /**
+         * Add the hash of the path at level 'd'. The hash is of the greater of
+         * the path string and its reverse, ignoring leading and trailing
+         * white space.
+         */
+        private void add(int d) {
+            int l = len[d];
+            int beg = 0, end = l;
+            while (beg < end && buf[beg] <= ' ')
+                beg++;
+            while (end > beg && buf[end - 1] <= ' ')
+                end--;
+            if (beg == end)
+                return;
+
+            // compare the string with its reverse
+            int cmp = 0;
+            for (int i = 0, j = l - 1; i < j; i++, j--) {
+                if (buf[i] != buf[j]) {
+                    cmp = buf[i] < buf[j] ? -1 : +1;
+                    break;
+                }
+            }
+
+            int hash;
+            if (beg == 0 && end == l) {
+                hash = cmp > 0 ? fwd[d] : rev[d];
+            } else {
+                hash = 0;
+                if (cmp > 0) {
+                    for (int i = beg; i < end; i++)
+                        hash = 31 * hash + buf[i];
+                } else {
+                    for (int i = end - 1; i >= beg; i--)
+                        hash = 31 * hash + buf[i];
+                }
+            }
+
+            if (nHashes == hashes.length)
+                hashes = Arrays.copyOf(hashes, 2 * nHashes);
+            hashes[nHashes++] = hash;
         }
 
-        // convert paths to hashes
-        int[] hashes = new int[cleanPath.size()];
-        int i= 0;
-        for (String s: cleanPath) hashes[i++] = s.hashCode();
+        /**
+         * The unique hashes.
+         *
+         * @return unique hash values
+         */
+        private int[] hashes() {
+            Arrays.sort(hashes, 0, nHashes);
+            int n = 0;
+            for (int i = 0; i < nHashes; i++) {
+                if (n == 0 || hashes[i] != hashes[n - 1])
+                    hashes[n++] = hashes[i];
+            }
+            return Arrays.copyOf(hashes, n);
+        }
+    }
 
-        return hashes;
+    /**
+     * The value of {@code new Random(seed).nextInt(n)}, computed without
+     * creating the {@link java.util.Random} instance.
+     *
+     * @param seed the seed
+     * @param n    the bound (exclusive), positive
+     * @return a random value 0 &le; value &lt; n
+     */
+    static int randomIndex(long seed, int n) {
+        long state = (seed ^ 0x5DEECE66DL) & ((1L << 48) - 1);
+        state = (state * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+        int bits = (int) (state >>> 17);
+        if ((n & -n) == n)
+            return (int) ((n * (long) bits) >> 31);
+        int val = bits % n;
+        while (bits - val + (n - 1) < 0) {
+            state = (state * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+            bits = (int) (state >>> 17);
+            val = bits % n;
+        }
+        return val;
     }
 
     private String convertSymbol(String symbol) {
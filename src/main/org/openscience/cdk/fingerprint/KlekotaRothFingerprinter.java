@@ -23,10 +23,14 @@ import org.openscience.cdk.annotations.TestClass;
 @TestClass("org.openscience.cdk.fingerprint.KlekotaRothFingerprinterTest")
 public class KlekotaRothFingerprinter extends SubstructureFingerprinter 
 {
-	
+
     public KlekotaRothFingerprinter()
     {
-    	super( new String[] {
+        super(SMARTS);
+    }
+
+    /** The key definitions, a single array lets all instances share the parsed keys. */
+    private static final String[] SMARTS = {
 "[!#1][CH]([!#1])[!#1]",
 "[!#1][CH]([!#1])[CH]([!#1])[!#1]",
 "[!#1][CH]([!#1])[CH]([!#1])C([CH3])([CH3])[CH3]",
@@ -4887,7 +4891,6 @@ public class KlekotaRothFingerprinter extends SubstructureFingerprinter
 "SCCC=O",
 "SCCS",
 "SCCS(=O)=O"
-                                        });
-    }
+    };
 
 }
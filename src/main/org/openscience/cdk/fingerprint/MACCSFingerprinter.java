@@ -42,11 +42,8 @@ import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IRingSet;
-import org.openscience.cdk.isomorphism.Pattern;
-import org.openscience.cdk.isomorphism.Ullmann;
 import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
 import org.openscience.cdk.ringsearch.AllRingsFinder;
-import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 
@@ -84,7 +81,8 @@ public class MACCSFingerprinter implements IFingerprinter {
 
     private static final String KEY_DEFINITIONS = "data/maccs.txt";
 
-    private volatile MaccsKey[] keys = null;
+    /** The parsed key definitions, loaded once and shared by all instances. */
+    private static volatile MaccsKeys keys = null;
     
     @TestMethod("testFingerprint")
     public MACCSFingerprinter() {
@@ -92,9 +90,7 @@ public class MACCSFingerprinter implements IFingerprinter {
 
     public MACCSFingerprinter(IChemObjectBuilder builder) {
         try {
-            keys = readKeyDef(builder);
-        } catch (IOException e) {
-            logger.debug(e);
+            keys(builder);
         } catch (CDKException e) {
             logger.debug(e);
         }
@@ -104,22 +100,21 @@ public class MACCSFingerprinter implements IFingerprinter {
     @TestMethod("testFingerprint,testfp2")
     public IBitFingerprint getBitFingerprint(IAtomContainer container) throws CDKException {
 
-        MaccsKey[] keys = keys(container.getBuilder());
-        BitSet     fp   = new BitSet(keys.length);
+        MaccsKeys keys = keys(container.getBuilder());
+        BitSet    fp   = new BitSet(keys.size());
 
         // init SMARTS invariants (connectivity, degree, etc)
         SmartsMatchers.prepare(container, false);
-        
-        for (int i = 0; i < keys.length; i++) {
-            Pattern pattern = keys[i].pattern;
-            if (pattern == null)
-                continue;
 
+        // only match the keys whose elements are all present
+        BitSet candidates = keys.patterns.screen(container);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
             // check if there are at least 'count' unique hits, key.count = 0
             // means find at least one match hence we add 1 to out limit
-            if (pattern.matchAll(container)
-                       .uniqueAtoms()
-                       .atLeast(keys[i].count + 1))
+            if (keys.patterns.pattern(i)
+                             .matchAll(container)
+                             .uniqueAtoms()
+                             .atLeast(keys.counts[i] + 1))
                 fp.set(i);
         }
 
@@ -169,12 +164,13 @@ public class MACCSFingerprinter implements IFingerprinter {
     @TestMethod("getsize")
     public int getSize() {
         if (keys != null)
-            return keys.length;
+            return keys.size();
         else return 0; // throw exception when keys aren't loaded?
     }
 
-    private MaccsKey[] readKeyDef(final IChemObjectBuilder builder) throws IOException, CDKException {
-        List<MaccsKey> keys   = new ArrayList<MaccsKey>(166);
+    private MaccsKeys readKeyDef(final IChemObjectBuilder builder) throws IOException, CDKException {
+        List<String>   smarts = new ArrayList<String>(166);
+        List<Integer>  counts = new ArrayList<Integer>(166);
         BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(KEY_DEFINITIONS)));
 
         // now process the keys
@@ -185,33 +181,32 @@ public class MACCSFingerprinter implements IFingerprinter {
             String   data = line.substring(0, line.indexOf('|')).trim();
             String[] toks = data.split("\\s");
 
-            keys.add(new MaccsKey(toks[1],
-                                  createPattern(toks[1], builder),
-                                  Integer.parseInt(toks[2])));
+            // a '?' pattern is not matched
+            smarts.add(toks[1].equals("?") ? null : toks[1]);
+            counts.add(Integer.parseInt(toks[2]));
         }
-        if (keys.size() != 166) 
-            throw new CDKException("Found " + keys.size() 
+        if (smarts.size() != 166) 
+            throw new CDKException("Found " + smarts.size() 
                                    + " keys during setup. Should be 166");
-        return keys.toArray(new MaccsKey[166]);
+        int[] count = new int[166];
+        for (int i = 0; i < count.length; i++)
+            count[i] = counts.get(i);
+        return new MaccsKeys(new SmartsKeySet(smarts.toArray(new String[166]), builder),
+                             count);
     }
 
-    private class MaccsKey {
-        private String smarts;
-        private int count;
-        private Pattern pattern;
-
-        private MaccsKey(String smarts, Pattern pattern, int count) {
-            this.smarts  = smarts;
-            this.pattern = pattern;
-            this.count   = count;
-        }
+    /** The compiled key patterns and the number of unique hits each requires. */
+    private static final class MaccsKeys {
+        private final SmartsKeySet patterns;
+        private final int[] counts;
 
-        public String getSmarts() {
-            return smarts;
+        private MaccsKeys(SmartsKeySet patterns, int[] counts) {
+            this.patterns = patterns;
+            this.counts   = counts;
         }
 
-        public int getCount() {
-            return count;
+        private int size() {
+            return counts.length;
         }
     }
 
@@ -223,16 +218,16 @@ public class MACCSFingerprinter implements IFingerprinter {
 		throw new UnsupportedOperationException();
 	}
     
-    private final Object lock = new Object();
+    private static final Object lock = new Object();
 
     /**
      * Access MACCS keys definitions.
      * 
-     * @return array of MACCS keys.
+     * @return the MACCS keys.
      * @throws CDKException maccs keys could not be loaded
      */
-    private MaccsKey[] keys(final IChemObjectBuilder builder) throws CDKException {
-        MaccsKey[] result = keys;
+    private MaccsKeys keys(final IChemObjectBuilder builder) throws CDKException {
+        MaccsKeys result = keys;
         if (result == null) {
             synchronized (lock) {
                 result = keys;
@@ -247,18 +242,4 @@ public class MACCSFingerprinter implements IFingerprinter {
         }
         return result;
     }
-
-    /**
-     * Create a pattern for the provided SMARTS - if the SMARTS is '?' a pattern
-     * is not created.
-     * 
-     * @param smarts  a smarts pattern
-     * @param builder chem object builder
-     * @return the pattern to match
-     */
-    private Pattern createPattern(String smarts, IChemObjectBuilder builder) {
-        if (smarts.equals("?"))
-            return null;
-        return Ullmann.findSubstructure(SMARTSParser.parse(smarts, builder));
-    }
 }
@@ -0,0 +1,234 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.fingerprint;
+
+import org.openscience.cdk.graph.ConnectedComponents;
+import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.isomorphism.ComponentGrouping;
+import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.SmartsStereoMatch;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
+import org.openscience.cdk.tools.periodictable.PeriodicTable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A set of SMARTS keys which are parsed once and then matched together
+ * against each molecule. Before any key is matched the set is screened
+ * ({@link #screen(IAtomContainer)}) to exclude keys which require an element
+ * the molecule does not have or more atoms than the molecule has.
+ *
+ * The target must be prepared for SMARTS matching ({@link
+ * SmartsMatchers#prepare(IAtomContainer, boolean)}) before matching. The
+ * compiled keys are immutable and may be shared between threads.
+ *
+ * @cdk.module fingerprint
+ * @cdk.githash
+ */
+final class SmartsKeySet {
+
+    /** Compiled key sets, weakly keyed by the identity of their SMARTS array. */
+    private static final Map<String[], SmartsKeySet> compiled = new WeakHashMap<String[], SmartsKeySet>();
+
+    /** Parsed queries, null for an undefined key. */
+    private final IQueryAtomContainer[] queries;
+
+    /** Substructure patterns for each query. */
+    private final Pattern[] patterns;
+
+    /** Distinct element sets of each query, one of each must be present. */
+    private final BitSet[][] elements;
+
+    /** Whether the query specifies stereochemistry or component grouping. */
+    private final boolean[] stereo, grouping;
+
+    /**
+     * Parse the SMARTS keys, a null entry defines a key which is never set.
+     *
+     * @param smarts  SMARTS patterns
+     * @param builder chem object builder
+     * @throws IllegalArgumentException a SMARTS pattern could not be parsed
+     */
+    SmartsKeySet(String[] smarts, IChemObjectBuilder builder) {
+        int n = smarts.length;
+        queries  = new IQueryAtomContainer[n];
+        patterns = new Pattern[n];
+        elements = new BitSet[n][];
+        stereo   = new boolean[n];
+        grouping = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (smarts[i] == null)
+                continue;
+            queries[i]  = SMARTSParser.parse(smarts[i], builder);
+            patterns[i] = VentoFoggia.findSubstructure(queries[i], SmartsMatchers.matchOrder(queries[i]));
+            elements[i] = requiredElements(queries[i]);
+            stereo[i]   = queries[i].stereoElements().iterator().hasNext();
+            grouping[i] = queries[i].getProperty(ComponentGrouping.KEY) != null;
+        }
+    }
+
+    /**
+     * Obtain the compiled keys for a SMARTS array. Each array is only parsed
+     * once, fingerprinters constructed from the same array share the keys.
+     *
+     * @param smarts  SMARTS patterns
+     * @param builder chem object builder used if the keys need parsing
+     * @return the compiled keys
+     * @throws IllegalArgumentException a SMARTS pattern could not be parsed
+     */
+    static SmartsKeySet of(String[] smarts, IChemObjectBuilder builder) {
+        synchronized (compiled) {
+            SmartsKeySet keys = compiled.get(smarts);
+            if (keys == null) {
+                keys = new SmartsKeySet(smarts, builder);
+                compiled.put(smarts, keys);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * Number of keys in the set.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return queries.length;
+    }
+
+    /**
+     * The substructure pattern of a key.
+     *
+     * @param i key index
+     * @return the pattern, null if the key is undefined
+     */
+    Pattern pattern(int i) {
+        return patterns[i];
+    }
+
+    /**
+     * Determine which keys may be present in the {@code container}. A key is
+     * excluded if it has more atoms than the container or one of its atoms
+     * only matches elements which are not in the container.
+     *
+     * @param container the molecule to screen
+     * @return the keys which need to be matched
+     */
+    BitSet screen(IAtomContainer container) {
+
+        BitSet present = new BitSet();
+        boolean known  = true;
+        for (IAtom atom : container.atoms()) {
+            // atoms may be matched on either symbol or atomic number
+            Integer number = atom.getAtomicNumber();
+            if (number == null)
+                known = false;
+            else
+                present.set(number);
+            present.set(PeriodicTable.getAtomicNumber(atom.getSymbol()));
+        }
+
+        int    nAtoms     = container.getAtomCount();
+        BitSet candidates = new BitSet(queries.length);
+        KEYS:
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i] == null || queries[i].getAtomCount() > nAtoms)
+                continue;
+            // without atomic numbers a match may fail with an exception, which
+            // we preserve by not pruning on elements
+            if (known) {
+                for (BitSet required : elements[i])
+                    if (!required.intersects(present))
+                        continue KEYS;
+            }
+            candidates.set(i);
+        }
+        return candidates;
+    }
+
+    /**
+     * Is the key {@code i} found in the {@code container}. A match has the
+     * same semantics as {@link org.openscience.cdk.smiles.smarts.SMARTSQueryTool#matches(IAtomContainer)}
+     * - the stereochemistry and component grouping of the SMARTS must be
+     * satisfied.
+     *
+     * @param i         key index
+     * @param container prepared target
+     * @param cc        connected components of the container, computed on
+     *                  demand
+     * @return the key was found
+     */
+    boolean matches(int i, IAtomContainer container, ConnectedComponents[] cc) {
+        IQueryAtomContainer query = queries[i];
+        if (query == null)
+            return false;
+
+        if (query.getAtomCount() == 1) {
+            IQueryAtom queryAtom = (IQueryAtom) query.getAtom(0);
+            for (IAtom atom : container.atoms())
+                if (queryAtom.matches(atom))
+                    return true;
+            return false;
+        }
+
+        Mappings mappings = patterns[i].matchAll(container);
+        if (stereo[i])
+            mappings = mappings.filter(new SmartsStereoMatch(query, container));
+        if (grouping[i]) {
+            if (cc[0] == null)
+                cc[0] = new ConnectedComponents(GraphUtil.toAdjList(container));
+            mappings = mappings.filter(new ComponentGrouping(query.getProperty(ComponentGrouping.KEY, int[].class),
+                                                             cc[0]));
+        }
+        return mappings.atLeast(1);
+    }
+
+    /**
+     * The distinct sets of elements required by the atoms of a query. Atoms
+     * which may match any element are not included.
+     *
+     * @param query a SMARTS query
+     * @return required element sets
+     */
+    private static BitSet[] requiredElements(IQueryAtomContainer query) {
+        List<BitSet> required = new ArrayList<BitSet>();
+        for (IAtom atom : query.atoms()) {
+            BitSet elements = SmartsMatchers.elements((IQueryAtom) atom);
+            if (elements != null && !required.contains(elements))
+                required.add(elements);
+        }
+        return required.toArray(new BitSet[required.size()]);
+    }
+}
@@ -29,9 +29,13 @@ package org.openscience.cdk.fingerprint;
 
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
 import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.ConnectedComponents;
+import org.openscience.cdk.graph.Cycles;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.smiles.smarts.SMARTSQueryTool;
+import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
 
 import java.util.BitSet;
 import java.util.Map;
@@ -373,8 +377,15 @@ import java.util.Map;
 @TestClass("org.openscience.cdk.fingerprint.SubstructureFingerprinterTest")
 public class SubstructureFingerprinter implements IFingerprinter {
 
+    /** Daylight aromaticity model, as used by the SMARTS query tool. */
+    private static final Aromaticity aromaticity = new Aromaticity(ElectronDonation.daylight(),
+                                                                   Cycles.allOrVertexShort());
+
     private String[] smarts;
 
+    /** The parsed SMARTS, shared by all fingerprinters with the same patterns. */
+    private volatile SmartsKeySet keys;
+
     /**
      * Set up the fingerprinter to use the fragments from 
      * {@link org.openscience.cdk.fingerprint.StandardSubstructureSets}.
@@ -406,16 +417,23 @@ public class SubstructureFingerprinter implements IFingerprinter {
             throw new CDKException("No substructures were defined");
         }
 
+        SmartsKeySet keys = this.keys;
+        if (keys == null)
+            this.keys = keys = SmartsKeySet.of(smarts, atomContainer.getBuilder());
+
         int bitsetLength = smarts.length;
         BitSet fingerPrint = new BitSet(bitsetLength);
 
-        SMARTSQueryTool sqt = new SMARTSQueryTool("C", atomContainer.getBuilder());
-        for (int i = 0; i < smarts.length; i++) {
-            String pattern = smarts[i];
+        // ring perception, aromaticity and atom invariants are computed once
+        // for all the keys
+        SmartsMatchers.prepare(atomContainer, true);
+        aromaticity.apply(atomContainer);
 
-            sqt.setSmarts(pattern);
-            boolean status = sqt.matches(atomContainer);
-            if (status) fingerPrint.set(i, true);
+        ConnectedComponents[] cc = new ConnectedComponents[1];
+        BitSet candidates = keys.screen(atomContainer);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (keys.matches(i, atomContainer, cc))
+                fingerPrint.set(i);
         }
         return new BitSetFingerprint(fingerPrint);
     }
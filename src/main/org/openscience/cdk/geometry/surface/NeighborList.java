@@ -20,11 +20,11 @@
 
 package org.openscience.cdk.geometry.surface;
 
+import org.openscience.cdk.graph.rebond.CellList;
 import org.openscience.cdk.interfaces.IAtom;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import javax.vecmath.Point3d;
+import java.util.Arrays;
 
 /**
  * Creates a list of atoms neighboring each atom in the molecule.
@@ -34,65 +34,41 @@ import java.util.List;
  * Due to the fact that it divides the cube into a fixed number of sub cubes, 
  * some accuracy may be lost.
  *
+ * <p>The atoms are placed in the boxes of a {@link CellList}, finding the
+ * neighbors of an atom therefore only needs the 27 boxes around it and does
+ * not create any intermediate objects. The coordinates are copied when the
+ * list is created, the list may be shared between threads.
+ *
  * @author Rajarshi Guha
  * @cdk.created 2005-05-09
  * @cdk.module  qsarmolecular
  * @cdk.githash
  */
 public class NeighborList {
-    HashMap<String,List> boxes;
-    double boxSize;
-    IAtom[] atoms;
 
+    /** Atom coordinates. */
+    private final double[] x, y, z;
+
+    /** The atoms in boxes of twice the radius. */
+    private final CellList boxes;
+
+    private final double   boxSize;
 
     public NeighborList(IAtom[] atoms, double radius) {
-        this.atoms = atoms;
-        this.boxes = new HashMap<String,List>();
+        int n = atoms.length;
         this.boxSize = 2 * radius;
-        for (int i = 0; i < atoms.length; i++) {
-            String key = getKeyString(atoms[i]);
-
-            if (this.boxes.containsKey(key)) {
-                List arl = this.boxes.get(key);
-                arl.add(i);
-                this.boxes.put( key, arl );
-            } else {
-                this.boxes.put( key, new ArrayList() );
-            }
+        this.x = new double[n];
+        this.y = new double[n];
+        this.z = new double[n];
+        for (int i = 0; i < n; i++) {
+            Point3d p = atoms[i].getPoint3d();
+            x[i] = p.x;
+            y[i] = p.y;
+            z[i] = p.z;
         }
+        this.boxes = new CellList(x, y, z, boxSize);
     }
 
-    private String getKeyString(IAtom atom) {
-        double x = atom.getPoint3d().x;
-        double y = atom.getPoint3d().y;
-        double z = atom.getPoint3d().z;
-
-        int k1,k2,k3;
-        k1 = (int)(Math.floor(x/ boxSize));
-        k2 = (int)(Math.floor(y/ boxSize));
-        k3 = (int)(Math.floor(z/ boxSize));
-
-        String key = 
-            Integer.toString(k1) + " " + 
-            Integer.toString(k2) + " " +
-            Integer.toString(k3) + " " ;
-        return(key);
-    }
-    private int[] getKeyArray(IAtom atom) {
-        double x = atom.getPoint3d().x;
-        double y = atom.getPoint3d().y;
-        double z = atom.getPoint3d().z;
-
-        int k1,k2,k3;
-        k1 = (int)(Math.floor(x/ boxSize));
-        k2 = (int)(Math.floor(y/ boxSize));
-        k3 = (int)(Math.floor(z/ boxSize));
-
-        int[] ret = { k1, k2, k3 };
-        return(ret);
-    }
-
-
     public int getNumberOfNeighbors(int i) {
         return getNeighbors(i).length;
     }
@@ -100,44 +76,27 @@ public class NeighborList {
     public int[] getNeighbors(int ii) {
         double maxDist2 = this.boxSize *this.boxSize;
 
-        IAtom ai = this.atoms[ii];
-        int[] key = getKeyArray(ai);
-        ArrayList nlist = new ArrayList();
-
-        int[] bval = {-1,0,1};
-        for (int i = 0; i < bval.length; i++) {
-            int x = bval[i];
-            for (int j = 0; j < bval.length; j++) {
-                int y = bval[j];
-                for (int k = 0; k < bval.length; k++) {
-                    int z = bval[k];
-
-                    String keyj = 
-                        Integer.toString(key[0]+x) + " " + 
-                        Integer.toString(key[1]+y) + " " +
-                        Integer.toString(key[2]+z) + " " ;
-                    if (boxes.containsKey(keyj)) {
-                        ArrayList nbrs = (ArrayList)boxes.get(keyj);
-                        for (int l = 0; l < nbrs.size(); l++) {
-                            int i2 = (Integer) nbrs.get(l);
-                            if (i2 != ii) {
-                                IAtom aj = atoms[i2];
-                                double x12 = aj.getPoint3d().x - ai.getPoint3d().x;
-                                double y12 = aj.getPoint3d().y - ai.getPoint3d().y;
-                                double z12 = aj.getPoint3d().z - ai.getPoint3d().z;
-                                double d2 = x12*x12 + y12*y12 + z12*z12;
-                                if (d2 < maxDist2) nlist.add(i2);
-                            }
-                        }
+        int[] adjacent = new int[27];
+        int nAdjacent = boxes.adjacent(boxes.cellOf(ii), adjacent);
+        int[] nlist = new int[8];
+        int n = 0;
+
+        for (int a = 0; a < nAdjacent; a++) {
+            for (int l = boxes.begin(adjacent[a]); l < boxes.end(adjacent[a]); l++) {
+                int i2 = boxes.member(l);
+                if (i2 != ii) {
+                    double x12 = x[i2] - x[ii];
+                    double y12 = y[i2] - y[ii];
+                    double z12 = z[i2] - z[ii];
+                    double d2 = x12*x12 + y12*y12 + z12*z12;
+                    if (d2 < maxDist2) {
+                        if (n == nlist.length)
+                            nlist = Arrays.copyOf(nlist, 2 * n);
+                        nlist[n++] = i2;
                     }
                 }
             }
         }
-        Object[] tmp = nlist.toArray();
-        int[] ret = new int[ tmp.length ];
-        for (int j = 0; j < tmp.length; j++) ret[j] = (Integer) tmp[j];
-        return(ret);
+        return Arrays.copyOf(nlist, n);
     }
 }
-
-
@@ -23,6 +23,7 @@ package org.openscience.cdk.geometry.surface;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.tools.Futures;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
@@ -31,6 +32,10 @@ import org.openscience.cdk.tools.periodictable.PeriodicTable;
 import javax.vecmath.Point3d;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A class representing the solvent acessible surface area surface of a molecule.
@@ -49,6 +54,10 @@ import java.util.Iterator;
  * Van der Waals surface. The accuracy can be increased by increasing the tessellation 
  * level, though the default of 4 is a good balance between accuracy and speed.
  *
+ * <p>The atoms are independent once the neighbor list has been built, for large
+ * molecules (e.g. proteins) the surface can be calculated in parallel with
+ * {@link #calculateSurface(ExecutorService)}.
+ *
  * @author      Rajarshi Guha
  * @cdk.created 2005-05-08  
  * @cdk.module  qsarmolecular
@@ -58,6 +67,10 @@ import java.util.Iterator;
 public class NumericalSurface {
     private static ILoggingTool logger =
         LoggingToolFactory.createLoggingTool(NumericalSurface.class);
+
+    /** Number of atoms calculated by one task of a parallel calculation. */
+    private static final int BLOCK_SIZE = 64;
+
     double solvent_radius = 1.4;
     int tesslevel = 4;
     IAtom[] atoms;
@@ -101,56 +114,44 @@ public class NumericalSurface {
      * as well as calculating the surface area of each atom
      */
     public void calculateSurface() {
+        Calculation calculation = new Calculation();
+        for (int i = 0; i < atoms.length; i++)
+            calculation.atom(i);
+        logger.info("Obtained points, areas and volumes");
+    }
 
-        // get r_f and geometric center
-        Point3d cp = new Point3d(0,0,0);
-        double max_radius = 0;
-        for (int i = 0; i < atoms.length; i++) {
-            double vdwr = PeriodicTable.getVdwRadius(atoms[i].getSymbol());
-            if (vdwr+solvent_radius > max_radius)
-                max_radius = PeriodicTable.getVdwRadius(atoms[i].getSymbol())+solvent_radius;
-
-            cp.x = cp.x + atoms[i].getPoint3d().x;
-            cp.y = cp.y + atoms[i].getPoint3d().y;
-            cp.z = cp.z + atoms[i].getPoint3d().z;
-        }
-        cp.x = cp.x / atoms.length;
-        cp.y = cp.y / atoms.length;
-        cp.z = cp.z / atoms.length;
-
-
-        // do the tesselation
-        Tessellate tess = new Tessellate("ico",tesslevel);
-        tess.doTessellate();
-        logger.info("Got tesselation, number of triangles = "+tess.getNumberOfTriangles());
-
-
-        // get neighbor list
-        NeighborList nbrlist = new NeighborList(atoms, max_radius+solvent_radius);
-        logger.info("Got neighbor list");
-
-        /*
-           for (int i = 0; i < atoms.length; i++) {
-           int[] nlist = nbrlist.getNeighbors(i);
-           logger.debug("Atom "+i+": ");
-           for (int j = 0; j < nlist.length; j++)
-           logger.debug(j+" ");
-           logger.debug("");
-           }
-           */
-
-        // loop over atoms and get surface points
-        this.surf_points = new ArrayList[ atoms.length ];
-        this.areas = new double[ atoms.length ];
-        this.volumes = new double[ atoms.length ];
-
-        for (int i = 0; i < atoms.length; i++) {
-            int point_density = tess.getNumberOfTriangles()*3;
-            Point3d[][] points = atomicSurfacePoints(nbrlist, i, atoms[i], tess);
-            translatePoints(i, points, point_density, atoms[i], cp);
+    /**
+     * Evaluate the surface, the atoms are processed in blocks on the provided
+     * executor.
+     *
+     * @param executor executor to run the calculation on
+     */
+    public void calculateSurface(ExecutorService executor) {
+        final Calculation calculation = new Calculation();
+        List<Future<?>> blocks = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < atoms.length; i += BLOCK_SIZE) {
+                final int begin = i;
+                final int end = Math.min(atoms.length, i + BLOCK_SIZE);
+                blocks.add(executor.submit(new Runnable() {
+                    @Override public void run() {
+                        for (int j = begin; j < end; j++)
+                            calculation.atom(j);
+                    }
+                }));
+            }
+            for (Future<?> block : blocks)
+                block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while calculating the surface", e);
+        } catch (ExecutionException e) {
+            throw Futures.unwrap(e);
+        } finally {
+            for (Future<?> block : blocks)
+                block.cancel(true);
         }
         logger.info("Obtained points, areas and volumes");
-
     }
 
     /**
@@ -230,94 +231,143 @@ public class NumericalSurface {
     }
 
 
-    private void translatePoints(int atmIdx, Point3d[][] points, int point_density, IAtom atom, Point3d cp) {
-        double total_radius = PeriodicTable.getVdwRadius(atom.getSymbol()) + solvent_radius;
+    /**
+     * The values shared by the atoms of one surface calculation. The atoms
+     * are independent, different atoms may be calculated on different
+     * threads.
+     */
+    private final class Calculation {
 
-        double area = 4 * Math.PI * (total_radius*total_radius) * points.length / point_density;
+        /** Radius of each atom extended by the solvent radius. */
+        private final double[]     radii;
 
-        double sumx = 0.0;
-        double sumy = 0.0;
-        double sumz = 0.0;
-        for (int i = 0; i < points.length; i++) {
-            Point3d p = points[i][1];
-            sumx += p.x;
-            sumy += p.y;
-            sumz += p.z;
-        }
-        double vconst = 4.0/3.0 * Math.PI / (double)point_density;
-        double dotp1 = (atom.getPoint3d().x - cp.x)*sumx +
-            (atom.getPoint3d().y - cp.y)*sumy +
-            (atom.getPoint3d().z - cp.z)*sumz;
-        double volume = vconst*(total_radius*total_radius) *dotp1 +
-            (total_radius*total_radius*total_radius)*points.length;
-
-        this.areas[atmIdx] = area;
-        this.volumes[atmIdx] = volume;
-
-        ArrayList tmp = new ArrayList();
-        for (int i = 0; i < points.length; i++) tmp.add( points[i][0] );
-        this.surf_points[atmIdx] =  tmp;
-    }
+        /** Points of the unit tessellation. */
+        private final Point3d[]    tessPoints;
 
-    private Point3d[][] atomicSurfacePoints(NeighborList nbrlist, int currAtomIdx, IAtom atom, Tessellate tess) {
+        /** Geometric center. */
+        private final Point3d      cp = new Point3d(0,0,0);
 
-        double total_radius = PeriodicTable.getVdwRadius(atom.getSymbol()) + solvent_radius;
-        double total_radius2 = total_radius*total_radius;
-        double twice_total_radius = 2*total_radius;
+        private final NeighborList nbrlist;
 
-        int[] nlist = nbrlist.getNeighbors(currAtomIdx);
-        double[][] data = new double[ nlist.length ][4];
-        for (int i = 0; i < nlist.length; i++) {
-            double x12 = atoms[nlist[i]].getPoint3d().x - atom.getPoint3d().x;
-            double y12 = atoms[nlist[i]].getPoint3d().y - atom.getPoint3d().y;
-            double z12 = atoms[nlist[i]].getPoint3d().z - atom.getPoint3d().z;
+        private Calculation() {
 
-            double d2 = x12*x12 + y12*y12 + z12*z12;
-            double tmp = PeriodicTable.getVdwRadius(atoms[nlist[i]].getSymbol()) + solvent_radius;
-            tmp = tmp * tmp;
-            double thresh = (d2 + total_radius2 - tmp) / twice_total_radius;
+            // get r_f and geometric center
+            double max_radius = 0;
+            radii = new double[ atoms.length ];
+            for (int i = 0; i < atoms.length; i++) {
+                radii[i] = PeriodicTable.getVdwRadius(atoms[i].getSymbol()) + solvent_radius;
+                if (radii[i] > max_radius)
+                    max_radius = radii[i];
 
-            data[i][0] = x12;
-            data[i][1] = y12;
-            data[i][2] = z12;
-            data[i][3] = thresh;
+                cp.x = cp.x + atoms[i].getPoint3d().x;
+                cp.y = cp.y + atoms[i].getPoint3d().y;
+                cp.z = cp.z + atoms[i].getPoint3d().z;
+            }
+            cp.x = cp.x / atoms.length;
+            cp.y = cp.y / atoms.length;
+            cp.z = cp.z / atoms.length;
+
+            // do the tesselation
+            Tessellate tess = new Tessellate("ico",tesslevel);
+            tess.doTessellate();
+            tessPoints = tess.getTessAsPoint3ds();
+            logger.info("Got tesselation, number of triangles = "+tess.getNumberOfTriangles());
+
+            // get neighbor list
+            nbrlist = new NeighborList(atoms, max_radius+solvent_radius);
+            logger.info("Got neighbor list");
+
+            surf_points = new ArrayList[ atoms.length ];
+            areas = new double[ atoms.length ];
+            volumes = new double[ atoms.length ];
         }
 
-        Point3d[] tess_points = tess.getTessAsPoint3ds();
-        ArrayList points = new ArrayList();
-        for (int i = 0; i < tess_points.length; i++) {
-            Point3d pt = tess_points[i];
-            boolean buried = false;
-            for (int j = 0; j < data.length; j++) {
-                if (data[j][0] * pt.x + data[j][1] * pt.y + data[j][2] * pt.z > data[j][3]) {
-                    buried = true;
-                    break;
+        /**
+         * Find the accessible points of an atom and calculate its area and
+         * volume.
+         *
+         * @param atmIdx index of the atom
+         */
+        private void atom(int atmIdx) {
+
+            Point3d center = atoms[atmIdx].getPoint3d();
+            double total_radius = radii[atmIdx];
+            double total_radius2 = total_radius*total_radius;
+            double twice_total_radius = 2*total_radius;
+
+            // the neighbor vectors and the threshold above which a point is buried
+            int[] nlist = nbrlist.getNeighbors(atmIdx);
+            double[] data = new double[ 4 * nlist.length ];
+            for (int i = 0; i < nlist.length; i++) {
+                Point3d neighbor = atoms[nlist[i]].getPoint3d();
+                double x12 = neighbor.x - center.x;
+                double y12 = neighbor.y - center.y;
+                double z12 = neighbor.z - center.z;
+
+                double d2 = x12*x12 + y12*y12 + z12*z12;
+                double tmp = radii[nlist[i]];
+                tmp = tmp * tmp;
+                data[4*i]   = x12;
+                data[4*i+1] = y12;
+                data[4*i+2] = z12;
+                data[4*i+3] = (d2 + total_radius2 - tmp) / twice_total_radius;
+            }
+
+            // neighboring points are usually buried by the same atom, so
+            // the atom which buried the last point is tested first
+            int[] exposed = new int[ tessPoints.length ];
+            int nExposed = 0;
+            int last = 0;
+            for (int i = 0; i < tessPoints.length; i++) {
+                Point3d pt = tessPoints[i];
+                boolean buried = nlist.length > 0 && isBuried(data, last, pt);
+                for (int j = 0; !buried && j < nlist.length; j++) {
+                    if (j != last && isBuried(data, j, pt)) {
+                        buried = true;
+                        last = j;
+                    }
                 }
+                if (!buried)
+                    exposed[nExposed++] = i;
             }
-            if (buried == false) {
-                Point3d[] tmp = new Point3d[2];
-                tmp[0] =  new Point3d(
-                        total_radius * pt.x + atom.getPoint3d().x,
-                        total_radius * pt.y + atom.getPoint3d().y,
-                        total_radius * pt.z + atom.getPoint3d().z
-                        );
-                tmp[1] = pt;
-                points.add( tmp );
+
+            double area = 4 * Math.PI * total_radius2 * nExposed / tessPoints.length;
+
+            double sumx = 0.0;
+            double sumy = 0.0;
+            double sumz = 0.0;
+            ArrayList<Point3d> points = new ArrayList<Point3d>(nExposed);
+            for (int i = 0; i < nExposed; i++) {
+                Point3d pt = tessPoints[exposed[i]];
+                sumx += pt.x;
+                sumy += pt.y;
+                sumz += pt.z;
+                points.add(new Point3d(total_radius * pt.x + center.x,
+                                       total_radius * pt.y + center.y,
+                                       total_radius * pt.z + center.z));
             }
+            double vconst = 4.0/3.0 * Math.PI / (double)tessPoints.length;
+            double dotp1 = (center.x - cp.x)*sumx +
+                (center.y - cp.y)*sumy +
+                (center.z - cp.z)*sumz;
+            double volume = vconst*total_radius2 *dotp1 +
+                (total_radius2*total_radius)*nExposed;
+
+            areas[atmIdx] = area;
+            volumes[atmIdx] = volume;
+            surf_points[atmIdx] = points;
         }
+    }
 
-        // the first column contains the transformed points
-        // and the second column contains the points from the
-        // original unit tesselation
-        Point3d[][] ret = new Point3d[ points.size() ][2];
-        for (int i = 0; i < points.size(); i++) {
-            Point3d[] tmp = (Point3d[])points.get(i);
-            ret[i][0] = tmp[0];
-            ret[i][1] = tmp[1];
-        }
-        return(ret);
+    /**
+     * Whether a point of the unit tessellation is buried by a neighbor.
+     *
+     * @param data the neighbor vectors and thresholds
+     * @param j    index of the neighbor
+     * @param pt   the point
+     * @return the point is buried
+     */
+    private static boolean isBuried(double[] data, int j, Point3d pt) {
+        return data[4*j] * pt.x + data[4*j+1] * pt.y + data[4*j+2] * pt.z > data[4*j+3];
     }
 }
-
-
-
@@ -91,8 +91,8 @@ public final class AllPairsShortestPaths {
     @TestMethod("testConstruction_Null,testConstruction_Empty")
     public AllPairsShortestPaths(IAtomContainer container) {
 
-        // toAdjList performs null check
-        int[][] adjacent = GraphUtil.toAdjList(container);
+        // GraphSnapshot.of performs null check
+        int[][] adjacent = GraphSnapshot.of(container).toAdjList();
 
         int n = container.getAtomCount();
 
@@ -715,8 +715,9 @@ public final class Cycles {
         /** {@inheritDoc} */
         @Override public Cycles find(IAtomContainer molecule) throws Intractable {
 
-            EdgeToBondMap bondMap = EdgeToBondMap.withSpaceFor(molecule);
-            int[][] graph = GraphUtil.toAdjList(molecule, bondMap);
+            GraphSnapshot snapshot = GraphSnapshot.of(molecule);
+            EdgeToBondMap bondMap = snapshot.bondMap();
+            int[][] graph = snapshot.toAdjList();
             RingSearch ringSearch = new RingSearch(molecule, graph);
 
             List<int[]> walks = new ArrayList<int[]>(6);
@@ -0,0 +1,367 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.graph;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+import static org.openscience.cdk.graph.GraphUtil.EdgeToBondMap;
+
+/**
+ * An immutable and compact snapshot of the connection table of an {@link
+ * IAtomContainer}. The adjacency is stored in compressed sparse row (CSR)
+ * form - the neighbours of vertex <i>v</i> are at the indices {@code
+ * offset(v)} (inclusive) to {@code offset(v+1)} (exclusive). Alongside the
+ * neighbours the index of the bond, the numeric bond order and the atomic
+ * number of each atom are stored.
+ *
+ * <blockquote><pre>
+ * GraphSnapshot g = GraphSnapshot.of(container);
+ * for (int v = 0; v < g.order(); v++) {
+ *     for (int e = g.offset(v); e < g.offset(v + 1); e++) {
+ *         int w = g.neighbour(e);
+ *         int o = g.bondOrder(g.bondIndex(e));
+ *     }
+ * }
+ * </pre></blockquote>
+ *
+ * Snapshots obtained from {@link #of(IAtomContainer)} are cached against the
+ * container. A cached snapshot is only reused if the container still has the
+ * same atoms and bonds, with the same end points, bond orders and atomic
+ * numbers - any modification results in a new snapshot. This allows graph
+ * algorithms run on the same molecule one after another ({@link
+ * org.openscience.cdk.ringsearch.RingSearch}, {@link Cycles}, {@link
+ * ShortestPaths}, substructure matching, hash codes) to share a single
+ * adjacency list and bond map rather than each converting the container.
+ *
+ * The adjacency list from {@link #toAdjList()} is shared between all users
+ * of the snapshot and must not be modified.
+ *
+ * @cdk.module core
+ * @cdk.githash
+ * @see GraphUtil#toAdjList(IAtomContainer)
+ */
+@TestClass("org.openscience.cdk.graph.GraphSnapshotTest")
+public final class GraphSnapshot {
+
+    /** Snapshots for containers, weak keys use identity comparison. */
+    private static final Cache<IAtomContainer, GraphSnapshot> CACHE = CacheBuilder.newBuilder()
+                                                                                  .weakKeys()
+                                                                                  .build();
+
+    /** The atoms and bonds at the time of the snapshot. */
+    private final IAtom[] atoms;
+    private final IBond[] bonds;
+
+    /** Neighbours of 'v' are at the indices offsets[v] to offsets[v+1]. */
+    private final int[] offsets;
+
+    /** Neighbouring vertex and bond index of each adjacency entry. */
+    private final int[] neighbours, edgeBonds;
+
+    /** Numeric order of each bond (0 if unset) and atomic number of each atom (0 if unset). */
+    private final int[] bondOrders, elements;
+
+    /** Lazily created adjacency list and bond map. */
+    private volatile int[][]       adjList;
+    private volatile EdgeToBondMap bondMap;
+
+    /**
+     * Internal constructor - create the snapshot for the given container.
+     *
+     * @param container the molecule
+     * @throws IllegalArgumentException a bond was found which contained atoms
+     *                                  not in the molecule
+     */
+    private GraphSnapshot(IAtomContainer container) {
+
+        int n = container.getAtomCount();
+        int m = container.getBondCount();
+
+        this.atoms      = new IAtom[n];
+        this.bonds      = new IBond[m];
+        this.offsets    = new int[n + 1];
+        this.neighbours = new int[2 * m];
+        this.edgeBonds  = new int[2 * m];
+        this.bondOrders = new int[m];
+        this.elements   = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            atoms[v] = container.getAtom(v);
+            elements[v] = atomicNumber(atoms[v]);
+        }
+
+        int[] us = new int[m], vs = new int[m];
+        for (int i = 0; i < m; i++) {
+            IBond bond = container.getBond(i);
+            int u = container.getAtomNumber(bond.getAtom(0));
+            int v = container.getAtomNumber(bond.getAtom(1));
+            if (u < 0 || v < 0)
+                throw new IllegalArgumentException("bond at index " + i
+                                                           + " contained an atom not pressent in molecule");
+            bonds[i]      = bond;
+            bondOrders[i] = numericOrder(bond);
+            us[i] = u;
+            vs[i] = v;
+            offsets[u + 1]++;
+            offsets[v + 1]++;
+        }
+
+        for (int v = 0; v < n; v++)
+            offsets[v + 1] += offsets[v];
+
+        // fill in the neighbours in bond order, matching toAdjList()
+        int[] next = new int[n];
+        for (int i = 0; i < m; i++) {
+            int u = us[i], v = vs[i];
+            int e = offsets[u] + next[u]++;
+            int f = offsets[v] + next[v]++;
+            neighbours[e] = v;
+            edgeBonds[e]  = i;
+            neighbours[f] = u;
+            edgeBonds[f]  = i;
+        }
+    }
+
+    /**
+     * Obtain the graph snapshot of a container. If a snapshot was previously
+     * created for the container and the container has not since been modified
+     * the previous snapshot is returned.
+     *
+     * @param container the molecule
+     * @return the graph snapshot
+     * @throws NullPointerException     the container was null
+     * @throws IllegalArgumentException a bond was found which contained atoms
+     *                                  not in the molecule
+     */
+    @TestMethod("cached,modifiedBondOrder,modifiedAtoms,nullContainer,missingAtom")
+    public static GraphSnapshot of(IAtomContainer container) {
+        if (container == null)
+            throw new NullPointerException("atom container was null");
+        GraphSnapshot snapshot = CACHE.getIfPresent(container);
+        if (snapshot == null || !snapshot.isSnapshotOf(container)) {
+            snapshot = new GraphSnapshot(container);
+            CACHE.put(container, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Check whether this snapshot still describes the given container - the
+     * atoms and bonds are the same instances, in the same order, and the
+     * bond end points, bond orders and atomic numbers are unchanged.
+     *
+     * @param container the molecule
+     * @return the snapshot is of the container
+     */
+    @TestMethod("cached,modifiedBondOrder,modifiedAtoms")
+    public boolean isSnapshotOf(IAtomContainer container) {
+        int n = atoms.length, m = bonds.length;
+        if (container.getAtomCount() != n || container.getBondCount() != m)
+            return false;
+        for (int v = 0; v < n; v++) {
+            IAtom atom = container.getAtom(v);
+            if (atom != atoms[v] || atomicNumber(atom) != elements[v])
+                return false;
+        }
+        for (int i = 0; i < m; i++) {
+            IBond bond = container.getBond(i);
+            if (bond != bonds[i] || numericOrder(bond) != bondOrders[i])
+                return false;
+        }
+        // bonds are visited by the adjacency so this catches any bond with
+        // an end point changed in place
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                IBond bond = bonds[edgeBonds[e]];
+                if (bond.getConnectedAtom(atoms[v]) != atoms[neighbours[e]])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of vertices (atoms).
+     *
+     * @return number of vertices
+     */
+    @TestMethod("csr")
+    public int order() {
+        return atoms.length;
+    }
+
+    /**
+     * The number of edges (bonds).
+     *
+     * @return number of edges
+     */
+    @TestMethod("csr")
+    public int size() {
+        return bonds.length;
+    }
+
+    /**
+     * The index of the first adjacency entry of vertex {@code v}, the entries
+     * of {@code v} end at {@code offset(v + 1)}.
+     *
+     * @param v a vertex, 0 &le; v &le; order()
+     * @return index of the first adjacency entry
+     */
+    @TestMethod("csr")
+    public int offset(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * The degree of vertex {@code v}.
+     *
+     * @param v a vertex
+     * @return number of neighbours
+     */
+    @TestMethod("csr")
+    public int degree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * The neighbouring vertex of an adjacency entry.
+     *
+     * @param e adjacency entry index
+     * @return the neighbour
+     */
+    @TestMethod("csr")
+    public int neighbour(int e) {
+        return neighbours[e];
+    }
+
+    /**
+     * The bond index (in the container) of an adjacency entry.
+     *
+     * @param e adjacency entry index
+     * @return the bond index
+     */
+    @TestMethod("csr")
+    public int bondIndex(int e) {
+        return edgeBonds[e];
+    }
+
+    /**
+     * The numeric order of a bond, 0 if the order was unset.
+     *
+     * @param i bond index
+     * @return the numeric bond order
+     */
+    @TestMethod("csr")
+    public int bondOrder(int i) {
+        return bondOrders[i];
+    }
+
+    /**
+     * The atomic number of vertex {@code v}, 0 if the atomic number was
+     * unset.
+     *
+     * @param v a vertex
+     * @return the atomic number
+     */
+    @TestMethod("csr")
+    public int element(int v) {
+        return elements[v];
+    }
+
+    /**
+     * Access the bond between the vertices {@code u} and {@code v}.
+     *
+     * @param u a vertex
+     * @param v another vertex
+     * @return the bond, or null if the vertices are not adjacent
+     */
+    @TestMethod("csr")
+    public IBond bond(int u, int v) {
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (neighbours[e] == v)
+                return bonds[edgeBonds[e]];
+        }
+        return null;
+    }
+
+    /**
+     * Adjacency list representation of the snapshot, identical to {@link
+     * GraphUtil#toAdjList(IAtomContainer)}. The returned array is shared and
+     * must not be modified.
+     *
+     * @return adjacency list representation
+     */
+    @TestMethod("adjList")
+    public int[][] toAdjList() {
+        int[][] g = adjList;
+        if (g == null) {
+            int n = atoms.length;
+            g = new int[n][];
+            for (int v = 0; v < n; v++) {
+                g[v] = new int[offsets[v + 1] - offsets[v]];
+                System.arraycopy(neighbours, offsets[v], g[v], 0, g[v].length);
+            }
+            adjList = g;
+        }
+        return g;
+    }
+
+    /**
+     * Bond map for the snapshot, identical to the one filled in by {@link
+     * GraphUtil#toAdjList(IAtomContainer, EdgeToBondMap)}. The returned map is
+     * shared.
+     *
+     * @return bond map
+     */
+    @TestMethod("bondMap")
+    public EdgeToBondMap bondMap() {
+        EdgeToBondMap map = bondMap;
+        if (map == null) {
+            map = new EdgeToBondMap(bonds.length);
+            for (int u = 0; u < atoms.length; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (neighbours[e] > u)
+                        map.put(u, neighbours[e], bonds[edgeBonds[e]]);
+                }
+            }
+            bondMap = map;
+        }
+        return map;
+    }
+
+    private static int atomicNumber(IAtom atom) {
+        Integer elem = atom.getAtomicNumber();
+        return elem != null ? elem : 0;
+    }
+
+    private static int numericOrder(IBond bond) {
+        IBond.Order order = bond.getOrder();
+        return order != null ? order.numeric() : 0;
+    }
+}
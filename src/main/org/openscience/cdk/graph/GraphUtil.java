@@ -287,7 +287,7 @@ public class GraphUtil {
          * Internal constructor - create with enough space for, n bonds.
          * @param n number of bonds expected
          */
-        private EdgeToBondMap(int n) {
+        EdgeToBondMap(int n) {
             this.lookup = Maps.newHashMapWithExpectedSize(n);
         }
 
@@ -299,7 +299,7 @@ public class GraphUtil {
          * @param bond the bond value
          * @return the previous bond value
          */
-        private IBond put(int v, int w, IBond bond) {
+        IBond put(int v, int w, IBond bond) {
             return lookup.put(new Tuple(v, w), bond);
         }
 
@@ -370,22 +370,23 @@ public class PathTools {
      */
     @TestMethod("testGetMolecularGraphRadius_IAtomContainer")
     public static int getMolecularGraphRadius(IAtomContainer atomContainer) {
-        int natom = atomContainer.getAtomCount();
-
         int[][] admat = AdjacencyMatrix.getMatrix(atomContainer);
-        int[][] distanceMatrix = computeFloydAPSP(admat);
+        return getMolecularGraphRadius(computeFloydAPSP(admat));
+    }
 
-        int[] eta = new int[natom];
-        for (int i = 0; i < natom; i++) {
-            int max = -99999;
-            for (int j = 0; j < natom; j++) {
-                if (distanceMatrix[i][j] > max) max = distanceMatrix[i][j];
-            }
-            eta[i] = max;
-        }
+    /**
+     * Returns the radius of a molecular graph from its topological distance
+     * matrix, e.g. as computed by {@link #computeFloydAPSP(int[][])}.
+     *
+     * @param distanceMatrix the topological distances
+     * @return The topological radius
+     */
+    @TestMethod("testGetMolecularGraphRadius_arrayintint")
+    public static int getMolecularGraphRadius(int[][] distanceMatrix) {
         int min = 999999;
-        for (int anEta : eta) {
-            if (anEta < min) min = anEta;
+        for (int[] row : distanceMatrix) {
+            int eta = eccentricity(row);
+            if (eta < min) min = eta;
         }
         return min;
     }
@@ -398,22 +399,37 @@ public class PathTools {
      */
     @TestMethod("testGetMolecularGraphDiameter_IAtomContainer")
     public static int getMolecularGraphDiameter(IAtomContainer atomContainer) {
-        int natom = atomContainer.getAtomCount();
-
         int[][] admat = AdjacencyMatrix.getMatrix(atomContainer);
-        int[][] distanceMatrix = computeFloydAPSP(admat);
+        return getMolecularGraphDiameter(computeFloydAPSP(admat));
+    }
 
-        int[] eta = new int[natom];
-        for (int i = 0; i < natom; i++) {
-            int max = -99999;
-            for (int j = 0; j < natom; j++) {
-                if (distanceMatrix[i][j] > max) max = distanceMatrix[i][j];
-            }
-            eta[i] = max;
-        }
+    /**
+     * Returns the diameter of a molecular graph from its topological distance
+     * matrix, e.g. as computed by {@link #computeFloydAPSP(int[][])}.
+     *
+     * @param distanceMatrix the topological distances
+     * @return The topological diameter
+     */
+    @TestMethod("testGetMolecularGraphDiameter_arrayintint")
+    public static int getMolecularGraphDiameter(int[][] distanceMatrix) {
         int max = -999999;
-        for (int anEta : eta) {
-            if (anEta > max) max = anEta;
+        for (int[] row : distanceMatrix) {
+            int eta = eccentricity(row);
+            if (eta > max) max = eta;
+        }
+        return max;
+    }
+
+    /**
+     * The eccentricity of a vertex, its largest distance to another vertex.
+     *
+     * @param distances the distances of the vertex
+     * @return the eccentricity
+     */
+    private static int eccentricity(int[] distances) {
+        int max = -99999;
+        for (int d : distances) {
+            if (d > max) max = d;
         }
         return max;
     }
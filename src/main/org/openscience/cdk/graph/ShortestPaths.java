@@ -109,7 +109,7 @@ public final class ShortestPaths {
      */
     @TestMethod("testConstructor_Container_Empty,testConstructor_Container_Null,testConstructor_Container_MissingAtom")
     public ShortestPaths(IAtomContainer container, IAtom start) {
-        this(GraphUtil.toAdjList(container), container, container
+        this(GraphSnapshot.of(container).toAdjList(), container, container
                 .getAtomNumber(start));
     }
 
@@ -0,0 +1,210 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.graph.rebond;
+
+import java.util.Arrays;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+
+/**
+ * A uniform grid of cubic cells over a set of points. Each occupied cell is
+ * identified by its three integer coordinates packed in a single
+ * <code>long</code> key, the keys are held sorted and the points of each
+ * cell in a contiguous range of an <code>int</code> array. Two points closer
+ * than the cell size are always in the same or in adjacent cells.
+ *
+ * The list is not modified once created and may be shared between threads.
+ * It is used by the {@link RebondTool} and the neighbor list of the numerical
+ * surface.
+ *
+ * @cdk.module standard
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.graph.rebond.CellListTest")
+public final class CellList {
+
+    /** Number of bits of each cell coordinate in a packed key. */
+    private static final int  BITS   = 21;
+    private static final long MASK   = (1L << BITS) - 1;
+    private static final int  OFFSET = 1 << (BITS - 1);
+
+    /** Sorted keys of the occupied cells. */
+    private final long[] cells;
+
+    /** The points of cell i are members[start[i]] ... members[start[i+1]-1]. */
+    private final int[]  start, members;
+
+    /** The cell of each point. */
+    private final int[]  cellOf;
+
+    /** Edge length of a cell. */
+    private final double size;
+
+    /**
+     * Place the points in cells of the given size.
+     *
+     * @param x    x coordinates
+     * @param y    y coordinates
+     * @param z    z coordinates
+     * @param size edge length of a cell (&gt; 0)
+     */
+    public CellList(double[] x, double[] y, double[] z, double size) {
+        int n = x.length;
+        this.size = size;
+
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = key(cell(x[i]), cell(y[i]), cell(z[i]));
+
+        // unique sorted cell keys
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int nCells = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[nCells++] = sorted[i];
+        }
+        this.cells = Arrays.copyOf(sorted, nCells);
+
+        // count the points of each cell and place them in consecutive ranges
+        this.cellOf = new int[n];
+        this.start = new int[nCells + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = Arrays.binarySearch(cells, keys[i]);
+            start[cellOf[i] + 1]++;
+        }
+        for (int i = 0; i < nCells; i++)
+            start[i + 1] += start[i];
+        int[] next = Arrays.copyOf(start, nCells);
+        this.members = new int[n];
+        for (int i = 0; i < n; i++)
+            members[next[cellOf[i]]++] = i;
+    }
+
+    /**
+     * Number of occupied cells.
+     *
+     * @return the number of cells
+     */
+    @TestMethod("testCells")
+    public int size() {
+        return cells.length;
+    }
+
+    /**
+     * Index of the first member of a cell.
+     *
+     * @param cell a cell
+     * @return index in the member array
+     */
+    @TestMethod("testCells")
+    public int begin(int cell) {
+        return start[cell];
+    }
+
+    /**
+     * Index after the last member of a cell.
+     *
+     * @param cell a cell
+     * @return index in the member array
+     */
+    @TestMethod("testCells")
+    public int end(int cell) {
+        return start[cell + 1];
+    }
+
+    /**
+     * The point at a given index of the member array.
+     *
+     * @param index index in the member array
+     * @return the point
+     */
+    @TestMethod("testCells")
+    public int member(int index) {
+        return members[index];
+    }
+
+    /**
+     * The cell a point was placed in.
+     *
+     * @param point index of the point
+     * @return the cell
+     */
+    @TestMethod("testCellOf")
+    public int cellOf(int point) {
+        return cellOf[point];
+    }
+
+    /**
+     * The occupied cells adjacent to (and including) a cell.
+     *
+     * @param cell a cell
+     * @param dest array of at least 27 to store the cells in
+     * @return the number of cells stored
+     */
+    @TestMethod("testAdjacent")
+    public int adjacent(int cell, int[] dest) {
+        long key = cells[cell];
+        int k1 = (int) ((key >>> (2 * BITS)) & MASK) - OFFSET;
+        int k2 = (int) ((key >>> BITS) & MASK) - OFFSET;
+        int k3 = (int) (key & MASK) - OFFSET;
+        int n = 0;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                for (int k = -1; k <= 1; k++) {
+                    int c = Arrays.binarySearch(cells, key(k1 + i, k2 + j, k3 + k));
+                    if (c >= 0)
+                        dest[n++] = c;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The cell coordinate of a value.
+     *
+     * @param v a coordinate
+     * @return the cell index
+     */
+    private int cell(double v) {
+        return (int) Math.floor(v / size);
+    }
+
+    /**
+     * Pack the coordinates of a cell into a single key. Cells more than 2^20
+     * cells from the origin share keys, which only adds points that are then
+     * rejected by the distance check.
+     *
+     * @param k1 x index
+     * @param k2 y index
+     * @param k3 z index
+     * @return the key
+     */
+    private static long key(int k1, int k2, int k3) {
+        return ((k1 + OFFSET) & MASK) << (2 * BITS)
+                | ((k2 + OFFSET) & MASK) << BITS
+                | ((k3 + OFFSET) & MASK);
+    }
+}
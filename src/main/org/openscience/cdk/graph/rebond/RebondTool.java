@@ -30,8 +30,17 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.Futures;
 
+import javax.vecmath.Point3d;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Provides tools to rebond a molecule from 3D coordinates only.
@@ -40,6 +49,13 @@ import java.util.Iterator;
  * atom types are configured such that the covalent bond radii
  * for all atoms are set. The AtomTypeFactory can be used for this.
  *
+ * <p>For large structures, such as proteins read from PDB files,
+ * {@link #rebond(IAtomContainer, ExecutorService)} places the atoms
+ * in a uniform grid of cells instead. The coordinates are copied to
+ * primitive arrays, the time grows linearly with the number of atoms
+ * and the cells may be distributed over the threads of an executor.
+ * Both methods create the same bonds.
+ *
  * @cdk.keyword rebonding
  * @cdk.keyword bond, recalculation
  * @cdk.dictref blue-obelisk:rebondFrom3DCoordinates
@@ -50,10 +66,14 @@ import java.util.Iterator;
  * @cdk.githash
  *
  * @see org.openscience.cdk.graph.rebond.Bspt
+ * @see org.openscience.cdk.graph.rebond.CellList
  */
 @TestClass("org.openscience.cdk.graph.rebond.RebondToolTest")
 public class RebondTool {
 
+  /** Number of cells searched by a single task. */
+  private static final int BLOCK_SIZE = 512;
+
   private double maxCovalentRadius;
   private double minBondDistance;
   private double bondTolerance;
@@ -117,6 +137,129 @@ public class RebondTool {
     }
   }
 
+  /**
+   * Rebonding using a uniform grid of cells, the edge of a cell is the
+   * largest possible bond length. Note, that any bonds defined will be
+   * deleted first. It assumes the unit of 3D space to be 1 &Acircle;ngstrom.
+   * The bonds are the same as found by {@link #rebond(IAtomContainer)} but
+   * are added sorted by the indices of their atoms, and the atom with the
+   * lower index is the first atom of a bond. The tree adds them in search
+   * order, with the atom of lower x coordinate first.
+   *
+   * @param container the structure to rebond
+   * @param executor  executor to distribute the cells over, if null the
+   *                  bonds are found on the calling thread
+   * @throws CDKException an atom has no covalent radius or no 3D coordinates
+   */
+  @TestMethod("testRebond_IAtomContainer_ExecutorService")
+  public void rebond(IAtomContainer container, ExecutorService executor) throws CDKException {
+    container.removeAllBonds();
+    maxCovalentRadius = 0.0;
+    int n = container.getAtomCount();
+    IAtom[] atoms = new IAtom[n];
+    final double[] x = new double[n], y = new double[n], z = new double[n];
+    final double[] radii = new double[n];
+    for (int i = 0; i < n; i++) {
+      IAtom atom = container.getAtom(i);
+      double myCovalentRadius = atom.getCovalentRadius() != null ? atom.getCovalentRadius() : 0.0;
+      if (myCovalentRadius == 0.0) {
+          throw new CDKException("Atom(s) does not have covalentRadius defined.");
+      }
+      Point3d p = atom.getPoint3d();
+      if (p == null) {
+          throw new CDKException("Atom(s) does not have 3D coordinates.");
+      }
+      if (myCovalentRadius > maxCovalentRadius)
+        maxCovalentRadius = myCovalentRadius;
+      atoms[i] = atom;
+      radii[i] = myCovalentRadius;
+      x[i] = p.x;
+      y[i] = p.y;
+      z[i] = p.z;
+    }
+    double cellSize = 2 * maxCovalentRadius + bondTolerance;
+    if (n == 0 || cellSize <= 0)
+      return;
+
+    final CellList cells = new CellList(x, y, z, cellSize);
+    long[] pairs;
+    if (executor == null) {
+      pairs = bondCells(cells, 0, cells.size(), x, y, z, radii);
+    } else {
+      List<Future<long[]>> blocks = new ArrayList<Future<long[]>>();
+      try {
+        for (int from = 0; from < cells.size(); from += BLOCK_SIZE) {
+          final int begin = from, end = Math.min(from + BLOCK_SIZE, cells.size());
+          blocks.add(executor.submit(new Callable<long[]>() {
+            public long[] call() {
+              return bondCells(cells, begin, end, x, y, z, radii);
+            }
+          }));
+        }
+        int size = 0;
+        long[][] found = new long[blocks.size()][];
+        for (int i = 0; i < found.length; i++) {
+          found[i] = blocks.get(i).get();
+          size += found[i].length;
+        }
+        pairs = new long[size];
+        size = 0;
+        for (long[] block : found) {
+          System.arraycopy(block, 0, pairs, size, block.length);
+          size += block.length;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while rebonding", e);
+      } catch (ExecutionException e) {
+        throw Futures.unwrap(e);
+      } finally {
+        for (Future<long[]> block : blocks)
+          block.cancel(true);
+      }
+    }
+
+    // the pairs found depend on the cell order, sort them by atom index
+    Arrays.sort(pairs);
+    for (long pair : pairs) {
+      IAtom atom = atoms[(int) (pair >>> 32)], atomNear = atoms[(int) pair];
+      container.addBond(atom.getBuilder().newInstance(IBond.class, atom, atomNear, IBond.Order.SINGLE));
+    }
+  }
+
+  /**
+   * Find the bonded atoms of a range of cells. Each pair is found once,
+   * from the atom with the lower index.
+   *
+   * @return the pairs, packed as <code>(i &lt;&lt; 32) | j</code> with i &lt; j
+   */
+  private long[] bondCells(CellList cells, int from, int to,
+                           double[] x, double[] y, double[] z, double[] radii) {
+    long[] pairs = new long[16];
+    int n = 0;
+    int[] adjacent = new int[27];
+    for (int cell = from; cell < to; cell++) {
+      int nAdjacent = cells.adjacent(cell, adjacent);
+      for (int k = cells.begin(cell); k < cells.end(cell); k++) {
+        int i = cells.member(k);
+        for (int a = 0; a < nAdjacent; a++) {
+          for (int l = cells.begin(adjacent[a]); l < cells.end(adjacent[a]); l++) {
+            int j = cells.member(l);
+            if (j <= i)
+              continue;
+            double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+            if (isBonded(radii[i], radii[j], dx*dx + dy*dy + dz*dz)) {
+              if (n == pairs.length)
+                pairs = Arrays.copyOf(pairs, 2 * n);
+              pairs[n++] = ((long) i << 32) | j;
+            }
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(pairs, n);
+  }
+
   /** 
    * Returns the bond order for the bond. At this moment, it only returns
    * 0 or 1, but not 2 or 3, or aromatic bond order.
@@ -26,8 +26,8 @@ package org.openscience.cdk.hash;
 
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IBond;
 
 import java.util.Arrays;
 
@@ -133,7 +133,9 @@ class AbstractHashGenerator {
     }
 
     /**
-     * Convert an IAtomContainer to an adjacency list.
+     * Convert an IAtomContainer to an adjacency list. The adjacency list is
+     * shared with other users of the container's {@link GraphSnapshot} and
+     * must not be modified.
      *
      * @param container the container to convert
      * @return adjacency list representation
@@ -144,35 +146,7 @@ class AbstractHashGenerator {
         if (container == null)
             throw new IllegalArgumentException("atom container was null");
 
-        int n = container.getAtomCount();
-
-        int[][] graph = new int[n][16];
-        int[] degree = new int[n];
-
-        for (IBond bond : container.bonds()) {
-
-            int v = container.getAtomNumber(bond.getAtom(0));
-            int w = container.getAtomNumber(bond.getAtom(1));
-
-            if (v < 0 || w < 0)
-                throw new IllegalArgumentException("bond at index " + container.getBondNumber(bond)
-                                                           + " contained an atom not pressent in molecule");
-
-            graph[v][degree[v]++] = w;
-            graph[w][degree[w]++] = v;
-
-            // if the vertex degree of v or w reaches capacity, double the size
-            if (degree[v] == graph[v].length)
-                graph[v] = Arrays.copyOf(graph[v], degree[v] * 2);
-            if (degree[w] == graph[w].length)
-                graph[w] = Arrays.copyOf(graph[w], degree[w] * 2);
-        }
-
-        for (int v = 0; v < n; v++) {
-            graph[v] = Arrays.copyOf(graph[v], degree[v]);
-        }
-
-        return graph;
+        return GraphSnapshot.of(container).toAdjList();
 
     }
 }
@@ -0,0 +1,507 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.index;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.MDLV2000Reader;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A persistent substructure search index of an SD file. The index stores the
+ * {@link Fingerprinter} path fingerprint and the byte offset of every record.
+ * A query is first screened against the fingerprints - a record can only
+ * contain the query if its fingerprint has all the bits of the query
+ * fingerprint set - and only the records which pass are read and matched
+ * with {@link VentoFoggia}.
+ *
+ * <blockquote><pre>
+ * File sdf = new File("compounds.sdf");
+ * File idx = new File("compounds.sdf.fpi");
+ * SubstructureIndex.build(sdf, idx, builder);  // only needed once
+ *
+ * SubstructureIndex index = SubstructureIndex.open(sdf, idx, builder);
+ * for (int record : index.search(query)) {
+ *     IAtomContainer hit = index.read(record);
+ * }
+ * index.close();
+ * </pre></blockquote>
+ *
+ * The fingerprints are memory mapped in blocks and so the index does not need
+ * to fit on the heap. The query and the records are perceived in the same way
+ * (atom types and aromaticity) before being fingerprinted and matched. The
+ * query is modified by the perception.
+ *
+ * <p/>
+ *
+ * The index file layout is a fixed header, the fingerprints of each record
+ * ({@code size / 64} longs per record) and the byte offsets of the records
+ * ({@code count + 1} longs, the last being the end of the final record). All
+ * values are big-endian. An index is rejected if the SD file length differs
+ * from when it was built.
+ *
+ * @cdk.module extra
+ * @cdk.githash
+ * @cdk.keyword substructure search
+ * @cdk.keyword fingerprint
+ * @see org.openscience.cdk.io.random.RandomAccessSDFReader
+ */
+@TestClass("org.openscience.cdk.index.SubstructureIndexTest")
+public final class SubstructureIndex implements Closeable {
+
+    private static final ILoggingTool logger = LoggingToolFactory.createLoggingTool(SubstructureIndex.class);
+
+    /** Identifies the file type ('CDKS') and layout version. */
+    private static final int MAGIC = 0x43444B53, VERSION = 1;
+
+    /** Bytes in the header, a multiple of 8 so the longs which follow are aligned. */
+    private static final int HEADER_SIZE = 32;
+
+    /** Number of record fingerprints mapped together. */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** Character set of the records, a byte is a char. */
+    private static final String CHARSET = "ISO-8859-1";
+
+    /** The aromaticity model of the fingerprinter (CDKHueckelAromaticityDetector). */
+    private static final Aromaticity AROMATICITY = new Aromaticity(ElectronDonation.cdk(),
+                                                                   Cycles.cdkAromaticSet());
+
+    private final RandomAccessFile sdf, idx;
+    private final IChemObjectBuilder builder;
+    private final Fingerprinter fingerprinter;
+
+    /** Number of records and fingerprint longs per record. */
+    private final int count, words;
+
+    /** Record offsets, the record 'i' is from offsets[i] to offsets[i+1]. */
+    private final LongBuffer offsets;
+
+    /** Fingerprint blocks, each holds up to BLOCK_SIZE records. */
+    private final LongBuffer[] blocks;
+
+    /**
+     * Internal constructor - open the index and map the fingerprints.
+     *
+     * @param sdf     the SD file
+     * @param idx     the index file
+     * @param builder builder to read records with
+     * @throws IOException the index could not be read or was invalid
+     */
+    private SubstructureIndex(File sdf, File idx, IChemObjectBuilder builder) throws IOException {
+        this.sdf = new RandomAccessFile(sdf, "r");
+        try {
+            this.idx = new RandomAccessFile(idx, "r");
+        } catch (IOException e) {
+            this.sdf.close();
+            throw e;
+        }
+        this.builder = builder;
+        try {
+            if (this.idx.readInt() != MAGIC)
+                throw new IOException(idx + " is not a substructure index");
+            int version = this.idx.readInt();
+            if (version != VERSION)
+                throw new IOException("expected index version " + VERSION + " instead of " + version);
+            int size = this.idx.readInt();
+            int depth = this.idx.readInt();
+            this.count = this.idx.readInt();
+            long length = this.idx.readLong();
+            if (length != this.sdf.length())
+                throw new IOException("index was built for an SD file of length " + length + " but "
+                                              + sdf + " has length " + this.sdf.length());
+            this.fingerprinter = new Fingerprinter(size, depth);
+            this.words = size / 64;
+
+            FileChannel channel = this.idx.getChannel();
+            long pos = HEADER_SIZE;
+            this.blocks = new LongBuffer[(count + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            for (int i = 0; i < blocks.length; i++) {
+                int n = Math.min(BLOCK_SIZE, count - i * BLOCK_SIZE);
+                blocks[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * n * words).asLongBuffer();
+                pos += 8L * n * words;
+            }
+            this.offsets = channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * (count + 1)).asLongBuffer();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a previously built index of an SD file.
+     *
+     * @param sdf     the SD file
+     * @param idx     the index file
+     * @param builder builder to read records with
+     * @return the index
+     * @throws IOException the index could not be read, or was built for a
+     *                     different version of the SD file
+     */
+    @TestMethod("search,outOfDate")
+    public static SubstructureIndex open(File sdf, File idx, IChemObjectBuilder builder) throws IOException {
+        return new SubstructureIndex(sdf, idx, builder);
+    }
+
+    /**
+     * Build an index of an SD file with the default fingerprint size and
+     * search depth.
+     *
+     * @param sdf     the SD file
+     * @param idx     the index file to write
+     * @param builder builder to read records with
+     * @return number of records indexed
+     * @throws IOException the SD file could not be read or the index written
+     */
+    @TestMethod("search")
+    public static int build(File sdf, File idx, IChemObjectBuilder builder) throws IOException {
+        return build(sdf, idx, builder, Fingerprinter.DEFAULT_SIZE, Fingerprinter.DEFAULT_SEARCH_DEPTH);
+    }
+
+    /**
+     * Build an index of an SD file. Records which can not be read or
+     * fingerprinted are given a fingerprint with all bits set, they are
+     * always a candidate and are skipped when matching.
+     *
+     * @param sdf         the SD file
+     * @param idx         the index file to write
+     * @param builder     builder to read records with
+     * @param size        fingerprint size, a multiple of 64
+     * @param searchDepth fingerprint path length
+     * @return number of records indexed
+     * @throws IOException the SD file could not be read or the index written
+     */
+    @TestMethod("search")
+    public static int build(File sdf, File idx, IChemObjectBuilder builder, int size, int searchDepth)
+            throws IOException {
+
+        if (size <= 0 || size % 64 != 0)
+            throw new IllegalArgumentException("fingerprint size must be a positive multiple of 64");
+
+        Fingerprinter fingerprinter = new Fingerprinter(size, searchDepth);
+        int words = size / 64;
+        long[] fp = new long[words];
+
+        // offsets are not known until the end, they're buffered as a
+        // compact long list and written after the fingerprints
+        long[] offsets = new long[1024];
+        int count = 0;
+
+        InputStream in = new BufferedInputStream(new FileInputStream(sdf));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idx)));
+        try {
+            out.write(new byte[HEADER_SIZE]);
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            long position = 0;
+            while (true) {
+                long start = position;
+                record.reset();
+                int len = readRecord(in, record);
+                if (len == 0)
+                    break;
+                position += len;
+                String content = record.toString(CHARSET);
+                if (content.trim().isEmpty())
+                    continue; // trailing white space, belongs to the previous record
+                if (count + 1 >= offsets.length)
+                    offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                offsets[count++] = start;
+                fingerprint(fingerprinter, content, builder, fp);
+                for (long word : fp)
+                    out.writeLong(word);
+            }
+            offsets[count] = position;
+            for (int i = 0; i <= count; i++)
+                out.writeLong(offsets[i]);
+        } finally {
+            in.close();
+            out.close();
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(idx, "rw");
+        try {
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeInt(size);
+            raf.writeInt(searchDepth);
+            raf.writeInt(count);
+            raf.writeLong(sdf.length());
+        } finally {
+            raf.close();
+        }
+
+        logger.info("Indexed ", count, " records");
+        return count;
+    }
+
+    /**
+     * The number of records in the index.
+     *
+     * @return number of records
+     */
+    @TestMethod("search")
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Access the stored fingerprint of a record.
+     *
+     * @param record the record index (0 based)
+     * @return the fingerprint
+     */
+    @TestMethod("fingerprint")
+    public BitSet fingerprint(int record) {
+        checkRecord(record);
+        LongBuffer block = blocks[record / BLOCK_SIZE];
+        int base = (record % BLOCK_SIZE) * words;
+        BitSet bs = new BitSet(words * 64);
+        for (int w = 0; w < words; w++) {
+            long word = block.get(base + w);
+            for (int b = 0; b < 64; b++) {
+                if ((word & (1L << b)) != 0)
+                    bs.set(w * 64 + b);
+            }
+        }
+        return bs;
+    }
+
+    /**
+     * Read a record from the SD file.
+     *
+     * @param record the record index (0 based)
+     * @return the structure of the record
+     * @throws CDKException the record could not be read
+     */
+    @TestMethod("search")
+    public IAtomContainer read(int record) throws CDKException {
+        checkRecord(record);
+        long start = offsets.get(record);
+        int length = (int) (offsets.get(record + 1) - start);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            FileChannel channel = sdf.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0)
+                    throw new CDKException("unexpected end of file reading record " + record);
+            }
+            return parse(new String(buffer.array(), CHARSET), builder);
+        } catch (IOException e) {
+            throw new CDKException("could not read record " + record, e);
+        }
+    }
+
+    /**
+     * Find the records whose fingerprint has all the bits of the query
+     * fingerprint set. These records may contain the query, records not
+     * listed certainly do not. The query is perceived (atom types and
+     * aromaticity) as a side effect.
+     *
+     * @param query the substructure query
+     * @return the candidate record indices, in ascending order
+     * @throws CDKException the query could not be fingerprinted
+     */
+    @TestMethod("search")
+    public int[] candidates(IAtomContainer query) throws CDKException {
+        long[] fp = new long[words];
+        toLongs(fingerprinter.getBitFingerprint(query).asBitSet(), fp);
+
+        // only the set words of the query need to be checked
+        int nSet = 0;
+        int[] set = new int[words];
+        for (int w = 0; w < words; w++)
+            if (fp[w] != 0)
+                set[nSet++] = w;
+
+        int[] candidates = new int[16];
+        int n = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            LongBuffer block = blocks[b];
+            int m = Math.min(BLOCK_SIZE, count - b * BLOCK_SIZE);
+            RECORD:
+            for (int r = 0; r < m; r++) {
+                int base = r * words;
+                for (int i = 0; i < nSet; i++) {
+                    long q = fp[set[i]];
+                    if ((block.get(base + set[i]) & q) != q)
+                        continue RECORD;
+                }
+                if (n == candidates.length)
+                    candidates = Arrays.copyOf(candidates, 2 * n);
+                candidates[n++] = b * BLOCK_SIZE + r;
+            }
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /**
+     * Find the records which contain the query substructure. The candidates
+     * from the fingerprint screen are read and matched with {@link
+     * VentoFoggia}. The query is perceived (atom types and aromaticity) as a
+     * side effect.
+     *
+     * @param query the substructure query
+     * @return the matching record indices, in ascending order
+     * @throws CDKException the query could not be fingerprinted
+     */
+    @TestMethod("search")
+    public int[] search(IAtomContainer query) throws CDKException {
+        if (query instanceof IQueryAtomContainer)
+            throw new IllegalArgumentException("query containers can not be fingerprinted");
+        int[] candidates = candidates(query);
+        Pattern pattern = VentoFoggia.findSubstructure(query);
+        int n = 0;
+        for (int record : candidates) {
+            IAtomContainer target;
+            try {
+                target = read(record);
+                perceive(target);
+            } catch (CDKException e) {
+                logger.warn("Skipping record ", record, ": ", e.toString());
+                continue;
+            }
+            if (pattern.matches(target))
+                candidates[n++] = record;
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /**
+     * Close the SD and index files.
+     *
+     * @throws IOException a file could not be closed
+     */
+    @TestMethod("search")
+    @Override public void close() throws IOException {
+        try {
+            sdf.close();
+        } finally {
+            idx.close();
+        }
+    }
+
+    private void checkRecord(int record) {
+        if (record < 0 || record >= count)
+            throw new IndexOutOfBoundsException("no such record " + record);
+    }
+
+    /**
+     * Read the bytes of the next record (up to and including the '$$$$' line)
+     * into the buffer.
+     *
+     * @param in  input stream
+     * @param buf the record bytes
+     * @return number of bytes read, 0 at the end of the input
+     * @throws IOException low-level IO error
+     */
+    private static int readRecord(InputStream in, ByteArrayOutputStream buf) throws IOException {
+        int len = 0, c;
+        int nDollar = 0; // number of '$' at the start of the line, -1 if not a delimiter
+        while ((c = in.read()) >= 0) {
+            buf.write(c);
+            len++;
+            if (c == '\n') {
+                if (nDollar == 4)
+                    return len;
+                nDollar = 0;
+            } else if (c == '$' && nDollar >= 0 && nDollar < 4) {
+                nDollar++;
+            } else if (c != '\r' || nDollar != 4) {
+                nDollar = -1;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Fingerprint a record, unreadable records are given a full fingerprint.
+     */
+    private static void fingerprint(Fingerprinter fingerprinter, String record, IChemObjectBuilder builder,
+                                    long[] fp) {
+        try {
+            IAtomContainer container = parse(record, builder);
+            toLongs(fingerprinter.getBitFingerprint(container).asBitSet(), fp);
+        } catch (CDKException e) {
+            logger.warn("Record could not be fingerprinted: ", e.toString());
+            Arrays.fill(fp, ~0L);
+        } catch (RuntimeException e) {
+            logger.warn("Record could not be fingerprinted: ", e.toString());
+            Arrays.fill(fp, ~0L);
+        }
+    }
+
+    private static IAtomContainer parse(String record, IChemObjectBuilder builder) throws CDKException {
+        MDLV2000Reader reader = new MDLV2000Reader(new StringReader(record));
+        try {
+            return reader.read(builder.newInstance(IAtomContainer.class));
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // string reader
+            }
+        }
+    }
+
+    /** Perceive the target in the same way as the fingerprinter. */
+    private static void perceive(IAtomContainer container) throws CDKException {
+        AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(container);
+        AROMATICITY.apply(container);
+    }
+
+    private static void toLongs(BitSet bs, long[] words) {
+        Arrays.fill(words, 0L);
+        for (int i = bs.nextSetBit(0); i >= 0 && i < 64 * words.length; i = bs.nextSetBit(i + 1))
+            words[i >> 6] |= 1L << (i & 63);
+    }
+}
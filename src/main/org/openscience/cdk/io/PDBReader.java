@@ -558,7 +558,7 @@ public class PDBReader extends DefaultChemObjectReader {
 					logger.debug(e);
 				}
 		      }
-			tool.rebond(molecule);
+			tool.rebond(molecule, null);
 		} catch (Exception e) {
 			logger.error("Could not rebond the polymer: " + e.getMessage());
 			logger.debug(e);
@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -40,6 +41,7 @@ import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.IChemObjectReaderErrorHandler;
 import org.openscience.cdk.io.ISimpleChemObjectReader;
 import org.openscience.cdk.io.ReaderFactory;
 import org.openscience.cdk.io.formats.IChemFormat;
@@ -329,6 +331,46 @@ public class IteratingSDFReader extends DefaultIteratingChemObjectReader<IAtomCo
         this.skip = skip;
     }
 
+    /**
+     * Set the mode of this reader and of the readers already created for
+     * each format.
+     *
+     * @param mode the reader mode
+     */
+    @Override
+    public void setReaderMode(ISimpleChemObjectReader.Mode mode) {
+        super.setReaderMode(mode);
+        for (ISimpleChemObjectReader reader : readerMap.values())
+            reader.setReaderMode(mode);
+    }
+
+    /**
+     * Set the error handler of this reader and of the readers already created
+     * for each format.
+     *
+     * @param handler the error handler
+     */
+    @Override
+    public void setErrorHandler(IChemObjectReaderErrorHandler handler) {
+        super.setErrorHandler(handler);
+        for (ISimpleChemObjectReader reader : readerMap.values())
+            reader.setErrorHandler(handler);
+    }
+
+    /**
+     * Add the settings to this reader and to the MDL V2000 reader if it has
+     * already been created.
+     *
+     * @param settings the settings to add
+     */
+    @Override
+    public void addSettings(Collection<IOSetting> settings) {
+        super.addSettings(settings);
+        ISimpleChemObjectReader reader = readerMap.get(MDLV2000Format.getInstance());
+        if (reader != null)
+            reader.addSettings(getSettings());
+    }
+
     private String extractFieldData(String str) throws IOException {
         StringBuilder data = new StringBuilder();
         while (str.trim().length() > 0) {
@@ -0,0 +1,497 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.io.iterator;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.formats.IResourceFormat;
+import org.openscience.cdk.io.setting.BooleanIOSetting;
+import org.openscience.cdk.io.setting.IOSetting;
+import org.openscience.cdk.tools.Futures;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Iterating MDL SDF reader which parses the molecules on several threads.
+ * The records are split on the calling thread, directly on the bytes of the
+ * input at each '$$$$' line, and then parsed by the provided {@link
+ * ExecutorService}. Each record is parsed as it would be by the {@link
+ * IteratingSDFReader}, including the data items.
+ *
+ * <p>Only a bounded number of records are queued at once. The molecules may
+ * be returned in input order or as soon as they have been parsed, the later
+ * keeps all threads busy when some records take much longer to parse than
+ * others.
+ *
+ * <p>Example use:
+ * <pre>
+ * ExecutorService   executor = Executors.newFixedThreadPool(32);
+ * ParallelSDFReader reader   = new ParallelSDFReader(new FileInputStream(sdfFile),
+ *                                                    SilentChemObjectBuilder.getInstance(),
+ *                                                    executor, false);
+ * while (reader.hasNext()) {
+ *   IAtomContainer molecule = reader.next();
+ * }
+ * reader.close();
+ * executor.shutdown();
+ * </pre>
+ *
+ * <p>The records are decoded with the platform default character set, which
+ * must be ASCII compatible, and lines must end with '\n' or "\r\n". The
+ * input must be given as an {@link InputStream}, {@link #setReader(Reader)}
+ * is not supported. The reader itself should only be used from one thread,
+ * an error handler is notified from the parsing threads.
+ *
+ * @cdk.module io
+ * @cdk.githash
+ *
+ * @see IteratingSDFReader
+ *
+ * @cdk.keyword    file format, SDF
+ * @cdk.iooptions
+ */
+@TestClass("org.openscience.cdk.io.iterator.ParallelSDFReaderTest")
+public class ParallelSDFReader extends DefaultIteratingChemObjectReader<IAtomContainer> {
+
+    private static ILoggingTool logger =
+        LoggingToolFactory.createLoggingTool(ParallelSDFReader.class);
+
+    /** Number of records queued for each available processor. */
+    private static final int RECORDS_PER_THREAD = 8;
+
+    /** A parsed record which did (or could) not hold a molecule. */
+    private static final Parsed EMPTY  = new Parsed(null, null, false),
+                                FAILED = new Parsed(null, null, true);
+
+    private final IChemObjectBuilder builder;
+    private final ExecutorService    executor;
+    private final boolean            ordered;
+    private final int                limit;
+
+    private InputStream input;
+
+    // records being parsed, in input order or by completion
+    private final LinkedList<Future<Parsed>> pending = new LinkedList<Future<Parsed>>();
+    private CompletionService<Parsed>        completion;
+    private int                              nPending;
+
+    // readers used to parse each record, reused by later records
+    private final Queue<IteratingSDFReader> idle = new ConcurrentLinkedQueue<IteratingSDFReader>();
+
+    // byte level splitting of the input
+    private byte[]  buffer = new byte[65536];
+    private int     pos, end;
+    private byte[]  record = new byte[4096];
+    private int     length;
+    private boolean eof;
+
+    private boolean        nextAvailableIsKnown;
+    private boolean        hasNext;
+    private IAtomContainer nextMolecule;
+    private IResourceFormat currentFormat;
+
+    // if an error is encountered the reader will skip over the error
+    private boolean skip = false;
+
+    private BooleanIOSetting forceReadAs3DCoords;
+
+    /**
+     * Constructs a new reader which returns the molecules in input order.
+     *
+     * @param in       the {@link InputStream} to read from
+     * @param builder  builder to use
+     * @param executor parses the records
+     */
+    public ParallelSDFReader(InputStream in, IChemObjectBuilder builder, ExecutorService executor) {
+        this(in, builder, executor, true);
+    }
+
+    /**
+     * Constructs a new reader. If the molecules are not {@code ordered} they
+     * are returned as soon as they have been parsed.
+     *
+     * @param in       the {@link InputStream} to read from
+     * @param builder  builder to use
+     * @param executor parses the records
+     * @param ordered  whether molecules are returned in input order
+     */
+    @TestMethod("ordered,unordered")
+    public ParallelSDFReader(InputStream in, IChemObjectBuilder builder, ExecutorService executor, boolean ordered) {
+        this.builder  = builder;
+        this.executor = executor;
+        this.ordered  = ordered;
+        this.limit    = RECORDS_PER_THREAD * Runtime.getRuntime().availableProcessors();
+        setReader(in);
+        initIOSettings();
+    }
+
+    /**
+     * The format of the last molecule returned.
+     *
+     * @return the format
+     */
+    @TestMethod("ordered")
+    public IResourceFormat getFormat() {
+        return currentFormat;
+    }
+
+    /**
+     * Indicate whether the reader should skip over SDF records that cause
+     * problems. If false the reader stops at the first problem record, which
+     * unless the molecules are ordered, may not be the first in the input.
+     *
+     * @param skip ignore error molecules continue reading
+     */
+    @TestMethod("skip")
+    public void setSkip(boolean skip) {
+        this.skip = skip;
+    }
+
+    /**
+     * Returns true if another molecule can be read.
+     */
+    @TestMethod("ordered,unordered")
+    public boolean hasNext() {
+
+        if (nextAvailableIsKnown) {
+            return hasNext;
+        }
+
+        hasNext      = false;
+        nextMolecule = null;
+
+        try {
+            while (true) {
+                while (nPending < limit && split())
+                    submit(Arrays.copyOf(record, length));
+                if (nPending == 0)
+                    break;
+                Parsed parsed = take();
+                if (parsed.molecule != null) {
+                    hasNext       = true;
+                    nextMolecule  = parsed.molecule;
+                    currentFormat = parsed.format;
+                    break;
+                } else if (parsed.failed && !skip) {
+                    finish();
+                    break;
+                }
+            }
+        } catch (IOException exception) {
+            logger.error("Error while reading next molecule: " + exception.getMessage());
+            logger.debug(exception);
+            finish();
+        } catch (InterruptedException exception) {
+            logger.error("Interrupted while reading next molecule");
+            Thread.currentThread().interrupt();
+            finish();
+        }
+
+        nextAvailableIsKnown = true;
+        return hasNext;
+    }
+
+    /**
+     * Returns the next molecule.
+     */
+    @TestMethod("ordered,unordered")
+    public IAtomContainer next() {
+        if (!nextAvailableIsKnown) {
+            hasNext();
+        }
+        nextAvailableIsKnown = false;
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        return nextMolecule;
+    }
+
+    /**
+     * Read the next record from the input into the record buffer. A record
+     * ends with a '$$$$' line or the end of the input.
+     *
+     * @return whether a record was read
+     * @throws IOException the input could not be read
+     */
+    private boolean split() throws IOException {
+        length = 0;
+        while (true) {
+            if (pos == end) {
+                if (eof || !fill()) {
+                    // trailing record without a separator (e.g. a molfile)
+                    return !isBlank(record, 0, length);
+                }
+            }
+            int start = pos;
+            while (pos < end && buffer[pos] != '\n')
+                pos++;
+            boolean terminated = pos < end;
+            if (terminated)
+                pos++;
+            append(start, pos);
+            // the separator can only be checked once the whole line is buffered
+            if (terminated && isSeparator(record, lineStart(), length))
+                return true;
+        }
+    }
+
+    /**
+     * Read more of the input into the buffer.
+     *
+     * @return whether any bytes were read
+     * @throws IOException the input could not be read
+     */
+    private boolean fill() throws IOException {
+        pos = 0;
+        end = 0;
+        int n = input.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        end = n;
+        return true;
+    }
+
+    /**
+     * Append bytes of the input buffer to the record.
+     */
+    private void append(int from, int to) {
+        int n = to - from;
+        if (length + n > record.length)
+            record = Arrays.copyOf(record, Math.max(2 * record.length, length + n));
+        System.arraycopy(buffer, from, record, length, n);
+        length += n;
+    }
+
+    /**
+     * Index in the record of the start of the last line.
+     */
+    private int lineStart() {
+        int i = length - 1;
+        while (i > 0 && record[i - 1] != '\n')
+            i--;
+        return Math.max(i, 0);
+    }
+
+    /**
+     * Queue a record to be parsed.
+     *
+     * @param bytes the record
+     */
+    private void submit(final byte[] bytes) {
+        Callable<Parsed> task = new Callable<Parsed>() {
+            @Override public Parsed call() throws Exception {
+                return parse(bytes);
+            }
+        };
+        if (ordered) {
+            pending.add(executor.submit(task));
+        } else {
+            if (completion == null)
+                completion = new ExecutorCompletionService<Parsed>(executor);
+            pending.add(completion.submit(task));
+        }
+        nPending++;
+    }
+
+    /**
+     * Wait for the next parsed record, the first in input order or the first
+     * to complete. The cause of an unexpected failure is rethrown.
+     *
+     * @return the parsed record
+     * @throws InterruptedException interrupted while waiting
+     */
+    private Parsed take() throws InterruptedException {
+        Future<Parsed> future = ordered ? pending.getFirst() : completion.take();
+        pending.remove(future);
+        nPending--;
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw Futures.unwrap(e);
+        }
+    }
+
+    /**
+     * Parse a record, called from the executor.
+     *
+     * @param bytes the record
+     * @return the parsed record
+     */
+    private Parsed parse(byte[] bytes) {
+        IteratingSDFReader reader = idle.poll();
+        if (reader == null)
+            reader = new IteratingSDFReader(new ByteArrayInputStream(bytes), builder);
+        else
+            reader.setReader(new InputStreamReader(new ByteArrayInputStream(bytes)));
+        // the configuration may have changed since the reader was last used
+        reader.setReaderMode(mode);
+        reader.setErrorHandler(errorHandler);
+        reader.addSettings(getSettings());
+        reader.setSkip(skip);
+        try {
+            if (reader.hasNext())
+                return new Parsed(reader.next(), reader.getFormat(), false);
+            // a record without a molfile is ignored, as by the IteratingSDFReader
+            return hasMolfileEnd(bytes) ? FAILED : EMPTY;
+        } finally {
+            idle.add(reader);
+        }
+    }
+
+    /**
+     * Stop reading, any records still being parsed are discarded.
+     */
+    private void finish() {
+        for (Future<Parsed> future : pending)
+            future.cancel(true);
+        pending.clear();
+        completion = null;
+        nPending   = 0;
+        eof      = true;
+        pos      = end;
+    }
+
+    /**
+     * Does the record contain an 'M  END' line.
+     */
+    private static boolean hasMolfileEnd(byte[] bytes) {
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == '\n' || bytes[i] == '\r') {
+                if (isMolfileEnd(bytes, start, i))
+                    return true;
+                start = i + 1;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMolfileEnd(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from]))
+            from++;
+        while (to > from && isWhitespace(bytes[to - 1]))
+            to--;
+        return to - from == 6
+                && bytes[from] == 'M' && isWhitespace(bytes[from + 1]) && isWhitespace(bytes[from + 2])
+                && bytes[from + 3] == 'E' && bytes[from + 4] == 'N' && bytes[from + 5] == 'D';
+    }
+
+    private static boolean isSeparator(byte[] bytes, int from, int to) {
+        while (from < to && isWhitespace(bytes[from]))
+            from++;
+        while (to > from && isWhitespace(bytes[to - 1]))
+            to--;
+        return to - from == 4
+                && bytes[from] == '$' && bytes[from + 1] == '$' && bytes[from + 2] == '$' && bytes[from + 3] == '$';
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (!isWhitespace(bytes[i]))
+                return false;
+        return true;
+    }
+
+    /** Whitespace as removed by {@link String#trim()}. */
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    @TestMethod("close")
+    public void close() throws IOException {
+        finish();
+        input.close();
+    }
+
+    /**
+     * Not supported, the records are split at the byte level and a character
+     * stream can not be read. Use {@link #setReader(InputStream)} instead.
+     *
+     * @param reader ignored
+     * @throws CDKException always, reading from a {@link Reader} is not
+     *                      supported
+     */
+    @TestMethod("characterStream")
+    public void setReader(Reader reader) throws CDKException {
+        throw new CDKException("Records are split from bytes, use setReader(InputStream)");
+    }
+
+    @TestMethod("ordered")
+    public void setReader(InputStream reader) {
+        finish();
+        input                = reader;
+        eof                  = false;
+        pos                  = 0;
+        end                  = 0;
+        nextMolecule         = null;
+        nextAvailableIsKnown = false;
+        hasNext              = false;
+    }
+
+    private void initIOSettings() {
+        forceReadAs3DCoords = new BooleanIOSetting("ForceReadAs3DCoordinates", IOSetting.Importance.LOW,
+          "Should coordinates always be read as 3D?",
+          "false");
+        addSetting(forceReadAs3DCoords);
+    }
+
+    public void customizeJob() {
+        fireIOSettingQuestion(forceReadAs3DCoords);
+    }
+
+    /** The result of parsing a record. */
+    private static final class Parsed {
+
+        private final IAtomContainer  molecule;
+        private final IResourceFormat format;
+        private final boolean         failed;
+
+        private Parsed(IAtomContainer molecule, IResourceFormat format, boolean failed) {
+            this.molecule = molecule;
+            this.format   = format;
+            this.failed   = failed;
+        }
+    }
+}
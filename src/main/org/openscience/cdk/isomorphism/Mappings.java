@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.graph.GraphUtil;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
@@ -292,7 +293,7 @@ public final class Mappings implements Iterable<int[]> {
      */
     @TestMethod("uniqueBonds")
     public Mappings uniqueBonds() {
-        return filter(new UniqueBondMatches(GraphUtil.toAdjList(query)));
+        return filter(new UniqueBondMatches(GraphSnapshot.of(query).toAdjList()));
     }
 
     /**
@@ -493,10 +494,10 @@ public final class Mappings implements Iterable<int[]> {
          * @param target the structure being searched
          */
         private ToBondMap(IAtomContainer query, IAtomContainer target) {
-            this.bonds1 = GraphUtil.EdgeToBondMap.withSpaceFor(query);
-            this.bonds2 = GraphUtil.EdgeToBondMap.withSpaceFor(target);
-            this.g1 = GraphUtil.toAdjList(query, bonds1);
-            GraphUtil.toAdjList(target, bonds2);
+            GraphSnapshot snapshot = GraphSnapshot.of(query);
+            this.g1 = snapshot.toAdjList();
+            this.bonds1 = snapshot.bondMap();
+            this.bonds2 = GraphSnapshot.of(target).bondMap();
         }
 
         /** @inheritDoc */
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version. All we ask is that proper credit is given
+ * for our work, which includes - but is not limited to - adding the above
+ * copyright notice to the beginning of your source code files, and to any
+ * copyright notice that you may distribute with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 U
+ */
+
+package org.openscience.cdk.isomorphism;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.graph.GraphSnapshot;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IPseudoAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.tools.Futures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Screen many targets against a set of substructure queries. The queries are
+ * compiled to {@link Pattern}s once and each target is reported as a {@link
+ * BitSet} of the indices of the queries it contains.
+ *
+ * <blockquote><pre>
+ * PatternScreen screen = PatternScreen.forSubstructures(queries);
+ * for (IAtomContainer m : ms) {
+ *     BitSet hits = screen.screen(m);
+ *     for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+ *         // m contains queries.get(i)
+ *     }
+ * }
+ * </pre></blockquote>
+ *
+ * The graph of a target is built once ({@link GraphSnapshot}) and shared by all
+ * the queries. Before a query is matched, cheap invariants are checked - the
+ * number of atoms and bonds, the count of each element and the degree sequence
+ * of the query must all be accommodated by the target. Only the queries which
+ * pass are matched with {@link VentoFoggia}.
+ *
+ * <p/>
+ *
+ * Targets can be screened on several threads by providing an {@link
+ * ExecutorService}. The targets are read on the calling thread (allowing
+ * non thread-safe readers) and the results are returned in input order.
+ *
+ * <blockquote><pre>
+ * ExecutorService   executor = Executors.newFixedThreadPool(4);
+ * Iterator&lt;BitSet&gt; hits     = screen.screen(new IteratingSDFReader(in, bldr),
+ *                                           executor);
+ * while (hits.hasNext()) {
+ *     BitSet bs = hits.next();
+ * }
+ * executor.shutdown();
+ * </pre></blockquote>
+ *
+ * A target should not be modified while it is being screened.
+ *
+ * @cdk.module isomorphism
+ * @cdk.githash
+ * @see Pattern
+ * @see VentoFoggia
+ */
+@TestClass("org.openscience.cdk.isomorphism.PatternScreenTest")
+public final class PatternScreen {
+
+    /** The compiled queries. */
+    private final Pattern[]    patterns;
+
+    /** Invariants of each query. */
+    private final Invariants[] invariants;
+
+    /** The largest atomic number counted in any query. */
+    private final int          maxElement;
+
+    /** Number of targets per thread which may be queued at once. */
+    private static final int   TARGETS_PER_THREAD = 8;
+
+    /**
+     * Internal constructor - compile the queries.
+     *
+     * @param queries the substructure queries
+     */
+    private PatternScreen(List<IAtomContainer> queries) {
+        this.patterns = new Pattern[queries.size()];
+        this.invariants = new Invariants[queries.size()];
+        int max = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            IAtomContainer query = queries.get(i);
+            patterns[i] = VentoFoggia.findSubstructure(query);
+            invariants[i] = new Invariants(query);
+            for (int elem : invariants[i].elements)
+                max = Math.max(max, elem);
+        }
+        this.maxElement = max;
+    }
+
+    /**
+     * Create a screen for targets which contain the {@code queries}. The bit
+     * index of each query in the screening result is its position in the
+     * input.
+     *
+     * @param queries the substructures to find
+     * @return a screen for the queries
+     */
+    @TestMethod("screen")
+    public static PatternScreen forSubstructures(Iterable<? extends IAtomContainer> queries) {
+        List<IAtomContainer> list = new ArrayList<IAtomContainer>();
+        for (IAtomContainer query : queries) {
+            if (query == null)
+                throw new NullPointerException("null query");
+            list.add(query);
+        }
+        return new PatternScreen(list);
+    }
+
+    /**
+     * The number of queries in the screen.
+     *
+     * @return number of queries
+     */
+    @TestMethod("screen")
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Screen a single target. The bit at index <i>i</i> is set if the target
+     * contains the <i>i</i>th query.
+     *
+     * @param target the structure to screen
+     * @return the indices of the matched queries
+     */
+    @TestMethod("screen,prefilter")
+    public BitSet screen(IAtomContainer target) {
+
+        GraphSnapshot g = GraphSnapshot.of(target);
+
+        int   n       = g.order();
+        int[] counts  = new int[maxElement + 1];
+        int[] degrees = new int[n];
+        for (int v = 0; v < n; v++) {
+            int elem = g.element(v);
+            if (elem <= maxElement)
+                counts[elem]++;
+            degrees[v] = g.degree(v);
+        }
+        Arrays.sort(degrees);
+
+        BitSet hits = new BitSet(patterns.length);
+        for (int i = 0; i < patterns.length; i++) {
+            if (invariants[i].accepts(n, g.size(), counts, degrees) && patterns[i].matches(target))
+                hits.set(i);
+        }
+        return hits;
+    }
+
+    /**
+     * Screen a stream of targets, the targets are matched using the provided
+     * {@code executor}. The targets are read from the iterator on the calling
+     * thread, at most a fixed number of targets per thread are read ahead of
+     * the results which have been consumed. The results are in the same order
+     * as the targets.
+     *
+     * @param targets  the structures to screen
+     * @param executor the executor to run the matching on
+     * @return iterator of the matched query indices for each target
+     */
+    @TestMethod("screenParallel")
+    public Iterator<BitSet> screen(Iterator<? extends IAtomContainer> targets, ExecutorService executor) {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        return new ScreenIterator(targets, executor, TARGETS_PER_THREAD * nThreads);
+    }
+
+    /**
+     * Screens targets on an executor, the futures of the pending results are
+     * held in the order the targets were read.
+     */
+    private final class ScreenIterator implements Iterator<BitSet> {
+
+        private final Iterator<? extends IAtomContainer> targets;
+        private final ExecutorService                     executor;
+        private final LinkedList<Future<BitSet>>          pending = new LinkedList<Future<BitSet>>();
+        private final int                                 limit;
+
+        private ScreenIterator(Iterator<? extends IAtomContainer> targets, ExecutorService executor, int limit) {
+            this.targets = targets;
+            this.executor = executor;
+            this.limit = limit;
+        }
+
+        /** Queue targets until the limit is reached or the input is exhausted. */
+        private void fill() {
+            while (pending.size() < limit && targets.hasNext()) {
+                final IAtomContainer target = targets.next();
+                pending.add(executor.submit(new Callable<BitSet>() {
+                    @Override public BitSet call() throws Exception {
+                        return screen(target);
+                    }
+                }));
+            }
+        }
+
+        /** @inheritDoc */
+        @Override public boolean hasNext() {
+            fill();
+            return !pending.isEmpty();
+        }
+
+        /** @inheritDoc */
+        @Override public BitSet next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Future<BitSet> result = pending.removeFirst();
+            fill();
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while screening", e);
+            } catch (ExecutionException e) {
+                throw Futures.unwrap(e);
+            }
+        }
+
+        /** @inheritDoc */
+        @Override public void remove() {
+            throw new UnsupportedOperationException("cannot remove screening results");
+        }
+    }
+
+    /**
+     * Necessary conditions for a query to be a substructure of a target. Each
+     * query atom is mapped to a different target atom with at least the same
+     * degree, and (when atoms are matched by element) the same atomic number.
+     */
+    private static final class Invariants {
+
+        /** Number of query atoms and bonds. */
+        private final int   atomCount, bondCount;
+
+        /** Atomic numbers and the number of times they occur in the query. */
+        private final int[] elements, counts;
+
+        /** Query degrees in ascending order. */
+        private final int[] degrees;
+
+        private Invariants(IAtomContainer query) {
+            GraphSnapshot g = GraphSnapshot.of(query);
+            this.atomCount = g.order();
+            this.bondCount = g.size();
+            this.degrees = new int[atomCount];
+            for (int v = 0; v < atomCount; v++)
+                degrees[v] = g.degree(v);
+            Arrays.sort(degrees);
+
+            // query atoms may match any element, unset atomic numbers are
+            // reported by the matcher
+            if (query instanceof IQueryAtomContainer || !elementsSet(query)) {
+                this.elements = new int[0];
+                this.counts = new int[0];
+            } else {
+                int[] elems = new int[atomCount];
+                for (int v = 0; v < atomCount; v++)
+                    elems[v] = g.element(v);
+                Arrays.sort(elems);
+                int k = 0;
+                int[] xs = new int[atomCount], ns = new int[atomCount];
+                for (int v = 0; v < atomCount; v++) {
+                    if (v == 0 || elems[v] != elems[v - 1])
+                        xs[k++] = elems[v];
+                    ns[k - 1]++;
+                }
+                this.elements = Arrays.copyOf(xs, k);
+                this.counts = Arrays.copyOf(ns, k);
+            }
+        }
+
+        /**
+         * Check whether a target with the given invariants may contain the
+         * query.
+         *
+         * @param n       number of target atoms
+         * @param m       number of target bonds
+         * @param counts  element counts of the target
+         * @param degrees target degrees in ascending order
+         * @return the target may contain the query
+         */
+        private boolean accepts(int n, int m, int[] counts, int[] degrees) {
+            if (atomCount > n || bondCount > m)
+                return false;
+            for (int i = 0; i < elements.length; i++) {
+                if (counts[elements[i]] < this.counts[i])
+                    return false;
+            }
+            // the i'th largest query degree can be no more than the i'th
+            // largest target degree
+            for (int i = 1; i <= atomCount; i++) {
+                if (this.degrees[atomCount - i] > degrees[n - i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * All atoms have an atomic number set or are pseudo atoms.
+         *
+         * @param query the query
+         * @return the atomic numbers are known
+         */
+        private static boolean elementsSet(IAtomContainer query) {
+            for (IAtom atom : query.atoms()) {
+                if (atom.getAtomicNumber() == null && !(atom instanceof IPseudoAtom))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
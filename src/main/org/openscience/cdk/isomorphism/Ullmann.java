@@ -27,7 +27,7 @@ package org.openscience.cdk.isomorphism;
 import com.google.common.collect.Iterables;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
-import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
 
@@ -108,8 +108,9 @@ public final class Ullmann extends Pattern {
         this.query = query;
         this.atomMatcher = atomMatcher;
         this.bondMatcher = bondMatcher;
-        this.bonds1 = EdgeToBondMap.withSpaceFor(query);
-        this.g1 = GraphUtil.toAdjList(query, bonds1);
+        GraphSnapshot snapshot = GraphSnapshot.of(query);
+        this.bonds1 = snapshot.bondMap();
+        this.g1 = snapshot.toAdjList();
         this.queryMatching = query instanceof IQueryAtomContainer;
     }
 
@@ -120,8 +121,9 @@ public final class Ullmann extends Pattern {
 
     @TestMethod("benzeneSubsearch,napthaleneSubsearch")
     @Override public Mappings matchAll(IAtomContainer target) {
-        EdgeToBondMap bonds2 = EdgeToBondMap.withSpaceFor(target);
-        int[][] g2 = GraphUtil.toAdjList(target, bonds2);
+        GraphSnapshot snapshot = GraphSnapshot.of(target);
+        EdgeToBondMap bonds2 = snapshot.bondMap();
+        int[][] g2 = snapshot.toAdjList();
         Iterable<int[]> iterable = new UllmannIterable(query, target,
                                                        g1, g2,
                                                        bonds1, bonds2,
@@ -24,12 +24,16 @@
 
 package org.openscience.cdk.isomorphism;
 
+import com.google.common.base.Function;
 import com.google.common.collect.Iterables;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
-import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.graph.GraphSnapshot;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
 
 import java.util.Iterator;
 
@@ -80,6 +84,15 @@ public final class VentoFoggia extends Pattern {
     /** The query structure. */
     private final IAtomContainer query;
 
+    /**
+     * The query structure with the atoms in match order, the same as the
+     * {@link #query} unless an order was specified.
+     */
+    private final IAtomContainer ordered;
+
+    /** The query atom index of each atom in match order, null if unordered. */
+    private final int[] order;
+
     /** The query structure adjacency list. */
     private final int[][] g1;
 
@@ -105,16 +118,21 @@ public final class VentoFoggia extends Pattern {
      * @param atomMatcher  how atoms should be matched
      * @param bondMatcher  how bonds should be matched
      * @param substructure substructure search
+     * @param order        the order the query atoms are matched (may be null)
      */
     private VentoFoggia(IAtomContainer query,
                         AtomMatcher atomMatcher,
                         BondMatcher bondMatcher,
-                        boolean substructure) {
+                        boolean substructure,
+                        int[] order) {
         this.query = query;
+        this.order = order;
+        this.ordered = order != null ? reorder(query, order) : query;
         this.atomMatcher = atomMatcher;
         this.bondMatcher = bondMatcher;
-        this.bonds1 = EdgeToBondMap.withSpaceFor(query);
-        this.g1 = GraphUtil.toAdjList(query, bonds1);
+        GraphSnapshot snapshot = GraphSnapshot.of(ordered);
+        this.bonds1 = snapshot.bondMap();
+        this.g1 = snapshot.toAdjList();
         this.subgraph = substructure;
         this.queryMatching = query instanceof IQueryAtomContainer;
     }
@@ -128,13 +146,16 @@ public final class VentoFoggia extends Pattern {
     /** @inheritDoc */
     @TestMethod("benzeneIdentical,benzeneSubsearch")
     @Override public Mappings matchAll(final IAtomContainer target) {
-        EdgeToBondMap bonds2 = EdgeToBondMap.withSpaceFor(target);
-        int[][] g2 = GraphUtil.toAdjList(target, bonds2);
-        Iterable<int[]> iterable = new VFIterable(query, target,
+        GraphSnapshot snapshot = GraphSnapshot.of(target);
+        EdgeToBondMap bonds2 = snapshot.bondMap();
+        int[][] g2 = snapshot.toAdjList();
+        Iterable<int[]> iterable = new VFIterable(ordered, target,
                                                   g1, g2,
                                                   bonds1, bonds2,
                                                   atomMatcher, bondMatcher,
                                                   subgraph);
+        if (order != null)
+            iterable = Iterables.transform(iterable, new Unorder(order));
         return new Mappings(query, target, iterable);
     }
 
@@ -151,7 +172,50 @@ public final class VentoFoggia extends Pattern {
         return new VentoFoggia(query,
                                isQuery ? AtomMatcher.forQuery() : AtomMatcher.forElement(),
                                isQuery ? BondMatcher.forQuery() : BondMatcher.forOrder(),
-                               true);
+                               true,
+                               null);
+    }
+
+    /**
+     * Create a pattern which can be used to find molecules which contain the
+     * {@code query} structure, the query atoms are matched in the specified
+     * order. Matching the most selective atoms first (e.g. rare elements,
+     * high degree) can greatly reduce the search space explored for a
+     * target. Each atom should be adjacent to an atom earlier in the order
+     * (where the query is connected). The mappings are reported in the
+     * original atom order of the query.
+     *
+     * @param query the substructure to find
+     * @param order the index of each query atom in the order it is matched
+     * @return a pattern for finding the {@code query}
+     * @throws IllegalArgumentException the order was not a permutation of the
+     *                                  query atoms
+     */
+    @TestMethod("orderedSubsearch,invalidOrder")
+    public static Pattern findSubstructure(IAtomContainer query, int[] order) {
+        boolean isQuery = query instanceof IQueryAtomContainer;
+        return new VentoFoggia(query,
+                               isQuery ? AtomMatcher.forQuery() : AtomMatcher.forElement(),
+                               isQuery ? BondMatcher.forQuery() : BondMatcher.forOrder(),
+                               true,
+                               order.clone());
+    }
+
+    /**
+     * Create a pattern which can be used to find molecules which contain the
+     * {@code query} structure, the atoms and bonds are compared with the
+     * provided matchers. For example, matching with {@link
+     * AtomMatcher#forAny()} and {@link BondMatcher#forAny()} finds the
+     * query topology regardless of the elements and bond orders.
+     *
+     * @param query       the substructure to find
+     * @param atomMatcher how atoms are matched
+     * @param bondMatcher how bonds are matched
+     * @return a pattern for finding the {@code query}
+     */
+    @TestMethod("matcherSubsearch")
+    public static Pattern findSubstructure(IAtomContainer query, AtomMatcher atomMatcher, BondMatcher bondMatcher) {
+        return new VentoFoggia(query, atomMatcher, bondMatcher, true, null);
     }
 
     /**
@@ -167,7 +231,56 @@ public final class VentoFoggia extends Pattern {
         return new VentoFoggia(query,
                                isQuery ? AtomMatcher.forQuery() : AtomMatcher.forElement(),
                                isQuery ? BondMatcher.forQuery() : BondMatcher.forOrder(),
-                               false);
+                               false,
+                               null);
+    }
+
+    /**
+     * Create a container with the atoms of the query in the given order. The
+     * atoms, bonds and stereo elements are not copied.
+     *
+     * @param query the query structure
+     * @param order the order of the atoms
+     * @return the reordered query
+     */
+    private static IAtomContainer reorder(IAtomContainer query, int[] order) {
+        int n = query.getAtomCount();
+        if (order.length != n)
+            throw new IllegalArgumentException("order must contain each query atom once");
+        IAtom[] atoms = new IAtom[n];
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (order[i] < 0 || order[i] >= n || seen[order[i]])
+                throw new IllegalArgumentException("order must contain each query atom once");
+            seen[order[i]] = true;
+            atoms[i] = query.getAtom(order[i]);
+        }
+        IAtomContainer container = query instanceof IQueryAtomContainer
+                                   ? new QueryAtomContainer(query.getBuilder())
+                                   : query.getBuilder().newInstance(IAtomContainer.class);
+        container.setAtoms(atoms);
+        for (IBond bond : query.bonds())
+            container.addBond(bond);
+        return container;
+    }
+
+    /** Translate a mapping in match order to the original query order. */
+    private static final class Unorder implements Function<int[], int[]> {
+
+        /** The query atom index of each atom in match order. */
+        private final int[] order;
+
+        private Unorder(int[] order) {
+            this.order = order;
+        }
+
+        /** @inheritDoc */
+        @Override public int[] apply(int[] mapping) {
+            int[] unordered = new int[mapping.length];
+            for (int i = 0; i < mapping.length; i++)
+                unordered[order[i]] = mapping[i];
+            return unordered;
+        }
     }
 
     private static final class VFIterable implements Iterable<int[]> {
@@ -20,9 +20,12 @@
 package org.openscience.cdk.isomorphism.matchers.smarts;
 
 import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.config.Elements;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 
+import java.util.BitSet;
+
 /**
  * This smarts atom matches aliphatic atom with element symbol specified.
  *
@@ -50,6 +53,18 @@ public class AliphaticSymbolAtom extends SMARTSAtom {
 		return !atom.getFlag(CDKConstants.ISAROMATIC) && atom.getSymbol().equals(this.getSymbol());
 	}
 	
+	/**
+	 * @inheritDoc
+	 */
+	@Override BitSet elements() {
+		int number = Elements.ofString(getSymbol()).number();
+		if (number == 0)
+			return null;
+		BitSet elements = new BitSet();
+		elements.set(number);
+		return elements;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.openscience.cdk.PseudoAtom#toString()
 	 */
@@ -20,9 +20,12 @@
 package org.openscience.cdk.isomorphism.matchers.smarts;
 
 import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.config.Elements;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 
+import java.util.BitSet;
+
 /**
  * This class matches aromatic atom with element symbol specified.
  *
@@ -42,6 +45,18 @@ public class AromaticSymbolAtom extends SMARTSAtom {
 		return atom.getFlag(CDKConstants.ISAROMATIC) && atom.getSymbol().equals(this.getSymbol());
 	}
 	
+	/**
+	 * @inheritDoc
+	 */
+	@Override BitSet elements() {
+		int number = Elements.ofString(getSymbol()).number();
+		if (number == 0)
+			return null;
+		BitSet elements = new BitSet();
+		elements.set(number);
+		return elements;
+	}
+
 	public String toString() {
 		return "AromaticSymbolAtom(" + getSymbol() + ")";
 	}
@@ -34,6 +34,8 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.tools.periodictable.PeriodicTable;
 
+import java.util.BitSet;
+
 /**
  * This matches an atom using the atomic number.
  *
@@ -61,4 +63,13 @@ public class AtomicNumberAtom extends SMARTSAtom {
         return Preconditions.checkNotNull(atom.getAtomicNumber(),
                                           "Atomic number is not set.").equals(this.getAtomicNumber());
     }
+
+    /**
+     * @inheritDoc
+     */
+    @Override BitSet elements() {
+        BitSet elements = new BitSet();
+        elements.set(getAtomicNumber());
+        return elements;
+    }
 }
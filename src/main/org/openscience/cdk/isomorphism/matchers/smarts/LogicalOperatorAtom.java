@@ -23,6 +23,7 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 
+import java.util.BitSet;
 import java.util.EnumSet;
 
 /**
@@ -195,6 +196,17 @@ public final class LogicalOperatorAtom extends SMARTSAtom {
             return left.matches(atom) && right.matches(atom);
         }
 
+        /** @inheritDoc */
+        @Override BitSet elements() {
+            BitSet lhs = left.elements();
+            BitSet rhs = right.elements();
+            if (lhs == null)
+                return rhs;
+            if (rhs != null)
+                lhs.and(rhs);
+            return lhs;
+        }
+
         /** @inheritDoc */
         @Override public boolean chiralityMatches(IAtom target, int tParity, int permParity) {
             // contract dictates that left.matches() & right.matches() are known to be true
@@ -227,6 +239,16 @@ public final class LogicalOperatorAtom extends SMARTSAtom {
             return left.matches(atom) || right.matches(atom);
         }
 
+        /** @inheritDoc */
+        @Override BitSet elements() {
+            BitSet lhs = left.elements();
+            BitSet rhs = right.elements();
+            if (lhs == null || rhs == null)
+                return null;
+            lhs.or(rhs);
+            return lhs;
+        }
+
         /** @inheritDoc */
         @Override public boolean chiralityMatches(IAtom target, int tParity, int permParity) {
             // we know the left or right was true, for each side which matched try to verify
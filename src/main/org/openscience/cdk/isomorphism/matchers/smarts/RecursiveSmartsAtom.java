@@ -26,38 +26,56 @@ package org.openscience.cdk.isomorphism.matchers.smarts;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.FluentIterable;
-import com.google.common.collect.Iterables;
-import org.openscience.cdk.graph.GraphUtil;
 import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.isomorphism.ComponentGrouping;
+import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.isomorphism.SmartsStereoMatch;
-import org.openscience.cdk.isomorphism.Ullmann;
 import org.openscience.cdk.isomorphism.VentoFoggia;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
-import org.openscience.cdk.tools.ILoggingTool;
-import org.openscience.cdk.tools.LoggingToolFactory;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
 
 import java.util.BitSet;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This matches recursive smarts atoms.
  *
+ * Recursive SMARTS created from the SMARTS of their environment are
+ * registered, all atoms with the same environment share the matches of that
+ * environment. The environment is therefore only matched once per target
+ * molecule, regardless of the number of queries it appears in. The registry
+ * parses the environment from the SMARTS itself, so the SMARTS it is keyed on
+ * always describe it, and it does not retain an environment which is no
+ * longer used by any atom.
+ *
+ * The matches of an environment are cached for the last 42 target molecules.
+ * As the environment is shared, this cache is shared by all queries (in all
+ * threads) in which the environment appears.
+ *
  * @cdk.module smarts
  * @cdk.githash
  * @cdk.keyword SMARTS
  */
 public final class RecursiveSmartsAtom extends SMARTSAtom {
 
-    private final static ILoggingTool logger = LoggingToolFactory.createLoggingTool(RecursiveSmartsAtom.class);
+    /**
+     * Environments of the registered recursive SMARTS, keyed by their
+     * SMARTS.
+     */
+    private static final ConcurrentMap<String, Environment> registry = CacheBuilder.newBuilder()
+                                                                                    .weakValues()
+                                                                                    .<String, Environment>build()
+                                                                                    .asMap();
 
     /** The IQueryAtomContainer created by parsing the recursive smarts */
     private final IQueryAtomContainer query;
-    
-    /** Query cache. */
-    private final LoadingCache<IAtomContainer, BitSet> cache;
+
+    /** The (possibly shared) environment of this atom. */
+    private final Environment environment;
 
     /**
      * Creates a new instance
@@ -67,21 +85,49 @@ public final class RecursiveSmartsAtom extends SMARTSAtom {
     public RecursiveSmartsAtom(final IQueryAtomContainer query) {
         super(query.getBuilder());
         this.query = query;
-        this.cache = CacheBuilder.newBuilder()
-                                 .maximumSize(42)
-                                 .weakKeys() 
-                                 .build(new CacheLoader<IAtomContainer, BitSet>() {
-                                     @Override public BitSet load(IAtomContainer target) throws Exception {
-                                         BitSet hits = new BitSet();
-                                         for (int[] mapping : FluentIterable.from(Ullmann.findSubstructure(query)
-                                                                                         .matchAll(target))
-                                                                            .filter(new SmartsStereoMatch(query, target))
-                                                                            .filter(new ComponentGrouping(query, target))) {
-                                             hits.set(mapping[0]);
-                                         }
-                                         return hits;
-                                     }
-                                 });
+        this.environment = new Environment(query);
+    }
+
+    /**
+     * Creates a new instance which shares the environment, and its matches,
+     * of any other recursive SMARTS atom with the same SMARTS.
+     *
+     * @param smarts  the SMARTS of the environment (the content of '$(...)')
+     * @param builder the builder to use
+     * @throws IllegalArgumentException the SMARTS were not valid
+     */
+    public RecursiveSmartsAtom(final String smarts, final IChemObjectBuilder builder) {
+        super(builder);
+        this.environment = register(smarts, builder);
+        this.query = environment.query;
+    }
+
+    /**
+     * Obtain the registered environment for the SMARTS, the environment is
+     * parsed from the SMARTS and registered if there is none.
+     *
+     * @param smarts  the SMARTS of the environment
+     * @param builder the builder to parse the environment with
+     * @return the registered environment
+     */
+    private static Environment register(String smarts, IChemObjectBuilder builder) {
+        Environment environment = registry.get(smarts);
+        if (environment == null) {
+            Environment created = new Environment(SMARTSParser.parse(smarts, builder));
+            environment = registry.putIfAbsent(smarts, created);
+            if (environment == null)
+                environment = created;
+        }
+        return environment;
+    }
+
+    /**
+     * Access the environment, for testing.
+     *
+     * @return the environment
+     */
+    Environment environment() {
+        return environment;
     }
 
     /* (non-Javadoc)
@@ -97,7 +143,62 @@ public final class RecursiveSmartsAtom extends SMARTSAtom {
 
         IAtomContainer target = invariants(atom).target();
 
-        return cache.getUnchecked(target)
-                    .get(target.getAtomNumber(atom));
+        return environment.hits(invariants(target.getAtom(0)))
+                          .get(target.getAtomNumber(atom));
+    }
+
+    /**
+     * The environment of a recursive SMARTS and the target atoms it matches.
+     */
+    static final class Environment {
+
+        /** The parsed recursive SMARTS. */
+        private final IQueryAtomContainer query;
+
+        /**
+         * Hits cache, keyed by the invariants of the first target atom which
+         * are recomputed each time the target is prepared for matching.
+         */
+        private final LoadingCache<SMARTSAtomInvariants, BitSet> cache;
+
+        /**
+         * Create the environment for the parsed recursive SMARTS.
+         *
+         * @param query the environment
+         */
+        private Environment(final IQueryAtomContainer query) {
+            this.query = query;
+            final Pattern pattern  = VentoFoggia.findSubstructure(query, SmartsMatchers.matchOrder(query));
+            final boolean stereo   = query.stereoElements().iterator().hasNext();
+            final boolean grouping = query.getProperty(ComponentGrouping.KEY) != null;
+            this.cache = CacheBuilder.newBuilder()
+                                     .maximumSize(42)
+                                     .weakKeys()
+                                     .build(new CacheLoader<SMARTSAtomInvariants, BitSet>() {
+                                         @Override public BitSet load(SMARTSAtomInvariants invariants) throws Exception {
+                                             IAtomContainer target = invariants.target();
+                                             Mappings mappings = pattern.matchAll(target);
+                                             if (stereo)
+                                                 mappings = mappings.filter(new SmartsStereoMatch(query, target));
+                                             if (grouping)
+                                                 mappings = mappings.filter(new ComponentGrouping(query, target));
+                                             BitSet hits = new BitSet();
+                                             for (int[] mapping : mappings)
+                                                 hits.set(mapping[0]);
+                                             return hits;
+                                         }
+                                     });
+        }
+
+        /**
+         * The indices of the target atoms matched by the first atom of the
+         * environment.
+         *
+         * @param invariants invariants of the first target atom
+         * @return the matched atoms
+         */
+        BitSet hits(SMARTSAtomInvariants invariants) {
+            return cache.getUnchecked(invariants);
+        }
     }
 }
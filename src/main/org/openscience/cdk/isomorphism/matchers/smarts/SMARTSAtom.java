@@ -23,6 +23,8 @@ import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 import org.openscience.cdk.isomorphism.matchers.QueryAtom;
 
+import java.util.BitSet;
+
 /**
  * Abstract smarts atom.
  *
@@ -74,4 +76,17 @@ public abstract class SMARTSAtom extends QueryAtom implements
     public boolean chiralityMatches(IAtom target, int tParity, int permParity) {
         return true; // no specification => chirality matches
     }
+
+    /**
+     * The elements (atomic numbers) this query atom can possibly match. The
+     * set is used to quickly exclude queries which can not match a target
+     * because it lacks a required element. A null value indicates the atom
+     * is not restricted to particular elements.
+     *
+     * @return the atomic numbers which may be matched, null if any element
+     *         may be matched
+     */
+    BitSet elements() {
+        return null; // no specification => any element
+    }
 }
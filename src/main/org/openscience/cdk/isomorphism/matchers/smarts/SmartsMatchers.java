@@ -24,7 +24,15 @@
 
 package org.openscience.cdk.isomorphism.matchers.smarts;
 
+import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Bridging class between the SMARTS matcher and the parser/query tool. The
@@ -54,5 +62,149 @@ public final class SmartsMatchers {
             SMARTSAtomInvariants.configureDaylightWithoutRingInfo(container);
         }
     }
-    
+
+    /**
+     * Has the container been prepared for matching with SMARTS, that is do
+     * all atoms have invariants computed for this container. An atom which
+     * was added (or copied from another container) after preparation is not
+     * prepared.
+     *
+     * @param container the container to check
+     * @return whether the container is prepared
+     */
+    public static boolean isPrepared(IAtomContainer container) {
+        for (IAtom atom : container.atoms()) {
+            SMARTSAtomInvariants inv = atom.getProperty(SMARTSAtomInvariants.KEY);
+            if (inv == null || inv.target() != container)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The elements (atomic numbers) a query atom can possibly match. Atoms
+     * which do not restrict the element (e.g. '*', '[R]', '[!#1]') and
+     * non-SMARTS query atoms return null.
+     *
+     * @param atom a query atom
+     * @return the atomic numbers which may be matched, null if any element
+     *         may be matched
+     */
+    public static BitSet elements(IQueryAtom atom) {
+        if (atom instanceof SMARTSAtom)
+            return ((SMARTSAtom) atom).elements();
+        return null;
+    }
+
+    /**
+     * Frequency of each element (atomic number) in typical organic molecules,
+     * used to estimate how selective a query atom is.
+     */
+    private static final double[] FREQUENCY = new double[119];
+
+    static {
+        Arrays.fill(FREQUENCY, 0.0005);
+        FREQUENCY[1]  = 0.3;   // H, when explicit
+        FREQUENCY[6]  = 0.7;   // C
+        FREQUENCY[7]  = 0.1;   // N
+        FREQUENCY[8]  = 0.1;   // O
+        FREQUENCY[9]  = 0.01;  // F
+        FREQUENCY[15] = 0.005; // P
+        FREQUENCY[16] = 0.02;  // S
+        FREQUENCY[17] = 0.01;  // Cl
+        FREQUENCY[35] = 0.005; // Br
+        FREQUENCY[53] = 0.001; // I
+    }
+
+    /**
+     * Determine an order to match the atoms of a query in, the most selective
+     * atoms are matched first (similar to RI and VF2++). The first atom of
+     * each component is the atom with the rarest element(s) and highest
+     * degree, the remaining atoms are ordered breadth-first from it. Within
+     * each level of the breadth-first search an atom with the most neighbours
+     * already ordered is taken first, followed by the highest degree and then
+     * the rarest element(s).
+     *
+     * @param query the query
+     * @return the index of each atom in the order they should be matched
+     * @see org.openscience.cdk.isomorphism.VentoFoggia#findSubstructure(IAtomContainer, int[])
+     */
+    public static int[] matchOrder(IAtomContainer query) {
+
+        int n = query.getAtomCount();
+        int[][] g = GraphUtil.toAdjList(query);
+
+        double[] frequency = new double[n];
+        for (int i = 0; i < n; i++)
+            frequency[i] = frequency(query.getAtom(i));
+
+        int[] order = new int[n];
+        int[] ordered = new int[n]; // number of neighbours already ordered
+        boolean[] visit = new boolean[n];
+        int k = 0;
+
+        while (k < n) {
+
+            int root = -1;
+            for (int i = 0; i < n; i++) {
+                if (!visit[i] && (root < 0
+                        || frequency[i] < frequency[root]
+                        || frequency[i] == frequency[root] && g[i].length > g[root].length))
+                    root = i;
+            }
+
+            List<Integer> level = new ArrayList<Integer>();
+            level.add(root);
+            visit[root] = true;
+
+            while (!level.isEmpty()) {
+                List<Integer> next = new ArrayList<Integer>();
+                while (!level.isEmpty()) {
+                    int best = 0;
+                    for (int j = 1; j < level.size(); j++) {
+                        int u = level.get(j), v = level.get(best);
+                        if (ordered[u] > ordered[v]
+                                || ordered[u] == ordered[v] && (g[u].length > g[v].length
+                                || g[u].length == g[v].length && frequency[u] < frequency[v]))
+                            best = j;
+                    }
+                    int v = level.remove(best);
+                    order[k++] = v;
+                    for (int w : g[v]) {
+                        ordered[w]++;
+                        if (!visit[w]) {
+                            visit[w] = true;
+                            next.add(w);
+                        }
+                    }
+                }
+                level = next;
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Estimated frequency of the elements an atom may match, 1 if it may match
+     * any element.
+     *
+     * @param atom query or target atom
+     * @return the frequency
+     */
+    private static double frequency(IAtom atom) {
+        if (atom instanceof IQueryAtom) {
+            BitSet elements = elements((IQueryAtom) atom);
+            if (elements == null)
+                return 1;
+            double frequency = 0;
+            for (int i = elements.nextSetBit(0); i >= 0; i = elements.nextSetBit(i + 1))
+                frequency += i < FREQUENCY.length ? FREQUENCY[i] : FREQUENCY[0];
+            return Math.min(1, frequency);
+        }
+        Integer number = atom.getAtomicNumber();
+        if (number == null || number < 0 || number >= FREQUENCY.length)
+            return 1;
+        return FREQUENCY[number];
+    }
 }
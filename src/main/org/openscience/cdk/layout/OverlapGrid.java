@@ -0,0 +1,379 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.layout;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+import javax.vecmath.Point2d;
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+
+/**
+ * The pairs of atoms of a structure diagram which are closer than a cutoff
+ * distance. The atoms are placed in a uniform grid of square cells with a
+ * side of the cutoff, only the atoms of the 3x3 cells around an atom can
+ * overlap with it. When an atom is moved ({@link #update(int)}) only the
+ * pairs of that atom are recomputed. The grid also finds the crossing bonds
+ * of a structure ({@link #crossingBonds(IAtomContainer, double)}).
+ *
+ * A pair of atoms <i>i &lt; j</i> is packed in a long as <i>i &lt;&lt; 32 |
+ * j</i>, sorting the packed pairs orders them by the first and then the
+ * second index.
+ *
+ * @cdk.module sdg
+ * @cdk.githash
+ * @see OverlapResolver
+ */
+@TestClass("org.openscience.cdk.layout.OverlapGridTest")
+final class OverlapGrid {
+
+    /** Marks an unused slot of the cell table. */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** End of a list of atoms. */
+    private static final int NIL = -1;
+
+    private final IAtomContainer container;
+
+    /** Atoms closer than this distance overlap, it is also the cell size. */
+    private final double cutoff;
+
+    /** Atom coordinates. */
+    private final double[] x, y;
+
+    /** Open addressing table of the cells, keyed by the packed cell coordinates. */
+    private long[] keys;
+
+    /** The first atom of the cell in each slot of the table. */
+    private int[] head;
+
+    /** Number of used slots. */
+    private int nCells;
+
+    /** The next atom in the same cell, and the table slot of each atom. */
+    private final int[] next, slot;
+
+    /** The overlapping pairs (unordered). */
+    private long[] pairs = new long[16];
+    private int    nPairs;
+
+    /**
+     * Place the atoms of a structure diagram in a grid and find the pairs of
+     * atoms which overlap.
+     *
+     * @param container the structure diagram
+     * @param cutoff    atoms closer than this distance overlap
+     */
+    @TestMethod("atomPairs")
+    OverlapGrid(IAtomContainer container, double cutoff) {
+        int n = container.getAtomCount();
+        this.container = container;
+        this.cutoff = cutoff;
+        this.x = new double[n];
+        this.y = new double[n];
+        this.next = new int[n];
+        this.slot = new int[n];
+        int capacity = 16;
+        while (capacity < 2 * n)
+            capacity *= 2;
+        this.keys = new long[capacity];
+        this.head = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < n; i++) {
+            Point2d p = container.getAtom(i).getPoint2d();
+            x[i] = p.x;
+            y[i] = p.y;
+            insert(i);
+            addPairs(i);
+        }
+    }
+
+    /**
+     * Number of overlapping pairs of atoms.
+     *
+     * @return number of pairs
+     */
+    @TestMethod("atomPairs")
+    int size() {
+        return nPairs;
+    }
+
+    /**
+     * Access an overlapping pair of atoms, the pairs are in no particular
+     * order and the order changes when an atom is moved.
+     *
+     * @param k index of the pair (&lt; {@link #size()})
+     * @return the packed pair
+     */
+    @TestMethod("update")
+    long pair(int k) {
+        if (k >= nPairs)
+            throw new IndexOutOfBoundsException("no pair " + k);
+        return pairs[k];
+    }
+
+    /**
+     * The overlapping pairs of atoms, ordered by the first and then the
+     * second atom index.
+     *
+     * @return the packed pairs
+     */
+    @TestMethod("atomPairs,update")
+    long[] pairs() {
+        long[] sorted = Arrays.copyOf(pairs, nPairs);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * The first (lower) atom index of a packed pair.
+     *
+     * @param pair packed pair
+     * @return first index
+     */
+    static int first(long pair) {
+        return (int) (pair >>> 32);
+    }
+
+    /**
+     * The second (higher) atom index of a packed pair.
+     *
+     * @param pair packed pair
+     * @return second index
+     */
+    static int second(long pair) {
+        return (int) pair;
+    }
+
+    /**
+     * The coordinates of an atom have changed, move it to its new cell and
+     * recompute its overlapping pairs.
+     *
+     * @param i index of the atom
+     */
+    @TestMethod("update")
+    void update(int i) {
+        // remove the pairs of the atom
+        int k = 0;
+        while (k < nPairs) {
+            if (first(pairs[k]) == i || second(pairs[k]) == i)
+                pairs[k] = pairs[--nPairs];
+            else
+                k++;
+        }
+        remove(i);
+        Point2d p = container.getAtom(i).getPoint2d();
+        x[i] = p.x;
+        y[i] = p.y;
+        insert(i);
+        addPairs(i);
+    }
+
+    /**
+     * Add the pairs of an atom with the atoms of the surrounding cells.
+     *
+     * @param i the atom
+     */
+    private void addPairs(int i) {
+        if (!(cutoff > 0))
+            return;
+        int cx = cell(x[i]), cy = cell(y[i]);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int s = find(key(cx + dx, cy + dy));
+                if (s < 0)
+                    continue;
+                for (int j = head[s]; j != NIL; j = next[j]) {
+                    if (j == i)
+                        continue;
+                    double x12 = x[i] - x[j], y12 = y[i] - y[j];
+                    if (Math.sqrt(x12 * x12 + y12 * y12) < cutoff) {
+                        if (nPairs == pairs.length)
+                            pairs = Arrays.copyOf(pairs, 2 * nPairs);
+                        pairs[nPairs++] = j < i ? pack(j, i) : pack(i, j);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Add an atom to the list of its cell. */
+    private void insert(int i) {
+        long key = key(cell(x[i]), cell(y[i]));
+        int s = find(key);
+        if (s < 0) {
+            if (2 * (nCells + 1) > keys.length)
+                rehash();
+            s = slotOf(key);
+            keys[s] = key;
+            head[s] = NIL;
+            nCells++;
+        }
+        next[i] = head[s];
+        head[s] = i;
+        slot[i] = s;
+    }
+
+    /** Remove an atom from the list of its cell. */
+    private void remove(int i) {
+        int s = slot[i];
+        if (head[s] == i) {
+            head[s] = next[i];
+            return;
+        }
+        int j = head[s];
+        while (next[j] != i)
+            j = next[j];
+        next[j] = next[i];
+    }
+
+    /** Double the size of the cell table, the empty cells are dropped. */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldHead = head;
+        keys = new long[2 * oldKeys.length];
+        head = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+        nCells = 0;
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldKeys[s] == EMPTY || oldHead[s] == NIL)
+                continue;
+            int t = slotOf(oldKeys[s]);
+            keys[t] = oldKeys[s];
+            head[t] = oldHead[s];
+            nCells++;
+            for (int i = head[t]; i != NIL; i = next[i])
+                slot[i] = t;
+        }
+    }
+
+    /**
+     * The slot of a cell in the table.
+     *
+     * @param key packed cell coordinates
+     * @return the slot, or -1 if the cell is not in the table
+     */
+    private int find(long key) {
+        int s = slotOf(key);
+        return keys[s] == key ? s : -1;
+    }
+
+    /**
+     * The slot which holds a cell, or the empty slot where it should be
+     * inserted.
+     *
+     * @param key packed cell coordinates
+     * @return the slot
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int s = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[s] != EMPTY && keys[s] != key)
+            s = (s + 1) & mask;
+        return s;
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cutoff);
+    }
+
+    private static long key(int cx, int cy) {
+        return pack(cx, cy);
+    }
+
+    private static long pack(int i, int j) {
+        return (long) i << 32 | (j & 0xffffffffL);
+    }
+
+    /**
+     * Find the pairs of bonds which cross each other and do not share an
+     * atom. Each bond is placed in the cells covered by its bounding box,
+     * only the bonds which share a cell (or the hash of a cell) are tested
+     * for an intersection.
+     *
+     * @param container the structure diagram
+     * @param cellSize  size of the cells, e.g. the average bond length
+     * @return the crossing pairs of bond indices, packed and ordered
+     */
+    @TestMethod("crossingBonds")
+    static long[] crossingBonds(IAtomContainer container, double cellSize) {
+        if (!(cellSize > 0))
+            cellSize = Double.POSITIVE_INFINITY; // a single cell
+        int m = container.getBondCount();
+        double[][] lines = new double[m][];
+        long[] entries = new long[4 * m];
+        int nEntries = 0;
+        for (int f = 0; f < m; f++) {
+            IBond bond = container.getBond(f);
+            Point2d p1 = bond.getAtom(0).getPoint2d(), p2 = bond.getAtom(1).getPoint2d();
+            lines[f] = new double[]{p1.x, p1.y, p2.x, p2.y};
+            int minX = (int) Math.floor(Math.min(p1.x, p2.x) / cellSize);
+            int maxX = (int) Math.floor(Math.max(p1.x, p2.x) / cellSize);
+            int minY = (int) Math.floor(Math.min(p1.y, p2.y) / cellSize);
+            int maxY = (int) Math.floor(Math.max(p1.y, p2.y) / cellSize);
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cy = minY; cy <= maxY; cy++) {
+                    if (nEntries == entries.length)
+                        entries = Arrays.copyOf(entries, 2 * nEntries);
+                    // a hash of the cell and the bond, sorted by cell
+                    entries[nEntries++] = (pack(cx, cy) * 0x9E3779B97F4A7C15L) & 0xffffffff00000000L | f;
+                }
+            }
+        }
+        Arrays.sort(entries, 0, nEntries);
+
+        long[] crossing = new long[8];
+        int nCrossing = 0;
+        for (int a = 0; a < nEntries; ) {
+            int b = a;
+            while (b < nEntries && (entries[b] >>> 32) == (entries[a] >>> 32))
+                b++;
+            for (int i = a; i < b; i++) {
+                for (int j = i + 1; j < b; j++) {
+                    int f = (int) entries[i], g = (int) entries[j];
+                    if (container.getBond(f).isConnectedTo(container.getBond(g)))
+                        continue;
+                    double[] l1 = lines[f], l2 = lines[g];
+                    if (Line2D.linesIntersect(l1[0], l1[1], l1[2], l1[3], l2[0], l2[1], l2[2], l2[3])) {
+                        if (nCrossing == crossing.length)
+                            crossing = Arrays.copyOf(crossing, 2 * nCrossing);
+                        crossing[nCrossing++] = pack(f, g);
+                    }
+                }
+            }
+            a = b;
+        }
+
+        // a pair may share several cells
+        Arrays.sort(crossing, 0, nCrossing);
+        int n = 0;
+        for (int i = 0; i < nCrossing; i++) {
+            if (n == 0 || crossing[i] != crossing[n - 1])
+                crossing[n++] = crossing[i];
+        }
+        return Arrays.copyOf(crossing, n);
+    }
+}
@@ -32,7 +32,6 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.util.Vector;
 
-import javax.vecmath.Point2d;
 import javax.vecmath.Vector2d;
 
 import org.openscience.cdk.geometry.GeometryTools;
@@ -48,6 +47,10 @@ import org.openscience.cdk.tools.LoggingToolFactory;
  * Helper class for Structure Diagram Generation. Resolves atom or bond
  * overlaps after the actual SDG was done
  *
+ * <p>The overlapping atoms and crossing bonds are found with a grid (see
+ * {@link OverlapGrid}) rather than by comparing all pairs, and while atoms
+ * are displaced only the overlaps of the moved atom are recomputed.
+ *
  * @author      steinbeck
  * @cdk.created 2003-09-4
  * @cdk.keyword layout
@@ -104,8 +107,8 @@ public class OverlapResolver
 	public double displace(IAtomContainer ac, Vector overlappingAtoms, Vector overlappingBonds)
 	{
         double bondLength = GeometryTools.getBondLengthAverage(ac);
+		double overlapCutoff = bondLength / 4;
 
-		OverlapPair op = null;
 		IAtom a1 = null, a2 = null;
 		Vector2d v1 = null, v2 = null;
 		int steps = 0;
@@ -115,21 +118,25 @@ public class OverlapResolver
 		logger.debug("We are here because of an overlap situation.");
 		//logger.debug("Overlap score: " + overlapScore);
 
-		
-		do{
+		/* the overlaps are updated as the atoms are moved, the cutoff
+		 * is that of the initial bond length
+		 */
+		OverlapGrid grid = new OverlapGrid(ac, overlapCutoff);
+		while (grid.size() > 0 && !(steps > maxSteps))
+		{
 			/* we take a random overlapping 
 			 * pair of atoms
 			 */
-			 p = (int)(Math.random() * overlappingAtoms.size());
-			 logger.debug("Taking overlap pair no. " + p);
-			op = (OverlapPair)overlappingAtoms.elementAt(p);
+			p = (int)(Math.random() * grid.size());
+			logger.debug("Taking overlap pair no. " + p);
+			long pair = grid.pair(p);
 			/* Now we have an overlapping pair of atoms
 			*  We calculate the 2D vector formed by the
 			* positions of both and translate one of the atoms by 
 			* one tenth of a bond length
 			*/
-			a1 = (IAtom)op.chemObject1;
-			a2 = (IAtom)op.chemObject2;
+			a1 = ac.getAtom(OverlapGrid.first(pair));
+			a2 = ac.getAtom(OverlapGrid.second(pair));
 			v1 = new Vector2d(a1.getPoint2d());
 			v2 = new Vector2d(a2.getPoint2d());
 			v2.sub(v1);
@@ -146,17 +153,25 @@ public class OverlapResolver
 			if (choice > 0.5)
 			{
 				a2.getPoint2d().add(v2);
+				grid.update(OverlapGrid.second(pair));
 				logger.debug("Random variable: " + choice + ", displacing first atom");
 			}
 			else
 			{
 				a1.getPoint2d().sub(v2);
+				grid.update(OverlapGrid.first(pair));
 				logger.debug("Random variable: " + choice + ", displacing second atom");
 			}
-			overlapScore = getOverlapScore(ac, overlappingAtoms
-			, overlappingBonds);
 			steps ++;
-		}while(overlapScore > 0 && !(steps > maxSteps));
+		}
+
+		overlappingAtoms.removeAllElements();
+		for (long pair : grid.pairs())
+		{
+			overlapScore += overlapCutoff;
+			overlappingAtoms.addElement(new OverlapPair(ac.getAtom(OverlapGrid.first(pair)),
+			                                            ac.getAtom(OverlapGrid.second(pair))));
+		}
 
 		if (steps < 100)
 		{
@@ -206,33 +221,17 @@ public class OverlapResolver
 	public double getAtomOverlapScore(IAtomContainer ac, Vector overlappingAtoms)
 	{
 		overlappingAtoms.removeAllElements();
-		IAtom atom1 = null;
-		IAtom atom2 = null;
-		Point2d p1 = null;
-		Point2d p2 = null;
-		double distance = 0;
 		double overlapScore = 0;
         double bondLength = GeometryTools.getBondLengthAverage(ac);
 		double overlapCutoff = bondLength / 4;
 		logger.debug("Bond length is set to " + bondLength);
-		logger.debug("Now cyling through all pairs of atoms");
-		for (int f = 0; f < ac.getAtomCount(); f++)
+		for (long pair : new OverlapGrid(ac, overlapCutoff).pairs())
 		{
-			atom1 = ac.getAtom(f);
-			p1 = atom1.getPoint2d();
-			for (int g = f + 1; g < ac.getAtomCount(); g++)
-			{
-				atom2 = ac.getAtom(g);
-				p2 = atom2.getPoint2d();
-				distance = p1.distance(p2);
-				if (distance < overlapCutoff)
-				{
-					logger.debug("Detected atom clash with distance: " + distance + ", which is smaller than overlapCutoff " + overlapCutoff);
-					overlapScore += overlapCutoff;
-					overlappingAtoms.addElement(new OverlapPair(atom1, atom2));
-				}
-			}
+			overlapScore += overlapCutoff;
+			overlappingAtoms.addElement(new OverlapPair(ac.getAtom(OverlapGrid.first(pair)),
+			                                            ac.getAtom(OverlapGrid.second(pair))));
 		}
+		logger.debug("Detected " + overlappingAtoms.size() + " atom clashes closer than overlapCutoff " + overlapCutoff);
 		return overlapScore;
 	}
 
@@ -248,26 +247,14 @@ public class OverlapResolver
 	{
 		overlappingBonds.removeAllElements();
 		double overlapScore = 0;
-		IBond bond1 = null;
-		IBond bond2 = null;
-        double bondLength = GeometryTools.getBondLengthAverage(ac);;
+        double bondLength = GeometryTools.getBondLengthAverage(ac);
 		double overlapCutoff = bondLength / 2;
-		for (int f = 0; f < ac.getBondCount(); f++)
+		for (long pair : OverlapGrid.crossingBonds(ac, bondLength))
 		{
-			bond1 = ac.getBond(f);
-			for (int g = f; g < ac.getBondCount(); g++)
-			{
-				bond2 = ac.getBond(g);
-				/* bonds must not be connected */
-				if (!bond1.isConnectedTo(bond2))
-				{
-					if (areIntersected(bond1, bond2))
-					{
-						overlapScore += overlapCutoff;
-						overlappingBonds.addElement(new OverlapPair(bond1, bond2));
-					}
-				}
-			}
+			logger.debug("Two intersecting bonds detected.");
+			overlapScore += overlapCutoff;
+			overlappingBonds.addElement(new OverlapPair(ac.getBond(OverlapGrid.first(pair)),
+			                                            ac.getBond(OverlapGrid.second(pair))));
 		}
 		return overlapScore;
 	}
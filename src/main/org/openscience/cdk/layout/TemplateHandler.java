@@ -29,9 +29,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.vecmath.Point2d;
 
@@ -46,8 +48,10 @@ import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemFile;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.io.CMLReader;
-import org.openscience.cdk.isomorphism.UniversalIsomorphismTester;
-import org.openscience.cdk.isomorphism.mcss.RMap;
+import org.openscience.cdk.isomorphism.AtomMatcher;
+import org.openscience.cdk.isomorphism.BondMatcher;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.VentoFoggia;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
@@ -58,6 +62,12 @@ import org.openscience.cdk.tools.manipulator.ChemFileManipulator;
  * our layout solution for ring systems which are notoriously difficult to
  * layout, like cubane, adamantane, porphyrin, etc.
  *
+ * <p>Templates are matched on their topology (elements and bond orders are
+ * ignored). Before a template is matched it is screened on the atom count,
+ * the size of the largest ring system and features of the ring paths of the
+ * molecule, which rules out most templates of a large template set without
+ * a substructure search.
+ *
  * @author       steinbeck
  * @cdk.created  2003-09-04
  * @cdk.keyword  layout
@@ -74,9 +84,27 @@ public class TemplateHandler
 	private static ILoggingTool logger =
 	    LoggingToolFactory.createLoggingTool(TemplateHandler.class);
 
-	private List<IAtomContainer> templates = null;
+	private TemplateLibrary templates = null;
+
+	/**
+	 * The molecule atoms which match a template atom in {@link
+	 * #getMappedSubstructures(IAtomContainer)}: carbons.
+	 */
+	private static final AtomMatcher CARBON = new AtomMatcher() {
+		@Override public boolean matches(IAtom atom1, IAtom atom2) {
+			return "C".equals(atom2.getSymbol());
+		}
+	};
 
-	private UniversalIsomorphismTester universalIsomorphismTester = new UniversalIsomorphismTester();
+	/**
+	 * The molecule bonds which match a template bond in {@link
+	 * #getMappedSubstructures(IAtomContainer)}: non-aromatic single bonds.
+	 */
+	private static final BondMatcher NON_AROMATIC_SINGLE = new BondMatcher() {
+		@Override public boolean matches(IBond bond1, IBond bond2) {
+			return bond2.getOrder() == IBond.Order.SINGLE && !bond2.getFlag(CDKConstants.ISAROMATIC);
+		}
+	};
 
 
 	/**
@@ -85,7 +113,7 @@ public class TemplateHandler
 	@TestMethod("testInit")
 	public TemplateHandler(IChemObjectBuilder builder)
 	{
-		templates = new ArrayList<IAtomContainer>();
+		templates = new TemplateLibrary();
 		loadTemplates(builder);
 	}
 
@@ -158,17 +186,10 @@ public class TemplateHandler
 
 	@TestMethod("testRemoveMolecule")
 	public IAtomContainer removeMolecule(IAtomContainer molecule) throws CDKException {
-		IAtomContainer ac1 = molecule.getBuilder().newInstance(IAtomContainer.class,molecule);
-		IAtomContainer ac2 = null;
-		IAtomContainer mol2 = null;
-		for (int f = 0; f < templates.size(); f++)
+		for (int f : templates.candidates(molecule, true))
 		{
-			mol2 = templates.get(f);
-			ac2 = molecule.getBuilder().newInstance(IAtomContainer.class,mol2);
-			if (new UniversalIsomorphismTester().isIsomorph(anonymousTemplate(ac1), ac2)) {
-				templates.remove(f);
-				return mol2;
-			}
+			if (topology(templates.get(f)).matches(molecule))
+				return templates.remove(f);
 		}
 		return null;
 	}
@@ -183,36 +204,16 @@ public class TemplateHandler
 	 * @return           True if there was a possible mapping
 	 */
 	public boolean mapTemplateExact(IAtomContainer molecule) throws CDKException {
-				logger.debug("Trying to map a molecule...");
+		logger.debug("Trying to map a molecule...");
 		boolean mapped = false;
-		IAtomContainer template = null;
-		RMap map = null;
-		IAtom atom1 = null;
-		IAtom atom2 = null;
-        
-        // We could also use any atom/bond query container but would required
-        // depending on 'cdk-isomorphism'. Instead we can anonymise the
-        // container to all singly bonded carbons.
-        IAtomContainer anonymised = AtomContainerManipulator.anonymise(molecule);
-
-		for (int f = 0; f < templates.size(); f++)
+		for (int f : templates.candidates(molecule, true))
 		{
-			template = templates.get(f);
-            if (new UniversalIsomorphismTester().isIsomorph(anonymised, template))
+			IAtomContainer template = templates.get(f);
+			int[] mapping = topology(template).matchAll(molecule).first();
+			if (mapping.length > 0)
 			{
-				List<RMap> list = universalIsomorphismTester.getIsomorphAtomsMap(
-					molecule.getBuilder().newInstance(IAtomContainer.class,anonymised),
-					molecule.getBuilder().newInstance(IAtomContainer.class,template)
-				);
-				logger.debug("Found a subgraph mapping of size " + list.size() + ", template: " + template.getID());
-				for (int i = 0; i < list.size(); i++)
-				{
-					map = list.get(i);
-					atom1 = molecule.getAtom(anonymised.getAtomNumber(anonymised.getAtom(map.getId1())));
-					atom2 = template.getAtom(map.getId2());
-					atom1.setPoint2d(new Point2d(atom2.getPoint2d()));
-					atom1.setFlag(CDKConstants.ISPLACED, true);
-				}
+				logger.debug("Found a subgraph mapping of size " + mapping.length + ", template: " + template.getID());
+				assignCoordinates(molecule, template, mapping);
 				mapped = true;
 			} else {
 				logger.debug("Structure does not match template: ", template.getID());
@@ -232,48 +233,54 @@ public class TemplateHandler
 	 */
 	@TestMethod("testRemoveMolecule")
 	public boolean mapTemplates(IAtomContainer molecule) throws CDKException {
-				logger.debug("Trying to map a molecule...");
+		logger.debug("Trying to map a molecule...");
 		boolean mapped = false;
-		IAtomContainer template = null;
-		RMap map = null;
-		IAtom atom1 = null;
-		IAtom atom2 = null;
-
-        // We could also use any atom/bond query container but would required
-        // depending on 'cdk-isomorphism'. Instead we can anonymise the
-        // container to all singly bonded carbons.
-        IAtomContainer anonymised = AtomContainerManipulator.anonymise(molecule);
-
-		for (int f = 0; f < templates.size(); f++)
+		for (int f : templates.candidates(molecule, false))
 		{
-			template = templates.get(f);
-			if (universalIsomorphismTester.isSubgraph(anonymised, template))
+			IAtomContainer template = templates.get(f);
+			boolean matched = false;
+			// one mapping of each matched set of atoms, the other mappings
+			// are symmetries of the template
+			for (int[] mapping : topology(template).matchAll(molecule).uniqueAtoms())
 			{
-				List listOfLists = universalIsomorphismTester.getSubgraphAtomsMaps(
-						molecule.getBuilder().newInstance(IAtomContainer.class,anonymised),
-						molecule.getBuilder().newInstance(IAtomContainer.class,template)
-				);
-				logger.debug("Found " + listOfLists.size() + " subgraphs matching template: " + template.getID());
-				for (Iterator listOfListsIterator = listOfLists.iterator(); listOfListsIterator.hasNext(); ) {
-					List list = (List) listOfListsIterator.next();
-					logger.debug("Found a subgraph mapping of size " + list.size() + ", template: " + template.getID());
-					for (int i = 0; i < list.size(); i++)
-					{
-						map = (RMap) list.get(i);
-						atom1 = molecule.getAtom(anonymised.getAtomNumber(anonymised.getAtom(map.getId1())));
-						atom2 = template.getAtom(map.getId2());
-						atom1.setPoint2d(new Point2d(atom2.getPoint2d()));
-						atom1.setFlag(CDKConstants.ISPLACED, true);
-					}
-					mapped = true;
-				}
-			} else {
-				logger.debug("Structure does not match template: ", template.getID());
+				logger.debug("Found a subgraph mapping of size " + mapping.length + ", template: " + template.getID());
+				assignCoordinates(molecule, template, mapping);
+				matched = mapped = true;
 			}
+			if (!matched)
+				logger.debug("Structure does not match template: ", template.getID());
 		}
 		return mapped;
 	}
 
+	/**
+	 * Assign the coordinates of a template to the mapped atoms of a molecule
+	 * and mark them as placed.
+	 *
+	 * @param molecule the molecule
+	 * @param template the template
+	 * @param mapping  the molecule atom index of each template atom
+	 */
+	private static void assignCoordinates(IAtomContainer molecule, IAtomContainer template, int[] mapping) {
+		for (int i = 0; i < mapping.length; i++)
+		{
+			IAtom atom = molecule.getAtom(mapping[i]);
+			atom.setPoint2d(new Point2d(template.getAtom(i).getPoint2d()));
+			atom.setFlag(CDKConstants.ISPLACED, true);
+		}
+	}
+
+	/**
+	 * A pattern which finds the topology of a template, any atom and bond
+	 * matches.
+	 *
+	 * @param template the template
+	 * @return the pattern
+	 */
+	private static Pattern topology(IAtomContainer template) {
+		return VentoFoggia.findSubstructure(template, AtomMatcher.forAny(), BondMatcher.forAny());
+	}
+
 
 	/**
 	 *  Gets the templateCount attribute of the TemplateHandler object
@@ -314,79 +321,48 @@ public class TemplateHandler
 		logger.debug("Trying get mapped substructures...");
 		IAtomContainerSet matchedSubstructures =
 		    molecule.getBuilder().newInstance(IAtomContainerSet.class);
-		for (int f = 0; f < templates.size(); f++)
+		// the matched sets of atoms, a substructure is only added once
+		Set<BitSet> matchedAtoms = new HashSet<BitSet>();
+		for (int f : templates.candidates(molecule, false))
 		{
 			IAtomContainer template = templates.get(f);
-			if (universalIsomorphismTester.isSubgraph(molecule, template))
-			{
-				List listOfLists = universalIsomorphismTester.getSubgraphAtomsMaps(
-						molecule.getBuilder().newInstance(IAtomContainer.class,molecule), 
-						molecule.getBuilder().newInstance(IAtomContainer.class,template)
-				);
-				logger.debug("Found " + listOfLists.size() + " subgraphs matching template: " + template.getID());
-				for (Iterator listOfListsIterator = listOfLists.iterator(); listOfListsIterator.hasNext(); ) {
-					List list = (List) listOfListsIterator.next();
-					logger.debug("Found a subgraph mapping of size " + list.size() + ", template: " + template.getID());
-					IAtomContainer matchedSubstructure = molecule.getBuilder().newInstance(IAtomContainer.class);
-					for (Iterator listIterator = list.iterator(); listIterator.hasNext(); )
-					{
-						RMap map = (RMap) listIterator.next();
-						IAtom atom = molecule.getAtom(map.getId1());
-						matchedSubstructure.addAtom(atom);
-					}
-					for (Iterator<IAtom> atomIterator = matchedSubstructure.atoms().iterator(); atomIterator.hasNext(); ) {
-						IAtom atom = atomIterator.next();
-						for (Iterator<IBond> connectedBondsIterator = molecule.getConnectedBondsList(atom).iterator(); connectedBondsIterator.hasNext(); ) {
-							IBond bond = connectedBondsIterator.next();
-							boolean addBond = true;
-							for (Iterator<IAtom> bondIterator = bond.atoms().iterator(); bondIterator.hasNext(); ) {
-								IAtom connectedAtom = bondIterator.next();
-								if (!matchedSubstructure.contains(connectedAtom) || matchedSubstructure.contains(bond))
-									addBond = false;
-							}
-							if (addBond)
-								matchedSubstructure.addBond(bond);
+			Pattern pattern = VentoFoggia.findSubstructure(template, CARBON, NON_AROMATIC_SINGLE);
+			boolean matched = false;
+			for (int[] mapping : pattern.matchAll(molecule).uniqueAtoms()) {
+				logger.debug("Found a subgraph mapping of size " + mapping.length + ", template: " + template.getID());
+				matched = true;
+				BitSet atoms = new BitSet();
+				for (int i = 0; i < mapping.length; i++)
+					atoms.set(mapping[i]);
+				if (!matchedAtoms.add(atoms))
+					continue;
+				IAtomContainer matchedSubstructure = molecule.getBuilder().newInstance(IAtomContainer.class);
+				for (int i = 0; i < mapping.length; i++)
+					matchedSubstructure.addAtom(molecule.getAtom(mapping[i]));
+				for (Iterator<IAtom> atomIterator = matchedSubstructure.atoms().iterator(); atomIterator.hasNext(); ) {
+					IAtom atom = atomIterator.next();
+					for (Iterator<IBond> connectedBondsIterator = molecule.getConnectedBondsList(atom).iterator(); connectedBondsIterator.hasNext(); ) {
+						IBond bond = connectedBondsIterator.next();
+						boolean addBond = true;
+						for (Iterator<IAtom> bondIterator = bond.atoms().iterator(); bondIterator.hasNext(); ) {
+							IAtom connectedAtom = bondIterator.next();
+							if (!matchedSubstructure.contains(connectedAtom) || matchedSubstructure.contains(bond))
+								addBond = false;
 						}
+						if (addBond)
+							matchedSubstructure.addBond(bond);
 					}
-					matchedSubstructures.addAtomContainer(matchedSubstructure);
 				}
-				
-			} else {
-				logger.debug("Structure does not match template: ", template.getID());
-			}
-		}
-		
-		/*
-		 * Uniquify matchedSubstructures
-		 */
-		for (int i = 0; i < matchedSubstructures.getAtomContainerCount(); i++) {
-			for (int j = i + 1; j < matchedSubstructures.getAtomContainerCount(); j++) {
-				if (haveSameAtoms(matchedSubstructures.getAtomContainer(i), matchedSubstructures.getAtomContainer(j)))
-					matchedSubstructures.removeAtomContainer(j--);
+				matchedSubstructures.addAtomContainer(matchedSubstructure);
 			}
+			if (!matched)
+				logger.debug("Structure does not match template: ", template.getID());
 		}
-		
+
 		logger.debug("Found " + matchedSubstructures.getAtomContainerCount() + " unique matched subgraphs");
 		
 		return matchedSubstructures;
 	}
-
-	/**
-	 * Returns true if both IAtomContainers have the same number of atoms and all atoms
-	 * are equal, false otherwise.
-	 * @param atomContainer1 an IAtomContainer
-	 * @param atomContainer2 another IAtomContainer
-	 * @return true if both IAtomContainers have the same number of atoms and all atoms
-	 *         are equal, false otherwise.
-	 */
-	private boolean haveSameAtoms(IAtomContainer atomContainer1, IAtomContainer atomContainer2) {
-		if (atomContainer1.getAtomCount() != atomContainer2.getAtomCount())
-			return false;
-		for (Iterator<IAtom> iterator = atomContainer1.atoms().iterator(); iterator.hasNext(); )
-			if (!atomContainer2.contains(iterator.next()))
-				return false;
-		return true;
-	}
 	
 }
 
@@ -0,0 +1,298 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.layout;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.graph.GraphSnapshot;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.ringsearch.RingSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The templates of a {@link TemplateHandler} with invariants to screen which
+ * templates may be found in a molecule. Templates are matched on their
+ * topology only and a template can only be a substructure of a molecule
+ * with at least as many atoms, bonds and ring atoms, with a ring system at
+ * least as large as the largest ring system of the template and with every
+ * ring path feature of the template.
+ *
+ * The ring path features are the paths (up to {@link #MAX_LENGTH} bonds) and
+ * cycles through ring bonds, counting how many of the atoms on the path are
+ * ring fusion atoms (more than two ring bonds). A path of the template maps
+ * to a path of the same length in the molecule with at least as many fusion
+ * atoms. The features of a molecule therefore include the features of every
+ * path with fewer fusion atoms, and a template feature set must be a subset
+ * of the molecule feature set. There are only a few such features and they
+ * are stored exactly (not hashed) in {@link #WORDS} words.
+ *
+ * @cdk.module sdg
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.layout.TemplateLibraryTest")
+final class TemplateLibrary {
+
+    /** Maximum length (bonds) of a ring path. */
+    static final int MAX_LENGTH = 8;
+
+    /** Counts of fusion atoms are capped at this value. */
+    private static final int MAX_FUSED = 3;
+
+    /** Index of the first cycle feature, the path features come first. */
+    private static final int CYCLES = MAX_LENGTH * 3 * (MAX_FUSED + 1);
+
+    /** Number of words of the ring path features. */
+    static final int WORDS = (CYCLES + MAX_LENGTH * (MAX_FUSED + 1) + 63) / 64;
+
+    /** The templates, in the order they were added. */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Add a template.
+     *
+     * @param template the (anonymised) template
+     */
+    @TestMethod("candidates")
+    void add(IAtomContainer template) {
+        entries.add(new Entry(template, new Invariants(template, false)));
+    }
+
+    /**
+     * Remove the template at the given index.
+     *
+     * @param index index of the template
+     * @return the template removed
+     */
+    @TestMethod("remove")
+    IAtomContainer remove(int index) {
+        return entries.remove(index).template;
+    }
+
+    /**
+     * Access the template at the given index.
+     *
+     * @param index index of the template
+     * @return the template
+     */
+    @TestMethod("candidates")
+    IAtomContainer get(int index) {
+        return entries.get(index).template;
+    }
+
+    /**
+     * The number of templates.
+     *
+     * @return number of templates
+     */
+    @TestMethod("candidates")
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * The indices, in the order they were added, of the templates which may
+     * be a substructure of the molecule - or which may be identical to the
+     * molecule. Templates whose index is not returned are certainly not found
+     * in the molecule.
+     *
+     * @param molecule  the molecule
+     * @param identical only the templates which may be identical
+     * @return indices of the candidate templates
+     */
+    @TestMethod("candidates,identical")
+    int[] candidates(IAtomContainer molecule, boolean identical) {
+        Invariants invariants = new Invariants(molecule, true);
+        int[] candidates = new int[entries.size()];
+        int n = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Invariants template = entries.get(i).invariants;
+            if (identical ? invariants.identical(template) : invariants.contains(template))
+                candidates[n++] = i;
+        }
+        return Arrays.copyOf(candidates, n);
+    }
+
+    /** A template and its invariants. */
+    private static final class Entry {
+
+        private final IAtomContainer template;
+        private final Invariants     invariants;
+
+        private Entry(IAtomContainer template, Invariants invariants) {
+            this.template = template;
+            this.invariants = invariants;
+        }
+    }
+
+    /** Invariants of the topology of a template or molecule. */
+    static final class Invariants {
+
+        /** Number of atoms, bonds and ring atoms. */
+        final int nAtoms, nBonds, nRingAtoms;
+
+        /** Number of atoms of the largest ring system. */
+        final int ringSystem;
+
+        /** The ring path features. */
+        final long[] features = new long[WORDS];
+
+        /** Neighbours of each atom through ring bonds. */
+        private final int[][] rings;
+
+        /** Whether each atom is a ring fusion atom. */
+        private final boolean[] fused;
+
+        /** Atoms on the current path. */
+        private final boolean[] visited;
+
+        /** Set the features of paths with fewer fusion atoms. */
+        private final boolean closed;
+
+        /**
+         * Compute the invariants of a structure.
+         *
+         * @param container the structure
+         * @param closed    include the features of paths with fewer fusion
+         *                  atoms (for a molecule, not for a template)
+         */
+        Invariants(IAtomContainer container, boolean closed) {
+            GraphSnapshot g = GraphSnapshot.of(container);
+            int[][] adjList = g.toAdjList();
+            RingSearch ringSearch = new RingSearch(container, adjList);
+
+            this.nAtoms = g.order();
+            this.nBonds = g.size();
+            this.nRingAtoms = ringSearch.cyclic().length;
+            int largest = 0;
+            for (int[] system : ringSearch.fused())
+                largest = Math.max(largest, system.length);
+            for (int[] ring : ringSearch.isolated())
+                largest = Math.max(largest, ring.length);
+            this.ringSystem = largest;
+
+            this.closed = closed;
+            this.rings = new int[nAtoms][];
+            this.fused = new boolean[nAtoms];
+            this.visited = new boolean[nAtoms];
+            for (int v = 0; v < nAtoms; v++) {
+                int[] ws = new int[adjList[v].length];
+                int d = 0;
+                for (int w : adjList[v]) {
+                    if (ringSearch.cyclic(v, w))
+                        ws[d++] = w;
+                }
+                rings[v] = Arrays.copyOf(ws, d);
+                fused[v] = d > 2;
+            }
+            for (int v = 0; v < nAtoms; v++) {
+                if (rings[v].length > 0) {
+                    visited[v] = true;
+                    paths(v, v, 0, 0);
+                    visited[v] = false;
+                }
+            }
+        }
+
+        /**
+         * Set the features of the paths from {@code start} which extend the
+         * path to {@code v}.
+         *
+         * @param start    first atom of the path
+         * @param v        last atom of the path
+         * @param length   number of bonds of the path
+         * @param interior number of fusion atoms of the path, excluding the
+         *                 first and last atom
+         */
+        private void paths(int start, int v, int length, int interior) {
+            int through = v != start && fused[v] ? interior + 1 : interior;
+            for (int w : rings[v]) {
+                if (w == start && length >= 2) {
+                    set(CYCLES + length * (MAX_FUSED + 1), through + count(start));
+                } else if (!visited[w]) {
+                    set((length * 3 + count(start) + count(w)) * (MAX_FUSED + 1), through);
+                    if (length + 1 < MAX_LENGTH) {
+                        visited[w] = true;
+                        paths(start, w, length + 1, through);
+                        visited[w] = false;
+                    }
+                }
+            }
+        }
+
+        private int count(int v) {
+            return fused[v] ? 1 : 0;
+        }
+
+        /**
+         * Set a feature, the features are laid out in groups of {@link
+         * #MAX_FUSED} + 1 which only differ in the number of fusion atoms.
+         * The number of fusion atoms at the ends of a path (0-2) is encoded
+         * in the group index, a closed set of features also includes the
+         * groups with fewer fusion atoms at the ends.
+         *
+         * @param group  first feature of the group
+         * @param nFused number of fusion atoms
+         */
+        private void set(int group, int nFused) {
+            int last = Math.min(nFused, MAX_FUSED);
+            int first = closed ? 0 : last;
+            for (int i = first; i <= last; i++)
+                features[(group + i) >> 6] |= 1L << (group + i);
+            // fusion atoms at the ends of a path
+            if (closed && group < CYCLES && (group / (MAX_FUSED + 1)) % 3 > 0)
+                set(group - (MAX_FUSED + 1), nFused);
+        }
+
+        /**
+         * Whether a structure with these invariants may contain a structure
+         * with the {@code other} invariants.
+         *
+         * @param other invariants of the substructure
+         * @return the substructure may be found
+         */
+        boolean contains(Invariants other) {
+            if (other.nAtoms > nAtoms || other.nBonds > nBonds || other.nRingAtoms > nRingAtoms
+                    || other.ringSystem > ringSystem)
+                return false;
+            for (int i = 0; i < WORDS; i++) {
+                if ((other.features[i] & ~features[i]) != 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Whether a structure with these invariants may be identical to a
+         * structure with the {@code other} invariants.
+         *
+         * @param other invariants of the other structure
+         * @return the structures may be identical
+         */
+        boolean identical(Invariants other) {
+            return other.nAtoms == nAtoms && other.nBonds == nBonds && contains(other);
+        }
+    }
+}
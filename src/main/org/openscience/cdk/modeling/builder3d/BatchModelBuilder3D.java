@@ -0,0 +1,311 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.modeling.builder3d;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generates 3D coordinates for a stream of molecules on a pool of worker
+ * threads and writes them, in input order, to an SD file. Each worker thread
+ * lays out the molecules with its own {@link ModelBuilder3D} (and force field
+ * configuration), the ring templates of the {@link TemplateHandler3D} are
+ * shared.
+ *
+ * <blockquote><pre>
+ * ExecutorService     executor = Executors.newFixedThreadPool(4);
+ * BatchModelBuilder3D batch    = new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2",
+ *                                                        builder, executor);
+ * batch.setTimeout(30, TimeUnit.SECONDS);
+ * int nWritten = batch.generate(new IteratingSDFReader(in, builder),
+ *                               new SDFWriter(out), new SDFWriter(failed));
+ * </pre></blockquote>
+ *
+ * A molecule which can not be laid out, or whose layout takes longer than
+ * the timeout, does not stop the batch: it is logged, skipped and written
+ * to the (optional) writer of failed molecules. A layout which times out is
+ * interrupted. The coordinates are generated on a copy of each input
+ * molecule. Molecules are read ahead of the molecule being written, see
+ * {@link #setBufferSize(int)}. If no executor is provided the molecules are
+ * laid out on the calling thread without a timeout.
+ *
+ * @cdk.module  builder3d
+ * @cdk.githash
+ * @cdk.keyword 3D coordinates
+ * @see ModelBuilder3D
+ */
+@TestClass("org.openscience.cdk.modeling.builder3d.BatchModelBuilder3DTest")
+public final class BatchModelBuilder3D {
+
+    private static final ILoggingTool logger = LoggingToolFactory.createLoggingTool(BatchModelBuilder3D.class);
+
+    /** Interval (ms) at which running layouts are checked against the timeout. */
+    private static final long POLL_INTERVAL = 50;
+
+    private final TemplateHandler3D  templateHandler;
+    private final String             forceField;
+    private final IChemObjectBuilder builder;
+
+    /** Executor the molecules are laid out on, null for the calling thread. */
+    private final ExecutorService executor;
+
+    /** The model builder of each thread. */
+    private final ThreadLocal<ModelBuilder3D> modelBuilders = new ThreadLocal<ModelBuilder3D>();
+
+    /** Time limit (ns) of a layout, 0 for none. */
+    private long timeout = 0;
+
+    /** Maximum number of molecules read ahead. */
+    private int bufferSize = 256;
+
+    /**
+     * Create a batch builder which lays out the molecules on the given
+     * executor.
+     *
+     * @param templateHandler ring templates
+     * @param forceField      name of the force field ("mm2" or "mmff94")
+     * @param builder         builder of the force field parameters
+     * @param executor        executor to lay out the molecules on (null: the calling thread)
+     * @throws CDKException the force field could not be configured
+     */
+    @TestMethod("generate,callingThread")
+    public BatchModelBuilder3D(TemplateHandler3D templateHandler, String forceField, IChemObjectBuilder builder,
+                               ExecutorService executor) throws CDKException {
+        if (forceField == null || forceField.length() == 0)
+            throw new CDKException("The given ffname is null or empty!");
+        if (templateHandler == null)
+            throw new CDKException("The given template handler is null!");
+        this.templateHandler = templateHandler;
+        this.forceField = forceField;
+        this.builder = builder;
+        this.executor = executor;
+        // fail early on an unknown force field
+        modelBuilder();
+    }
+
+    /**
+     * Set the time limit of the layout of a single molecule. The time is
+     * counted from the start of the layout, not from when the molecule was
+     * read. A timeout requires an executor.
+     *
+     * @param timeout time limit, 0 for none
+     * @param unit    unit of the time limit
+     */
+    @TestMethod("timeout")
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("negative timeout");
+        this.timeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Set the maximum number of molecules which are read ahead of the
+     * molecule which is written next. It limits the memory used while a slow
+     * layout holds up the output and should be several times the number of
+     * worker threads.
+     *
+     * @param bufferSize number of molecules (&gt; 0)
+     */
+    @TestMethod("generate")
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Generate the 3D coordinates of the molecules and write them, in the
+     * order they are read, to an SD file. The molecules should have explicit
+     * hydrogens (see {@link ModelBuilder3D#generate3DCoordinates(IAtomContainer, boolean)}).
+     *
+     * @param molecules the molecules
+     * @param writer    writer of the molecules with 3D coordinates
+     * @param failures  writer of the molecules which could not be laid out (may be null)
+     * @return number of molecules written with 3D coordinates
+     * @throws CDKException a molecule could not be written
+     */
+    @TestMethod("generate,callingThread")
+    public int generate(Iterator<IAtomContainer> molecules, SDFWriter writer, SDFWriter failures)
+            throws CDKException {
+        Deque<Layout> pending = new ArrayDeque<Layout>(bufferSize);
+        int index = 0, nWritten = 0;
+        try {
+            while (true) {
+                while (pending.size() < bufferSize && molecules.hasNext()) {
+                    Layout layout = new Layout(index++, molecules.next());
+                    if (executor != null)
+                        layout.future = executor.submit(layout);
+                    pending.add(layout);
+                }
+                if (pending.isEmpty())
+                    return nWritten;
+
+                Layout layout = pending.poll();
+                IAtomContainer result = await(layout, pending);
+                if (result != null) {
+                    writer.write(result);
+                    nWritten++;
+                } else {
+                    failed(logger, layout.index, layout.molecule, layout.error);
+                    if (failures != null)
+                        failures.write(layout.molecule);
+                }
+            }
+        } finally {
+            for (Layout layout : pending) {
+                if (layout.future != null)
+                    layout.future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Log a molecule which could not be laid out. The title and error may be
+     * null, the logger requires non-null arguments.
+     *
+     * @param logger   the logger to warn
+     * @param index    position of the molecule in the input
+     * @param molecule the molecule
+     * @param error    why the layout failed
+     */
+    static void failed(ILoggingTool logger, int index, IAtomContainer molecule, String error) {
+        logger.warn("Could not generate 3D coordinates for molecule ", index, " (",
+                    String.valueOf((Object) molecule.getProperty(CDKConstants.TITLE)), "): ", String.valueOf(error));
+    }
+
+    /**
+     * Wait for a layout to complete. While waiting, the layouts which exceed
+     * the timeout are cancelled.
+     *
+     * @param layout  the layout to wait for
+     * @param pending the other pending layouts
+     * @return the molecule with 3D coordinates, null if the layout failed
+     */
+    private IAtomContainer await(Layout layout, Iterable<Layout> pending) {
+        try {
+            if (layout.future == null)
+                return layout.call();
+            if (timeout == 0)
+                return layout.future.get();
+            while (true) {
+                try {
+                    return layout.future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    long now = System.nanoTime();
+                    layout.expire(now);
+                    for (Layout other : pending)
+                        other.expire(now);
+                }
+            }
+        } catch (CancellationException e) {
+            layout.error = "timed out";
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while generating 3D coordinates", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+                throw (Error) cause;
+            layout.error = cause.toString();
+            return null;
+        } catch (Exception e) {
+            layout.error = e.toString();
+            return null;
+        }
+    }
+
+    /**
+     * The model builder of the current thread, it is created when the thread
+     * lays out its first molecule.
+     *
+     * @return the model builder
+     * @throws CDKException the force field could not be configured
+     */
+    private ModelBuilder3D modelBuilder() throws CDKException {
+        ModelBuilder3D modelBuilder = modelBuilders.get();
+        if (modelBuilder == null) {
+            modelBuilder = new ModelBuilder3D(templateHandler, forceField, builder);
+            modelBuilders.set(modelBuilder);
+        }
+        return modelBuilder;
+    }
+
+    /** The layout of a single molecule. */
+    private final class Layout implements Callable<IAtomContainer> {
+
+        /** Position of the molecule in the input. */
+        private final int index;
+
+        /** The input molecule. */
+        private final IAtomContainer molecule;
+
+        private Future<IAtomContainer> future;
+
+        /** Start (System.nanoTime()) of the layout, valid once running is set. */
+        private long             started;
+        private volatile boolean running;
+
+        /** Why the layout failed. */
+        private String error;
+
+        private Layout(int index, IAtomContainer molecule) {
+            this.index = index;
+            this.molecule = molecule;
+        }
+
+        @Override public IAtomContainer call() throws Exception {
+            started = System.nanoTime();
+            running = true;
+            return modelBuilder().generate3DCoordinates(molecule, true);
+        }
+
+        /**
+         * Cancel the layout if it exceeds the timeout.
+         *
+         * @param now the current time (System.nanoTime())
+         */
+        private void expire(long now) {
+            if (running && now - started > timeout)
+                future.cancel(true);
+        }
+    }
+}
@@ -88,17 +88,19 @@ public class ModelBuilder3D {
         LoggingToolFactory.createLoggingTool(ModelBuilder3D.class);
 	
 	/**
-	 * Constructor for the ModelBuilder3D object.
+	 * Constructor for the ModelBuilder3D object. Unlike {@link #getInstance}
+	 * each call creates a new builder, the {@link BatchModelBuilder3D} uses one
+	 * per worker thread.
 	 *	 
 	 * @param  templateHandler  templateHandler Object
 	 * @param  ffname           name of force field
 	 */
-	private ModelBuilder3D(TemplateHandler3D templateHandler, String ffname, IChemObjectBuilder builder) throws CDKException {
+	ModelBuilder3D(TemplateHandler3D templateHandler, String ffname, IChemObjectBuilder builder) throws CDKException {
 		setTemplateHandler(templateHandler);
 		setForceField(ffname, builder);
 	}
 
-	public static ModelBuilder3D getInstance(TemplateHandler3D templateHandler, String ffname, IChemObjectBuilder chemObjectBuilder) throws CDKException {
+	public static synchronized ModelBuilder3D getInstance(TemplateHandler3D templateHandler, String ffname, IChemObjectBuilder chemObjectBuilder) throws CDKException {
 		if (ffname == null || ffname.length() == 0) throw new CDKException("The given ffname is null or empty!");
 		if (templateHandler == null) throw new CDKException("The given template handler is null!");
 		
@@ -273,6 +275,8 @@ public class ModelBuilder3D {
 		IAtom atom = null;
 		//Place rest Chains/Atoms
 		do {
+			if (Thread.currentThread().isInterrupted())
+				throw new CDKException("Interrupted while laying out the molecule");
 			safetyCounter++;
 			atom = ap3d.getNextPlacedHeavyAtomWithUnplacedRingNeighbour(molecule);
 			if (atom != null) {
@@ -23,14 +23,23 @@ package org.openscience.cdk.modeling.builder3d;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.exception.CDKException;
@@ -64,7 +73,8 @@ import org.openscience.cdk.tools.manipulator.RingSetManipulator;
  */
 public class TemplateExtractor {
 
-	static final String usage = "Usage: TemplateExtractor SDFinfile outfile anyAtom=true/false anyBondAnyAtom=true/false";
+	static final String usage = "Usage: TemplateExtractor SDFinfile outfile anyAtom=true/false anyBondAnyAtom=true/false\n"
+	                          + "       TemplateExtractor -store SDFinfile fingerprintfile storefile";
 	
 	private final static IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
 
@@ -499,6 +509,53 @@ public class TemplateExtractor {
 		}
 	}
 
+	/**
+	 * Writes the templates of an SD file and their fingerprints (as written by
+	 * {@link #makeFingerprintFromRingSystems(String, String, boolean, boolean)})
+	 * to a binary store, which is loaded by {@link TemplateHandler3D}. Files
+	 * ending with '.gz' are read and written compressed.
+	 *
+	 * @param structuresIn   SD file with the templates
+	 * @param fingerprintsIn fingerprints of the templates, one per line
+	 * @param storeOut       the store to write
+	 */
+	public void makeTemplateStore(String structuresIn, String fingerprintsIn, String storeOut)
+	throws Exception {
+		List<IAtomContainer> templates = new ArrayList<IAtomContainer>();
+		IteratingSDFReader imdl = new IteratingSDFReader(open(structuresIn), builder);
+		try {
+			while (imdl.hasNext())
+				templates.add(imdl.next());
+		} finally {
+			imdl.close();
+		}
+
+		List<BitSet> fingerprints = new ArrayList<BitSet>();
+		BufferedReader fin = new BufferedReader(new InputStreamReader(open(fingerprintsIn)));
+		try {
+			String line;
+			while ((line = fin.readLine()) != null)
+				fingerprints.add(TemplateHandler3D.getBitSetFromFile(new StringTokenizer(line, "\t ;{, }")));
+		} finally {
+			fin.close();
+		}
+
+		OutputStream out = new FileOutputStream(storeOut);
+		if (storeOut.endsWith(".gz"))
+			out = new GZIPOutputStream(out);
+		try {
+			TemplateStore.write(templates, fingerprints, HybridizationFingerprinter.DEFAULT_SIZE, out);
+		} finally {
+			out.close();
+		}
+		System.out.println("Templates: " + templates.size() + " are written...ready");
+	}
+
+	private static InputStream open(String file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		return file.endsWith(".gz") ? new GZIPInputStream(in) : in;
+	}
+
 	public IAtomContainer removeLoopBonds(IAtomContainer molecule, int position) {
 		for (int i = 0; i < molecule.getBondCount(); i++) {
 			IBond bond = molecule.getBond(i);
@@ -538,7 +595,10 @@ public class TemplateExtractor {
 
 		}
 		try {
-			new TemplateExtractor().makeFingerprintFromRingSystems(args[0],
+			if ("-store".equals(args[0]))
+				new TemplateExtractor().makeTemplateStore(args[1], args[2], args[3]);
+			else
+				new TemplateExtractor().makeFingerprintFromRingSystems(args[0],
 					args[1], Boolean.valueOf(args[2]), Boolean.valueOf(args[3]));
 		} catch (Exception e) {
 			System.out.println(usage);
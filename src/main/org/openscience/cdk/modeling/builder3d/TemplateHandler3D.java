@@ -23,11 +23,8 @@
  */
 package org.openscience.cdk.modeling.builder3d;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
@@ -38,14 +35,11 @@ import javax.vecmath.Point3d;
 
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.fingerprint.FingerprinterTool;
 import org.openscience.cdk.fingerprint.HybridizationFingerprinter;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
-import org.openscience.cdk.interfaces.IAtomContainerSet;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IRingSet;
-import org.openscience.cdk.io.iterator.IteratingSDFReader;
 import org.openscience.cdk.isomorphism.UniversalIsomorphismTester;
 import org.openscience.cdk.isomorphism.mcss.RMap;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
@@ -71,22 +65,19 @@ public class TemplateHandler3D {
 	private static final ILoggingTool logger =
         LoggingToolFactory.createLoggingTool(TemplateHandler3D.class);
 	
+	/** Binary store of the templates, see {@link TemplateExtractor#makeTemplateStore}. */
+	private static final String TEMPLATE_STORE = "org/openscience/cdk/modeling/builder3d/data/ringTemplateStore.bin.gz";
+
 	IAtomContainer molecule;
     IRingSet sssr;
-    IAtomContainerSet templates = null;
-    List<BitSet> fingerprintData = null;
-    private boolean templatesLoaded = false;
+    private volatile TemplateStore store = null;
 
     private static TemplateHandler3D self = null;
 
-    private UniversalIsomorphismTester universalIsomorphismTester = new UniversalIsomorphismTester();
-    
     private TemplateHandler3D() {
-        templates = builder.newInstance(IAtomContainerSet.class);
-        fingerprintData = new ArrayList<BitSet>();
     }
 
-    public static TemplateHandler3D getInstance() throws CDKException {
+    public static synchronized TemplateHandler3D getInstance() throws CDKException {
     	if (self == null) {
     		self = new TemplateHandler3D();
     	}
@@ -94,61 +85,27 @@ public class TemplateHandler3D {
     }
 
     /**
-     * Loads all existing templates into memory. 
-     * Template file is a mdl file. Creates a Object Set of Molecules
+     * Loads the template store. The templates and the index of their
+     * fingerprints are only decoded when they are first needed.
      * @throws CDKException The template file cannot be loaded
      */
-    private void loadTemplates() throws CDKException{
+    private synchronized void loadTemplates() throws CDKException{
+        if (store != null) return;
         logger.debug("Loading templates...");
-        IteratingSDFReader imdl;
-        InputStream ins;
-        BufferedReader fin;
-
+        InputStream ins = this.getClass().getClassLoader().getResourceAsStream(TEMPLATE_STORE);
+        if (ins == null)
+            throw new CDKException("Could not find the template store " + TEMPLATE_STORE);
         try {
-            ins = this.getClass().getClassLoader().getResourceAsStream("org/openscience/cdk/modeling/builder3d/data/ringTemplateStructures.sdf.gz");
-            fin = new BufferedReader(new InputStreamReader(new GZIPInputStream(ins)));
-            imdl = new IteratingSDFReader(fin, builder);
-        } catch (IOException exc1) {
-            throw new CDKException("Problems loading file ringTemplateStructures.sdf.gz", exc1);
-        }
-        IAtomContainer molecule;
-        while (imdl.hasNext()) {
-            molecule = (IAtomContainer) imdl.next();
-            templates.addAtomContainer(molecule);
-        }
-        molecule = null;
-        try {
-            imdl.close();
-        } catch (Exception exc2) {
-            System.out.println("Could not close Reader due to: " + exc2.getMessage());
-        }
-        //logger.debug("TEMPLATE Finger");
-        try {
-
-            ins = this.getClass().getClassLoader().getResourceAsStream("org/openscience/cdk/modeling/builder3d/data/ringTemplateFingerprints.txt.gz");
-            fin = new BufferedReader(new InputStreamReader(new GZIPInputStream(ins)));
-        } catch (Exception exc3) {
-            throw new CDKException("Could not read Fingerprints from FingerprintFile due to: " + exc3.getMessage(), exc3);
-        }
-        String s = null;
-        while (true) {
-            try {
-                s = fin.readLine();
-            } catch (Exception exc4) {
-                throw new CDKException("Error while reading the fingerprints: " + exc4.getMessage(), exc4);
-            }
-
-            if (s == null) {
-                break;
-            }
+            store = TemplateStore.read(new GZIPInputStream(ins), builder);
+        } catch (IOException exception) {
+            throw new CDKException("Problems loading file " + TEMPLATE_STORE, exception);
+        } finally {
             try {
-	            fingerprintData.add((BitSet) getBitSetFromFile(new StringTokenizer(s, "\t ;{, }")));
-            } catch (Exception exception) {
-            	throw new CDKException("Error while reading the fingerprints: " + exception.getMessage(), exception);
+                ins.close();
+            } catch (IOException exception) {
+                logger.debug(exception);
             }
         }
-        //logger.debug("Fingerprints are read in:"+fingerprintData.size());
-        templatesLoaded = true;
     }
 
     public static BitSet getBitSetFromFile(StringTokenizer st) throws Exception {
@@ -197,57 +154,56 @@ public class TemplateHandler3D {
      * @throws CloneNotSupportedException The atomcontainer cannot be cloned.
      */
     public void mapTemplates(IAtomContainer ringSystems, double NumberOfRingAtoms) throws CDKException, CloneNotSupportedException{
-		if (!templatesLoaded) self.loadTemplates();
+		if (store == null) loadTemplates();
 
         //logger.debug("Map Template...START---Number of Ring Atoms:"+NumberOfRingAtoms);
         IAtomContainer ringSystemAnyBondAnyAtom = AtomContainerManipulator.anonymise(ringSystems);
         BitSet ringSystemFingerprint = new HybridizationFingerprinter().getBitFingerprint(ringSystemAnyBondAnyAtom).asBitSet();
         boolean flagMaxSubstructure = false;
         boolean flagSecondbest=false;
-        for (int i = 0; i < fingerprintData.size(); i++) {
-            IAtomContainer template = templates.getAtomContainer(i);
-            //if the atom count is different, it can't be right anyway
-            if (template.getAtomCount() != ringSystems.getAtomCount()) {
-                continue;
-            }
-            //we compare the fingerprint with any atom and any bond
-            if (FingerprinterTool.isSubset(fingerprintData.get(i),ringSystemFingerprint)) {
-                IAtomContainer templateAnyBondAnyAtom = AtomContainerManipulator.anonymise(template);
-                //we do the exact match with any atom and any bond
-                if (universalIsomorphismTester.isSubgraph(ringSystemAnyBondAnyAtom, templateAnyBondAnyAtom)) {
-                	//if this is the case, we keep it as a guess, but look if we can do better
-                    List<RMap> list = universalIsomorphismTester.getSubgraphAtomsMap(ringSystemAnyBondAnyAtom, templateAnyBondAnyAtom);
-                    boolean flagwritefromsecondbest=false;
-                    if ((NumberOfRingAtoms) / list.size() == 1 && templateAnyBondAnyAtom.getBondCount()==ringSystems.getBondCount()) {
-                    	//so atom and bond count match, could be it's even an exact match,
-                    	//we check this with the original ring system
-                    	if(universalIsomorphismTester.isSubgraph(ringSystems, template)){
-                    		flagMaxSubstructure = true;
-                    		list = universalIsomorphismTester.getSubgraphAtomsMap(ringSystems, template);
-                    	}else{
-                    		//if it isn't we still now it's better than just the isomorphism
-                    		flagSecondbest = true;
-                    		flagwritefromsecondbest=true;
-                    	}
-                    }
-                    
-                    if(!flagSecondbest || flagMaxSubstructure || flagwritefromsecondbest){
-	                    for (int j = 0; j < list.size(); j++) {
-	                        RMap map = (RMap) list.get(j);
-	                        IAtom atom1 = ringSystems.getAtom(map.getId1());
-	                        IAtom atom2 = template.getAtom(map.getId2());
-	                        if (atom1.getFlag(CDKConstants.ISINRING)) {
-	                        	atom1.setPoint3d(new Point3d(atom2.getPoint3d()));
-	                        }
-	                    }//for j
-                    }
-
-                    if (flagMaxSubstructure) {
-                        break;
-                    }
-
-                }//if subgraph
-            }//if fingerprint
+        // the tester keeps the start time of a search, it is not shared between threads
+        UniversalIsomorphismTester universalIsomorphismTester = new UniversalIsomorphismTester();
+        //only templates with the same atom count which have all bits of the
+        //ring system fingerprint (any atom and any bond) set can match
+        for (int i : store.candidates(ringSystems.getAtomCount(), ringSystemFingerprint)) {
+            if (Thread.currentThread().isInterrupted())
+                throw new CDKException("Interrupted while mapping the ring templates");
+            IAtomContainer template = store.get(i);
+            IAtomContainer templateAnyBondAnyAtom = AtomContainerManipulator.anonymise(template);
+            //we do the exact match with any atom and any bond
+            if (universalIsomorphismTester.isSubgraph(ringSystemAnyBondAnyAtom, templateAnyBondAnyAtom)) {
+            	//if this is the case, we keep it as a guess, but look if we can do better
+                List<RMap> list = universalIsomorphismTester.getSubgraphAtomsMap(ringSystemAnyBondAnyAtom, templateAnyBondAnyAtom);
+                boolean flagwritefromsecondbest=false;
+                if ((NumberOfRingAtoms) / list.size() == 1 && templateAnyBondAnyAtom.getBondCount()==ringSystems.getBondCount()) {
+                	//so atom and bond count match, could be it's even an exact match,
+                	//we check this with the original ring system
+                	if(universalIsomorphismTester.isSubgraph(ringSystems, template)){
+                		flagMaxSubstructure = true;
+                		list = universalIsomorphismTester.getSubgraphAtomsMap(ringSystems, template);
+                	}else{
+                		//if it isn't we still now it's better than just the isomorphism
+                		flagSecondbest = true;
+                		flagwritefromsecondbest=true;
+                	}
+                }
+                
+                if(!flagSecondbest || flagMaxSubstructure || flagwritefromsecondbest){
+                    for (int j = 0; j < list.size(); j++) {
+                        RMap map = (RMap) list.get(j);
+                        IAtom atom1 = ringSystems.getAtom(map.getId1());
+                        IAtom atom2 = template.getAtom(map.getId2());
+                        if (atom1.getFlag(CDKConstants.ISINRING)) {
+                        	atom1.setPoint3d(new Point3d(atom2.getPoint3d()));
+                        }
+                    }//for j
+                }
+
+                if (flagMaxSubstructure) {
+                    break;
+                }
+
+            }//if subgraph
         }//for i
         if (!flagMaxSubstructure) {
             System.out.println("WARNING: Maybe RingTemplateError!");
@@ -260,7 +216,7 @@ public class TemplateHandler3D {
      * @return The templateCount value
      */
     public int getTemplateCount() {
-        return templates.getAtomContainerCount();
+        return store != null ? store.size() : 0;
     }
 
 
@@ -271,7 +227,7 @@ public class TemplateHandler3D {
      *@return The templateAt value
      */
     public IAtomContainer getTemplateAt(int position) {
-        return templates.getAtomContainer(position);
+        return store.get(position);
 	}
 }
 
@@ -0,0 +1,459 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.modeling.builder3d;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.stereo.StereoElementFactory;
+
+import javax.vecmath.Point3d;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compact binary store of the 3D ring templates and their fingerprints.
+ * The store is read directly from a {@link ByteBuffer}, which may be a
+ * memory mapped file, the templates are only decoded when they are needed.
+ * Templates which may contain a ring system (same number of atoms and all
+ * bits of the ring system fingerprint set) are found with a bit-sliced
+ * index: for each atom count and fingerprint bit the templates which have
+ * the bit set are stored as a bit set over the templates. The index of an
+ * atom count is built the first time it is queried.
+ *
+ * <p>The store is big-endian and consists of a header (magic number,
+ * version, number of templates, number of 64 bit words per fingerprint and
+ * the element symbols), the offset of each template, the fingerprints and
+ * the templates. A template is stored as its atom and bond counts, whether
+ * stereo elements are perceived from its coordinates, the atoms (symbol,
+ * atomic number, charge, mass number, hydrogen count, valency, stereo
+ * parity, flags and coordinates in 1/10000 &Aring;ngstr&ouml;m) and the bonds (atoms, order,
+ * stereo and flags).
+ *
+ * <p>The store may be shared between threads.
+ *
+ * @cdk.module  builder3d
+ * @cdk.githash
+ * @see TemplateHandler3D
+ */
+@TestClass("org.openscience.cdk.modeling.builder3d.TemplateStoreTest")
+final class TemplateStore {
+
+    /** 'CDKT' */
+    private static final int MAGIC = 0x43444B54;
+
+    private static final int VERSION = 1;
+
+    /** Value of an unset (null) number. */
+    private static final short UNSET = Short.MIN_VALUE;
+
+    /** Coordinates are stored as integers in this unit. */
+    private static final double SCALE = 10000;
+
+    /** Size in bytes of the record header, an atom and a bond. */
+    private static final int RECORD_SIZE = 5, ATOM_SIZE = 27, BOND_SIZE = 8;
+
+    private static final IBond.Order[]  ORDERS  = IBond.Order.values();
+    private static final IBond.Stereo[] STEREOS = IBond.Stereo.values();
+
+    private final ByteBuffer buffer;
+
+    private final IChemObjectBuilder builder;
+
+    /** Number of templates and 64 bit words per fingerprint. */
+    private final int count, words;
+
+    private final String[] symbols;
+
+    /** Position of the offsets and of the fingerprints in the buffer. */
+    private final int offsets, fingerprints;
+
+    /** Templates ordered by atom count, in their original order otherwise. */
+    private final int[] order;
+
+    /** The templates with n atoms are order[start[n]] ... order[start[n+1]-1]. */
+    private final int[] start;
+
+    /** Bit-sliced fingerprints of each atom count, built when first needed. */
+    private final AtomicReferenceArray<long[]> slices;
+
+    /** Decoded templates. */
+    private final AtomicReferenceArray<IAtomContainer> templates;
+
+    /**
+     * Open a store held in a buffer. The buffer is not copied and must not
+     * be modified.
+     *
+     * @param buffer  the store
+     * @param builder builder to create the templates with
+     * @throws CDKException the buffer does not hold a template store
+     */
+    @TestMethod("roundTrip,notAStore")
+    TemplateStore(ByteBuffer buffer, IChemObjectBuilder builder) throws CDKException {
+        this.buffer = buffer.slice();
+        this.builder = builder;
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION)
+            throw new CDKException("Not a template store (or an unsupported version)");
+        this.count = this.buffer.getInt(8);
+        this.words = this.buffer.getInt(12);
+
+        int pos = 16;
+        this.symbols = new String[this.buffer.get(pos++)];
+        for (int i = 0; i < symbols.length; i++) {
+            char[] chars = new char[this.buffer.get(pos++)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) this.buffer.get(pos++);
+            symbols[i] = new String(chars);
+        }
+        this.offsets = pos;
+        this.fingerprints = offsets + 4 * count;
+
+        // group the templates by atom count
+        int maxAtoms = 0;
+        for (int i = 0; i < count; i++)
+            maxAtoms = Math.max(maxAtoms, atomCount(i));
+        this.start = new int[maxAtoms + 2];
+        for (int i = 0; i < count; i++)
+            start[atomCount(i) + 1]++;
+        for (int n = 0; n <= maxAtoms; n++)
+            start[n + 1] += start[n];
+        int[] next = start.clone();
+        this.order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[next[atomCount(i)]++] = i;
+
+        this.slices = new AtomicReferenceArray<long[]>(maxAtoms + 1);
+        this.templates = new AtomicReferenceArray<IAtomContainer>(count);
+    }
+
+    /**
+     * Read a store from a stream into memory.
+     *
+     * @param in      the stream (not closed)
+     * @param builder builder to create the templates with
+     * @return the store
+     * @throws IOException  the stream could not be read
+     * @throws CDKException the stream does not hold a template store
+     */
+    @TestMethod("roundTrip")
+    static TemplateStore read(InputStream in, IChemObjectBuilder builder) throws IOException, CDKException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buf)) > 0)
+            bytes.write(buf, 0, n);
+        return new TemplateStore(ByteBuffer.wrap(bytes.toByteArray()), builder);
+    }
+
+    /**
+     * Number of templates.
+     *
+     * @return the number of templates
+     */
+    @TestMethod("roundTrip")
+    int size() {
+        return count;
+    }
+
+    /**
+     * Number of atoms of a template.
+     *
+     * @param i index of the template
+     * @return the number of atoms
+     */
+    @TestMethod("roundTrip")
+    int atomCount(int i) {
+        return buffer.getShort(offset(i));
+    }
+
+    /**
+     * The fingerprint of a template.
+     *
+     * @param i index of the template
+     * @return the fingerprint
+     */
+    @TestMethod("roundTrip")
+    BitSet fingerprint(int i) {
+        BitSet fingerprint = new BitSet(64 * words);
+        for (int w = 0; w < words; w++) {
+            long word = buffer.getLong(fingerprints + 8 * (i * words + w));
+            for (int b = 0; b < 64; b++) {
+                if ((word & (1L << b)) != 0)
+                    fingerprint.set(64 * w + b);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * The templates with the given number of atoms whose fingerprint has all
+     * bits of the query fingerprint set.
+     *
+     * @param atomCount   number of atoms
+     * @param fingerprint the query fingerprint
+     * @return indices of the templates, ascending
+     */
+    @TestMethod("candidates")
+    int[] candidates(int atomCount, BitSet fingerprint) {
+        if (atomCount < 0 || atomCount >= start.length - 1 || fingerprint.length() > 64 * words)
+            return new int[0];
+        int first = start[atomCount], n = start[atomCount + 1] - first;
+        int w = (n + 63) / 64;
+        long[] slice = slices(atomCount);
+
+        long[] match = new long[w];
+        for (int k = 0; k < n; k++)
+            match[k / 64] |= 1L << k;
+        for (int b = fingerprint.nextSetBit(0); b >= 0; b = fingerprint.nextSetBit(b + 1)) {
+            for (int k = 0; k < w; k++)
+                match[k] &= slice[b * w + k];
+        }
+
+        int[] candidates = new int[n];
+        int size = 0;
+        for (int k = 0; k < n; k++) {
+            if ((match[k / 64] & (1L << k)) != 0)
+                candidates[size++] = order[first + k];
+        }
+        int[] result = new int[size];
+        System.arraycopy(candidates, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * The bit-sliced fingerprints of the templates with the given atom count,
+     * word k of bit b is at b * w + k (w words per bit).
+     */
+    private long[] slices(int atomCount) {
+        long[] slice = slices.get(atomCount);
+        if (slice != null)
+            return slice;
+        int first = start[atomCount], n = start[atomCount + 1] - first;
+        int w = (n + 63) / 64;
+        slice = new long[64 * words * w];
+        for (int k = 0; k < n; k++) {
+            int i = order[first + k];
+            for (int v = 0; v < words; v++) {
+                long word = buffer.getLong(fingerprints + 8 * (i * words + v));
+                while (word != 0) {
+                    int b = 64 * v + Long.numberOfTrailingZeros(word);
+                    slice[b * w + k / 64] |= 1L << k;
+                    word &= word - 1;
+                }
+            }
+        }
+        slices.compareAndSet(atomCount, null, slice);
+        return slices.get(atomCount);
+    }
+
+    /**
+     * A template, it is decoded when first requested. The same instance is
+     * returned on subsequent calls.
+     *
+     * @param i index of the template
+     * @return the template
+     */
+    @TestMethod("roundTrip")
+    IAtomContainer get(int i) {
+        IAtomContainer template = templates.get(i);
+        if (template == null) {
+            templates.compareAndSet(i, null, decode(offset(i)));
+            template = templates.get(i);
+        }
+        return template;
+    }
+
+    private int offset(int i) {
+        return buffer.getInt(offsets + 4 * i);
+    }
+
+    /**
+     * Decode the template at the given position.
+     *
+     * @param pos position of the template
+     * @return the template
+     */
+    private IAtomContainer decode(int pos) {
+        IAtomContainer container = builder.newInstance(IAtomContainer.class);
+        int nAtoms = buffer.getShort(pos), nBonds = buffer.getShort(pos + 2);
+        boolean stereo = buffer.get(pos + 4) != 0;
+        pos += RECORD_SIZE;
+
+        IAtom[] atoms = new IAtom[nAtoms];
+        for (int i = 0; i < nAtoms; i++, pos += ATOM_SIZE) {
+            IAtom atom = builder.newInstance(IAtom.class, symbols[buffer.get(pos)]);
+            atom.setAtomicNumber(getNumber(pos + 1));
+            atom.setFormalCharge(getNumber(pos + 3));
+            atom.setMassNumber(getNumber(pos + 5));
+            atom.setImplicitHydrogenCount(getNumber(pos + 7));
+            atom.setValency(getNumber(pos + 9));
+            atom.setStereoParity(getNumber(pos + 11));
+            atom.setFlag(buffer.getShort(pos + 13), true);
+            atom.setPoint3d(new Point3d(buffer.getInt(pos + 15) / SCALE,
+                                        buffer.getInt(pos + 19) / SCALE,
+                                        buffer.getInt(pos + 23) / SCALE));
+            atoms[i] = atom;
+        }
+        container.setAtoms(atoms);
+
+        IBond[] bonds = new IBond[nBonds];
+        for (int i = 0; i < nBonds; i++, pos += BOND_SIZE) {
+            IBond bond = builder.newInstance(IBond.class, atoms[buffer.getShort(pos)], atoms[buffer.getShort(pos + 2)]);
+            byte order = buffer.get(pos + 4), stereoType = buffer.get(pos + 5);
+            bond.setOrder(order < 0 ? null : ORDERS[order]);
+            bond.setStereo(stereoType < 0 ? null : STEREOS[stereoType]);
+            bond.setFlag(buffer.getShort(pos + 6), true);
+            bonds[i] = bond;
+        }
+        container.setBonds(bonds);
+
+        if (stereo)
+            container.setStereoElements(StereoElementFactory.using3DCoordinates(container).createAll());
+        return container;
+    }
+
+    /**
+     * A nullable number at the given position.
+     */
+    private Integer getNumber(int pos) {
+        short value = buffer.getShort(pos);
+        return value == UNSET ? null : Integer.valueOf(value);
+    }
+
+    /**
+     * Write templates and their fingerprints as a store.
+     *
+     * @param templates    the templates
+     * @param fingerprints the fingerprint of each template
+     * @param size         number of bits of the fingerprints
+     * @param out          stream to write the store to (not closed)
+     * @throws IOException  the store could not be written
+     * @throws CDKException a template can not be stored
+     */
+    @TestMethod("roundTrip,inexactCoordinates")
+    static void write(List<IAtomContainer> templates, List<BitSet> fingerprints, int size,
+                      OutputStream out) throws IOException, CDKException {
+        if (templates.size() != fingerprints.size())
+            throw new CDKException("Number of templates and fingerprints differ");
+        int words = (size + 63) / 64;
+        List<String> symbols = new ArrayList<String>();
+        for (IAtomContainer template : templates) {
+            for (IAtom atom : template.atoms()) {
+                if (!symbols.contains(atom.getSymbol()))
+                    symbols.add(atom.getSymbol());
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(templates.size());
+        data.writeInt(words);
+        data.writeByte(symbols.size());
+        int header = 17;
+        for (String symbol : symbols) {
+            data.writeByte(symbol.length());
+            data.writeBytes(symbol);
+            header += 1 + symbol.length();
+        }
+
+        int pos = header + 4 * templates.size() + 8 * words * templates.size();
+        for (IAtomContainer template : templates) {
+            data.writeInt(pos);
+            pos += RECORD_SIZE + ATOM_SIZE * template.getAtomCount() + BOND_SIZE * template.getBondCount();
+        }
+        for (BitSet fingerprint : fingerprints) {
+            if (fingerprint.length() > size)
+                throw new CDKException("Fingerprint has more than " + size + " bits");
+            for (int w = 0; w < words; w++) {
+                long word = 0;
+                for (int b = 0; b < 64; b++) {
+                    if (fingerprint.get(64 * w + b))
+                        word |= 1L << b;
+                }
+                data.writeLong(word);
+            }
+        }
+
+        for (IAtomContainer template : templates) {
+            data.writeShort(template.getAtomCount());
+            data.writeShort(template.getBondCount());
+            data.writeByte(template.stereoElements().iterator().hasNext() ? 1 : 0);
+            for (IAtom atom : template.atoms()) {
+                data.writeByte(symbols.indexOf(atom.getSymbol()));
+                writeShort(data, atom.getAtomicNumber());
+                writeShort(data, atom.getFormalCharge());
+                writeShort(data, atom.getMassNumber());
+                writeShort(data, atom.getImplicitHydrogenCount());
+                writeShort(data, atom.getValency());
+                writeShort(data, atom.getStereoParity());
+                data.writeShort(atom.getFlagValue().shortValue());
+                Point3d p = atom.getPoint3d();
+                if (p == null)
+                    throw new CDKException("Template atom has no 3D coordinates");
+                writeCoordinate(data, p.x);
+                writeCoordinate(data, p.y);
+                writeCoordinate(data, p.z);
+            }
+            for (IBond bond : template.bonds()) {
+                if (bond.getAtomCount() != 2)
+                    throw new CDKException("Template bond does not have two atoms");
+                data.writeShort(template.getAtomNumber(bond.getAtom(0)));
+                data.writeShort(template.getAtomNumber(bond.getAtom(1)));
+                data.writeByte(bond.getOrder() == null ? -1 : bond.getOrder().ordinal());
+                data.writeByte(bond.getStereo() == null ? -1 : bond.getStereo().ordinal());
+                data.writeShort(bond.getFlagValue().shortValue());
+            }
+        }
+        data.flush();
+    }
+
+    private static void writeShort(DataOutputStream data, Integer value) throws IOException, CDKException {
+        if (value != null && (value <= UNSET || value > Short.MAX_VALUE))
+            throw new CDKException("Value can not be stored: " + value);
+        data.writeShort(value == null ? UNSET : value);
+    }
+
+    /**
+     * Write a coordinate, the coordinate must be exact to 1/10000 (as in
+     * MDL molfiles) so that the decoded value is the same.
+     */
+    private static void writeCoordinate(DataOutputStream data, double value) throws IOException, CDKException {
+        long scaled = Math.round(value * SCALE);
+        if (scaled / SCALE != value || scaled != (int) scaled)
+            throw new CDKException("Coordinate can not be stored exactly: " + value);
+        data.writeInt((int) scaled);
+    }
+}
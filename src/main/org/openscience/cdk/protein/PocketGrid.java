@@ -0,0 +1,441 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.protein;
+
+import org.openscience.cdk.tools.Futures;
+
+import javax.vecmath.Point3d;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The lattice of the {@link ProteinPocketFinder} stored in a single
+ * contiguous array. The value of grid point (x,y,z) is at index
+ * <code>(x * ny + y) * nz + z</code>, lines through the grid are walked with
+ * a constant stride and no objects are created for the grid points.
+ *
+ * <p>Each step (atom assignment and the axis scans) only modifies disjoint
+ * planes of the grid from different tasks, the planes are processed on an
+ * optional executor. The result is identical to the sequential calculation.
+ *
+ * @cdk.module extra
+ * @cdk.githash
+ */
+final class PocketGrid {
+
+    /** Number of planes processed by one task. */
+    private static final int BLOCK_SIZE = 8;
+
+    /** Grid values, negative values are protein. */
+    private final int[] values;
+
+    /** Number of points along each axis. */
+    private final int   nx, ny, nz;
+
+    /** Strides of the x, y and z axis. */
+    private final int   sx, sy, sz;
+
+    /**
+     * Create a grid with the given maximum indices (the dimension of the
+     * {@link org.openscience.cdk.tools.GridGenerator}), all values are 0.
+     *
+     * @param dim maximum x, y and z index
+     */
+    PocketGrid(int[] dim) {
+        this.nx = dim[0] + 1;
+        this.ny = dim[1] + 1;
+        this.nz = dim[2] + 1;
+        this.sx = ny * nz;
+        this.sy = nz;
+        this.sz = 1;
+        this.values = new int[nx * ny * nz];
+    }
+
+    /**
+     * Copy a lattice into a flat grid, for testing.
+     *
+     * @param grid the lattice
+     * @return the flat grid
+     */
+    static PocketGrid of(double[][][] grid) {
+        PocketGrid flat = new PocketGrid(new int[]{grid.length - 1, grid[0].length - 1, grid[0][0].length - 1});
+        for (int x = 0; x < flat.nx; x++)
+            for (int y = 0; y < flat.ny; y++)
+                for (int z = 0; z < flat.nz; z++)
+                    flat.values[flat.index(x, y, z)] = (int) grid[x][y][z];
+        return flat;
+    }
+
+    /**
+     * Copy the values into a lattice of the same dimension.
+     *
+     * @param grid the lattice
+     */
+    void copyTo(double[][][] grid) {
+        for (int x = 0; x < nx; x++)
+            for (int y = 0; y < ny; y++)
+                for (int z = 0; z < nz; z++)
+                    grid[x][y][z] = values[index(x, y, z)];
+    }
+
+    /**
+     * Copy the protein points (negative values) of a lattice into a flat
+     * grid, all other points are 0. A scan of the flat grid counts the PSP
+     * events of the other points, see {@link #addEventsTo(double[][][])}.
+     *
+     * @param grid the lattice
+     * @return the flat grid
+     */
+    static PocketGrid protein(double[][][] grid) {
+        PocketGrid flat = new PocketGrid(new int[]{grid.length - 1, grid[0].length - 1, grid[0][0].length - 1});
+        for (int x = 0; x < flat.nx; x++)
+            for (int y = 0; y < flat.ny; y++)
+                for (int z = 0; z < flat.nz; z++)
+                    if (grid[x][y][z] < 0)
+                        flat.values[flat.index(x, y, z)] = -1;
+        return flat;
+    }
+
+    /**
+     * Add the values of the points which are not protein in the lattice
+     * (see {@link #protein(double[][][])}) to the lattice.
+     *
+     * @param grid the lattice
+     */
+    void addEventsTo(double[][][] grid) {
+        for (int x = 0; x < nx; x++)
+            for (int y = 0; y < ny; y++)
+                for (int z = 0; z < nz; z++)
+                    if (grid[x][y][z] >= 0)
+                        grid[x][y][z] += values[index(x, y, z)];
+    }
+
+    /**
+     * Index of a grid point.
+     */
+    int index(int x, int y, int z) {
+        return (x * ny + y) * nz + z;
+    }
+
+    /**
+     * Assign the atoms to the grid. The grid point of each atom is set to -1
+     * and the points of the surrounding box are then decremented. The x
+     * planes are distributed over the tasks, the atoms are applied to each
+     * plane in the given order.
+     *
+     * @param centers  grid point (x,y,z) of each atom
+     * @param extents  number of grid points the box extends around each atom
+     * @param executor executor to use, null to run on the calling thread
+     */
+    void assign(final int[][] centers, final int[] extents, ExecutorService executor) {
+        run(nx, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int i = 0; i < centers.length; i++) {
+                    int[] c = centers[i];
+                    int e = extents[i];
+                    if (c[0] >= from && c[0] < to)
+                        values[index(c[0], c[1], c[2])] = -1;
+                    int minX = Math.max(Math.max(0, c[0] - e), from);
+                    int maxX = Math.min(Math.min(nx - 1, c[0] + e), to - 1);
+                    int minY = Math.max(0, c[1] - e), maxY = Math.min(ny - 1, c[1] + e);
+                    int minZ = Math.max(0, c[2] - e), maxZ = Math.min(nz - 1, c[2] + e);
+                    for (int x = minX; x <= maxX; x++) {
+                        for (int y = minY; y <= maxY; y++) {
+                            int idx = index(x, y, minZ);
+                            for (int z = minZ; z <= maxZ; z++)
+                                values[idx++]--;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Scan along the x axis, see {@link ProteinPocketFinder#axisScanX(int, int, int)}.
+     */
+    void axisScanX(final int dimK, final int dimL, final int dimM, ExecutorService executor) {
+        check(dimM, dimL, dimK);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++)
+                    for (int l = 0; l <= dimL; l++)
+                        scan(index(0, l, k), sx, dimM + 1);
+            }
+        });
+    }
+
+    /**
+     * Scan along the y axis, see {@link ProteinPocketFinder#axisScanY(int, int, int)}.
+     */
+    void axisScanY(final int dimK, final int dimL, final int dimM, ExecutorService executor) {
+        check(dimL, dimM, dimK);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++)
+                    for (int l = 0; l <= dimL; l++)
+                        scan(index(l, 0, k), sy, dimM + 1);
+            }
+        });
+    }
+
+    /**
+     * Scan along the z axis, see {@link ProteinPocketFinder#axisScanZ(int, int, int)}.
+     */
+    void axisScanZ(final int dimK, final int dimL, final int dimM, ExecutorService executor) {
+        check(dimK, dimL, dimM);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++)
+                    for (int l = 0; l <= dimL; l++)
+                        scan(index(k, l, 0), sz, dimM + 1);
+            }
+        });
+    }
+
+    /**
+     * Diagonal scan in the x planes, y decreasing with z, see {@link
+     * ProteinPocketFinder#diagonalAxisScanXZY(int, int, int)}.
+     */
+    void diagonalAxisScanXZY(final int dimK, int dimL, final int dimM, ExecutorService executor) {
+        final int first = Math.min(dimL, dimM);
+        check(dimK, dimM, dimM > 1 ? dimM : first);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    for (int j = dimM; j >= 1; j--) {
+                        int l = j == dimM ? first : j + 1;
+                        scan(index(k, dimM, l), -sy - sz, l + 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Diagonal scan in the y planes, x decreasing with z, see {@link
+     * ProteinPocketFinder#diagonalAxisScanYZX(int, int, int)}.
+     */
+    void diagonalAxisScanYZX(final int dimK, int dimL, final int dimM, ExecutorService executor) {
+        final int first = Math.min(dimL, dimM);
+        check(dimM, dimK, dimM > 1 ? dimM : first);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    for (int j = dimM; j >= 1; j--) {
+                        int l = j == dimM ? first : j + 1;
+                        scan(index(dimM, k, l), -sx - sz, l + 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Diagonal scan in the y planes, x increasing as z decreases, see
+     * {@link ProteinPocketFinder#diagonalAxisScanYXZ(int, int, int)}.
+     */
+    void diagonalAxisScanYXZ(final int dimK, int dimL, int dimM, ExecutorService executor) {
+        final int last = Math.min(dimL, dimM);
+        check(last, dimK, last);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    for (int j = last; j >= 1; j--) {
+                        int m = j == last ? last : j + 1;
+                        scan(index(0, k, m), sx - sz, m + 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Diagonal scan in the x planes, y increasing as z decreases, see
+     * {@link ProteinPocketFinder#diagonalAxisScanXYZ(int, int, int)}.
+     */
+    void diagonalAxisScanXYZ(final int dimK, int dimL, int dimM, ExecutorService executor) {
+        final int last = Math.min(dimL, dimM);
+        check(dimK, last, last);
+        run(dimK + 1, executor, new Range() {
+            @Override void run(int from, int to) {
+                for (int k = from; k < to; k++) {
+                    for (int j = last; j >= 1; j--) {
+                        int m = j == last ? last : j + 1;
+                        scan(index(k, 0, m), sy - sz, m + 1);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Check the largest indices of a scan are inside the grid (the diagonal
+     * scans only cover the grid if it is cubic).
+     *
+     * @throws ArrayIndexOutOfBoundsException a scan would leave the grid
+     */
+    private void check(int x, int y, int z) {
+        if (x >= nx || y >= ny || z >= nz)
+            throw new ArrayIndexOutOfBoundsException("grid point " + x + "," + y + "," + z + " is not in the grid");
+    }
+
+    /**
+     * Walk a line through the grid, the solvent points between two protein
+     * points (a protein-solvent-protein event) are incremented.
+     *
+     * @param start  index of the first point
+     * @param stride index difference between consecutive points
+     * @param length number of points
+     */
+    private void scan(int start, int stride, int length) {
+        int pspEvent = 0;
+        int lineStart = 0, lineLength = 0;
+        for (int i = 0, idx = start; i < length; i++, idx += stride) {
+            if (values[idx] < 0) {
+                if (pspEvent == 2) {
+                    for (int j = 0, p = lineStart; j < lineLength; j++, p += stride)
+                        values[p]++;
+                }
+                pspEvent = 1;
+                lineLength = 0;
+            } else if (pspEvent > 0) {
+                if (lineLength == 0)
+                    lineStart = idx;
+                lineLength++;
+                pspEvent = 2;
+            }
+        }
+    }
+
+    /**
+     * Cluster the points like {@link ProteinPocketFinder#clusterPSPPocket}.
+     * Each point (with x, y and z below the maximum index) with a value of
+     * at least <i>minPSPocket</i> which is not yet in a cluster is the root
+     * of a new cluster. From a point (x,y,z) the points with a value of at
+     * least <i>minPSCluster</i> from <code>(int)(x - linkage)</code> to
+     * <code>(int)(x + linkage)</code> (same for y and z) are added. The points
+     * are visited with an explicit stack, large clusters do not overflow the
+     * call stack. A cluster is a pocket if it has at least <i>pocketSize</i>
+     * (distinct) points.
+     *
+     * @param minPSPocket  minimum value of a root point
+     * @param minPSCluster minimum value of a cluster point
+     * @param linkage      linkage radius in grid points
+     * @param pocketSize   minimum number of points of a pocket
+     * @return the pockets, ordered by their root
+     */
+    List<List<Point3d>> pockets(int minPSPocket, int minPSCluster, double linkage, int pocketSize) {
+        List<List<Point3d>> pockets = new ArrayList<List<Point3d>>();
+        boolean[] visited = new boolean[values.length];
+        int[] stack = new int[64];
+        for (int x = 0; x < nx - 1; x++) {
+            for (int y = 0; y < ny - 1; y++) {
+                for (int z = 0; z < nz - 1; z++) {
+                    int root = index(x, y, z);
+                    if (values[root] < minPSPocket || visited[root])
+                        continue;
+                    List<Point3d> pocket = new ArrayList<Point3d>();
+                    visited[root] = true;
+                    stack[0] = root;
+                    int n = 1;
+                    while (n > 0) {
+                        int idx = stack[--n];
+                        int px = idx / sx, py = (idx % sx) / sy, pz = idx % sy;
+                        pocket.add(new Point3d(px, py, pz));
+                        int xMax = Math.min(nx - 1, (int) (px + linkage));
+                        int yMax = Math.min(ny - 1, (int) (py + linkage));
+                        int zMax = Math.min(nz - 1, (int) (pz + linkage));
+                        for (int i = Math.max(0, (int) (px - linkage)); i <= xMax; i++) {
+                            for (int j = Math.max(0, (int) (py - linkage)); j <= yMax; j++) {
+                                for (int k = Math.max(0, (int) (pz - linkage)); k <= zMax; k++) {
+                                    int nbr = index(i, j, k);
+                                    if (values[nbr] < minPSCluster || visited[nbr])
+                                        continue;
+                                    visited[nbr] = true;
+                                    if (n == stack.length)
+                                        stack = Arrays.copyOf(stack, 2 * n);
+                                    stack[n++] = nbr;
+                                }
+                            }
+                        }
+                    }
+                    if (pocket.size() >= pocketSize)
+                        pockets.add(pocket);
+                }
+            }
+        }
+        return pockets;
+    }
+
+    /**
+     * The work on a range of planes.
+     */
+    private abstract static class Range {
+
+        /**
+         * Process the planes from (inclusive) to (exclusive).
+         */
+        abstract void run(int from, int to);
+    }
+
+    /**
+     * Process the planes 0 to n-1 in blocks on the executor, or on the
+     * calling thread if there is no executor.
+     *
+     * @param n        number of planes
+     * @param executor the executor, may be null
+     * @param range    the work for a range of planes
+     */
+    private static void run(int n, ExecutorService executor, final Range range) {
+        if (executor == null) {
+            range.run(0, n);
+            return;
+        }
+        List<Future<?>> blocks = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < n; i += BLOCK_SIZE) {
+                final int from = i, to = Math.min(n, i + BLOCK_SIZE);
+                blocks.add(executor.submit(new Runnable() {
+                    @Override public void run() {
+                        range.run(from, to);
+                    }
+                }));
+            }
+            for (Future<?> block : blocks)
+                block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while processing the grid", e);
+        } catch (ExecutionException e) {
+            throw Futures.unwrap(e);
+        } finally {
+            for (Future<?> block : blocks)
+                block.cancel(true);
+        }
+    }
+}
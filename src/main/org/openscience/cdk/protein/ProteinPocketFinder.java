@@ -24,11 +24,15 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.vecmath.Point3d;
 
@@ -54,6 +58,15 @@ import org.openscience.cdk.tools.periodictable.PeriodicTable;
  * The detection of pocket and cavities in a bioPolymer is done similar to the program 
  * LIGSITE {@cdk.cite MH1997}.
  * 
+ * <p>The sitefinder processes the lattice as a single contiguous array (see
+ * {@link #sitefinder(ExecutorService)} for a parallel calculation) and
+ * copies it into the <code>double[][][]</code> grid when the scans have
+ * finished. The public assignment method works on the
+ * <code>double[][][]</code> grid directly, the public scan methods copy its
+ * protein points into a flat grid and add the PSP events found to the
+ * <code>double[][][]</code> grid. The pockets are clustered
+ * iteratively, each grid point occurs once in a pocket.
+ * 
  * <p>TODO: Optimisation of the cubic grid placement 
  *
  * @author      cho
@@ -250,6 +263,44 @@ public class ProteinPocketFinder {
 //				+ " ProteinGridPoints>" + proteinAtomCount);
 	}
 
+	/**
+	 * Assigns the atoms of the biopolymer to a flat grid. If an atom is
+	 * outside of the grid the atoms before it are assigned and the exception
+	 * is thrown.
+	 *
+	 * @param flat     the grid
+	 * @param executor executor to use, null to run on the calling thread
+	 * @throws Exception an atom was not in the grid
+	 */
+	private void assignProteinToGrid(PocketGrid flat, ExecutorService executor) throws Exception {
+		IAtom[] atoms = AtomContainerManipulator.getAtomArray(protein);
+		int[][] centers = new int[atoms.length][];
+		int[] extents = new int[atoms.length];
+		int n = 0;
+		try {
+			for (int i = 0; i < atoms.length; i++) {
+				if (((PDBAtom) atoms[i]).getHetAtom()) {
+					continue;
+				}
+				Point3d gridPoint = gridGenerator.getGridPointFrom3dCoordinates(atoms[i]
+						.getPoint3d());
+				double vdWRadius = PeriodicTable.getVdwRadius(atoms[i].getSymbol());
+				if (vdWRadius == 0) {
+					vdWRadius = rAtom;
+				}
+				int checkGridPoints = (int) (((vdWRadius + rSolvent) / gridGenerator
+						.getLatticeConstant()) - atomCheckRadius);
+				if (checkGridPoints < 0) {
+					checkGridPoints = 0;
+				}
+				centers[n] = new int[] { (int) gridPoint.x, (int) gridPoint.y, (int) gridPoint.z };
+				extents[n++] = checkGridPoints;
+			}
+		} finally {
+			flat.assign(Arrays.copyOf(centers, n), Arrays.copyOf(extents, n), executor);
+		}
+	}
+
 	public void debuggCheckPSPEvent() {
 		logger.debug("	debugg_checkPSPEvent");
 		int[] dim = gridGenerator.getDim();
@@ -307,31 +358,43 @@ public class ProteinPocketFinder {
 	 *
 	 */
 	public void sitefinder() {
+		sitefinder(null);
+	}
+
+	/**
+	 * Finds the pockets like {@link #sitefinder()}, the atom assignment and
+	 * the scans are split into blocks of grid planes which are processed on
+	 * the executor. The result is the same as the sequential calculation.
+	 *
+	 * @param executor executor to use, null to run on the calling thread
+	 */
+	public void sitefinder(ExecutorService executor) {
 		//logger.debug("SITEFINDER");
+		int[] dim = gridGenerator.getDim();
+		PocketGrid flat = new PocketGrid(dim);
 		try {
-			assignProteinToGrid();
+			assignProteinToGrid(flat, executor);
 		} catch (Exception ex1) {
 			logger.error("Problems with assignProteinToGrid due to:"
 					+ ex1.toString());
 		}
 		// 3. Step scan allong x,y,z axis and the diagonals, if PSP event add +1
 		// to grid cell
-		int[] dim = gridGenerator.getDim();
-//		logger.debug("	SITEFINDER-SCAN - dim:" + dim[0] + " grid:"
-//				+ this.grid[0].length + " grid point sum:" + this.grid.length
-//				* this.grid[0].length * this.grid[0][0].length);
-		axisScanX(dim[2], dim[1], dim[0]);// x-Axis
-		axisScanY(dim[2], dim[0], dim[1]);// y-Axis
-		axisScanZ(dim[0], dim[1], dim[2]);// z-Axis
-
-		diagonalAxisScanXZY(dim[0], dim[2], dim[1]);// diagonal1-Axis
-		diagonalAxisScanYZX(dim[1], dim[2], dim[0]);// diagonal2-Axis
-		diagonalAxisScanYXZ(dim[1], dim[0], dim[2]);// diagonal3-Axis
-		diagonalAxisScanXYZ(dim[0], dim[1], dim[2]);// diagonal4-Axis
+		flat.axisScanX(dim[2], dim[1], dim[0], executor);// x-Axis
+		flat.axisScanY(dim[2], dim[0], dim[1], executor);// y-Axis
+		flat.axisScanZ(dim[0], dim[1], dim[2], executor);// z-Axis
+
+		flat.diagonalAxisScanXZY(dim[0], dim[2], dim[1], executor);// diagonal1-Axis
+		flat.diagonalAxisScanYZX(dim[1], dim[2], dim[0], executor);// diagonal2-Axis
+		flat.diagonalAxisScanYXZ(dim[1], dim[0], dim[2], executor);// diagonal3-Axis
+		flat.diagonalAxisScanXYZ(dim[0], dim[1], dim[2], executor);// diagonal4-Axis
+
+		this.grid = gridGenerator.initializeGrid(this.grid, 0);
+		flat.copyTo(this.grid);
 
 		//debuggCheckPSPEvent();
 
-		findPockets();
+		pockets = flat.pockets(minPSPocket, minPSCluster, linkageRadius, pocketSize);
 
 		sortPockets();
 	}
@@ -373,95 +436,41 @@ public class ProteinPocketFinder {
 	}
 
 	/**
-	 * Method which finds the pocket, with a simple nearest neighbour clustering. The points
-	 * which should be clustered or form a pocket can be determined with:
-	 * 	minPSPocket, minPSCluster, linkageRadius, and pocketSize.
-	 */
-	private void findPockets() {
-		int[] dim = gridGenerator.getDim();
-//		logger.debug("	FIND POCKETS>dimx:" + dim[0] + " dimy:" + dim[1]
-//				+ " dimz:" + dim[2] + " linkageRadius>" + linkageRadius
-//				+ " latticeConstant>" + latticeConstant + " pocketSize:"
-//				+ pocketSize + " minPSPocket:" + minPSPocket + " minPSCluster:"
-//				+ minPSCluster);
-		//int pointsVisited = 0;//Debugging
-		//int significantPointsVisited = 0;//Debugging
-		for (int x = 0; x < dim[0]; x++) {
-			for (int y = 0; y < dim[1]; y++) {
-				for (int z = 0; z < dim[2]; z++) {
-					// logger.debug.print(" x:"+x+" y:"+y+" z:"+z);
-					Point3d start = new Point3d(x, y, z);
-					//pointsVisited++;
-					if (this.grid[x][y][z] >= minPSPocket
-							& !visited.containsKey(x + "." + y + "."+ z)) {
-						List<Point3d> subPocket = new ArrayList<Point3d>();
-						// logger.debug.print("new Point: "+grid[x][y][z]);
-						//significantPointsVisited++;
-						// logger.debug("visited:"+pointsVisited);
-						subPocket = this
-								.clusterPSPPocket(start, subPocket, dim);
-						if (subPocket != null && subPocket.size() >= pocketSize) {
-							pockets.add(subPocket);
-						}
-						// logger.debug(" Points visited:"+pointsVisited+"
-						// subPocketSize:"+subPocket.size()+"
-						// pocketsSize:"+pockets.size()
-						// +" hashtable:"+visited.size());
-
-					}
-				}
-			}
-
-		}
-//		try {
-//			logger.debug("	->>>> #pockets:" + pockets.size()
-//					+ " significantPointsVisited:" + significantPointsVisited
-//					+ " keys:" + visited.size() + " PointsVisited:"
-//					+ pointsVisited);
-//		} catch (Exception ex1) {
-//			logger.debug
-//					.println("Problem in System.out due to " + ex1.toString());
-//		}
-
-	}
-
-	/**
-	 * Method performs the clustering, is called by findPockets().
+	 * Method performs the clustering of the grid points around a root. The
+	 * points with a value of at least minPSCluster which are linked to the
+	 * root (directly or through other points) are added to the pocket, the
+	 * points already visited are skipped. The points are visited with an
+	 * explicit stack, large pockets do not overflow the call stack.
 	 */
 	public List<Point3d> clusterPSPPocket(Point3d root, List<Point3d> sub_Pocket, int[] dim) {
-		// logger.debug(" ****** New Root ******:"+root.x+" "+root.y+"
-		// "+root.z);
+		Deque<Point3d> stack = new ArrayDeque<Point3d>();
 		visited.put((int) root.x + "." + (int) root.y + "."
-                + (int) root.z, new Integer(1));
-		int[] minMax = { 0, 0, 0, 0, 0, 0 };
-		minMax[0] = (int) (root.x - linkageRadius);
-		minMax[1] = (int) (root.x + linkageRadius);
-		minMax[2] = (int) (root.y - linkageRadius);
-		minMax[3] = (int) (root.y + linkageRadius);
-		minMax[4] = (int) (root.z - linkageRadius);
-		minMax[5] = (int) (root.z + linkageRadius);
-		minMax = checkBoundaries(minMax, dim);
-		// logger.debug("cluster:"+minMax[0]+" "+minMax[1]+" "+minMax[2]+"
-		// "+minMax[3]+" "+minMax[4]+" "+minMax[5]+" ");
-		for (int k = minMax[0]; k <= minMax[1]; k++) {
-			for (int m = minMax[2]; m <= minMax[3]; m++) {
-				for (int l = minMax[4]; l <= minMax[5]; l++) {
-					Point3d node = new Point3d(k, m, l);
-					// logger.debug(" clusterPSPPocket:"+root.x+"
-					// "+root.y+" "+root.z+" ->"+k+" "+m+" "+l+"
-					// #>"+this.grid[k][m][l]+" key:"+visited.containsKey(new
-					// String(k+"."+m+"."+l)));
-					if (this.grid[k][m][l] >= minPSCluster
-							&& !visited.containsKey(k + "." + m
-                            + "." + l)) {
-						// logger.debug(" ---->FOUND");
-						sub_Pocket.add(node);
-						this.clusterPSPPocket(node, sub_Pocket, dim);
+                + (int) root.z, 1);
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Point3d point = stack.pop();
+			sub_Pocket.add(point);
+			int[] minMax = { 0, 0, 0, 0, 0, 0 };
+			minMax[0] = (int) (point.x - linkageRadius);
+			minMax[1] = (int) (point.x + linkageRadius);
+			minMax[2] = (int) (point.y - linkageRadius);
+			minMax[3] = (int) (point.y + linkageRadius);
+			minMax[4] = (int) (point.z - linkageRadius);
+			minMax[5] = (int) (point.z + linkageRadius);
+			minMax = checkBoundaries(minMax, dim);
+			for (int k = minMax[0]; k <= minMax[1]; k++) {
+				for (int m = minMax[2]; m <= minMax[3]; m++) {
+					for (int l = minMax[4]; l <= minMax[5]; l++) {
+						String key = k + "." + m + "." + l;
+						if (this.grid[k][m][l] >= minPSCluster
+								&& !visited.containsKey(key)) {
+							visited.put(key, 1);
+							stack.push(new Point3d(k, m, l));
+						}
 					}
 				}
 			}
 		}
-		sub_Pocket.add(root);
 		return sub_Pocket;
 	}
 
@@ -494,17 +503,6 @@ public class ProteinPocketFinder {
 		return minMax;
 	}
 
-	/**
-	 * Method which assigns upon a PSP event +1 to these grid points.
-	 */
-	private void firePSPEvent(List<Point3d> line) {
-		for (int i = 0; i < line.size(); i++) {
-			this.grid[(int)line.get(i).x][(int)line.get(i).y][(int)line.get(i).z] = 
-			    this.grid[(int)line.get(i).x][(int)line.get(i).y][(int)line.get(i).z] + 1;
-		}
-
-	}
-
 	/**
 	 * Method performs a scan; works only for cubic grids!
 	 *
@@ -513,45 +511,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void diagonalAxisScanXZY(int dimK, int dimL, int dimM) {
-		// x min ->x max;left upper corner z+y max->min//1
-		//logger.debug("	diagonalAxisScanXZY");
-		if (dimM < dimL) {
-			dimL = dimM;
-		}
-		//int gridPoints = 0;//Debugging
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		int m = 0;
-		for (int j = dimM; j >= 1; j--) {// z
-			line.clear();
-			pspEvent = 0;
-			for (int k = 0; k <= dimK; k++) {// min -> max; x
-				m = dimM;// m==y
-				line.clear();
-				pspEvent = 0;
-				for (int l = dimL; l >= 0; l--) {// z
-					//gridPoints++;
-					if (grid[k][m][l] < 0) {
-						if (pspEvent < 2) {
-							line.clear();
-							pspEvent = 1;
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent == 1 | pspEvent == 2) {
-							line.add(new Point3d(k, m, l));
-							pspEvent = 2;
-						}
-					}
-					m--;
-				}// for l
-			}
-			dimL = j;
-		}
-		//logger.debug(" #gridPoints>" + gridPoints);
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.diagonalAxisScanXZY(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -562,45 +524,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void diagonalAxisScanYZX(int dimK, int dimL, int dimM) {
-		// y min -> y max; right lower corner zmax->zmin, xmax ->min//4
-		// logger.debug.print(" diagonalAxisScanYZX");
-		//int gridPoints = 0;//Debugging
-		if (dimM < dimL) {
-			dimL = dimM;
-		}
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		int m = 0;
-		for (int j = dimM; j >= 1; j--) {// z
-			line.clear();
-			pspEvent = 0;
-			for (int k = 0; k <= dimK; k++) {// min -> max; y
-				m = dimM;// m==x
-				line.clear();
-				pspEvent = 0;
-				for (int l = dimL; l >= 0; l--) {// z
-					//gridPoints++;
-					if (grid[m][k][l] < 0) {
-						if (pspEvent < 2) {
-							line.clear();
-							pspEvent = 1;
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent == 1 | pspEvent == 2) {
-							line.add(new Point3d(m, k, l));
-							pspEvent = 2;
-						}
-					}
-					m--;
-				}// for l
-			}
-			dimL = j;
-		}
-		// logger.debug(" #gridPoints>"+gridPoints);
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.diagonalAxisScanYZX(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -611,47 +537,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void diagonalAxisScanYXZ(int dimK, int dimL, int dimM) {
-		// y min -> y max; left lower corner z max->min, x min->max//2
-		// logger.debug.print(" diagonalAxisScanYXZ");
-		//int gridPoints = 0;//Debugging
-		if (dimM < dimL) {
-			dimL = dimM;
-		} else {
-			dimM = dimL;
-		}
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		int l = 0;
-		for (int j = dimL; j >= 1; j--) {// z
-			line.clear();
-			pspEvent = 0;
-			for (int k = 0; k <= dimK; k++) {// min -> max; y
-				line.clear();
-				pspEvent = 0;
-				l = 0;// x
-				for (int m = dimM; m >= 0; m--) {// z
-					//gridPoints++;
-					if (grid[l][k][m] < 0) {
-						if (pspEvent < 2) {
-							line.clear();
-							pspEvent = 1;
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent == 1 | pspEvent == 2) {
-							line.add(new Point3d(l, k, m));
-							pspEvent = 2;
-						}
-					}
-					l++;
-				}// for m;z
-			}// for k;y
-			dimM = j;
-		}
-		// logger.debug(" #gridPoints>"+gridPoints);
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.diagonalAxisScanYXZ(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -662,47 +550,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void diagonalAxisScanXYZ(int dimK, int dimL, int dimM) {
-		// x min -> xmax;left lower corner z max->min, y min->max//3
-		// logger.debug.print(" diagonalAxisScanXYZ");
-		//int gridPoints = 0;//Debugging
-		if (dimM < dimL) {
-			dimL = dimM;
-		} else {
-			dimM = dimL;
-		}
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		int l = 0;
-		for (int j = dimL; j >= 1; j--) {// z
-			line.clear();
-			pspEvent = 0;
-			for (int k = 0; k <= dimK; k++) {// min -> max;x
-				line.clear();
-				pspEvent = 0;
-				l = 0;// y
-				for (int m = dimM; m >= 0; m--) {// z
-					//gridPoints++;
-					if (grid[k][l][m] < 0) {
-						if (pspEvent < 2) {
-							line.clear();
-							pspEvent = 1;
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent == 1 | pspEvent == 2) {
-							line.add(new Point3d(k, l, m));
-							pspEvent = 2;
-						}
-					}
-					l++;
-				}// for m;z
-			}// for k;x
-			dimM = j;
-		}
-		// logger.debug(" #gridPoints>"+gridPoints);
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.diagonalAxisScanXYZ(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -713,38 +563,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void axisScanX(int dimK, int dimL, int dimM) {
-		// z,y,x
-//		logger.debug.print("	diagonalAxisScanX");
-		//int gridPoints = 0;//Debugging
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		for (int k = 0; k <= dimK; k++) {
-			line.clear();
-			pspEvent = 0;
-			for (int l = 0; l <= dimL; l++) {
-				line.clear();
-				pspEvent = 0;
-				for (int m = 0; m <= dimM; m++) {
-					//gridPoints++;
-					if (grid[m][l][k] < 0) {
-						if (pspEvent < 2) {
-							pspEvent = 1;
-							line.clear();
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent == 1 | pspEvent == 2) {
-							line.add(new Point3d(m, l, k));
-							pspEvent = 2;
-						}
-					}
-				}
-			}
-		}
-//		logger.debug(" #gridPoints>" + gridPoints);
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.axisScanX(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -755,36 +576,9 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void axisScanY(int dimK, int dimL, int dimM) {
-		// z,x,y
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		for (int k = 0; k <= dimK; k++) {
-			line.clear();
-			pspEvent = 0;
-			for (int l = 0; l <= dimL; l++) {
-				line.clear();
-				pspEvent = 0;
-				for (int m = 0; m <= dimM; m++) {
-					if (grid[l][m][k] < 0) {
-						if (pspEvent < 2) {
-							pspEvent = 1;
-							line.clear();
-						} else if (pspEvent == 2) {
-							// if (line.size()>2){
-							firePSPEvent(line);
-							// }
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent > 0) {
-							line.add(new Point3d(l, m, k));
-							pspEvent = 2;
-						}
-					}
-				}
-			}
-		}
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.axisScanY(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
 	/**
@@ -795,37 +589,11 @@ public class ProteinPocketFinder {
 	 * @param dimM third dimension
 	 */
 	public void axisScanZ(int dimK, int dimL, int dimM) {
-		// x,y,z
-		List<Point3d> line = new ArrayList<Point3d>();
-		int pspEvent = 0;
-		for (int k = 0; k <= dimK; k++) {
-			line.clear();
-			pspEvent = 0;
-			for (int l = 0; l <= dimL; l++) {
-				line.clear();
-				pspEvent = 0;
-				for (int m = 0; m <= dimM; m++) {
-					if (grid[k][l][m] < 0) {
-						if (pspEvent < 2) {
-							pspEvent = 1;
-							line.clear();
-						} else if (pspEvent == 2) {
-							firePSPEvent(line);
-							line.clear();
-							pspEvent = 1;
-						}
-					} else {
-						if (pspEvent > 0) {
-							line.add(new Point3d(k, l, m));
-							pspEvent = 2;
-						}
-					}
-				}
-			}
-		}
+		PocketGrid flat = PocketGrid.protein(grid);
+		flat.axisScanZ(dimK, dimL, dimM, null);
+		flat.addEventsTo(grid);
 	}
 
-
 	/**
 	 * Method which assigns van der Waals radii to the biopolymer
 	 * default org/openscience/cdk/config/data/pdb_atomtypes.xml
@@ -996,7 +764,8 @@ public class ProteinPocketFinder {
 
 
 	/**
-	 * @return Returns the pocketSize.
+	 * @return Returns the pocketSize, the minimum number of distinct grid
+	 *         points of a pocket.
 	 */
 	public int getPocketSize() {
 		return pocketSize;
@@ -1004,6 +773,10 @@ public class ProteinPocketFinder {
 
 
 	/**
+	 * Each grid point of a pocket is counted once. Previously every point
+	 * but the root was counted twice, a pocket of n points had a size of
+	 * 2n - 1.
+	 *
 	 * @param pocketSize The pocketSize to set.
 	 */
 	public void setPocketSize(int pocketSize) {
@@ -0,0 +1,260 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.qsar;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.graph.PathTools;
+import org.openscience.cdk.graph.matrix.AdjacencyMatrix;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+/**
+ * Intermediate values of a molecule which are needed by several descriptors.
+ * Each value is computed on first request and then reused by the following
+ * descriptors which are calculated for the same molecule.
+ *
+ * The {@link DescriptorEngine} opens a context for each molecule it
+ * processes. A descriptor obtains the context with {@link
+ * #of(IAtomContainer)}, outside of an engine run (or for a different
+ * molecule) a new context is returned and the values are then only reused
+ * within the calculation of that descriptor.
+ *
+ * <blockquote><pre>
+ * DescriptorContext context = DescriptorContext.open(molecule);
+ * try {
+ *     for (IMolecularDescriptor descriptor : descriptors)
+ *         descriptor.calculate(molecule);
+ * } finally {
+ *     context.close();
+ * }
+ * </pre></blockquote>
+ *
+ * The values are shared and must not be modified. A descriptor may however
+ * change the molecule (e.g. perceive its atom types or aromaticity), each
+ * request therefore checks the atoms, bonds, elements, charges, hydrogen
+ * counts, atom types, bond orders and aromatic flags of the molecule and the
+ * values are computed again if any of these changed. A context is not
+ * thread-safe and is only visible to the thread which opened it.
+ *
+ * @cdk.module qsar
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.qsar.DescriptorContextTest")
+public final class DescriptorContext {
+
+    /** The aromaticity model which mimics the CDKHueckelAromaticityDetector. */
+    private static final Aromaticity AROMATICITY = new Aromaticity(ElectronDonation.cdk(),
+                                                                   Cycles.cdkAromaticSet());
+
+    /** The context opened by the current thread. */
+    private static final ThreadLocal<DescriptorContext> current = new ThreadLocal<DescriptorContext>();
+
+    /** The molecule. */
+    private final IAtomContainer container;
+
+    /** The context which was open before this one, restored on close. */
+    private DescriptorContext previous;
+
+    /** Memoised values. */
+    private IAtomContainer heavyAtoms, aromatic;
+    private int[][]        heavyAtomDistances;
+    private CDKException   aromaticFailure;
+
+    /** Stamp of the molecule the memoised values were computed for. */
+    private long           stamp;
+
+    /**
+     * Create a context for the given molecule.
+     *
+     * @param container the molecule
+     */
+    private DescriptorContext(IAtomContainer container) {
+        this.container = container;
+    }
+
+    /**
+     * Open a context for the molecule on the current thread. The context must
+     * be closed when the descriptors have been calculated.
+     *
+     * @param container the molecule
+     * @return the open context
+     */
+    @TestMethod("open")
+    public static DescriptorContext open(IAtomContainer container) {
+        DescriptorContext context = new DescriptorContext(container);
+        context.previous = current.get();
+        current.set(context);
+        return context;
+    }
+
+    /**
+     * Obtain the context for a molecule. If a context is open for the molecule
+     * it is returned otherwise a new context is created.
+     *
+     * @param container the molecule
+     * @return the context for the molecule
+     */
+    @TestMethod("open,notOpen,otherMolecule")
+    public static DescriptorContext of(IAtomContainer container) {
+        DescriptorContext context = current.get();
+        if (context != null && context.container == container)
+            return context;
+        return new DescriptorContext(container);
+    }
+
+    /**
+     * Close this context, the context which was open before is restored.
+     */
+    @TestMethod("open")
+    public void close() {
+        if (current.get() == this) {
+            if (previous != null)
+                current.set(previous);
+            else
+                current.remove();
+        }
+        previous = null;
+    }
+
+    /**
+     * The molecule of this context.
+     *
+     * @return the molecule
+     */
+    @TestMethod("open")
+    public IAtomContainer container() {
+        return container;
+    }
+
+    /**
+     * A copy of the molecule without hydrogens, see {@link
+     * AtomContainerManipulator#removeHydrogens(IAtomContainer)}. The copy is
+     * shared and must not be modified.
+     *
+     * @return the heavy atoms
+     */
+    @TestMethod("heavyAtoms")
+    public IAtomContainer heavyAtoms() {
+        checkModified();
+        if (heavyAtoms == null)
+            heavyAtoms = AtomContainerManipulator.removeHydrogens(container);
+        return heavyAtoms;
+    }
+
+    /**
+     * The topological distances between the atoms of the {@link
+     * #heavyAtoms()}, see {@link PathTools#computeFloydAPSP(int[][])}. The
+     * matrix is shared and must not be modified.
+     *
+     * @return the distance matrix
+     */
+    @TestMethod("heavyAtomDistances")
+    public int[][] heavyAtomDistances() {
+        checkModified();
+        if (heavyAtomDistances == null)
+            heavyAtomDistances = PathTools.computeFloydAPSP(AdjacencyMatrix.getMatrix(heavyAtoms()));
+        return heavyAtomDistances;
+    }
+
+    /**
+     * A copy of the molecule with perceived and configured atom types and
+     * aromaticity assigned by the {@link ElectronDonation#cdk()} model. The
+     * copy is shared and must not be modified.
+     *
+     * @return the aromatic copy
+     * @throws CDKException atom types or aromaticity could not be perceived
+     */
+    @TestMethod("aromatic,aromaticFailure")
+    public IAtomContainer aromatic() throws CDKException {
+        checkModified();
+        if (aromaticFailure != null)
+            throw aromaticFailure;
+        if (aromatic == null) {
+            try {
+                IAtomContainer copy = container.clone();
+                AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(copy);
+                AROMATICITY.apply(copy);
+                aromatic = copy;
+            } catch (CloneNotSupportedException e) {
+                aromaticFailure = new CDKException("Error during clone", e);
+                throw aromaticFailure;
+            } catch (CDKException e) {
+                aromaticFailure = e;
+                throw e;
+            }
+        }
+        return aromatic;
+    }
+
+    /**
+     * Forget the memoised values if the molecule was changed since they were
+     * computed.
+     */
+    private void checkModified() {
+        long stamp = stamp(container);
+        if (stamp != this.stamp) {
+            heavyAtoms         = null;
+            heavyAtomDistances = null;
+            aromatic           = null;
+            aromaticFailure    = null;
+            this.stamp         = stamp;
+        }
+    }
+
+    /**
+     * Hash the parts of a molecule the memoised values depend on.
+     *
+     * @param container the molecule
+     * @return the stamp
+     */
+    private static long stamp(IAtomContainer container) {
+        long stamp = 31L * container.getAtomCount() + container.getBondCount();
+        for (IAtom atom : container.atoms()) {
+            stamp = 31 * stamp + System.identityHashCode(atom);
+            stamp = 31 * stamp + hash(atom.getSymbol());
+            stamp = 31 * stamp + hash(atom.getFormalCharge());
+            stamp = 31 * stamp + hash(atom.getImplicitHydrogenCount());
+            stamp = 31 * stamp + hash(atom.getAtomTypeName());
+            stamp = 31 * stamp + (atom.getFlag(CDKConstants.ISAROMATIC) ? 1 : 0);
+        }
+        for (IBond bond : container.bonds()) {
+            for (IAtom atom : bond.atoms())
+                stamp = 31 * stamp + System.identityHashCode(atom);
+            stamp = 31 * stamp + hash(bond.getOrder());
+            stamp = 31 * stamp + (bond.getFlag(CDKConstants.ISAROMATIC) ? 1 : 0);
+        }
+        return stamp;
+    }
+
+    private static int hash(Object obj) {
+        return obj != null ? obj.hashCode() : 0;
+    }
+}
@@ -34,6 +34,13 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.qsar.result.BooleanResult;
+import org.openscience.cdk.qsar.result.DoubleArrayResult;
+import org.openscience.cdk.qsar.result.DoubleResult;
+import org.openscience.cdk.qsar.result.IDescriptorResult;
+import org.openscience.cdk.qsar.result.IntegerArrayResult;
+import org.openscience.cdk.qsar.result.IntegerResult;
+import org.openscience.cdk.tools.Futures;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 
@@ -47,9 +54,16 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -71,6 +85,22 @@ import java.util.jar.JarFile;
  * descriptorEngine.process(someMolecule);
  * </pre>
  * <p/>
+ * <p>Many molecules can be processed in a batch, the values of the molecular descriptors are then
+ * streamed as one row per molecule to a {@link DescriptorSink} rather than stored as properties. The
+ * descriptors may be evaluated on several threads by providing an {@link ExecutorService}, each thread
+ * uses its own descriptor instances.
+ * <pre>
+ * ExecutorService executor = Executors.newFixedThreadPool(4);
+ * DescriptorSink  sink     = DescriptorSink.csv(new FileWriter("descriptors.csv"));
+ * engine.process(new IteratingSDFReader(in, builder), sink, executor);
+ * sink.close();
+ * executor.shutdown();
+ * </pre>
+ * <p/>
+ * <p>While the descriptors of a molecule are evaluated a {@link DescriptorContext} is open for it,
+ * intermediate values such as the topological distance matrix are then computed once and shared by
+ * all the descriptors.
+ * <p/>
  * <p>The class allows the user to obtain a List of all the available descriptors in terms of their
  * Java class names as well as instances of each descriptor class.   For each descriptor, it is possible to
  * obtain its classification as described in the CDK descriptor-algorithms OWL dictionary.
@@ -94,6 +124,9 @@ public class DescriptorEngine {
         LoggingToolFactory.createLoggingTool(DescriptorEngine.class);
     private final IChemObjectBuilder builder;
 
+    /** Number of molecules per thread which may be queued in a batch run. */
+    private static final int MOLECULES_PER_THREAD = 8;
+
     /**
      * Instantiates the DescriptorEngine.
      * <p/>
@@ -176,45 +209,300 @@ public class DescriptorEngine {
         if (speclist.size() != descriptors.size())
             throw new CDKException("Number of specs and descriptors do not match");
 
-
-        for (int i = 0; i < descriptors.size(); i++) {
-            IDescriptor descriptor = descriptors.get(i);
-            if (descriptor instanceof IMolecularDescriptor) {
-                DescriptorValue value = ((IMolecularDescriptor) descriptor).calculate(molecule);
-                if (value.getException() == null) molecule.setProperty(speclist.get(i), value);
-                else {
-                    logger.error("Could not calculate descriptor value for: ", descriptor.getClass().getName());
-                    logger.debug(value.getException());
-                }
-                logger.debug("Calculated molecular descriptors...");
-            } else if (descriptor instanceof IAtomicDescriptor) {
-                Iterator atoms = molecule.atoms().iterator();
-                while (atoms.hasNext()) {
-                    IAtom atom = (IAtom) atoms.next();
-                    DescriptorValue value = ((IAtomicDescriptor) descriptor).calculate(atom, molecule);
-                    if (value.getException() == null) atom.setProperty(speclist.get(i), value);
+        DescriptorContext context = DescriptorContext.open(molecule);
+        try {
+            for (int i = 0; i < descriptors.size(); i++) {
+                IDescriptor descriptor = descriptors.get(i);
+                if (descriptor instanceof IMolecularDescriptor) {
+                    DescriptorValue value = ((IMolecularDescriptor) descriptor).calculate(molecule);
+                    if (value.getException() == null) molecule.setProperty(speclist.get(i), value);
                     else {
                         logger.error("Could not calculate descriptor value for: ", descriptor.getClass().getName());
                         logger.debug(value.getException());
                     }
+                    logger.debug("Calculated molecular descriptors...");
+                } else if (descriptor instanceof IAtomicDescriptor) {
+                    Iterator atoms = molecule.atoms().iterator();
+                    while (atoms.hasNext()) {
+                        IAtom atom = (IAtom) atoms.next();
+                        DescriptorValue value = ((IAtomicDescriptor) descriptor).calculate(atom, molecule);
+                        if (value.getException() == null) atom.setProperty(speclist.get(i), value);
+                        else {
+                            logger.error("Could not calculate descriptor value for: ", descriptor.getClass().getName());
+                            logger.debug(value.getException());
+                        }
+                    }
+                    logger.debug("Calculated atomic descriptors...");
+                } else if (descriptor instanceof IBondDescriptor) {
+                    Iterator bonds = molecule.bonds().iterator();
+                    while (bonds.hasNext()) {
+                        IBond bond = (IBond) bonds.next();
+                        DescriptorValue value = ((IBondDescriptor) descriptor).calculate(bond, molecule);
+                        if (value.getException() == null) bond.setProperty(speclist.get(i), value);
+                        else {
+                            logger.error("Could not calculate descriptor value for: ", descriptor.getClass().getName());
+                            logger.debug(value.getException());
+                        }
+                    }
+                    logger.debug("Calculated bond descriptors...");
+                } else {
+                    logger.debug("Unknown descriptor type for: ", descriptor.getClass().getName());
                 }
-                logger.debug("Calculated atomic descriptors...");
-            } else if (descriptor instanceof IBondDescriptor) {
-                Iterator bonds = molecule.bonds().iterator();
-                while (bonds.hasNext()) {
-                    IBond bond = (IBond) bonds.next();
-                    DescriptorValue value = ((IBondDescriptor) descriptor).calculate(bond, molecule);
-                    if (value.getException() == null) bond.setProperty(speclist.get(i), value);
-                    else {
-                        logger.error("Could not calculate descriptor value for: ", descriptor.getClass().getName());
-                        logger.debug(value.getException());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * The column names of the rows produced when processing molecules in a
+     * batch. Each molecular descriptor contributes its {@link
+     * IDescriptor#getDescriptorNames() descriptor names}, other descriptor
+     * types are not included.
+     *
+     * @return the column names
+     */
+    @TestMethod("testMolecularDescriptorNames")
+    public String[] getMolecularDescriptorNames() {
+        List<String> names = new ArrayList<String>();
+        for (IDescriptor descriptor : descriptors) {
+            if (descriptor instanceof IMolecularDescriptor)
+                names.addAll(Arrays.asList(descriptor.getDescriptorNames()));
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Calculate the molecular descriptors for each of the {@code molecules}
+     * on the calling thread. The values are written to the {@code sink} as
+     * one row per molecule, the columns are given by {@link
+     * #getMolecularDescriptorNames()}. Values which could not be calculated are
+     * {@link Double#NaN}. The sink is not closed.
+     *
+     * @param molecules the molecules to process
+     * @param sink      receives the descriptor values
+     * @return the number of molecules processed
+     * @throws CDKException the descriptors could not be instantiated
+     * @throws IOException  the values could not be written
+     */
+    @TestMethod("testBatch")
+    public int process(Iterator<? extends IAtomContainer> molecules, DescriptorSink sink) throws CDKException, IOException {
+        Batch batch = new Batch();
+        sink.header(getMolecularDescriptorNames());
+        IMolecularDescriptor[] instances = batch.acquire();
+        int count = 0;
+        while (molecules.hasNext()) {
+            IAtomContainer molecule = molecules.next();
+            sink.row(count++, molecule, batch.calculate(instances, molecule));
+        }
+        return count;
+    }
+
+    /**
+     * Calculate the molecular descriptors for each of the {@code molecules}
+     * using the provided {@code executor}. The molecules are read on the
+     * calling thread (allowing non thread-safe readers) and only a bounded
+     * number are queued at once. The rows are written to the {@code sink} on
+     * the calling thread in input order. Each task uses its own instances of
+     * the descriptors, which are reused by later tasks. The sink is not closed.
+     *
+     * @param molecules the molecules to process
+     * @param sink      receives the descriptor values
+     * @param executor  evaluates the descriptors
+     * @return the number of molecules processed
+     * @throws CDKException the descriptors could not be instantiated
+     * @throws IOException  the values could not be written
+     * @see #process(Iterator, DescriptorSink)
+     */
+    @TestMethod("testBatchParallel")
+    public int process(Iterator<? extends IAtomContainer> molecules, DescriptorSink sink, ExecutorService executor)
+            throws CDKException, IOException {
+
+        final Batch batch = new Batch();
+        final int limit = MOLECULES_PER_THREAD * Runtime.getRuntime().availableProcessors();
+        final LinkedList<IAtomContainer> queued = new LinkedList<IAtomContainer>();
+        final LinkedList<Future<double[]>> pending = new LinkedList<Future<double[]>>();
+
+        sink.header(getMolecularDescriptorNames());
+        int count = 0;
+        try {
+            while (molecules.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < limit && molecules.hasNext()) {
+                    final IAtomContainer molecule = molecules.next();
+                    queued.add(molecule);
+                    pending.add(executor.submit(new Callable<double[]>() {
+                        @Override public double[] call() throws CDKException {
+                            IMolecularDescriptor[] instances = batch.acquire();
+                            try {
+                                return batch.calculate(instances, molecule);
+                            } finally {
+                                batch.release(instances);
+                            }
+                        }
+                    }));
+                }
+                double[] row = get(pending.removeFirst());
+                sink.row(count++, queued.removeFirst(), row);
+            }
+        } finally {
+            for (Future<double[]> future : pending)
+                future.cancel(true);
+        }
+        return count;
+    }
+
+    /**
+     * Wait for a batch result, the cause of a failure is rethrown.
+     *
+     * @param future the pending result
+     * @return the result
+     * @throws CDKException the descriptors could not be instantiated
+     */
+    private static double[] get(Future<double[]> future) throws CDKException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CDKException("Interrupted while processing descriptors", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CDKException)
+                throw (CDKException) e.getCause();
+            throw Futures.unwrap(e);
+        }
+    }
+
+    /**
+     * State of a batch run - the layout of the rows and the idle descriptor
+     * instances. The configured descriptors are not used directly, instead
+     * copies with the same parameters are created for each thread.
+     */
+    private final class Batch {
+
+        /** The molecular descriptors, their parameters and column count. */
+        private final List<IMolecularDescriptor> prototypes = new ArrayList<IMolecularDescriptor>();
+        private final List<Object[]>             parameters = new ArrayList<Object[]>();
+        private final int[]                      widths;
+        private final int                        width;
+
+        /** Descriptor instances not currently in use. */
+        private final Queue<IMolecularDescriptor[]> idle = new ConcurrentLinkedQueue<IMolecularDescriptor[]>();
+
+        private Batch() throws CDKException {
+            if (descriptors == null)
+                throw new CDKException("Descriptors have not been instantiated");
+            for (IDescriptor descriptor : descriptors) {
+                if (descriptor instanceof IMolecularDescriptor) {
+                    prototypes.add((IMolecularDescriptor) descriptor);
+                    parameters.add(descriptor.getParameters());
+                } else {
+                    logger.debug("Skipping non-molecular descriptor in batch: ", descriptor.getClass().getName());
+                }
+            }
+            widths = new int[prototypes.size()];
+            int sum = 0;
+            for (int i = 0; i < widths.length; i++)
+                sum += widths[i] = prototypes.get(i).getDescriptorNames().length;
+            width = sum;
+        }
+
+        /**
+         * Obtain a set of descriptor instances for the current thread.
+         *
+         * @return descriptor instances
+         * @throws CDKException a descriptor could not be instantiated
+         */
+        IMolecularDescriptor[] acquire() throws CDKException {
+            IMolecularDescriptor[] instances = idle.poll();
+            if (instances != null)
+                return instances;
+            instances = new IMolecularDescriptor[prototypes.size()];
+            for (int i = 0; i < instances.length; i++) {
+                try {
+                    instances[i] = (IMolecularDescriptor) instantiate(prototypes.get(i).getClass());
+                } catch (Exception e) {
+                    throw new CDKException("Could not instantiate descriptor: " + prototypes.get(i).getClass().getName(), e);
+                }
+                instances[i].initialise(builder);
+                if (parameters.get(i) != null)
+                    instances[i].setParameters(parameters.get(i));
+            }
+            return instances;
+        }
+
+        /**
+         * Return descriptor instances so they can be used by another task.
+         *
+         * @param instances descriptor instances
+         */
+        void release(IMolecularDescriptor[] instances) {
+            idle.add(instances);
+        }
+
+        /**
+         * Calculate a row of descriptor values for a molecule.
+         *
+         * @param instances descriptor instances
+         * @param molecule  the molecule
+         * @return the row of values
+         */
+        double[] calculate(IMolecularDescriptor[] instances, IAtomContainer molecule) {
+            double[] row = new double[width];
+            int offset = 0;
+            DescriptorContext context = DescriptorContext.open(molecule);
+            try {
+                for (int i = 0; i < instances.length; i++) {
+                    DescriptorValue value = null;
+                    try {
+                        value = instances[i].calculate(molecule);
+                        if (value.getException() != null) {
+                            logger.error("Could not calculate descriptor value for: ", instances[i].getClass().getName());
+                            logger.debug(value.getException());
+                            value = null;
+                        }
+                    } catch (RuntimeException e) {
+                        logger.error("Could not calculate descriptor value for: ", instances[i].getClass().getName());
+                        logger.debug(e);
                     }
+                    fill(row, offset, widths[i], value != null ? value.getValue() : null);
+                    offset += widths[i];
                 }
-                logger.debug("Calculated bond descriptors...");
-            } else {
-                logger.debug("Unknown descriptor type for: ", descriptor.getClass().getName());
+            } finally {
+                context.close();
             }
+            return row;
+        }
+    }
+
+    /**
+     * Copy the values of a descriptor result to a row. Values which are
+     * missing are set to {@link Double#NaN}.
+     *
+     * @param row    destination
+     * @param offset first column of the result
+     * @param width  number of columns of the result
+     * @param result the result, may be null
+     */
+    private static void fill(double[] row, int offset, int width, IDescriptorResult result) {
+        int n = 0;
+        if (width == 0) {
+            return;
+        } else if (result instanceof DoubleResult) {
+            row[offset + n++] = ((DoubleResult) result).doubleValue();
+        } else if (result instanceof IntegerResult) {
+            row[offset + n++] = ((IntegerResult) result).intValue();
+        } else if (result instanceof BooleanResult) {
+            row[offset + n++] = ((BooleanResult) result).booleanValue() ? 1 : 0;
+        } else if (result instanceof DoubleArrayResult) {
+            DoubleArrayResult array = (DoubleArrayResult) result;
+            for (; n < width && n < array.length(); n++)
+                row[offset + n] = array.get(n);
+        } else if (result instanceof IntegerArrayResult) {
+            IntegerArrayResult array = (IntegerArrayResult) result;
+            for (; n < width && n < array.length(); n++)
+                row[offset + n] = array.get(n);
         }
+        for (; n < width; n++)
+            row[offset + n] = Double.NaN;
     }
 
     /**
@@ -696,7 +984,6 @@ public class DescriptorEngine {
                                                                     InstantiationException {
         for(Constructor constructor : c.getConstructors()){
             Class<?>[] params = constructor.getParameterTypes();
-            System.out.println(c.getSimpleName() + Arrays.toString(params));
             if(params.length == 0){
                 return (IDescriptor) constructor.newInstance();
             } else if(params.length == 1
@@ -0,0 +1,156 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.qsar;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Receives the descriptor values calculated in a batch run of the {@link
+ * DescriptorEngine}. The sink is first given the column names and then one
+ * dense row of values per molecule, in input order. A value which could not
+ * be calculated is {@link Double#NaN}.
+ *
+ * <blockquote><pre>
+ * DescriptorSink sink = DescriptorSink.csv(new FileWriter("descriptors.csv"));
+ * engine.process(new IteratingSDFReader(in, builder), sink, executor);
+ * sink.close();
+ * </pre></blockquote>
+ *
+ * @cdk.module qsarmolecular
+ * @cdk.githash
+ * @see DescriptorEngine#process(java.util.Iterator, DescriptorSink, java.util.concurrent.ExecutorService)
+ */
+@TestClass("org.openscience.cdk.qsar.DescriptorSinkTest")
+public abstract class DescriptorSink implements Closeable {
+
+    /**
+     * Start a new table with the given column names.
+     *
+     * @param names the column names
+     * @throws IOException the names could not be written
+     */
+    public abstract void header(String[] names) throws IOException;
+
+    /**
+     * Receive the values for a molecule.
+     *
+     * @param index    the index of the molecule in the input
+     * @param molecule the molecule
+     * @param values   the descriptor values, one for each column
+     * @throws IOException the row could not be written
+     */
+    public abstract void row(int index, IAtomContainer molecule, double[] values) throws IOException;
+
+    /**
+     * A sink which writes comma separated values. The first line holds the
+     * column names and each following line the values of a molecule.
+     *
+     * @param writer where to write the values
+     * @return a CSV sink
+     */
+    @TestMethod("csv")
+    public static DescriptorSink csv(Writer writer) {
+        return new CSVSink(writer);
+    }
+
+    /**
+     * A sink which writes the values in binary. The stream starts with the
+     * number of columns (int) and the name of each column (modified UTF-8,
+     * {@link DataOutputStream#writeUTF(String)}). Each row is then written as
+     * one double for each column. All values are big-endian.
+     *
+     * @param out where to write the values
+     * @return a binary sink
+     */
+    @TestMethod("binary")
+    public static DescriptorSink binary(OutputStream out) {
+        return new BinarySink(out);
+    }
+
+    /** Comma separated values. */
+    private static final class CSVSink extends DescriptorSink {
+
+        private final BufferedWriter writer;
+
+        private CSVSink(Writer writer) {
+            this.writer = new BufferedWriter(writer);
+        }
+
+        @Override public void header(String[] names) throws IOException {
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                writer.write(names[i]);
+            }
+            writer.newLine();
+        }
+
+        @Override public void row(int index, IAtomContainer molecule, double[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                writer.write(Double.toString(values[i]));
+            }
+            writer.newLine();
+        }
+
+        @Override public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /** Big-endian doubles. */
+    private static final class BinarySink extends DescriptorSink {
+
+        private final DataOutputStream out;
+
+        private BinarySink(OutputStream out) {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+        }
+
+        @Override public void header(String[] names) throws IOException {
+            out.writeInt(names.length);
+            for (String name : names)
+                out.writeUTF(name);
+        }
+
+        @Override public void row(int index, IAtomContainer molecule, double[] values) throws IOException {
+            for (double value : values)
+                out.writeDouble(value);
+        }
+
+        @Override public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -25,17 +25,16 @@ import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.config.Isotopes;
 import org.openscience.cdk.config.IsotopeFactory;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.matrix.TopologicalMatrix;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IElement;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleArrayResult;
 import org.openscience.cdk.qsar.result.DoubleArrayResultType;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 /**
  * This class calculates ATS autocorrelation descriptor, where the weight equal
@@ -80,22 +79,13 @@ public class AutocorrelationDescriptorMass extends AbstractMolecularDescriptor i
      */
     @TestMethod("test1")
     public DescriptorValue calculate(IAtomContainer atomContainer) {
-        IAtomContainer container;
-        try {
-            container = (IAtomContainer) atomContainer.clone();
-            container = AtomContainerManipulator.removeHydrogens(container);
-        } catch (CloneNotSupportedException e) {
-            DoubleArrayResult result = new DoubleArrayResult(5);
-            for (int i = 0; i < 5; i++) result.add(Double.NaN);
-            return new DescriptorValue(getSpecification(), getParameterNames(), getParameters(),
-                    result, getDescriptorNames(),
-                    new CDKException("Error during cloner: " + e.getMessage(), e));
-        }
+        DescriptorContext context = DescriptorContext.of(atomContainer);
+        IAtomContainer container = context.heavyAtoms();
 
         try {
             double[] w = listConvertion(container);
             int natom = container.getAtomCount();
-            int[][] distancematrix = TopologicalMatrix.getMatrix(container);
+            int[][] distancematrix = context.heavyAtomDistances();
             double[] masSum = new double[5];
 
             for (int k = 0; k < 5; k++) {
@@ -30,13 +30,13 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleArrayResult;
 import org.openscience.cdk.qsar.result.DoubleArrayResultType;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 import java.util.ArrayList;
 
@@ -134,18 +134,7 @@ public class KappaShapeIndicesDescriptor extends AbstractMolecularDescriptor imp
      */
     @TestMethod("testCalculate_IAtomContainer")
     public DescriptorValue calculate(IAtomContainer container) {
-        IAtomContainer atomContainer;
-        try {
-            atomContainer = (IAtomContainer) container.clone();
-        } catch (CloneNotSupportedException e) {
-            DoubleArrayResult kierValues = new DoubleArrayResult(3);
-            kierValues.add(Double.NaN);
-            kierValues.add(Double.NaN);
-            kierValues.add(Double.NaN);
-            return new DescriptorValue(getSpecification(), getParameterNames(), getParameters(), kierValues,
-                getDescriptorNames());
-        }
-        atomContainer = AtomContainerManipulator.removeHydrogens(atomContainer);
+        IAtomContainer atomContainer = DescriptorContext.of(container).heavyAtoms();
 
         //org.openscience.cdk.interfaces.IAtom[] atoms = atomContainer.getAtoms();
         java.util.List firstAtomNeighboors;
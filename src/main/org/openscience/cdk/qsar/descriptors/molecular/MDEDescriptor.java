@@ -22,18 +22,16 @@ package org.openscience.cdk.qsar.descriptors.molecular;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.PathTools;
-import org.openscience.cdk.graph.matrix.AdjacencyMatrix;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleArrayResult;
 import org.openscience.cdk.qsar.result.DoubleArrayResultType;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -203,11 +201,13 @@ public class MDEDescriptor extends AbstractMolecularDescriptor implements IMolec
     @TestMethod("testCalculate_IAtomContainer")
     public DescriptorValue calculate(IAtomContainer container) {
 
-        IAtomContainer local = AtomContainerManipulator.removeHydrogens(container);
+        DescriptorContext context = DescriptorContext.of(container);
+        IAtomContainer local = context.heavyAtoms();
+        int[][] tdist = context.heavyAtomDistances();
 
         DoubleArrayResult retval = new DoubleArrayResult(19);
         for (int i = 0; i < 19; i++) {
-            retval.add(dedge(local, i));
+            retval.add(dedge(local, tdist, i));
         }
 
         return new DescriptorValue(getSpecification(),
@@ -230,10 +230,7 @@ public class MDEDescriptor extends AbstractMolecularDescriptor implements IMolec
         return new DoubleArrayResultType(19);
     }
 
-    private double dedge(IAtomContainer atomContainer, int which) {
-        int[][] adjMatrix = AdjacencyMatrix.getMatrix(atomContainer);
-        int[][] tdist = PathTools.computeFloydAPSP(adjMatrix);
-
+    private double dedge(IAtomContainer atomContainer, int[][] tdist, int which) {
         int[][] atypes = null;
 
         switch (which) {
@@ -30,12 +30,12 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.graph.PathTools;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleResult;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 
 /**
@@ -133,10 +133,10 @@ public class PetitjeanNumberDescriptor extends AbstractMolecularDescriptor imple
      */
     @TestMethod("testCalculate_IAtomContainer")
     public DescriptorValue calculate(IAtomContainer atomContainer) {
-        IAtomContainer cloneContainer = AtomContainerManipulator.removeHydrogens(atomContainer);
+        int[][] distances = DescriptorContext.of(atomContainer).heavyAtomDistances();
         double petitjeanNumber; //weinerPath
-        int diameter = PathTools.getMolecularGraphDiameter(cloneContainer);
-        int radius = PathTools.getMolecularGraphRadius(cloneContainer);
+        int diameter = PathTools.getMolecularGraphDiameter(distances);
+        int radius = PathTools.getMolecularGraphRadius(distances);
 
         if (diameter == 0) petitjeanNumber = 0;
         else petitjeanNumber = (diameter - radius)/(double)diameter;
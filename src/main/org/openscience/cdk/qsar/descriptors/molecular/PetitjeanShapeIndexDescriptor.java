@@ -26,13 +26,13 @@ import org.openscience.cdk.geometry.GeometryTools;
 import org.openscience.cdk.graph.PathTools;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleArrayResult;
 import org.openscience.cdk.qsar.result.DoubleArrayResultType;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 import javax.vecmath.Point3d;
 
@@ -150,10 +150,10 @@ public class PetitjeanShapeIndexDescriptor extends AbstractMolecularDescriptor i
 
     @TestMethod("testCalculate_IAtomContainer")
     public DescriptorValue calculate(IAtomContainer container) {
-        IAtomContainer local = AtomContainerManipulator.removeHydrogens(container);
+        int[][] distances = DescriptorContext.of(container).heavyAtomDistances();
 
-        int tradius = PathTools.getMolecularGraphRadius(local);
-        int tdiameter = PathTools.getMolecularGraphDiameter(local);
+        int tradius = PathTools.getMolecularGraphRadius(distances);
+        int tdiameter = PathTools.getMolecularGraphDiameter(distances);
 
         DoubleArrayResult retval = new DoubleArrayResult();
         retval.add((double) (tdiameter - tradius) / (double) tradius);
@@ -22,17 +22,15 @@ package org.openscience.cdk.qsar.descriptors.molecular;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.PathTools;
-import org.openscience.cdk.graph.matrix.ConnectionMatrix;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.qsar.AbstractMolecularDescriptor;
+import org.openscience.cdk.qsar.DescriptorContext;
 import org.openscience.cdk.qsar.DescriptorSpecification;
 import org.openscience.cdk.qsar.DescriptorValue;
 import org.openscience.cdk.qsar.IMolecularDescriptor;
 import org.openscience.cdk.qsar.result.DoubleArrayResult;
 import org.openscience.cdk.qsar.result.DoubleArrayResultType;
 import org.openscience.cdk.qsar.result.IDescriptorResult;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 
 
 /**
@@ -71,10 +69,7 @@ public class WienerNumbersDescriptor extends AbstractMolecularDescriptor impleme
 
     private static final String[] names = {"WPATH", "WPOL"};
 
-    double[][] matr = null;
     DoubleArrayResult wienerNumbers = null;
-    ConnectionMatrix connectionMatrix = new ConnectionMatrix();
-    AtomContainerManipulator atm =  new AtomContainerManipulator();
 
     /**
      *  Constructor for the WienerNumbersDescriptor object.
@@ -156,8 +151,7 @@ public class WienerNumbersDescriptor extends AbstractMolecularDescriptor impleme
         double wienerPolarityNumber = 0; //wienerPol
 
 
-        matr = ConnectionMatrix.getMatrix(AtomContainerManipulator.removeHydrogens(atomContainer));        
-        int[][] distances = PathTools.computeFloydAPSP(matr);
+        int[][] distances = DescriptorContext.of(atomContainer).heavyAtomDistances();
 
         int partial;
         for (int i = 0; i < distances.length; i++) {
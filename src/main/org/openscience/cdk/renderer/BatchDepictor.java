@@ -0,0 +1,534 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.renderer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.ILonePair;
+import org.openscience.cdk.interfaces.ISingleElectron;
+import org.openscience.cdk.renderer.elements.IRenderingElement;
+import org.openscience.cdk.renderer.font.AWTFontManager;
+import org.openscience.cdk.renderer.generators.BasicAtomGenerator;
+import org.openscience.cdk.renderer.generators.BasicBondGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.BackgroundColor;
+import org.openscience.cdk.renderer.generators.IGenerator;
+import org.openscience.cdk.renderer.generators.IGeneratorParameter;
+import org.openscience.cdk.renderer.visitor.AWTDrawVisitor;
+import org.openscience.cdk.renderer.visitor.IDrawVisitor;
+import org.openscience.cdk.renderer.visitor.SVGDrawVisitor;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+import javax.imageio.ImageIO;
+import javax.vecmath.Point2d;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Depicts many molecules, as SVG documents or as a grid in a PNG image, on
+ * a pool of worker threads. Each worker thread draws with its own renderer
+ * (and generators) which is reused for every molecule it depicts. The
+ * rendering elements generated for a molecule are cached and shared between
+ * the threads, a molecule which is depicted again is only drawn. The SVG
+ * documents are written directly from the rendering elements, without a
+ * {@link java.awt.Graphics2D}.
+ *
+ * <blockquote><pre>
+ * ExecutorService executor = Executors.newFixedThreadPool(4);
+ * BatchDepictor   depictor = new BatchDepictor(executor);
+ * depictor.set(BasicAtomGenerator.ColorByType.class, false);
+ * List&lt;String&gt; svgs = depictor.toSVG(molecules, 200, 200);
+ * depictor.writePNG(molecules, 5, 200, 200, out);
+ * </pre></blockquote>
+ *
+ * The molecules must have 2D coordinates, a molecule which can not be
+ * depicted is logged and gives a null document or an empty cell of the
+ * grid. If no executor is provided the molecules are depicted on the
+ * calling thread.
+ *
+ * The cached elements are keyed on a hash of the atoms (symbol, charge,
+ * mass number, hydrogen count, aromaticity, radicals, lone pairs and 2D
+ * coordinates) and bonds (order, stereo and aromaticity) of a molecule and
+ * the parameter values set on the depictor, the generators should not
+ * depend on other properties of the molecule. A molecule should not be
+ * modified while it is depicted.
+ *
+ * @cdk.module  renderawt
+ * @cdk.githash
+ * @see AtomContainerRenderer
+ * @see SVGDrawVisitor
+ */
+@TestClass("org.openscience.cdk.renderer.BatchDepictorTest")
+public final class BatchDepictor {
+
+    private static final ILoggingTool logger = LoggingToolFactory.createLoggingTool(BatchDepictor.class);
+
+    /** The generators used by default. */
+    private static final List<Class<? extends IGenerator<IAtomContainer>>> BASIC_GENERATORS = Collections
+            .unmodifiableList(Arrays.<Class<? extends IGenerator<IAtomContainer>>> asList(BasicSceneGenerator.class,
+                                                                                           BasicBondGenerator.class,
+                                                                                           BasicAtomGenerator.class));
+
+    /** Number of element trees cached by default. */
+    private static final long DEFAULT_CACHE_SIZE = 10000;
+
+    /** Generators of each renderer, instantiated for each thread. */
+    private final List<Class<? extends IGenerator<IAtomContainer>>> generators;
+
+    /** Executor the molecules are depicted on, null for the calling thread. */
+    private final ExecutorService executor;
+
+    /** The rendering elements of the depicted molecules. */
+    private final Cache<Key, IRenderingElement> cache;
+
+    /** The renderer of each thread. */
+    private final ThreadLocal<Renderer> renderers = new ThreadLocal<Renderer>();
+
+    /** Parameter values which differ from the defaults, replaced (not modified) when a value is set. */
+    private volatile Map<String, Object> settings = Collections.emptyMap();
+
+    /**
+     * Create a depictor which draws the molecules with the basic scene, bond
+     * and atom generators on the given executor.
+     *
+     * @param executor executor to depict the molecules on (null: the calling thread)
+     */
+    @TestMethod("svg,grid")
+    public BatchDepictor(ExecutorService executor) {
+        this(BASIC_GENERATORS, DEFAULT_CACHE_SIZE, executor);
+    }
+
+    /**
+     * Create a depictor which draws the molecules with the given generators
+     * on the given executor. The generators are instantiated for each worker
+     * thread and must have a public constructor without arguments.
+     *
+     * @param generators the classes of the generators, in drawing order
+     * @param cacheSize  maximum number of molecules whose rendering elements are cached
+     * @param executor   executor to depict the molecules on (null: the calling thread)
+     * @throws IllegalArgumentException a generator could not be instantiated
+     */
+    @TestMethod("cache")
+    public BatchDepictor(List<Class<? extends IGenerator<IAtomContainer>>> generators, long cacheSize,
+                         ExecutorService executor) {
+        this.generators = new ArrayList<Class<? extends IGenerator<IAtomContainer>>>(generators);
+        this.executor = executor;
+        this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+        // fail early on a generator which can not be instantiated
+        renderer();
+    }
+
+    /**
+     * Set the value of a rendering parameter for all subsequent depictions.
+     * The parameter must be registered by one of the generators. The other
+     * parameters have their default value.
+     *
+     * @param parameter the parameter
+     * @param value     the new value
+     * @return this depictor, for chaining
+     * @throws IllegalArgumentException the parameter is not used by the generators
+     */
+    @TestMethod("cache,unknownParameter")
+    public <T extends IGeneratorParameter<S>, S> BatchDepictor set(Class<T> parameter, S value) {
+        if (!renderer().getRenderer2DModel().hasParameter(parameter))
+            throw new IllegalArgumentException(parameter.getName() + " is not a parameter of the generators");
+        synchronized (this) {
+            Map<String, Object> settings = new LinkedHashMap<String, Object>(this.settings);
+            settings.put(parameter.getName(), value);
+            this.settings = Collections.unmodifiableMap(settings);
+        }
+        return this;
+    }
+
+    /**
+     * Depict a molecule as an SVG document, on the calling thread.
+     *
+     * @param molecule the molecule, with 2D coordinates
+     * @param width    width of the document (pixels)
+     * @param height   height of the document (pixels)
+     * @return the SVG document
+     */
+    @TestMethod("svg")
+    public String toSVG(IAtomContainer molecule, int width, int height) {
+        SVGDrawVisitor visitor = new SVGDrawVisitor(width, height);
+        renderer().paint(molecule, visitor, width, height, settings);
+        return visitor.toString();
+    }
+
+    /**
+     * Depict molecules as SVG documents.
+     *
+     * @param molecules the molecules, with 2D coordinates
+     * @param width     width of each document (pixels)
+     * @param height    height of each document (pixels)
+     * @return the SVG documents, in the order of the molecules (null for a
+     *         molecule which could not be depicted)
+     */
+    @TestMethod("svg,noCoordinates")
+    public List<String> toSVG(List<IAtomContainer> molecules, final int width, final int height) {
+        final Map<String, Object> settings = this.settings;
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>(molecules.size());
+        for (final IAtomContainer molecule : molecules) {
+            tasks.add(new Callable<String>() {
+
+                @Override public String call() throws Exception {
+                    SVGDrawVisitor visitor = new SVGDrawVisitor(width, height);
+                    renderer().paint(molecule, visitor, width, height, settings);
+                    return visitor.toString();
+                }
+            });
+        }
+        return invoke(molecules, tasks);
+    }
+
+    /**
+     * Depict molecules in a grid, row by row. Each molecule is drawn in a
+     * cell of the given size.
+     *
+     * @param molecules  the molecules, with 2D coordinates
+     * @param nColumns   number of cells in a row
+     * @param cellWidth  width of a cell (pixels)
+     * @param cellHeight height of a cell (pixels)
+     * @return the image of the grid
+     */
+    @TestMethod("grid,noCoordinates")
+    public BufferedImage toImage(List<IAtomContainer> molecules, int nColumns, final int cellWidth,
+                                 final int cellHeight) {
+        if (nColumns < 1)
+            throw new IllegalArgumentException("a grid needs at least one column");
+        final Map<String, Object> settings = this.settings;
+        int nRows = Math.max(1, (molecules.size() + nColumns - 1) / nColumns);
+        BufferedImage grid = new BufferedImage(nColumns * cellWidth, nRows * cellHeight,
+                                               BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = grid.createGraphics();
+        g2.setColor(background(settings));
+        g2.fillRect(0, 0, grid.getWidth(), grid.getHeight());
+        g2.dispose();
+
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(molecules.size());
+        for (final IAtomContainer molecule : molecules) {
+            tasks.add(new Callable<int[]>() {
+
+                @Override public int[] call() throws Exception {
+                    return renderer().draw(molecule, cellWidth, cellHeight, settings);
+                }
+            });
+        }
+        List<int[]> cells = invoke(molecules, tasks);
+        for (int i = 0; i < cells.size(); i++) {
+            if (cells.get(i) != null)
+                grid.getRaster().setDataElements((i % nColumns) * cellWidth, (i / nColumns) * cellHeight,
+                                                 cellWidth, cellHeight, cells.get(i));
+        }
+        return grid;
+    }
+
+    /**
+     * Depict molecules in a grid, row by row, and write it as a PNG image.
+     *
+     * @param molecules  the molecules, with 2D coordinates
+     * @param nColumns   number of cells in a row
+     * @param cellWidth  width of a cell (pixels)
+     * @param cellHeight height of a cell (pixels)
+     * @param out        the output stream, it is not closed
+     * @throws IOException the image could not be written
+     * @see #toImage(List, int, int, int)
+     */
+    @TestMethod("grid")
+    public void writePNG(List<IAtomContainer> molecules, int nColumns, int cellWidth, int cellHeight,
+                         OutputStream out) throws IOException {
+        if (!ImageIO.write(toImage(molecules, nColumns, cellWidth, cellHeight), "png", out))
+            throw new IOException("no PNG image writer");
+    }
+
+    /**
+     * Run the depictions on the executor, or on the calling thread if there
+     * is no executor.
+     *
+     * @param molecules the molecules
+     * @param tasks     the depiction of each molecule
+     * @return the results, null for a depiction which failed
+     */
+    private <T> List<T> invoke(List<IAtomContainer> molecules, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try {
+            if (executor != null) {
+                for (Callable<T> task : tasks)
+                    futures.add(executor.submit(task));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    results.add(executor != null ? futures.get(i).get() : tasks.get(i).call());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    failed(logger, i, molecules.get(i), cause);
+                    results.add(null);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failed(logger, i, molecules.get(i), e);
+                    results.add(null);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while depicting", e);
+        } finally {
+            for (Future<T> future : futures)
+                future.cancel(true);
+        }
+    }
+
+    /**
+     * Log a molecule which could not be depicted. The title may be null, the
+     * logger requires non-null arguments.
+     *
+     * @param logger   the logger to warn
+     * @param index    position of the molecule
+     * @param molecule the molecule
+     * @param cause    why the depiction failed
+     */
+    static void failed(ILoggingTool logger, int index, IAtomContainer molecule, Throwable cause) {
+        logger.warn("Could not depict molecule ", index, " (",
+                    String.valueOf((Object) molecule.getProperty(CDKConstants.TITLE)), "): ", String.valueOf(cause));
+        logger.debug(cause);
+    }
+
+    /**
+     * The renderer of the current thread, it is created when the thread
+     * depicts its first molecule.
+     *
+     * @return the renderer
+     */
+    private Renderer renderer() {
+        Renderer renderer = renderers.get();
+        if (renderer == null) {
+            List<IGenerator<IAtomContainer>> instances = new ArrayList<IGenerator<IAtomContainer>>();
+            for (Class<? extends IGenerator<IAtomContainer>> generator : generators) {
+                try {
+                    instances.add(generator.newInstance());
+                } catch (InstantiationException e) {
+                    throw new IllegalArgumentException("could not instantiate " + generator.getName(), e);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("could not instantiate " + generator.getName(), e);
+                }
+            }
+            renderer = new Renderer(instances);
+            renderers.set(renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * The background colour, for the grid.
+     *
+     * @param settings the parameter values
+     * @return the background colour
+     */
+    private Color background(Map<String, Object> settings) {
+        Object color = settings.get(BackgroundColor.class.getName());
+        return color != null ? (Color) color : new BackgroundColor().getDefault();
+    }
+
+    /**
+     * A renderer which looks up the rendering elements of a molecule in the
+     * cache before generating them.
+     */
+    private final class Renderer extends AtomContainerRenderer {
+
+        /** The parameter values of the current depiction. */
+        private Map<String, Object> settings;
+
+        /** Image a grid cell is drawn on, reused if the cells have the same size. */
+        private BufferedImage cell;
+
+        private Renderer(List<IGenerator<IAtomContainer>> generators) {
+            super(generators, new AWTFontManager());
+        }
+
+        /**
+         * Depict a molecule with the given visitor.
+         *
+         * @param molecule the molecule
+         * @param visitor  the draw visitor
+         * @param width    width of the drawing
+         * @param height   height of the drawing
+         * @param settings the parameter values
+         */
+        private void paint(IAtomContainer molecule, IDrawVisitor visitor, int width, int height,
+                           Map<String, Object> settings) {
+            configure(settings);
+            paint(molecule, visitor, new Rectangle2D.Double(0, 0, width, height), true);
+        }
+
+        /**
+         * Depict a molecule in a grid cell.
+         *
+         * @param molecule the molecule
+         * @param width    width of the cell
+         * @param height   height of the cell
+         * @param settings the parameter values
+         * @return the pixels of the cell
+         */
+        private int[] draw(IAtomContainer molecule, int width, int height, Map<String, Object> settings) {
+            if (cell == null || cell.getWidth() != width || cell.getHeight() != height)
+                cell = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = cell.createGraphics();
+            try {
+                g2.setColor(background(settings));
+                g2.fillRect(0, 0, width, height);
+                paint(molecule, new AWTDrawVisitor(g2), width, height, settings);
+            } finally {
+                g2.dispose();
+            }
+            return (int[]) cell.getRaster().getDataElements(0, 0, width, height, null);
+        }
+
+        /**
+         * Reset the parameters to their default values and then apply the
+         * settings. The model keeps the values of the previous depiction
+         * (e.g. the zoom) which would otherwise change the elements.
+         *
+         * @param settings the parameter values
+         */
+        @SuppressWarnings("unchecked")
+        private void configure(Map<String, Object> settings) {
+            this.settings = settings;
+            for (IGeneratorParameter<?> parameter : rendererModel.getRenderingParameters()) {
+                IGeneratorParameter<Object> p = (IGeneratorParameter<Object>) parameter;
+                String name = p.getClass().getName();
+                p.setValue(settings.containsKey(name) ? settings.get(name) : p.getDefault());
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override public IRenderingElement generateDiagram(IAtomContainer molecule) {
+            Key key = new Key(molecule, settings);
+            IRenderingElement diagram = cache.getIfPresent(key);
+            if (diagram == null) {
+                diagram = super.generateDiagram(molecule);
+                cache.put(key, diagram);
+            }
+            return diagram;
+        }
+    }
+
+    /**
+     * The key of the rendering elements of a molecule. The properties of the
+     * atoms and bonds are encoded exactly, the hash code is a hash of the
+     * encoding.
+     */
+    private static final class Key {
+
+        private final long[]              encoding;
+        private final String              symbols;
+        private final Map<String, Object> settings;
+        private final int                 hashCode;
+
+        private Key(IAtomContainer molecule, Map<String, Object> settings) {
+            int nAtoms = molecule.getAtomCount(), nBonds = molecule.getBondCount();
+            int nElectrons = molecule.getSingleElectronCount() + molecule.getLonePairCount();
+            long[] encoding = new long[4 * nAtoms + 2 * nBonds + nElectrons + 1];
+            StringBuilder symbols = new StringBuilder(2 * nAtoms);
+            int n = 0;
+            encoding[n++] = (long) nAtoms << 32 | nBonds;
+            for (IAtom atom : molecule.atoms()) {
+                Point2d p = atom.getPoint2d();
+                encoding[n++] = Double.doubleToLongBits(p != null ? p.x : Double.NaN);
+                encoding[n++] = Double.doubleToLongBits(p != null ? p.y : Double.NaN);
+                encoding[n++] = pack(value(atom.getFormalCharge()), value(atom.getMassNumber()));
+                encoding[n++] = pack(value(atom.getImplicitHydrogenCount()),
+                                     atom.getFlag(CDKConstants.ISAROMATIC) ? 1 : 0);
+                symbols.append(atom.getSymbol()).append(' ');
+            }
+            for (IBond bond : molecule.bonds()) {
+                encoding[n++] = pack(molecule.getAtomNumber(bond.getAtom(0)),
+                                     molecule.getAtomNumber(bond.getAtom(1)));
+                encoding[n++] = pack(bond.getOrder() != null ? bond.getOrder().ordinal() : -1,
+                                     (bond.getStereo() != null ? bond.getStereo().ordinal() : -1) << 1
+                                             | (bond.getFlag(CDKConstants.ISAROMATIC) ? 1 : 0));
+            }
+            for (ISingleElectron electron : molecule.singleElectrons())
+                encoding[n++] = pack(1, molecule.getAtomNumber(electron.getAtom()));
+            for (ILonePair pair : molecule.lonePairs())
+                encoding[n++] = pack(2, molecule.getAtomNumber(pair.getAtom()));
+
+            long hash = 1;
+            for (long x : encoding) {
+                hash = (hash ^ x) * 0x9E3779B97F4A7C15L;
+                hash ^= hash >>> 29;
+            }
+            this.encoding = encoding;
+            this.symbols = symbols.toString();
+            this.settings = settings;
+            this.hashCode = (int) (hash ^ (hash >>> 32)) * 31 + this.symbols.hashCode();
+        }
+
+        private static int value(Integer value) {
+            return value != null ? value : Integer.MIN_VALUE;
+        }
+
+        private static long pack(int hi, int lo) {
+            return (long) hi << 32 | (lo & 0xffffffffL);
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key that = (Key) o;
+            return hashCode == that.hashCode && Arrays.equals(encoding, that.encoding)
+                    && symbols.equals(that.symbols) && settings.equals(that.settings);
+        }
+
+        @Override public int hashCode() {
+            return hashCode;
+        }
+    }
+}
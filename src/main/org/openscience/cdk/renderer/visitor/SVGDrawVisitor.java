@@ -0,0 +1,549 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.renderer.visitor;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.AffineTransform;
+
+import javax.vecmath.Point2d;
+import javax.vecmath.Vector2d;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.renderer.RendererModel;
+import org.openscience.cdk.renderer.elements.ArrowElement;
+import org.openscience.cdk.renderer.elements.AtomSymbolElement;
+import org.openscience.cdk.renderer.elements.Bounds;
+import org.openscience.cdk.renderer.elements.ElementGroup;
+import org.openscience.cdk.renderer.elements.GeneralPath;
+import org.openscience.cdk.renderer.elements.IRenderingElement;
+import org.openscience.cdk.renderer.elements.LineElement;
+import org.openscience.cdk.renderer.elements.OvalElement;
+import org.openscience.cdk.renderer.elements.PathElement;
+import org.openscience.cdk.renderer.elements.RectangleElement;
+import org.openscience.cdk.renderer.elements.TextElement;
+import org.openscience.cdk.renderer.elements.TextGroupElement;
+import org.openscience.cdk.renderer.elements.WedgeLineElement;
+import org.openscience.cdk.renderer.font.AWTFontManager;
+import org.openscience.cdk.renderer.font.AbstractFontManager;
+import org.openscience.cdk.renderer.font.IFontManager;
+import org.openscience.cdk.renderer.generators.BasicBondGenerator.WedgeWidth;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.ArrowHeadWidth;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.Scale;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+/**
+ * Draws the rendering elements as an SVG document. The elements are written
+ * as text, there is no {@link java.awt.Graphics2D} involved and the visitor
+ * may be used in a headless environment. The layout follows the {@link
+ * AWTDrawVisitor}, text is centred by the SVG viewer and only the size of
+ * the background behind a label is estimated from the font size (the glyph
+ * metrics are not available).
+ *
+ * <blockquote><pre>
+ * SVGDrawVisitor visitor = new SVGDrawVisitor(200, 200);
+ * renderer.paint(molecule, visitor, new Rectangle2D.Double(0, 0, 200, 200), true);
+ * String svg = visitor.toString();
+ * </pre></blockquote>
+ *
+ * @cdk.module renderbasic
+ * @cdk.githash
+ * @see AWTDrawVisitor
+ */
+@TestClass("org.openscience.cdk.renderer.visitor.SVGDrawVisitorTest")
+public final class SVGDrawVisitor implements IDrawVisitor {
+
+    private static final ILoggingTool logger = LoggingToolFactory.createLoggingTool(SVGDrawVisitor.class);
+
+    /** Font size used when the font manager does not provide one. */
+    private static final int DEFAULT_FONT_SIZE = 12;
+
+    /** Estimated width and height of a character, relative to the font size. */
+    private static final double CHAR_WIDTH = 0.6, CHAR_HEIGHT = 0.7;
+
+    /** Size of the document. */
+    private final double width, height;
+
+    /** The elements drawn so far. */
+    private final StringBuilder sb = new StringBuilder(4096);
+
+    private AffineTransform transform = new AffineTransform();
+
+    private IFontManager fontManager;
+
+    private RendererModel rendererModel;
+
+    /**
+     * Create a visitor which draws a document of the given size (pixels).
+     *
+     * @param width  width of the document
+     * @param height height of the document
+     */
+    @TestMethod("document")
+    public SVGDrawVisitor(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Draw an element, and its children.
+     *
+     * @param element the element
+     */
+    @TestMethod("lines,text,shapes,wedges")
+    public void visit(IRenderingElement element) {
+        if (element instanceof ElementGroup)
+            ((ElementGroup) element).visitChildren(this);
+        else if (element instanceof WedgeLineElement)
+            visit((WedgeLineElement) element);
+        else if (element instanceof LineElement)
+            visit((LineElement) element);
+        else if (element instanceof OvalElement)
+            visit((OvalElement) element);
+        else if (element instanceof TextGroupElement)
+            visit((TextGroupElement) element);
+        else if (element instanceof AtomSymbolElement)
+            visit((AtomSymbolElement) element);
+        else if (element instanceof TextElement)
+            visit((TextElement) element);
+        else if (element instanceof RectangleElement)
+            visit((RectangleElement) element);
+        else if (element instanceof PathElement)
+            visit((PathElement) element);
+        else if (element instanceof GeneralPath)
+            visit((GeneralPath) element);
+        else if (element instanceof ArrowElement)
+            visit((ArrowElement) element);
+        else if (!(element instanceof Bounds))
+            logger.warn("Visitor method for ", element.getClass().getName(), " is not implemented");
+    }
+
+    /** {@inheritDoc} */
+    @TestMethod("document")
+    public void setTransform(AffineTransform transform) {
+        this.transform = transform;
+    }
+
+    /** {@inheritDoc} */
+    @TestMethod("text")
+    public void setFontManager(IFontManager fontManager) {
+        this.fontManager = fontManager;
+    }
+
+    /** {@inheritDoc} */
+    @TestMethod("document")
+    public void setRendererModel(RendererModel rendererModel) {
+        this.rendererModel = rendererModel;
+    }
+
+    /**
+     * The SVG document of the elements drawn so far, on the background
+     * colour of the renderer model.
+     *
+     * @return the SVG document
+     */
+    @TestMethod("document")
+    @Override public String toString() {
+        StringBuilder doc = new StringBuilder(sb.length() + 256);
+        doc.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        doc.append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"");
+        number(doc, width).append("\" height=\"");
+        number(doc, height).append("\" viewBox=\"0 0 ");
+        number(doc, width).append(' ');
+        number(doc, height).append("\">\n");
+        doc.append("<rect width=\"100%\" height=\"100%\"");
+        paint(doc, "fill", getBackgroundColor()).append("/>\n");
+        doc.append(sb);
+        doc.append("</svg>\n");
+        return doc.toString();
+    }
+
+    private void visit(LineElement line) {
+        // as with the AWT visitor lines are at least 1.5 pixels wide
+        double w = Math.max(line.width * transform.getScaleX(), 1.5);
+        double[] xy = transform(line.firstPointX, line.firstPointY, line.secondPointX, line.secondPointY);
+        line(xy[0], xy[1], xy[2], xy[3], line.color, w);
+    }
+
+    private void visit(OvalElement oval) {
+        double[] xy = transform(oval.xCoord, oval.yCoord);
+        sb.append("<circle cx=\"");
+        number(sb, xy[0]).append("\" cy=\"");
+        number(sb, xy[1]).append("\" r=\"");
+        number(sb, oval.radius * transform.getScaleX()).append('"');
+        if (oval.fill)
+            paint(sb, "fill", oval.color);
+        else
+            paint(sb, "stroke", oval.color).append(" fill=\"none\"");
+        sb.append("/>\n");
+    }
+
+    private void visit(TextElement textElement) {
+        double[] xy = transform(textElement.xCoord, textElement.yCoord);
+        int size = fontSize();
+        double w = textWidth(textElement.text, size), h = size * CHAR_HEIGHT;
+        rect(xy[0] - w / 2, xy[1] - h / 2, w, h, 0, getBackgroundColor());
+        text(xy[0], xy[1] + h / 2, "middle", textElement.text, size, textElement.color);
+    }
+
+    private void visit(AtomSymbolElement atomSymbol) {
+        double[] xy = transform(atomSymbol.xCoord, atomSymbol.yCoord);
+        int size = fontSize();
+        double w = textWidth(atomSymbol.text, size), h = size * CHAR_HEIGHT;
+        double padding = h / 4;
+        rect(xy[0] - (w + padding) / 2, xy[1] - (h + padding) / 2, w + padding, h + padding, padding / 2,
+             getBackgroundColor());
+        text(xy[0], xy[1] + h / 2, "middle", atomSymbol.text, size, atomSymbol.color);
+
+        String chargeString;
+        if (atomSymbol.formalCharge == 0)
+            return;
+        else if (atomSymbol.formalCharge == 1)
+            chargeString = "+";
+        else if (atomSymbol.formalCharge > 1)
+            chargeString = atomSymbol.formalCharge + "+";
+        else if (atomSymbol.formalCharge == -1)
+            chargeString = "-";
+        else
+            chargeString = -atomSymbol.formalCharge + "-";
+
+        int offset = 10;
+        double minY = xy[1] - h / 2;
+        if (atomSymbol.alignment == 1)          // RIGHT
+            text(xy[0] + offset, minY, "start", chargeString, size, atomSymbol.color);
+        else if (atomSymbol.alignment == -1)    // LEFT
+            text(xy[0] - offset, minY, "start", chargeString, size, atomSymbol.color);
+        else if (atomSymbol.alignment == 2)     // TOP
+            text(xy[0], xy[1] - offset, "start", chargeString, size, atomSymbol.color);
+        else if (atomSymbol.alignment == -2)    // BOT
+            text(xy[0], xy[1] + offset, "start", chargeString, size, atomSymbol.color);
+    }
+
+    private void visit(TextGroupElement textGroup) {
+        double[] xy = transform(textGroup.xCoord, textGroup.yCoord);
+        int size = fontSize();
+        double w = textWidth(textGroup.text, size), h = size * CHAR_HEIGHT;
+        double minX = xy[0] - w / 2, minY = xy[1] - h / 2;
+        double maxX = minX + w, maxY = minY + h;
+        double baseline = maxY;
+        rect(minX, minY, w, h, 0, getBackgroundColor());
+        text(minX, baseline, "start", textGroup.text, size, textGroup.color);
+
+        for (TextGroupElement.Child child : textGroup.children) {
+            double childx, childy;
+            switch (child.position) {
+                case NE: childx = maxX;     childy = minY;     break;
+                case N:  childx = minX;     childy = minY;     break;
+                case NW: childx = minX - w; childy = minY;     break;
+                case W:  childx = minX - w; childy = baseline; break;
+                case SW: childx = minX - w; childy = maxY;     break;
+                case S:  childx = minX;     childy = maxY + h; break;
+                case SE: childx = maxX;     childy = maxY + h; break;
+                case E:  childx = maxX;     childy = baseline; break;
+                default: childx = xy[0];    childy = xy[1];    break;
+            }
+            text(childx, childy, "start", child.text, size, textGroup.color);
+            if (child.subscript != null) {
+                double scx = childx + textWidth(child.text, size) * 0.75;
+                double scy = childy + h / 3;
+                text(scx, scy, "start", child.subscript, size - 2, textGroup.color);
+            }
+        }
+    }
+
+    private void visit(WedgeLineElement wedge) {
+        // make the vector normal to the wedge axis
+        Vector2d normal = new Vector2d(wedge.firstPointY - wedge.secondPointY,
+                                       wedge.secondPointX - wedge.firstPointX);
+        normal.normalize();
+        normal.scale(rendererModel.getParameter(WedgeWidth.class).getValue()
+                             / rendererModel.getParameter(Scale.class).getValue());
+
+        // make the triangle corners
+        Point2d vertexA = new Point2d(wedge.firstPointX, wedge.firstPointY);
+        Point2d vertexB = new Point2d(wedge.secondPointX, wedge.secondPointY);
+        Point2d vertexC = new Point2d(vertexB);
+        vertexB.add(normal);
+        vertexC.sub(normal);
+
+        if (wedge.type == WedgeLineElement.TYPE.WEDGED) {
+            double[] xy = transform(vertexB.x, vertexB.y, vertexC.x, vertexC.y, vertexA.x, vertexA.y);
+            sb.append("<polygon points=\"");
+            points(xy).append('"');
+            paint(sb, "fill", wedge.color).append("/>\n");
+        } else if (wedge.type == WedgeLineElement.TYPE.DASHED) {
+            double distance = vertexB.distance(vertexA);
+            double gapFactor = 0.1;
+            double numberOfDashes = distance / (distance * gapFactor);
+            double displacement = 0;
+            Point2d point1 = new Point2d(), point2 = new Point2d();
+            for (int i = 0; i < numberOfDashes; i++) {
+                point1.interpolate(vertexA, vertexB, displacement);
+                point2.interpolate(vertexA, vertexC, displacement);
+                double[] xy = transform(point1.x, point1.y, point2.x, point2.y);
+                line(xy[0], xy[1], xy[2], xy[3], wedge.color, 1);
+                if (distance * (displacement + gapFactor) >= distance)
+                    break;
+                displacement += gapFactor;
+            }
+        } else if (wedge.type == WedgeLineElement.TYPE.INDIFF) {
+            double distance = vertexB.distance(vertexA);
+            double gapFactor = 0.05;
+            double numberOfDashes = distance / (distance * gapFactor);
+            double displacement = gapFactor;
+            double[] xy = transform(vertexA.x, vertexA.y);
+            sb.append("<polyline points=\"");
+            points(xy);
+            Point2d point = new Point2d();
+            boolean flip = false;
+            for (int i = 0; i < numberOfDashes; i++) {
+                point.interpolate(vertexA, flip ? vertexC : vertexB, displacement);
+                flip = !flip;
+                xy = transform(point.x, point.y);
+                sb.append(' ');
+                points(xy);
+                if (distance * (displacement + gapFactor) >= distance)
+                    break;
+                displacement += gapFactor;
+            }
+            sb.append("\" fill=\"none\"");
+            paint(sb, "stroke", wedge.color).append(" stroke-width=\"1\" stroke-linejoin=\"round\"/>\n");
+        }
+    }
+
+    private void visit(RectangleElement rectangle) {
+        double[] xy = transform(rectangle.xCoord, rectangle.yCoord);
+        double w = rectangle.width * transform.getScaleX();
+        double h = rectangle.height * -transform.getScaleY();
+        sb.append("<rect x=\"");
+        number(sb, xy[0]).append("\" y=\"");
+        number(sb, xy[1] - h).append("\" width=\"");
+        number(sb, w).append("\" height=\"");
+        number(sb, h).append('"');
+        if (rectangle.filled)
+            paint(sb, "fill", rectangle.color);
+        else
+            paint(sb, "stroke", rectangle.color).append(" fill=\"none\"");
+        sb.append("/>\n");
+    }
+
+    private void visit(PathElement path) {
+        sb.append("<polyline points=\"");
+        for (int i = 0; i < path.points.size(); i++) {
+            Point2d point = path.points.get(i);
+            if (i > 0)
+                sb.append(' ');
+            points(transform(point.x, point.y));
+        }
+        sb.append("\" fill=\"none\"");
+        paint(sb, "stroke", path.color).append("/>\n");
+    }
+
+    private void visit(GeneralPath path) {
+        sb.append("<path d=\"");
+        double[] coords = new double[6];
+        for (org.openscience.cdk.renderer.elements.path.PathElement element : path.elements) {
+            element.points(coords);
+            int nPoints;
+            switch (element.type) {
+                case MoveTo:  sb.append('M'); nPoints = 1; break;
+                case LineTo:  sb.append('L'); nPoints = 1; break;
+                case QuadTo:  sb.append('Q'); nPoints = 2; break;
+                case CubicTo: sb.append('C'); nPoints = 3; break;
+                default:      sb.append('Z'); nPoints = 0; break;
+            }
+            transform.transform(coords, 0, coords, 0, nPoints);
+            for (int i = 0; i < 2 * nPoints; i++) {
+                if (i > 0)
+                    sb.append(' ');
+                number(sb, coords[i]);
+            }
+        }
+        sb.append('"');
+        if (path.fill) {
+            paint(sb, "fill", path.color);
+            sb.append(path.winding == GeneralPath.WIND_EVEN_ODD ? " fill-rule=\"evenodd\"" : " fill-rule=\"nonzero\"");
+        } else {
+            sb.append(" fill=\"none\"");
+            paint(sb, "stroke", path.color).append(" stroke-width=\"");
+            number(sb, path.stroke * transform.getScaleX())
+                    .append("\" stroke-linecap=\"round\" stroke-linejoin=\"round\"");
+        }
+        sb.append("/>\n");
+    }
+
+    private void visit(ArrowElement line) {
+        double scale = rendererModel.getParameter(Scale.class).getValue();
+        int w = (int) (line.width * scale);
+        double[] xy = transform(line.startX, line.startY, line.endX, line.endY);
+        line(xy[0], xy[1], xy[2], xy[3], line.color, w);
+        double aW = rendererModel.getParameter(ArrowHeadWidth.class).getValue() / scale;
+        if (line.direction) {
+            double[] cd = transform(line.startX - aW, line.startY - aW, line.startX - aW, line.startY + aW);
+            line(xy[0], xy[1], cd[0], cd[1], line.color, w);
+            line(xy[0], xy[1], cd[2], cd[3], line.color, w);
+        } else {
+            double[] cd = transform(line.endX + aW, line.endY - aW, line.endX + aW, line.endY + aW);
+            line(xy[2], xy[3], cd[0], cd[1], line.color, w);
+            line(xy[2], xy[3], cd[2], cd[3], line.color, w);
+        }
+    }
+
+    private void line(double x1, double y1, double x2, double y2, Color color, double w) {
+        sb.append("<line x1=\"");
+        number(sb, x1).append("\" y1=\"");
+        number(sb, y1).append("\" x2=\"");
+        number(sb, x2).append("\" y2=\"");
+        number(sb, y2).append('"');
+        paint(sb, "stroke", color).append(" stroke-width=\"");
+        number(sb, w).append("\" stroke-linecap=\"round\"/>\n");
+    }
+
+    private void rect(double x, double y, double w, double h, double r, Color color) {
+        sb.append("<rect x=\"");
+        number(sb, x).append("\" y=\"");
+        number(sb, y).append("\" width=\"");
+        number(sb, w).append("\" height=\"");
+        number(sb, h).append('"');
+        if (r > 0) {
+            sb.append(" rx=\"");
+            number(sb, r).append('"');
+        }
+        paint(sb, "fill", color).append("/>\n");
+    }
+
+    private void text(double x, double y, String anchor, String text, int size, Color color) {
+        sb.append("<text x=\"");
+        number(sb, x).append("\" y=\"");
+        number(sb, y).append('"');
+        if (!"start".equals(anchor))
+            sb.append(" text-anchor=\"").append(anchor).append('"');
+        sb.append(" font-family=\"");
+        escape(fontName()).append("\" font-size=\"").append(size).append('"');
+        if (fontManager instanceof AbstractFontManager
+                && ((AbstractFontManager) fontManager).getFontStyle() == IFontManager.FontStyle.BOLD)
+            sb.append(" font-weight=\"bold\"");
+        paint(sb, "fill", color).append('>');
+        escape(text).append("</text>\n");
+    }
+
+    /** Append the transformed points as space separated x,y pairs. */
+    private StringBuilder points(double[] xy) {
+        for (int i = 0; i < xy.length; i += 2) {
+            if (i > 0)
+                sb.append(' ');
+            number(sb, xy[i]).append(',');
+            number(sb, xy[i + 1]);
+        }
+        return sb;
+    }
+
+    private double[] transform(double... xy) {
+        transform.transform(xy, 0, xy, 0, xy.length / 2);
+        return xy;
+    }
+
+    private int fontSize() {
+        if (fontManager instanceof AWTFontManager) {
+            Font font = ((AWTFontManager) fontManager).getFont();
+            if (font != null)
+                return font.getSize();
+        }
+        return DEFAULT_FONT_SIZE;
+    }
+
+    private String fontName() {
+        if (fontManager instanceof AbstractFontManager)
+            return ((AbstractFontManager) fontManager).getFontName();
+        return new BasicSceneGenerator.FontName().getDefault();
+    }
+
+    private static double textWidth(String text, int size) {
+        return text.length() * size * CHAR_WIDTH;
+    }
+
+    private Color getBackgroundColor() {
+        if (rendererModel == null || !rendererModel.hasParameter(BasicSceneGenerator.BackgroundColor.class))
+            return new BasicSceneGenerator.BackgroundColor().getDefault();
+        return rendererModel.getParameter(BasicSceneGenerator.BackgroundColor.class).getValue();
+    }
+
+    /**
+     * Append a paint attribute ({@code fill} or {@code stroke}) of a colour,
+     * and its opacity if the colour is translucent.
+     */
+    private static StringBuilder paint(StringBuilder sb, String attribute, Color color) {
+        sb.append(' ').append(attribute).append("=\"#");
+        hex(sb, color.getRed());
+        hex(sb, color.getGreen());
+        hex(sb, color.getBlue());
+        sb.append('"');
+        if (color.getAlpha() < 255) {
+            sb.append(' ').append(attribute).append("-opacity=\"");
+            number(sb, color.getAlpha() / 255d).append('"');
+        }
+        return sb;
+    }
+
+    private static void hex(StringBuilder sb, int value) {
+        sb.append(Character.forDigit(value >> 4, 16)).append(Character.forDigit(value & 0xf, 16));
+    }
+
+    /**
+     * Append a number with at most two decimals, the numbers are formatted
+     * without {@link String#format(String, Object...)} as there are many of
+     * them.
+     */
+    private static StringBuilder number(StringBuilder sb, double value) {
+        long x = Math.round(value * 100);
+        if (x < 0) {
+            sb.append('-');
+            x = -x;
+        }
+        sb.append(x / 100);
+        int fraction = (int) (x % 100);
+        if (fraction != 0) {
+            sb.append('.').append(fraction / 10);
+            if (fraction % 10 != 0)
+                sb.append(fraction % 10);
+        }
+        return sb;
+    }
+
+    private StringBuilder escape(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                default:  sb.append(c);
+            }
+        }
+        return sb;
+    }
+}
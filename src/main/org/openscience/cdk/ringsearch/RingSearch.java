@@ -24,7 +24,7 @@ package org.openscience.cdk.ringsearch;
 
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
-import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
@@ -129,7 +129,7 @@ public final class RingSearch {
      */
     @TestMethod("testNull")
     public RingSearch(IAtomContainer container) {
-        this(container, GraphUtil.toAdjList(container));
+        this(container, GraphSnapshot.of(container).toAdjList());
     }
 
     /**
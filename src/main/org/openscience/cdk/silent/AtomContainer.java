@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +53,13 @@ import org.openscience.cdk.interfaces.IBond.Order;
  *
  *  </pre>
  *
+ *  <p>The atoms of a bond should not be changed while the bond is in this
+ *  container, for larger containers the connected bonds of each atom are
+ *  indexed and this container is not notified of the change. The index is
+ *  rebuilt when a lookup finds a bond that no longer contains the atom, but
+ *  until then the bond is not found from its new atom. Remove the bond, change
+ *  its atoms and add it again instead.
+ *
  * @cdk.module  silent
  * @cdk.githash
  *
@@ -122,6 +130,31 @@ public class AtomContainer extends ChemObject
      */
     protected Set<IStereoElement> stereoElements;
 
+    /**
+     * Containers with fewer atoms (bonds) than this are searched linearly, for
+     * larger containers the position and adjacency indices below are used.
+     */
+    private static final int INDEX_THRESHOLD = 16;
+
+    /**
+     * Lazily built index of atom positions, maintained by addAtom and removeAtom.
+     */
+    private transient Map<IAtom,Integer> atomIndex;
+
+    /**
+     * Lazily built index of bond positions, maintained by addBond and removeBond.
+     */
+    private transient Map<IBond,Integer> bondIndex;
+
+    /**
+     * Lazily built index of the bonds connected to each atom, in the order the
+     * bonds appear in this container. Maintained by addBond and removeBond.
+     * The bonds of this container do not notify it of changes, the entries of
+     * an atom are checked on lookup and the index is rebuilt if a bond no
+     * longer contains the atom (its atoms were set in place).
+     */
+    private transient Map<IAtom,List<IBond>> connectedBonds;
+
 
 	/**
 	 *  Constructs an empty AtomContainer.
@@ -221,6 +254,8 @@ public class AtomContainer extends ChemObject
 	public void setAtoms(IAtom[] atoms) {
 		this.atoms = atoms;
 		this.atomCount = atoms.length;
+		this.atomIndex = null;
+		this.connectedBonds = null;
 	}
 
 	/**
@@ -234,6 +269,8 @@ public class AtomContainer extends ChemObject
 	{
 		this.bonds = bonds;
 		this.bondCount = bonds.length;
+		this.bondIndex = null;
+		this.connectedBonds = null;
 	}
 
 	/**
@@ -265,6 +302,9 @@ public class AtomContainer extends ChemObject
 	public void setAtom(int number, IAtom atom)
 	{
 		atoms[number] = atom;
+		atomIndex = null;
+		// bonds of the replaced atom are usually rewired by the caller next
+		connectedBonds = null;
 	}
 
 
@@ -574,6 +614,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getAtomNumber(IAtom atom)
 	{
+		if (atomCount >= INDEX_THRESHOLD) {
+			Integer position = atomIndex().get(atom);
+			return position != null ? position : -1;
+		}
 		for (int f = 0; f < atomCount; f++)
 		{
 			if (atoms[f] == atom) return f;
@@ -606,6 +650,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getBondNumber(IBond bond)
 	{
+		if (bondCount >= INDEX_THRESHOLD) {
+			Integer position = bondIndex().get(bond);
+			return position != null ? position : -1;
+		}
 		for (int f = 0; f < bondCount; f++)
 		{
 			if (bonds[f] == bond) return f;
@@ -672,11 +720,10 @@ public class AtomContainer extends ChemObject
 	 */
 	public IBond getBond(IAtom atom1, IAtom atom2)
 	{
-		for (int i = 0; i < getBondCount(); i++)
+		for (IBond bond : connectedBonds(atom1))
 		{
-			if (bonds[i].contains(atom1) &&
-			    bonds[i].getConnectedAtom(atom1) == atom2) {
-				return bonds[i];
+			if (bond.getConnectedAtom(atom1) == atom2) {
+				return bond;
 			}
 		}
 		return null;
@@ -740,10 +787,11 @@ public class AtomContainer extends ChemObject
 	 */
 	public List<IAtom> getConnectedAtomsList(IAtom atom)
 	{
-		List<IAtom> atomsList = new ArrayList<IAtom>();
-		for (int i = 0; i < bondCount; i++)
+		List<IBond> bondsList = connectedBonds(atom);
+		List<IAtom> atomsList = new ArrayList<IAtom>(bondsList.size());
+		for (IBond bond : bondsList)
 		{
-			if (bonds[i].contains(atom)) atomsList.add(bonds[i].getConnectedAtom(atom));
+			atomsList.add(bond.getConnectedAtom(atom));
 		}
 		return atomsList;
 	}
@@ -756,12 +804,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public List<IBond> getConnectedBondsList(IAtom atom)
 	{
-		List<IBond> bondsList = new ArrayList<IBond>();
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) bondsList.add(bonds[i]);
-		}
-		return bondsList;
+		return new ArrayList<IBond>(connectedBonds(atom));
 	}
 
     /**
@@ -806,10 +849,7 @@ public class AtomContainer extends ChemObject
 	public List<IElectronContainer> getConnectedElectronContainersList(IAtom atom)
 	{
 		List<IElectronContainer> lps = new ArrayList<IElectronContainer>();
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) lps.add(bonds[i]);
-		}
+		lps.addAll(connectedBonds(atom));
 		for (int i = 0; i < lonePairCount; i++)
 		{
 			if (lonePairs[i].contains(atom)) lps.add(lonePairs[i]);
@@ -829,12 +869,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public int getConnectedAtomsCount(IAtom atom)
 	{
-		int count = 0;
-		for (int i = 0; i < bondCount; i++)
-		{
-			if (bonds[i].contains(atom)) ++count;
-		}
-		return count;
+		return connectedBonds(atom).size();
 	}
 
 	/**
@@ -903,13 +938,11 @@ public class AtomContainer extends ChemObject
 	public double getBondOrderSum(IAtom atom)
 	{
 		double count = 0;
-		for (int i = 0; i < bondCount; i++)
+		for (IBond bond : connectedBonds(atom))
 		{
-			if (bonds[i].contains(atom)) {
-                IBond.Order order = bonds[i].getOrder();
-                if(order != null){
-                    count += order.numeric();
-                }
+			IBond.Order order = bond.getOrder();
+			if (order != null) {
+				count += order.numeric();
 			}
 		}
 		return count;
@@ -924,10 +957,9 @@ public class AtomContainer extends ChemObject
 	 */
 	public Order getMaximumBondOrder(IAtom atom) {
 		IBond.Order max = IBond.Order.SINGLE;
-		for (int i = 0; i < bondCount; i++) {
-			if (bonds[i].contains(atom) && 
-				bonds[i].getOrder().numeric() > max.numeric()) {
-				max = bonds[i].getOrder();
+		for (IBond bond : connectedBonds(atom)) {
+			if (bond.getOrder().numeric() > max.numeric()) {
+				max = bond.getOrder();
 			}
 		}
 		return max;
@@ -944,10 +976,9 @@ public class AtomContainer extends ChemObject
 	public Order getMinimumBondOrder(IAtom atom)
 	{
 		IBond.Order min = IBond.Order.QUADRUPLE;
-		for (int i = 0; i < bondCount; i++) {
-			if (bonds[i].contains(atom) &&
-				bonds[i].getOrder().numeric() < min.numeric()) {
-				min = bonds[i].getOrder();
+		for (IBond bond : connectedBonds(atom)) {
+			if (bond.getOrder().numeric() < min.numeric()) {
+				min = bond.getOrder();
 			}
 		}
 		return min;
@@ -1023,6 +1054,7 @@ public class AtomContainer extends ChemObject
 			growAtomArray();
 		}
 		atoms[atomCount] = atom;
+		if (atomIndex != null) atomIndex.put(atom, atomCount);
 		atomCount++;
 	}
 
@@ -1036,6 +1068,8 @@ public class AtomContainer extends ChemObject
 	{
 		if (bondCount >= bonds.length) growBondArray();
 		bonds[bondCount] = bond;
+		if (bondIndex != null) bondIndex.put(bond, bondCount);
+		if (connectedBonds != null) indexConnectedBond(bond);
 		++bondCount;
 	}
 
@@ -1111,12 +1145,18 @@ public class AtomContainer extends ChemObject
 	 */
 	public void removeAtom(int position)
 	{
+		IAtom atom = atoms[position];
 		for (int i = position; i < atomCount - 1; i++)
 		{
 			atoms[i] = atoms[i + 1];
 		}
 		atoms[atomCount - 1] = null;
 		atomCount--;
+		if (atomIndex != null) {
+			atomIndex.remove(atom);
+			for (int i = position; i < atomCount; i++)
+				atomIndex.put(atoms[i], i);
+		}
 	}
 	
 	/**
@@ -1150,6 +1190,12 @@ public class AtomContainer extends ChemObject
 		}
 		bonds[bondCount - 1] = null;
 		bondCount--;
+		if (bondIndex != null) {
+			bondIndex.remove(bond);
+			for (int i = position; i < bondCount; i++)
+				bondIndex.put(bonds[i], i);
+		}
+		if (connectedBonds != null) unindexConnectedBond(bond);
 		return bond;
 	}
 	
@@ -1312,6 +1358,7 @@ public class AtomContainer extends ChemObject
 		removeAllElectronContainers();
         atoms = new IAtom[growArraySize];
         atomCount = 0;
+        atomIndex = null;
         stereoElements.clear();
 	}
 
@@ -1334,6 +1381,8 @@ public class AtomContainer extends ChemObject
     public void removeAllBonds() {
     	bonds = new IBond[growArraySize];
     	bondCount = 0;
+    	bondIndex = null;
+    	connectedBonds = null;
     }
 
 	/**
@@ -1400,11 +1449,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public boolean contains(IAtom atom)
 	{
-		for (int i = 0; i < getAtomCount(); i++)
-		{
-			if (atom == atoms[i]) return true;
-		}
-		return false;
+		return getAtomNumber(atom) >= 0;
 	}
 	
 	/**
@@ -1415,11 +1460,7 @@ public class AtomContainer extends ChemObject
 	 */
 	public boolean contains(IBond bond)
 	{
-		for (int i = 0; i < getBondCount(); i++)
-		{
-			if (bond == bonds[i]) return true;
-		}
-		return false;
+		return getBondNumber(bond) >= 0;
 	}
 	
 	/**
@@ -1630,6 +1671,130 @@ public class AtomContainer extends ChemObject
 //	}
 
 
+	/**
+	 *  Access the atom position index, building it if needed.
+	 *
+	 *@return    map of each atom to its position in the atoms array
+	 */
+	private Map<IAtom,Integer> atomIndex()
+	{
+		if (atomIndex == null) {
+			atomIndex = new IdentityHashMap<IAtom,Integer>(atomCount);
+			for (int f = atomCount - 1; f >= 0; f--)
+				atomIndex.put(atoms[f], f);
+		}
+		return atomIndex;
+	}
+
+	/**
+	 *  Access the bond position index, building it if needed.
+	 *
+	 *@return    map of each bond to its position in the bonds array
+	 */
+	private Map<IBond,Integer> bondIndex()
+	{
+		if (bondIndex == null) {
+			bondIndex = new IdentityHashMap<IBond,Integer>(bondCount);
+			for (int f = bondCount - 1; f >= 0; f--)
+				bondIndex.put(bonds[f], f);
+		}
+		return bondIndex;
+	}
+
+	/**
+	 *  The bonds connected to the given atom, in bond array order. For small
+	 *  containers a new list is built by scanning the bonds, otherwise the
+	 *  (read-only) list is taken from the adjacency index.
+	 *
+	 *@param  atom  the atom whose bonds are to be found
+	 *@return       the connected bonds, never null
+	 */
+	private List<IBond> connectedBonds(IAtom atom)
+	{
+		if (bondCount < INDEX_THRESHOLD) {
+			List<IBond> bondsList = new ArrayList<IBond>(4);
+			for (int i = 0; i < bondCount; i++)
+			{
+				if (bonds[i].contains(atom)) bondsList.add(bonds[i]);
+			}
+			return bondsList;
+		}
+		if (connectedBonds == null) indexConnectedBonds();
+		List<IBond> bondsList = connectedBonds.get(atom);
+		if (bondsList == null) return Collections.<IBond>emptyList();
+		for (int i = 0; i < bondsList.size(); i++) {
+			if (!bondsList.get(i).contains(atom)) {
+				// the atoms of a bond were set in place, the index is stale
+				indexConnectedBonds();
+				bondsList = connectedBonds.get(atom);
+				return bondsList != null ? bondsList : Collections.<IBond>emptyList();
+			}
+		}
+		return bondsList;
+	}
+
+	/**
+	 *  (Re)builds the index of the bonds connected to each atom.
+	 */
+	private void indexConnectedBonds()
+	{
+		connectedBonds = new IdentityHashMap<IAtom,List<IBond>>(atomCount);
+		for (int i = 0; i < bondCount; i++)
+			indexConnectedBond(bonds[i]);
+	}
+
+	/**
+	 *  Appends a bond to the adjacency entries of each of its atoms.
+	 *
+	 *@param  bond  the bond to index
+	 */
+	private void indexConnectedBond(IBond bond)
+	{
+		for (int i = 0; i < bond.getAtomCount(); i++) {
+			IAtom atom = bond.getAtom(i);
+			if (atom == null || isRepeated(bond, atom, i)) continue;
+			List<IBond> bondsList = connectedBonds.get(atom);
+			if (bondsList == null) {
+				bondsList = new ArrayList<IBond>(4);
+				connectedBonds.put(atom, bondsList);
+			}
+			bondsList.add(bond);
+		}
+	}
+
+	/**
+	 *  Removes a bond from the adjacency entries of each of its atoms.
+	 *
+	 *@param  bond  the bond to remove from the index
+	 */
+	private void unindexConnectedBond(IBond bond)
+	{
+		for (int i = 0; i < bond.getAtomCount(); i++) {
+			IAtom atom = bond.getAtom(i);
+			if (atom == null || isRepeated(bond, atom, i)) continue;
+			List<IBond> bondsList = connectedBonds.get(atom);
+			if (bondsList == null) continue;
+			for (int j = 0; j < bondsList.size(); j++) {
+				if (bondsList.get(j) == bond) {
+					bondsList.remove(j);
+					break;
+				}
+			}
+			if (bondsList.isEmpty()) connectedBonds.remove(atom);
+		}
+	}
+
+	/**
+	 *  Whether the atom also occurs in the bond before the given position.
+	 */
+	private static boolean isRepeated(IBond bond, IAtom atom, int position)
+	{
+		for (int i = 0; i < position; i++) {
+			if (bond.getAtom(i) == atom) return true;
+		}
+		return false;
+	}
+
 	/**
 	 *  Grows the atom array by a given size.
 	 *
@@ -0,0 +1,669 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.similarity;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.fingerprint.IBitFingerprint;
+import org.openscience.cdk.tools.Futures;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A file of fixed width binary fingerprints which can be searched for similar
+ * fingerprints by the Tanimoto coefficient. The fingerprints are stored as
+ * rows of {@code long} words and memory mapped, a search does not create any
+ * {@link IBitFingerprint} or {@link BitSet} objects.
+ *
+ * <blockquote><pre>
+ * // create the store
+ * FingerprintStore.Writer writer = FingerprintStore.create(file, 1024);
+ * try {
+ *     for (IAtomContainer container : containers)
+ *         writer.add(fingerprinter.getBitFingerprint(container));
+ *     writer.close();
+ * } finally {
+ *     writer.abort(); // does nothing if the store was written
+ * }
+ *
+ * // search the store
+ * FingerprintStore store = FingerprintStore.open(file);
+ * for (FingerprintStore.Hit hit : store.nearest(query, 10))
+ *     System.out.println(hit.id() + " " + hit.similarity());
+ * store.close();
+ * </pre></blockquote>
+ *
+ * The rows are ordered by their number of set bits (popcount). The Tanimoto
+ * coefficient of fingerprints with <i>A</i> and <i>B</i> bits set can be no
+ * more than min(<i>A</i>,<i>B</i>) / max(<i>A</i>,<i>B</i>) {@cdk.cite
+ * Swamidass07} and so a search only visits the rows whose popcount could
+ * reach the threshold (or the current <i>k</i>th best similarity). Providing
+ * an {@link ExecutorService} divides the rows of each popcount between
+ * several threads.
+ *
+ * <p/>
+ *
+ * The fingerprints are identified by the order they were added to the
+ * {@link Writer}. The similarity of two fingerprints with no bits set is
+ * defined as 0.
+ *
+ * @cdk.module fingerprint
+ * @cdk.githash
+ * @cdk.keyword similarity, tanimoto
+ * @see Tanimoto
+ */
+@TestClass("org.openscience.cdk.similarity.FingerprintStoreTest")
+public final class FingerprintStore implements Closeable {
+
+    /** Identifies the file type ('CDKF') and layout version. */
+    private static final int MAGIC = 0x43444B46, VERSION = 1;
+
+    /** Size of a mapped region of rows. */
+    private static final int REGION_SIZE = 1 << 28;
+
+    private final RandomAccessFile file;
+
+    /** Fingerprint length in bits and words. */
+    private final int nBits, words;
+
+    /** Number of fingerprints. */
+    private final int count;
+
+    /** Rows with popcount 'c' are from buckets[c] to buckets[c+1]. */
+    private final int[] buckets;
+
+    /** The id of the fingerprint in each row. */
+    private final IntBuffer ids;
+
+    /** Mapped regions of rows, each holding 'rowsPerRegion' rows. */
+    private final LongBuffer[] regions;
+    private final int          rowsPerRegion;
+
+    /**
+     * Internal constructor - open and map the store.
+     *
+     * @param path the file
+     * @throws IOException the file could not be read or was not a store
+     */
+    private FingerprintStore(File path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        try {
+            if (file.readInt() != MAGIC)
+                throw new IOException(path + " is not a fingerprint store");
+            int version = file.readInt();
+            if (version != VERSION)
+                throw new IOException("expected store version " + VERSION + " instead of " + version);
+            this.nBits = file.readInt();
+            this.count = file.readInt();
+            this.words = nBits / 64;
+
+            this.buckets = new int[nBits + 2];
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = file.readInt();
+
+            FileChannel channel = file.getChannel();
+            long pos = headerSize(nBits);
+            this.ids = channel.map(FileChannel.MapMode.READ_ONLY, pos, 4L * count).asIntBuffer();
+            pos = align(pos + 4L * count);
+
+            this.rowsPerRegion = Math.max(1, REGION_SIZE / (8 * words));
+            this.regions = new LongBuffer[(count + rowsPerRegion - 1) / rowsPerRegion];
+            for (int i = 0; i < regions.length; i++) {
+                int n = Math.min(rowsPerRegion, count - i * rowsPerRegion);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * n * words).asLongBuffer();
+                pos += 8L * n * words;
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a fingerprint store.
+     *
+     * @param path the file
+     * @return the store
+     * @throws IOException the file could not be read or was not a store
+     */
+    @TestMethod("nearest,threshold")
+    public static FingerprintStore open(File path) throws IOException {
+        return new FingerprintStore(path);
+    }
+
+    /**
+     * Create a new fingerprint store, the fingerprints are added with the
+     * returned writer and the store is written when the writer is closed.
+     *
+     * @param path  the file to write
+     * @param nBits length of the fingerprints, a multiple of 64
+     * @return writer for adding fingerprints
+     * @throws IOException the file could not be created
+     */
+    @TestMethod("nearest,threshold")
+    public static Writer create(File path, int nBits) throws IOException {
+        if (nBits <= 0 || nBits % 64 != 0)
+            throw new IllegalArgumentException("fingerprint length must be a positive multiple of 64");
+        return new Writer(path, nBits);
+    }
+
+    /**
+     * The number of fingerprints in the store.
+     *
+     * @return number of fingerprints
+     */
+    @TestMethod("nearest")
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The length of the fingerprints in bits.
+     *
+     * @return fingerprint length
+     */
+    @TestMethod("nearest")
+    public int length() {
+        return nBits;
+    }
+
+    /**
+     * Find the fingerprints with a Tanimoto coefficient to the query of at
+     * least {@code threshold}.
+     *
+     * @param query     the query fingerprint
+     * @param threshold minimum similarity, 0 &lt; threshold &le; 1
+     * @return the hits, most similar first
+     */
+    @TestMethod("threshold")
+    public List<Hit> threshold(BitSet query, double threshold) {
+        return threshold(query, threshold, null);
+    }
+
+    /**
+     * Find the fingerprints with a Tanimoto coefficient to the query of at
+     * least {@code threshold}, scanning on the provided {@code executor}.
+     *
+     * @param query     the query fingerprint
+     * @param threshold minimum similarity, 0 &lt; threshold &le; 1
+     * @param executor  executor to scan with (null scans on the calling
+     *                  thread)
+     * @return the hits, most similar first
+     */
+    @TestMethod("threshold,parallel")
+    public List<Hit> threshold(BitSet query, final double threshold, ExecutorService executor) {
+        if (threshold <= 0 || threshold > 1)
+            throw new IllegalArgumentException("threshold must be in the range (0,1]");
+        List<Collector> collectors = scan(query, executor, new CollectorFactory() {
+            @Override public Collector create() {
+                return new ThresholdCollector(threshold);
+            }
+        });
+        List<Hit> hits = new ArrayList<Hit>();
+        for (Collector collector : collectors)
+            hits.addAll(((ThresholdCollector) collector).hits);
+        Collections.sort(hits, Hit.ORDER);
+        return hits;
+    }
+
+    /**
+     * Find the {@code k} fingerprints most similar to the query. Ties are
+     * broken by the lower id.
+     *
+     * @param query the query fingerprint
+     * @param k     the number of neighbours
+     * @return the hits, most similar first
+     */
+    @TestMethod("nearest")
+    public List<Hit> nearest(BitSet query, int k) {
+        return nearest(query, k, null);
+    }
+
+    /**
+     * Find the {@code k} fingerprints most similar to the query, scanning on
+     * the provided {@code executor}. Ties are broken by the lower id.
+     *
+     * @param query    the query fingerprint
+     * @param k        the number of neighbours
+     * @param executor executor to scan with (null scans on the calling thread)
+     * @return the hits, most similar first
+     */
+    @TestMethod("nearest,parallel")
+    public List<Hit> nearest(BitSet query, final int k, ExecutorService executor) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        List<Collector> collectors = scan(query, executor, new CollectorFactory() {
+            @Override public Collector create() {
+                return new TopCollector(k);
+            }
+        });
+        List<Hit> hits = new ArrayList<Hit>();
+        for (Collector collector : collectors)
+            hits.addAll(((TopCollector) collector).queue);
+        Collections.sort(hits, Hit.ORDER);
+        return hits.size() > k ? new ArrayList<Hit>(hits.subList(0, k)) : hits;
+    }
+
+    /**
+     * Close the store.
+     *
+     * @throws IOException the file could not be closed
+     */
+    @TestMethod("nearest")
+    @Override public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Scan the store for a query, the rows of each popcount are divided
+     * between the threads.
+     */
+    private List<Collector> scan(BitSet query, ExecutorService executor, CollectorFactory factory) {
+        if (query.length() > nBits)
+            throw new IllegalArgumentException("query fingerprint is longer than " + nBits + " bits");
+        final long[] q = toWords(query, words);
+        final int qCount = query.cardinality();
+
+        if (executor == null) {
+            Collector collector = factory.create();
+            scan(q, qCount, 0, 1, collector);
+            return Collections.singletonList(collector);
+        }
+
+        final int nParts = Runtime.getRuntime().availableProcessors();
+        List<Collector> collectors = new ArrayList<Collector>(nParts);
+        List<Future<?>> futures = new ArrayList<Future<?>>(nParts);
+        for (int i = 0; i < nParts; i++) {
+            final int part = i;
+            final Collector collector = factory.create();
+            collectors.add(collector);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    scan(q, qCount, part, nParts, collector);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while searching", e);
+        } catch (ExecutionException e) {
+            throw Futures.unwrap(e);
+        }
+        return collectors;
+    }
+
+    /**
+     * Scan part of each popcount bucket. The buckets are visited in order of
+     * decreasing bound, starting with the query popcount and moving out,
+     * stopping when neither side can reach the collector's minimum.
+     *
+     * @param q         query words
+     * @param qCount    query popcount
+     * @param part      the part of each bucket to scan
+     * @param nParts    number of parts
+     * @param collector collects the hits
+     */
+    private void scan(long[] q, int qCount, int part, int nParts, Collector collector) {
+        int lo = qCount, hi = qCount + 1;
+        while (lo >= 0 || hi <= nBits) {
+            boolean below = hi > nBits || lo >= 0 && bound(qCount, lo) >= bound(qCount, hi);
+            int c = below ? lo-- : hi++;
+            if (bound(qCount, c) < collector.min())
+                return;
+            int beg = buckets[c], len = buckets[c + 1] - beg;
+            int from = beg + (int) ((long) len * part / nParts);
+            int to = beg + (int) ((long) len * (part + 1) / nParts);
+            for (int row = from; row < to; row++) {
+                LongBuffer region = regions[row / rowsPerRegion];
+                int offset = (row % rowsPerRegion) * words;
+                int common = 0;
+                for (int w = 0; w < words; w++)
+                    common += Long.bitCount(q[w] & region.get(offset + w));
+                int union = qCount + c - common;
+                collector.offer(ids.get(row), union == 0 ? 0 : (double) common / union);
+            }
+        }
+    }
+
+    /** Maximum Tanimoto coefficient of fingerprints with 'a' and 'b' bits set. */
+    private static double bound(int a, int b) {
+        if (a == 0 && b == 0)
+            return 0;
+        return a < b ? (double) a / b : (double) b / a;
+    }
+
+    private static long headerSize(int nBits) {
+        return 16 + 4L * (nBits + 2);
+    }
+
+    private static long align(long pos) {
+        return (pos + 7) & ~7L;
+    }
+
+    private static long[] toWords(BitSet bs, int words) {
+        long[] ws = new long[words];
+        for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1))
+            ws[i >> 6] |= 1L << (i & 63);
+        return ws;
+    }
+
+    /** A fingerprint found by a search. */
+    public static final class Hit {
+
+        /** Most similar first, then lowest id. */
+        private static final Comparator<Hit> ORDER = new Comparator<Hit>() {
+            @Override public int compare(Hit a, Hit b) {
+                if (a.similarity != b.similarity)
+                    return a.similarity > b.similarity ? -1 : +1;
+                return a.id < b.id ? -1 : a.id > b.id ? +1 : 0;
+            }
+        };
+
+        private final int    id;
+        private final double similarity;
+
+        private Hit(int id, double similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+
+        /**
+         * The id of the fingerprint, the order it was added to the store.
+         *
+         * @return the id
+         */
+        public int id() {
+            return id;
+        }
+
+        /**
+         * The Tanimoto coefficient of the fingerprint and the query.
+         *
+         * @return the similarity
+         */
+        public double similarity() {
+            return similarity;
+        }
+
+        /** @inheritDoc */
+        @Override public String toString() {
+            return id + ":" + similarity;
+        }
+    }
+
+    /** Collects the hits of a scan. */
+    private static abstract class Collector {
+
+        /** Rows which can not reach this similarity need not be offered. */
+        abstract double min();
+
+        abstract void offer(int id, double similarity);
+    }
+
+    private static interface CollectorFactory {
+        Collector create();
+    }
+
+    /** Keeps all hits at or above a threshold. */
+    private static final class ThresholdCollector extends Collector {
+
+        private final double    threshold;
+        private final List<Hit> hits = new ArrayList<Hit>();
+
+        private ThresholdCollector(double threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override double min() {
+            return threshold;
+        }
+
+        @Override void offer(int id, double similarity) {
+            if (similarity >= threshold)
+                hits.add(new Hit(id, similarity));
+        }
+    }
+
+    /** Keeps the best 'k' hits, the worst is at the head of the queue. */
+    private static final class TopCollector extends Collector {
+
+        private final int                k;
+        private final PriorityQueue<Hit> queue;
+
+        private TopCollector(int k) {
+            this.k = k;
+            this.queue = new PriorityQueue<Hit>(k, Collections.reverseOrder(Hit.ORDER));
+        }
+
+        @Override double min() {
+            return queue.size() < k ? Double.NEGATIVE_INFINITY : queue.peek().similarity;
+        }
+
+        @Override void offer(int id, double similarity) {
+            Hit hit = new Hit(id, similarity);
+            if (queue.size() < k) {
+                queue.add(hit);
+            } else if (Hit.ORDER.compare(hit, queue.peek()) < 0) {
+                queue.poll();
+                queue.add(hit);
+            }
+        }
+    }
+
+    /**
+     * Adds fingerprints to a new store. The fingerprints are buffered in a
+     * temporary file and the store is written, ordered by popcount, when the
+     * writer is closed. The temporary files are created next to the store,
+     * which is only replaced once it has been written completely. If adding
+     * the fingerprints fails the writer should be aborted, no store is
+     * written.
+     */
+    public static final class Writer implements Closeable {
+
+        private final File             path, tmp;
+        private final int              nBits, words;
+        private final DataOutputStream out;
+        private int[]                  counts = new int[1024];
+        private int                    count  = 0;
+        private boolean                closed = false;
+
+        private Writer(File path, int nBits) throws IOException {
+            this.path = path;
+            this.nBits = nBits;
+            this.words = nBits / 64;
+            this.tmp = File.createTempFile("cdk-fps", ".tmp", path.getAbsoluteFile().getParentFile());
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+        }
+
+        /**
+         * Add a fingerprint, its id is the number of fingerprints added
+         * before it.
+         *
+         * @param fingerprint the fingerprint
+         * @return the id of the fingerprint
+         * @throws IOException the fingerprint could not be written
+         */
+        @TestMethod("nearest")
+        public int add(IBitFingerprint fingerprint) throws IOException {
+            return add(fingerprint.asBitSet());
+        }
+
+        /**
+         * Add a fingerprint, its id is the number of fingerprints added
+         * before it.
+         *
+         * @param fingerprint the fingerprint
+         * @return the id of the fingerprint
+         * @throws IOException the fingerprint could not be written
+         */
+        @TestMethod("nearest")
+        public int add(BitSet fingerprint) throws IOException {
+            if (closed)
+                throw new IllegalStateException("writer is closed");
+            if (fingerprint.length() > nBits)
+                throw new IllegalArgumentException("fingerprint is longer than " + nBits + " bits");
+            for (long word : toWords(fingerprint, words))
+                out.writeLong(word);
+            if (count == counts.length)
+                counts = Arrays.copyOf(counts, 2 * count);
+            counts[count] = fingerprint.cardinality();
+            return count++;
+        }
+
+        /**
+         * Write the store.
+         *
+         * @throws IOException the store could not be written
+         */
+        @TestMethod("nearest")
+        @Override public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                out.close();
+                write();
+            } finally {
+                tmp.delete();
+            }
+        }
+
+        /**
+         * Discard the fingerprints added, the store is not written. Aborting
+         * a closed writer does nothing.
+         *
+         * @throws IOException the temporary file could not be closed
+         */
+        @TestMethod("abort")
+        public void abort() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                out.close();
+            } finally {
+                tmp.delete();
+            }
+        }
+
+        /**
+         * Write the store to a temporary file and move it to the path.
+         */
+        private void write() throws IOException {
+            File part = File.createTempFile("cdk-fps", ".part", tmp.getParentFile());
+            try {
+                write(part);
+                if (!part.renameTo(path) && !(path.delete() && part.renameTo(path)))
+                    throw new IOException("could not move " + part + " to " + path);
+            } finally {
+                part.delete();
+            }
+        }
+
+        private void write(File part) throws IOException {
+
+            // counting sort of the rows by popcount
+            int[] buckets = new int[nBits + 2];
+            for (int i = 0; i < count; i++)
+                buckets[counts[i] + 1]++;
+            for (int c = 0; c <= nBits; c++)
+                buckets[c + 1] += buckets[c];
+            int[] next = Arrays.copyOf(buckets, nBits + 1);
+            int[] rows = new int[count], ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = next[counts[i]]++;
+                ids[rows[i]] = i;
+            }
+
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part)));
+            try {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(nBits);
+                header.writeInt(count);
+                for (int bucket : buckets)
+                    header.writeInt(bucket);
+                for (int id : ids)
+                    header.writeInt(id);
+                long pos = headerSize(nBits) + 4L * count;
+                while (pos++ < align(headerSize(nBits) + 4L * count))
+                    header.writeByte(0);
+            } finally {
+                header.close();
+            }
+
+            long base = align(headerSize(nBits) + 4L * count);
+            RandomAccessFile raf = new RandomAccessFile(part, "rw");
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(tmp)));
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer row = ByteBuffer.allocate(8 * words);
+                for (int i = 0; i < count; i++) {
+                    row.clear();
+                    for (int w = 0; w < words; w++)
+                        row.putLong(in.readLong());
+                    row.flip();
+                    long pos = base + 8L * words * rows[i];
+                    while (row.hasRemaining())
+                        pos += channel.write(row, pos);
+                }
+            } finally {
+                in.close();
+                raf.close();
+            }
+        }
+    }
+}
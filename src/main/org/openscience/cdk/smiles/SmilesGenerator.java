@@ -27,7 +27,7 @@ package org.openscience.cdk.smiles;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.exception.CDKException;
-import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.graph.GraphSnapshot;
 import org.openscience.cdk.graph.invariant.Canon;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
@@ -481,7 +481,7 @@ public final class SmilesGenerator {
      */
     private int[] labels(final IAtomContainer molecule) throws CDKException {
         long[] labels = isomeric ? inchiNumbers(molecule) 
-                                 : Canon.label(molecule, GraphUtil.toAdjList(molecule));
+                                 : Canon.label(molecule, GraphSnapshot.of(molecule).toAdjList());
         int[]  cpy    = new int[labels.length];
         for (int i = 0; i < labels.length; i++)
             cpy[i] = (int) labels[i] - 1;              
@@ -36,8 +36,8 @@ import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IRingSet;
 import org.openscience.cdk.isomorphism.ComponentGrouping;
+import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.isomorphism.SmartsStereoMatch;
-import org.openscience.cdk.isomorphism.Ullmann;
 import org.openscience.cdk.isomorphism.VentoFoggia;
 import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
 import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
@@ -80,6 +80,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
  *    }
  * }
  * </pre>
+ * <p/>
+ * The query tool holds the last target and its matches and can therefore only be used by one thread. To
+ * match the same SMARTS on several threads, or many SMARTS against a molecule which is prepared once, use a
+ * {@link SmartsPattern}.
+ * <p/>
  * <h3>Unsupported Features</h3> <ul> <li>Component level grouping <li>Stereochemistry <li>Reaction support </ul>
  * <h3>SMARTS Extensions</h3>
  * <p/>
@@ -127,6 +132,7 @@ public class SMARTSQueryTool {
     private String smarts;
     private IAtomContainer     atomContainer = null;
     private QueryAtomContainer query         = null;
+    private Pattern            pattern       = null;
     private List<int[]> mappings;
 
     /**
@@ -377,8 +383,7 @@ public class SMARTSQueryTool {
             }
         }
         else {
-            mappings = FluentIterable.from(Ullmann.findSubstructure(query)
-                                                  .matchAll(atomContainer))
+            mappings = FluentIterable.from(pattern.matchAll(atomContainer))
                                      .filter(new SmartsStereoMatch(query, atomContainer))
                                      .filter(new ComponentGrouping(query, atomContainer))
                                      .toList();
@@ -468,6 +473,7 @@ public class SMARTSQueryTool {
             query = SMARTSParser.parse(smarts, builder);
             cache.put(smarts, query);
         }
+        pattern = VentoFoggia.findSubstructure(query, SmartsMatchers.matchOrder(query));
     }
 
     private List<Set<Integer>> matchedAtoms(List<List<RMap>> bondMapping, IAtomContainer atomContainer) {
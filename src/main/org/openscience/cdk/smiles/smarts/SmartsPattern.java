@@ -0,0 +1,211 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smiles.smarts;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.isomorphism.ComponentGrouping;
+import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.SmartsStereoMatch;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
+import org.openscience.cdk.smiles.smarts.parser.TokenMgrError;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A compiled SMARTS pattern. The pattern is immutable and may be shared
+ * between threads, matching a pattern does not modify it. Unlike the {@link
+ * SMARTSQueryTool} the preparation of a target (ring and aromaticity
+ * perception) is separate from matching, a target is prepared once and can
+ * then be matched against any number of patterns.
+ *
+ * <blockquote><pre>
+ * SmartsPattern[] alerts = ...;
+ * for (IAtomContainer molecule : molecules) {
+ *     SmartsPattern.prepare(molecule);
+ *     for (SmartsPattern alert : alerts) {
+ *         if (alert.matches(molecule))
+ *             ...
+ *     }
+ * }
+ * </pre></blockquote>
+ *
+ * A target which has not been prepared is prepared on first match, with the
+ * Daylight aromaticity model. The preparation modifies the target (flags and
+ * atom properties), a target should therefore not be matched on several
+ * threads at once unless it was prepared beforehand. If a prepared target is
+ * modified it must be prepared again.
+ *
+ * A match satisfies the stereochemistry and component grouping of the
+ * SMARTS, the semantics are the same as {@link SMARTSQueryTool#matches(IAtomContainer)}.
+ * The query atoms are matched most selective first (see {@link
+ * SmartsMatchers#matchOrder(IAtomContainer)}), the mappings are reported in
+ * the atom order of the SMARTS.
+ *
+ * @cdk.module smarts
+ * @cdk.githash
+ * @cdk.keyword SMARTS
+ * @cdk.keyword substructure search
+ */
+@TestClass("org.openscience.cdk.smiles.smarts.SmartsPatternTest")
+public final class SmartsPattern extends Pattern {
+
+    /** The Daylight aromaticity model, as used by the SMARTSQueryTool. */
+    private static final Aromaticity DAYLIGHT = new Aromaticity(ElectronDonation.daylight(),
+                                                                Cycles.allOrVertexShort());
+
+    /** The SMARTS which was parsed. */
+    private final String smarts;
+
+    /** Parsed query. */
+    private final IQueryAtomContainer query;
+
+    /** Substructure pattern of the query. */
+    private final Pattern pattern;
+
+    /** Whether the query specifies stereochemistry or component grouping. */
+    private final boolean stereo, grouping;
+
+    /**
+     * Internal constructor.
+     *
+     * @param smarts the SMARTS
+     * @param query  the parsed query
+     */
+    private SmartsPattern(String smarts, IQueryAtomContainer query) {
+        this.smarts   = smarts;
+        this.query    = query;
+        this.pattern  = VentoFoggia.findSubstructure(query, SmartsMatchers.matchOrder(query));
+        this.stereo   = query.stereoElements().iterator().hasNext();
+        this.grouping = query.getProperty(ComponentGrouping.KEY) != null;
+    }
+
+    /**
+     * Compile a SMARTS pattern.
+     *
+     * @param smarts  the SMARTS
+     * @param builder builder for the query atoms and bonds
+     * @return the compiled pattern
+     * @throws IllegalArgumentException the SMARTS could not be parsed
+     */
+    @TestMethod("matchesQueryTool,invalidSmarts")
+    public static SmartsPattern create(String smarts, IChemObjectBuilder builder) {
+        try {
+            return new SmartsPattern(smarts, SMARTSParser.parse(smarts, builder));
+        } catch (TokenMgrError error) {
+            throw new IllegalArgumentException("Error parsing SMARTS", error);
+        }
+    }
+
+    /**
+     * Prepare a target for matching with the Daylight aromaticity model. Ring
+     * information, SMARTS atom invariants and aromaticity are perceived and
+     * stored on the target.
+     *
+     * @param target the molecule to prepare
+     * @throws CDKException the aromaticity could not be perceived
+     */
+    @TestMethod("prepare")
+    public static void prepare(IAtomContainer target) throws CDKException {
+        prepare(target, DAYLIGHT);
+    }
+
+    /**
+     * Prepare a target for matching using a different aromaticity model.
+     * Different aromaticity models may require certain attributes to be set
+     * (e.g. atom typing), which should be configured beforehand.
+     *
+     * @param target      the molecule to prepare
+     * @param aromaticity the aromaticity model to apply
+     * @throws CDKException the aromaticity could not be perceived
+     */
+    @TestMethod("prepareWithModel")
+    public static void prepare(IAtomContainer target, Aromaticity aromaticity) throws CDKException {
+        checkNotNull(aromaticity, "aromaticity was not provided");
+        SmartsMatchers.prepare(target, true);
+        aromaticity.apply(target);
+    }
+
+    /**
+     * Find the first match of the pattern in the target.
+     *
+     * @param target the molecule to match
+     * @return the first mapping, an empty array if there was no match
+     */
+    @TestMethod("match,selectiveOrder")
+    @Override public int[] match(IAtomContainer target) {
+        return matchAll(target).first();
+    }
+
+    /**
+     * Find all matches of the pattern in the target. If the target has not
+     * been prepared it is prepared with the Daylight aromaticity model.
+     *
+     * @param target the molecule to match
+     * @return the mappings of the query atoms to the target atoms
+     * @throws IllegalArgumentException the target could not be prepared
+     */
+    @TestMethod("matchesQueryTool,prepare,prepareWithModel")
+    @Override public Mappings matchAll(IAtomContainer target) {
+        if (!SmartsMatchers.isPrepared(target)) {
+            try {
+                prepare(target);
+            } catch (CDKException e) {
+                throw new IllegalArgumentException("Could not prepare target: " + e.getMessage(), e);
+            }
+        }
+        Mappings mappings = pattern.matchAll(target);
+        if (stereo)
+            mappings = mappings.filter(new SmartsStereoMatch(query, target));
+        if (grouping)
+            mappings = mappings.filter(new ComponentGrouping(query, target));
+        return mappings;
+    }
+
+    /**
+     * The SMARTS this pattern was compiled from.
+     *
+     * @return the SMARTS
+     */
+    @TestMethod("matchesQueryTool")
+    public String smarts() {
+        return smarts;
+    }
+
+    /**
+     * @inheritDoc
+     */
+    @Override public String toString() {
+        return smarts;
+    }
+}
@@ -29,6 +29,11 @@ package org.openscience.cdk.smiles.smarts.parser;
  * @cdk.keyword SMARTS AST
  */
 class ASTRecursiveSmartsExpression extends SimpleNode {
+	/**
+	 * The SMARTS of the recursive expression (without "$(" and ")").
+	 */
+	private String smarts;
+
 	/**
 	 * Creates a new instance.
 	 */
@@ -49,4 +54,18 @@ class ASTRecursiveSmartsExpression extends SimpleNode {
 	public Object jjtAccept(SMARTSParserVisitor visitor, Object data) {
 		return visitor.visit(this, data);
 	}
+
+	/**
+	 * Returns the SMARTS of the recursive expression.
+	 */
+	public String getSmarts() {
+		return smarts;
+	}
+
+	/**
+	 * Sets the SMARTS of the recursive expression.
+	 */
+	public void setSmarts(String smarts) {
+		this.smarts = smarts;
+	}
 }
@@ -502,11 +502,9 @@ public class SmartsQueryVisitor implements SMARTSParserVisitor {
     }
 
     public Object visit(ASTRecursiveSmartsExpression node, Object data) {
-        SmartsQueryVisitor recursiveVisitor = new SmartsQueryVisitor(builder);
-        recursiveVisitor.query = new QueryAtomContainer(builder);
-        recursiveVisitor.ringAtoms = new RingIdentifierAtom[10];
-        return new RecursiveSmartsAtom((IQueryAtomContainer) node.jjtGetChild(0).jjtAccept(recursiveVisitor,
-                                                                                           null));
+        // the environment is parsed from its SMARTS, once for all queries it
+        // appears in
+        return new RecursiveSmartsAtom(node.getSmarts(), builder);
     }
 
     public ASTStart getRoot(Node node) {
@@ -49,7 +49,7 @@ import org.openscience.cdk.smsd.algorithm.vflib.VFlibMCSHandler;
 import org.openscience.cdk.smsd.algorithm.vflib.VFlibSubStructureHandler;
 import org.openscience.cdk.smsd.algorithm.vflib.VFlibTurboHandler;
 import org.openscience.cdk.smsd.filters.ChemicalFilters;
-import org.openscience.cdk.smsd.global.TimeOut;
+import org.openscience.cdk.smsd.global.SearchContext;
 import org.openscience.cdk.smsd.interfaces.AbstractMCS;
 import org.openscience.cdk.smsd.interfaces.Algorithm;
 import org.openscience.cdk.smsd.tools.MolHandler;
@@ -182,6 +182,7 @@ public final class Isomorphism extends AbstractMCS implements Serializable {
     private double bondInSensitiveTimeOut = 1.00;//mins
     private boolean subGraph = false;
     private boolean matchBonds = false;
+    private boolean timeOutFlag = false;
 
     /**
      * This is the algorithm factory and entry port for all the MCS algorithm in the Isomorphism
@@ -206,7 +207,6 @@ public final class Isomorphism extends AbstractMCS implements Serializable {
         allBondMCS = new ArrayList<Map<IBond, IBond>>();
         firstBondMCS = new HashMap<IBond, IBond>();
 
-        setTime(bondTypeFlag);
         setMatchBonds(bondTypeFlag);
     }
 
@@ -330,119 +330,147 @@ public final class Isomorphism extends AbstractMCS implements Serializable {
     }
 
     private synchronized void cdkMCSAlgorithm() {
-        CDKMCSHandler mcs = null;
-        mcs = new CDKMCSHandler();
-
-        if (queryMol == null) {
-            mcs.set(rMol, pMol);
-        } else {
-            mcs.set(queryMol, pAC);
-        }
-        mcs.searchMCS(isMatchBonds());
+        SearchContext context = openContext();
+        try {
+            CDKMCSHandler mcs = null;
+            mcs = new CDKMCSHandler();
 
-        clearMaps();
+            if (queryMol == null) {
+                mcs.set(rMol, pMol);
+            } else {
+                mcs.set(queryMol, pAC);
+            }
+            mcs.searchMCS(isMatchBonds());
 
-        firstSolution.putAll(mcs.getFirstMapping());
-        allMCS.addAll(mcs.getAllMapping());
+            clearMaps();
 
-        firstAtomMCS.putAll(mcs.getFirstAtomMapping());
-        allAtomMCS.addAll(mcs.getAllAtomMapping());
+            firstSolution.putAll(mcs.getFirstMapping());
+            allMCS.addAll(mcs.getAllMapping());
 
+            firstAtomMCS.putAll(mcs.getFirstAtomMapping());
+            allAtomMCS.addAll(mcs.getAllAtomMapping());
+        } finally {
+            closeContext(context);
+        }
     }
 
     private synchronized void cdkSubgraphAlgorithm() {
-        CDKSubGraphHandler mcs = null;
-        mcs = new CDKSubGraphHandler();
+        SearchContext context = openContext();
+        try {
+            CDKSubGraphHandler mcs = null;
+            mcs = new CDKSubGraphHandler();
 
-        if (queryMol == null) {
-            mcs.set(rMol, pMol);
-        } else {
-            mcs.set(queryMol, pAC);
-        }
+            if (queryMol == null) {
+                mcs.set(rMol, pMol);
+            } else {
+                mcs.set(queryMol, pAC);
+            }
 
-        clearMaps();
+            clearMaps();
 
-        if (mcs.isSubgraph(isMatchBonds())) {
-            firstSolution.putAll(mcs.getFirstMapping());
-            allMCS.addAll(mcs.getAllMapping());
+            if (mcs.isSubgraph(isMatchBonds())) {
+                firstSolution.putAll(mcs.getFirstMapping());
+                allMCS.addAll(mcs.getAllMapping());
 
-            firstAtomMCS.putAll(mcs.getFirstAtomMapping());
-            allAtomMCS.addAll(mcs.getAllAtomMapping());
+                firstAtomMCS.putAll(mcs.getFirstAtomMapping());
+                allAtomMCS.addAll(mcs.getAllAtomMapping());
+            }
+        } finally {
+            closeContext(context);
         }
-
     }
 
     private synchronized void mcsPlusAlgorithm() {
-        MCSPlusHandler mcs = null;
-        mcs = new MCSPlusHandler();
+        SearchContext context = openContext();
+        try {
+            MCSPlusHandler mcs = null;
+            mcs = new MCSPlusHandler();
 
-        if (queryMol == null) {
-            mcs.set(rMol, pMol);
-        } else {
-            mcs.set(queryMol, pAC);
-        }
-        mcs.searchMCS(isMatchBonds());
+            if (queryMol == null) {
+                mcs.set(rMol, pMol);
+            } else {
+                mcs.set(queryMol, pAC);
+            }
+            mcs.searchMCS(isMatchBonds());
 
-        clearMaps();
+            clearMaps();
 
-        firstSolution.putAll(mcs.getFirstMapping());
-        allMCS.addAll(mcs.getAllMapping());
+            firstSolution.putAll(mcs.getFirstMapping());
+            allMCS.addAll(mcs.getAllMapping());
 
-        firstAtomMCS.putAll(mcs.getFirstAtomMapping());
-        allAtomMCS.addAll(mcs.getAllAtomMapping());
+            firstAtomMCS.putAll(mcs.getFirstAtomMapping());
+            allAtomMCS.addAll(mcs.getAllAtomMapping());
+        } finally {
+            closeContext(context);
+        }
     }
 
     private void vfLibMCS() {
-        VFlibMCSHandler mcs = null;
-        mcs = new VFlibMCSHandler();
-        if (queryMol == null) {
-            mcs.set(rMol, pMol);
-        } else {
-            mcs.set(queryMol, pAC);
-        }
-        mcs.searchMCS(isMatchBonds());
+        SearchContext context = openContext();
+        try {
+            VFlibMCSHandler mcs = null;
+            mcs = new VFlibMCSHandler();
+            if (queryMol == null) {
+                mcs.set(rMol, pMol);
+            } else {
+                mcs.set(queryMol, pAC);
+            }
+            mcs.searchMCS(isMatchBonds());
 
-        clearMaps();
-        firstSolution.putAll(mcs.getFirstMapping());
-        allMCS.addAll(mcs.getAllMapping());
+            clearMaps();
+            firstSolution.putAll(mcs.getFirstMapping());
+            allMCS.addAll(mcs.getAllMapping());
 
-        firstAtomMCS.putAll(mcs.getFirstAtomMapping());
-        allAtomMCS.addAll(mcs.getAllAtomMapping());
+            firstAtomMCS.putAll(mcs.getFirstAtomMapping());
+            allAtomMCS.addAll(mcs.getAllAtomMapping());
+        } finally {
+            closeContext(context);
+        }
     }
 
     private void subStructureHandler() {
-        VFlibSubStructureHandler subGraphTurboSearch = null;
-        subGraphTurboSearch = new VFlibSubStructureHandler();
-        if (queryMol == null) {
-            subGraphTurboSearch.set(rMol, pMol);
-        } else {
-            subGraphTurboSearch.set(queryMol, pAC);
-        }
-        clearMaps();
-        subGraph = subGraphTurboSearch.isSubgraph(isMatchBonds());
-        if (subGraph) {
-            firstSolution.putAll(subGraphTurboSearch.getFirstMapping());
-            allMCS.addAll(subGraphTurboSearch.getAllMapping());
-            firstAtomMCS.putAll(subGraphTurboSearch.getFirstAtomMapping());
-            allAtomMCS.addAll(subGraphTurboSearch.getAllAtomMapping());
+        SearchContext context = openContext();
+        try {
+            VFlibSubStructureHandler subGraphTurboSearch = null;
+            subGraphTurboSearch = new VFlibSubStructureHandler();
+            if (queryMol == null) {
+                subGraphTurboSearch.set(rMol, pMol);
+            } else {
+                subGraphTurboSearch.set(queryMol, pAC);
+            }
+            clearMaps();
+            subGraph = subGraphTurboSearch.isSubgraph(isMatchBonds());
+            if (subGraph) {
+                firstSolution.putAll(subGraphTurboSearch.getFirstMapping());
+                allMCS.addAll(subGraphTurboSearch.getAllMapping());
+                firstAtomMCS.putAll(subGraphTurboSearch.getFirstAtomMapping());
+                allAtomMCS.addAll(subGraphTurboSearch.getAllAtomMapping());
+            }
+        } finally {
+            closeContext(context);
         }
     }
 
     private void turboSubStructureHandler() {
-        VFlibTurboHandler subGraphTurboSearch = null;
-        subGraphTurboSearch = new VFlibTurboHandler();
-        if (queryMol == null) {
-            subGraphTurboSearch.set(rMol, pMol);
-        } else {
-            subGraphTurboSearch.set(queryMol, pAC);
-        }
-        clearMaps();
-        subGraph = subGraphTurboSearch.isSubgraph(isMatchBonds());
-        if (subGraph) {
-            firstSolution.putAll(subGraphTurboSearch.getFirstMapping());
-            allMCS.addAll(subGraphTurboSearch.getAllMapping());
-            firstAtomMCS.putAll(subGraphTurboSearch.getFirstAtomMapping());
-            allAtomMCS.addAll(subGraphTurboSearch.getAllAtomMapping());
+        SearchContext context = openContext();
+        try {
+            VFlibTurboHandler subGraphTurboSearch = null;
+            subGraphTurboSearch = new VFlibTurboHandler();
+            if (queryMol == null) {
+                subGraphTurboSearch.set(rMol, pMol);
+            } else {
+                subGraphTurboSearch.set(queryMol, pAC);
+            }
+            clearMaps();
+            subGraph = subGraphTurboSearch.isSubgraph(isMatchBonds());
+            if (subGraph) {
+                firstSolution.putAll(subGraphTurboSearch.getFirstMapping());
+                allMCS.addAll(subGraphTurboSearch.getAllMapping());
+                firstAtomMCS.putAll(subGraphTurboSearch.getFirstAtomMapping());
+                allAtomMCS.addAll(subGraphTurboSearch.getAllAtomMapping());
+            }
+        } finally {
+            closeContext(context);
         }
     }
 
@@ -552,22 +580,40 @@ public final class Isomorphism extends AbstractMCS implements Serializable {
         vfLibMCS();
     }
 
-    private void setTime(boolean bondTypeFlag) {
-        if (bondTypeFlag) {
-            TimeOut tmo = TimeOut.getInstance();
-            tmo.setTimeOut(getBondSensitiveTimeOut());
-        } else {
-            TimeOut tmo = TimeOut.getInstance();
-            tmo.setTimeOut(getBondInSensitiveTimeOut());
-        }
+    /**
+     * Open a search context for an algorithm, the time limit depends on whether
+     * bonds are matched. A context which is already open on the thread (e.g.
+     * opened by a {@link MCSPortfolio}) is the parent.
+     *
+     * @return the open context
+     */
+    private SearchContext openContext() {
+        timeOutFlag = false;
+        return SearchContext.open(isMatchBonds() ? getBondSensitiveTimeOut() : getBondInSensitiveTimeOut());
+    }
+
+    /**
+     * Close the context of an algorithm and record whether it timed out.
+     *
+     * @param context the context to close
+     */
+    private void closeContext(SearchContext context) {
+        timeOutFlag = context.isTimeOutFlag();
+        context.close();
     }
 
+    /**
+     * Whether the last algorithm which was run timed out (or was cancelled),
+     * the mappings may then not be maximal.
+     *
+     * @return the search timed out
+     */
     public boolean isTimeOut() {
-        return TimeOut.getInstance().isTimeOutFlag();
+        return timeOutFlag;
     }
 
     public void resetTimeOut() {
-        TimeOut.getInstance().setTimeOutFlag(false);
+        timeOutFlag = false;
     }
 
     private void clearMaps() {
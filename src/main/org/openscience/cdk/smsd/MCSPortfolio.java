@@ -0,0 +1,243 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smsd;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smsd.global.SearchContext;
+import org.openscience.cdk.smsd.interfaces.Algorithm;
+import org.openscience.cdk.smsd.tools.MolHandler;
+import org.openscience.cdk.tools.Futures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Runs several MCS algorithms ({@link Algorithm#MCSPlus}, {@link
+ * Algorithm#VFLibMCS} and {@link Algorithm#CDKMCS}) concurrently on the same
+ * pair of molecules. Which algorithm is fastest depends on the molecules, the
+ * portfolio either returns the first complete result ({@link
+ * #first(IAtomContainer, IAtomContainer)}) and cancels the other searches, or
+ * waits for all searches and returns the largest mapping ({@link
+ * #best(IAtomContainer, IAtomContainer)}).
+ *
+ * <blockquote><pre>
+ * ExecutorService executor = Executors.newFixedThreadPool(3);
+ * MCSPortfolio    portfolio = new MCSPortfolio(executor, true);
+ * Isomorphism     comparison = portfolio.first(query, target);
+ * Map&lt;IAtom,IAtom&gt; mapping = comparison.getFirstAtomMapping();
+ * </pre></blockquote>
+ *
+ * Each search has its own {@link SearchContext} and time limit (see {@link
+ * #setTimeOut(double)}), the searches therefore do not interfere with each
+ * other or with searches running on other threads.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.smsd.MCSPortfolioTest")
+public final class MCSPortfolio {
+
+    /** The algorithms which are run. */
+    private static final Algorithm[] ALGORITHMS = {Algorithm.MCSPlus, Algorithm.VFLibMCS, Algorithm.CDKMCS};
+
+    /** Executor the searches are run on. */
+    private final ExecutorService executor;
+
+    /** Whether bonds are matched. */
+    private final boolean matchBonds;
+
+    /** Hydrogens are removed and molecules configured before the search. */
+    private boolean removeHydrogen = true, cleanAndConfigureMolecule = true;
+
+    /** Time limit (minutes) of each search. */
+    private double timeout;
+
+    /**
+     * Create a portfolio which runs the searches on the given executor. The
+     * time limit of each search is the default of {@link Isomorphism} for
+     * bond sensitive or insensitive matching.
+     *
+     * @param executor   executor to run the searches on
+     * @param matchBonds match bond types
+     */
+    @TestMethod("first,best")
+    public MCSPortfolio(ExecutorService executor, boolean matchBonds) {
+        this.executor = checkNotNull(executor, "no executor provided");
+        this.matchBonds = matchBonds;
+        Isomorphism defaults = new Isomorphism(Algorithm.DEFAULT, matchBonds);
+        this.timeout = matchBonds ? defaults.getBondSensitiveTimeOut() : defaults.getBondInSensitiveTimeOut();
+    }
+
+    /**
+     * Set the time limit of each search.
+     *
+     * @param timeout time limit in minutes
+     */
+    @TestMethod("timeOut")
+    public void setTimeOut(double timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Set how the molecules are prepared before the search, see {@link
+     * Isomorphism#init(IAtomContainer, IAtomContainer, boolean, boolean)}.
+     * The molecules are prepared once and shared by the searches.
+     *
+     * @param removeHydrogen            make hydrogens implicit
+     * @param cleanAndConfigureMolecule perceive atom types and aromaticity
+     */
+    @TestMethod("first")
+    public void setPreparation(boolean removeHydrogen, boolean cleanAndConfigureMolecule) {
+        this.removeHydrogen = removeHydrogen;
+        this.cleanAndConfigureMolecule = cleanAndConfigureMolecule;
+    }
+
+    /**
+     * Run the searches and return the first which completes within its time
+     * limit and finds a mapping, the other searches are then cancelled. If no
+     * search completes the largest (partial) result is returned.
+     *
+     * @param query  query molecule
+     * @param target target molecule
+     * @return the comparison of the search which completed first, {@link
+     *         Isomorphism#getFirstAtomMapping()} is null if no mapping was found
+     * @throws CDKException the molecules could not be compared
+     */
+    @TestMethod("first,timeOut")
+    public Isomorphism first(IAtomContainer query, IAtomContainer target) throws CDKException {
+        return run(query, target, true);
+    }
+
+    /**
+     * Run all searches and return the one which found the largest mapping.
+     *
+     * @param query  query molecule
+     * @param target target molecule
+     * @return the comparison with the largest mapping
+     * @throws CDKException the molecules could not be compared
+     */
+    @TestMethod("best")
+    public Isomorphism best(IAtomContainer query, IAtomContainer target) throws CDKException {
+        return run(query, target, false);
+    }
+
+    /**
+     * Run the searches.
+     *
+     * @param query  query molecule
+     * @param target target molecule
+     * @param first  stop once a search has completed
+     * @return the selected comparison
+     * @throws CDKException the molecules could not be compared
+     */
+    private Isomorphism run(IAtomContainer query, IAtomContainer target, boolean first) throws CDKException {
+
+        final IAtomContainer preparedQuery = new MolHandler(query, removeHydrogen, cleanAndConfigureMolecule).getMolecule();
+        final IAtomContainer preparedTarget = new MolHandler(target, removeHydrogen, cleanAndConfigureMolecule).getMolecule();
+
+        // the searches run with a child of this context, cancelling it stops them all
+        final SearchContext portfolio = SearchContext.open(-1);
+
+        CompletionService<Isomorphism> completion = new ExecutorCompletionService<Isomorphism>(executor);
+        List<Future<Isomorphism>> pending = new ArrayList<Future<Isomorphism>>(ALGORITHMS.length);
+        Isomorphism selected = null;
+
+        try {
+            for (final Algorithm algorithm : ALGORITHMS) {
+                pending.add(completion.submit(new Callable<Isomorphism>() {
+                    @Override public Isomorphism call() throws Exception {
+                        return search(algorithm, preparedQuery, preparedTarget, portfolio);
+                    }
+                }));
+            }
+            for (int i = 0; i < ALGORITHMS.length; i++) {
+                Isomorphism comparison = completion.take().get();
+                if (first && !comparison.isTimeOut() && size(comparison) > 0)
+                    return comparison;
+                if (selected == null || size(comparison) > size(selected))
+                    selected = comparison;
+            }
+            return selected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CDKException("interrupted while searching", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CDKException)
+                throw (CDKException) e.getCause();
+            throw Futures.unwrap(e);
+        } finally {
+            portfolio.cancel();
+            portfolio.close();
+            for (Future<Isomorphism> future : pending)
+                future.cancel(true);
+        }
+    }
+
+    /**
+     * Run a single search in a child context of the portfolio.
+     *
+     * @param algorithm the algorithm to use
+     * @param query     prepared query
+     * @param target    prepared target
+     * @param portfolio context of the portfolio
+     * @return the comparison
+     * @throws CDKException the molecules could not be compared
+     */
+    private Isomorphism search(Algorithm algorithm, IAtomContainer query, IAtomContainer target,
+                               SearchContext portfolio) throws CDKException {
+        Isomorphism comparison = new Isomorphism(algorithm, matchBonds);
+        comparison.setBondSensitiveTimeOut(timeout);
+        comparison.setBondInSensitiveTimeOut(timeout);
+        SearchContext context = SearchContext.open(-1, portfolio);
+        try {
+            comparison.init(query, target, false, false);
+        } finally {
+            context.close();
+        }
+        return comparison;
+    }
+
+    /**
+     * Size of the first mapping of a comparison.
+     *
+     * @param comparison the comparison
+     * @return number of mapped atoms
+     */
+    private static int size(Isomorphism comparison) {
+        Map<IAtom, IAtom> mapping = comparison.getFirstAtomMapping();
+        return mapping != null ? mapping.size() : 0;
+    }
+}
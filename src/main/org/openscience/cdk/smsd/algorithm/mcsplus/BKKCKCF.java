@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
 import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.smsd.global.SearchContext;
 import org.openscience.cdk.smsd.tools.TimeManager;
 
 /**
@@ -211,7 +212,7 @@ public class BKKCKCF {
         int index = 0;
         List<Integer> neighbourVertex = new ArrayList<Integer>(); ////Initialization ArrayList neighbourVertex
 
-        while (potentialVertex.get(index) != 0) {
+        while (potentialVertex.get(index) != 0 && !SearchContext.isCurrentTimeOut()) {
             int potentialVertexIndex = potentialVertex.get(index);
 
             potentialCVertex.removeElement(potentialVertexIndex);
@@ -32,6 +32,7 @@ import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.smsd.algorithm.mcgregor.McGregor;
+import org.openscience.cdk.smsd.global.SearchContext;
 import org.openscience.cdk.smsd.global.TimeOut;
 import org.openscience.cdk.smsd.tools.TimeManager;
 
@@ -72,7 +73,8 @@ public class MCSPlus {
      * @param aTimeManager the timeManager to set
      */
     protected synchronized static void setTimeManager(TimeManager aTimeManager) {
-        TimeOut.getInstance().setTimeOutFlag(false);
+        if (SearchContext.current() == null)
+            TimeOut.getInstance().setTimeOutFlag(false);
         timeManager = aTimeManager;
     }
 
@@ -129,7 +131,20 @@ public class MCSPlus {
         return mappings;
     }
 
-    public synchronized static boolean isTimeOut() {
+    /**
+     * Whether the search should stop. The {@link SearchContext} open on the
+     * current thread is checked, if there is none the global {@link TimeOut}.
+     *
+     * @return the search should stop
+     */
+    public static boolean isTimeOut() {
+        SearchContext context = SearchContext.current();
+        if (context != null)
+            return context.isTimeOut();
+        return isGlobalTimeOut();
+    }
+
+    private synchronized static boolean isGlobalTimeOut() {
         if (getTimeout() > -1 && getTimeManager().getElapsedTimeInMinutes() > getTimeout()) {
             TimeOut.getInstance().setTimeOutFlag(true);
             return true;
@@ -57,41 +57,62 @@ public class CDKRMapHandler {
         
     }
     /**
-     * Returns source molecule
+     * Returns the source molecule of the last search started by any handler.
      * @return the source
+     * @deprecated the source is kept per handler, this only reports the
+     *             molecule of the last search and is not safe when several
+     *             searches run at the same time
      */
+    @Deprecated
     public static IAtomContainer getSource() {
-        return source;
+        return lastSource;
     }
 
     /**
      * Set source molecule
      * @param aSource the source to set
+     * @deprecated the source is set by each search
      */
+    @Deprecated
     public static void setSource(IAtomContainer aSource) {
-        source = aSource;
+        lastSource = aSource;
     }
 
     /**
-     * Returns target molecule
+     * Returns the target molecule of the last search started by any handler.
      * @return the target
+     * @deprecated the target is kept per handler, this only reports the
+     *             molecule of the last search and is not safe when several
+     *             searches run at the same time
      */
+    @Deprecated
     public static IAtomContainer getTarget() {
-        return target;
+        return lastTarget;
     }
 
     /**
      * Set target molecule
      * @param aTarget the target to set
+     * @deprecated the target is set by each search
      */
+    @Deprecated
     public static void setTarget(IAtomContainer aTarget) {
-        target = aTarget;
+        lastTarget = aTarget;
     }
+    private static volatile IAtomContainer lastSource;
+    private static volatile IAtomContainer lastTarget;
     private List<Map<Integer, Integer>> mappings;
-    private static IAtomContainer source;
-    private static IAtomContainer target;
+    private IAtomContainer source;
+    private IAtomContainer target;
     private boolean timeoutFlag = false;
 
+    private void setSourceAndTarget(IAtomContainer source, IAtomContainer target) {
+        this.source = source;
+        this.target = target;
+        lastSource = source;
+        lastTarget = target;
+    }
+
     /**
      * This function calculates all the possible combinations of MCS
      * @param Molecule1
@@ -101,34 +122,33 @@ public class CDKRMapHandler {
      */
     public void calculateOverlapsAndReduce(IAtomContainer Molecule1, IAtomContainer Molecule2, boolean shouldMatchBonds) throws CDKException {
 
-        setSource(Molecule1);
-        setTarget(Molecule2);
+        setSourceAndTarget(Molecule1, Molecule2);
 
         setMappings(new ArrayList<Map<Integer, Integer>>());
 
 
-        if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
-            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
+        if ((source.getAtomCount() == 1) || (target.getAtomCount() == 1)) {
+            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(source, target);
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
                 /*UnComment this to get one Unique Mapping*/
                 //List reducedList = removeRedundantMappingsForSingleAtomCase(overlaps);
                 //int counter = 0;
-                identifySingleAtomsMatchedParts(overlaps, getSource(), getTarget());
+                identifySingleAtomsMatchedParts(overlaps, source, target);
 
             }
 
         } else {
-            List<List<CDKRMap>> overlaps = CDKMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true, shouldMatchBonds);
+            List<List<CDKRMap>> overlaps = CDKMCS.search(source, target, new BitSet(), new BitSet(), true, true, shouldMatchBonds);
 
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
             while (!allMaxOverlaps.empty()) {
 //                System.out.println("source: " + source.getAtomCount() + ", target: " + target.getAtomCount() + ", overl: " + allMaxOverlaps.peek().size());
-                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), getSource(), getTarget());
+                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), source, target);
 //                System.out.println("size of maxOverlaps: " + maxOverlapsAtoms.size());
-                identifyMatchedParts(maxOverlapsAtoms, getSource(), getTarget());
+                identifyMatchedParts(maxOverlapsAtoms, source, target);
 //                identifyMatchedParts(allMaxOverlaps.peek(), source, target);
                 allMaxOverlaps.pop();
             }
@@ -149,34 +169,33 @@ public class CDKRMapHandler {
      */
     public void calculateOverlapsAndReduceExactMatch(IAtomContainer Molecule1, IAtomContainer Molecule2, boolean shouldMatchBonds) throws CDKException {
 
-        setSource(Molecule1);
-        setTarget(Molecule2);
+        setSourceAndTarget(Molecule1, Molecule2);
 
         setMappings(new ArrayList<Map<Integer, Integer>>());
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
 
-        if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
+        if ((source.getAtomCount() == 1) || (target.getAtomCount() == 1)) {
 
-            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
+            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(source, target);
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
-                identifySingleAtomsMatchedParts(overlaps, getSource(), getTarget());
+                identifySingleAtomsMatchedParts(overlaps, source, target);
             }
 
         } else {
 
             List<List<CDKRMap>> overlaps =
-                    CDKMCS.search(getSource(), getTarget(), new BitSet(), new BitSet(), true, true, shouldMatchBonds);
+                    CDKMCS.search(source, target, new BitSet(), new BitSet(), true, true, shouldMatchBonds);
 
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
             while (!allMaxOverlaps.empty()) {
-                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), getSource(), getTarget());
-                identifyMatchedParts(maxOverlapsAtoms, getSource(), getTarget());
+                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), source, target);
+                identifyMatchedParts(maxOverlapsAtoms, source, target);
                 allMaxOverlaps.pop();
             }
         }
@@ -194,34 +213,33 @@ public class CDKRMapHandler {
      */
     public void calculateSubGraphs(IAtomContainer Molecule1, IAtomContainer Molecule2, boolean shouldMatchBonds) throws CDKException {
 
-        setSource(Molecule1);
-        setTarget(Molecule2);
+        setSourceAndTarget(Molecule1, Molecule2);
 
         setMappings(new ArrayList<Map<Integer, Integer>>());
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
 
-        if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
+        if ((source.getAtomCount() == 1) || (target.getAtomCount() == 1)) {
 
-            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
+            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(source, target);
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
-                identifySingleAtomsMatchedParts(overlaps, getSource(), getTarget());
+                identifySingleAtomsMatchedParts(overlaps, source, target);
             }
 
         } else {
 
             List<List<CDKRMap>> overlaps =
-                    CDKMCS.getSubgraphMaps(getSource(), getTarget(), shouldMatchBonds);
+                    CDKMCS.getSubgraphMaps(source, target, shouldMatchBonds);
 
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
             while (!allMaxOverlaps.empty()) {
-                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), getSource(), getTarget());
-                identifyMatchedParts(maxOverlapsAtoms, getSource(), getTarget());
+                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), source, target);
+                identifyMatchedParts(maxOverlapsAtoms, source, target);
                 allMaxOverlaps.pop();
             }
         }
@@ -239,34 +257,33 @@ public class CDKRMapHandler {
      */
     public void calculateIsomorphs(IAtomContainer Molecule1, IAtomContainer Molecule2, boolean shouldMatchBonds) throws CDKException {
 
-        setSource(Molecule1);
-        setTarget(Molecule2);
+        setSourceAndTarget(Molecule1, Molecule2);
 
         setMappings(new ArrayList<Map<Integer, Integer>>());
 
         //System.out.println("Searching: ");
         //List overlaps = UniversalIsomorphismTesterBondTypeInSensitive.getSubgraphAtomsMap(source, target);
 
-        if ((getSource().getAtomCount() == 1) || (getTarget().getAtomCount() == 1)) {
+        if ((source.getAtomCount() == 1) || (target.getAtomCount() == 1)) {
 
-            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(getSource(), getTarget());
+            List<CDKRMap> overlaps = CDKMCS.checkSingleAtomCases(source, target);
             int nAtomsMatched = overlaps.size();
             nAtomsMatched = (nAtomsMatched > 0) ? 1 : 0;
             if (nAtomsMatched > 0) {
-                identifySingleAtomsMatchedParts(overlaps, getSource(), getTarget());
+                identifySingleAtomsMatchedParts(overlaps, source, target);
             }
 
         } else {
 
             List<List<CDKRMap>> overlaps =
-                    CDKMCS.getIsomorphMaps(getSource(), getTarget(), shouldMatchBonds);
+                    CDKMCS.getIsomorphMaps(source, target, shouldMatchBonds);
 
             List<List<CDKRMap>> reducedList = removeSubGraph(overlaps);
             Stack<List<CDKRMap>> allMaxOverlaps = getAllMaximum(reducedList);
 
             while (!allMaxOverlaps.empty()) {
-                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), getSource(), getTarget());
-                identifyMatchedParts(maxOverlapsAtoms, getSource(), getTarget());
+                List<List<CDKRMap>> maxOverlapsAtoms = makeAtomsMapOfBondsMap(allMaxOverlaps.peek(), source, target);
+                identifyMatchedParts(maxOverlapsAtoms, source, target);
                 allMaxOverlaps.pop();
             }
         }
@@ -477,7 +494,8 @@ public class CDKRMapHandler {
      */
     protected Stack<List<CDKRMap>> getAllMaximum(List<List<CDKRMap>> overlaps) {
 
-        Stack<List<CDKRMap>> allMaximumMappings = null;
+        // empty if the search was stopped before any overlap was found
+        Stack<List<CDKRMap>> allMaximumMappings = new Stack<List<CDKRMap>>();
 
         int count = -1;
 
@@ -62,6 +62,7 @@ import org.openscience.cdk.smsd.algorithm.vflib.interfaces.INode;
 import org.openscience.cdk.smsd.algorithm.vflib.interfaces.IQuery;
 import org.openscience.cdk.smsd.algorithm.vflib.interfaces.IState;
 import org.openscience.cdk.smsd.algorithm.vflib.query.QueryCompiler;
+import org.openscience.cdk.smsd.global.SearchContext;
 import org.openscience.cdk.smsd.global.TimeOut;
 import org.openscience.cdk.smsd.tools.TimeManager;
 
@@ -99,7 +100,8 @@ public class VFMCSMapper implements IMapper {
      * @param aTimeManager the timeManager to set
      */
     protected synchronized static void setTimeManager(TimeManager aTimeManager) {
-        TimeOut.getInstance().setTimeOutFlag(false);
+        if (SearchContext.current() == null)
+            TimeOut.getInstance().setTimeOutFlag(false);
         timeManager = aTimeManager;
     }
 
@@ -228,7 +230,7 @@ public class VFMCSMapper implements IMapper {
             addMapping(state);
         }
 
-        while (state.hasNextCandidate()) {
+        while (state.hasNextCandidate() && !SearchContext.isCurrentTimeOut()) {
             Match candidate = state.nextCandidate();
             if (state.isMatchFeasible(candidate)) {
                 IState nextState = state.nextState(candidate);
@@ -249,7 +251,7 @@ public class VFMCSMapper implements IMapper {
         }
 
         boolean found = false;
-        while (!found && state.hasNextCandidate()) {
+        while (!found && state.hasNextCandidate() && !SearchContext.isCurrentTimeOut()) {
             Match candidate = state.nextCandidate();
             if (state.isMatchFeasible(candidate)) {
                 IState nextState = state.nextState(candidate);
@@ -269,7 +271,20 @@ public class VFMCSMapper implements IMapper {
         return false;
     }
 
-    public synchronized static boolean isTimeOut() {
+    /**
+     * Whether the search should stop. The {@link SearchContext} open on the
+     * current thread is checked, if there is none the global {@link TimeOut}.
+     *
+     * @return the search should stop
+     */
+    public static boolean isTimeOut() {
+        SearchContext context = SearchContext.current();
+        if (context != null)
+            return context.isTimeOut();
+        return isGlobalTimeOut();
+    }
+
+    private synchronized static boolean isGlobalTimeOut() {
         if (getTimeout() > -1 && getTimeManager().getElapsedTimeInMinutes() > getTimeout()) {
             TimeOut.getInstance().setTimeOutFlag(true);
             return true;
@@ -0,0 +1,256 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smsd.global;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+
+/**
+ * The time limit, cancellation and statistics of a single search. Unlike the
+ * global {@link TimeOut} a context only applies to the thread which opened it,
+ * searches on different threads therefore do not interfere with each other.
+ * When a context is open the MCS and substructure algorithms check it instead
+ * of the {@link TimeOut}.
+ *
+ * <blockquote><pre>
+ * SearchContext context = SearchContext.open(0.5); // 30 seconds
+ * try {
+ *     comparison.init(query, target, true, true);
+ * } finally {
+ *     context.close();
+ * }
+ * if (context.isTimeOutFlag())
+ *     ...
+ * </pre></blockquote>
+ *
+ * A context opened while another is open on the thread (or created with an
+ * explicit parent) also times out when the parent times out or is cancelled.
+ * A context may be cancelled from any thread, the search stops at its next
+ * check.
+ *
+ * @cdk.module smsd
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.smsd.global.SearchContextTest")
+public final class SearchContext {
+
+    /** The context opened by the current thread. */
+    private static final ThreadLocal<SearchContext> current = new ThreadLocal<SearchContext>();
+
+    /** The enclosing context, may be null. */
+    private final SearchContext parent;
+
+    /** Time limit in minutes, -1 for no limit. */
+    private final double timeout;
+
+    /** Start time (ms). */
+    private final long startTime;
+
+    /** The context which was open on the thread before this one. */
+    private SearchContext previous;
+
+    /** The search was cancelled. */
+    private volatile boolean cancelled;
+
+    /** A check found the time limit exceeded or the search cancelled. */
+    private volatile boolean timeOutFlag;
+
+    /** Number of times the search checked for a time out. */
+    private long checks;
+
+    /**
+     * Create a new context.
+     *
+     * @param timeout time limit in minutes, -1 for no limit
+     * @param parent  enclosing context (may be null)
+     */
+    private SearchContext(double timeout, SearchContext parent) {
+        this.timeout = timeout;
+        this.parent = parent;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Open a context on the current thread, the context which is already open
+     * (if any) is the parent. The context must be closed when the search has
+     * finished.
+     *
+     * @param timeout time limit in minutes (e.g. 0.25 for 15 seconds), -1 for
+     *                no limit
+     * @return the open context
+     */
+    @TestMethod("timeOut,nested")
+    public static SearchContext open(double timeout) {
+        return open(timeout, current.get());
+    }
+
+    /**
+     * Open a context on the current thread with an explicit parent, for
+     * example a context opened on another thread.
+     *
+     * @param timeout time limit in minutes, -1 for no limit
+     * @param parent  the parent context (may be null)
+     * @return the open context
+     */
+    @TestMethod("cancelParent")
+    public static SearchContext open(double timeout, SearchContext parent) {
+        SearchContext context = new SearchContext(timeout, parent);
+        context.previous = current.get();
+        current.set(context);
+        return context;
+    }
+
+    /**
+     * The context open on the current thread.
+     *
+     * @return the open context, null if there is none
+     */
+    @TestMethod("timeOut,nested")
+    public static SearchContext current() {
+        return current.get();
+    }
+
+    /**
+     * Check the context open on the current thread, see {@link #isTimeOut()}.
+     * Without an open context the search is not stopped.
+     *
+     * @return a context is open and the search should stop
+     */
+    @TestMethod("timeOut,cancel")
+    public static boolean isCurrentTimeOut() {
+        SearchContext context = current.get();
+        return context != null && context.isTimeOut();
+    }
+
+    /**
+     * Close this context, the context which was open before is restored.
+     */
+    @TestMethod("timeOut,nested")
+    public void close() {
+        if (current.get() == this) {
+            if (previous != null)
+                current.set(previous);
+            else
+                current.remove();
+        }
+        previous = null;
+    }
+
+    /**
+     * Cancel the search, this and all child contexts will report a time out
+     * on their next check.
+     */
+    @TestMethod("cancel,cancelParent")
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Whether this context (or a parent) was cancelled.
+     *
+     * @return the search was cancelled
+     */
+    @TestMethod("cancel,cancelParent")
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    /**
+     * Check whether the search should stop, that is the time limit of this
+     * context (or a parent) was exceeded or the search was cancelled. This
+     * method is called by the algorithms during the search.
+     *
+     * @return the search should stop
+     */
+    @TestMethod("timeOut,cancel,cancelParent")
+    public boolean isTimeOut() {
+        checks++;
+        if (!timeOutFlag && expired())
+            timeOutFlag = true;
+        return timeOutFlag;
+    }
+
+    /**
+     * The time limit of this context or a parent was exceeded or the search
+     * was cancelled.
+     *
+     * @return the search should stop
+     */
+    private boolean expired() {
+        return cancelled
+                || (timeout > -1 && getElapsedTimeInMinutes() > timeout)
+                || (parent != null && parent.expired());
+    }
+
+    /**
+     * Whether a check during the search reported a time out (or
+     * cancellation), the result of the search may then be incomplete.
+     *
+     * @return the search timed out
+     */
+    @TestMethod("timeOut,cancel")
+    public boolean isTimeOutFlag() {
+        return timeOutFlag;
+    }
+
+    /**
+     * The time limit of this context.
+     *
+     * @return time limit in minutes, -1 for no limit
+     */
+    @TestMethod("timeOut")
+    public double getTimeOut() {
+        return timeout;
+    }
+
+    /**
+     * Time elapsed since the context was opened.
+     *
+     * @return elapsed time in minutes
+     */
+    @TestMethod("timeOut")
+    public double getElapsedTimeInMinutes() {
+        return getElapsedTimeInMilliSeconds() / (60 * 1000d);
+    }
+
+    /**
+     * Time elapsed since the context was opened.
+     *
+     * @return elapsed time in milliseconds
+     */
+    @TestMethod("timeOut")
+    public long getElapsedTimeInMilliSeconds() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Number of times the search checked for a time out, a rough measure of
+     * the work done. Should only be read once the search has finished.
+     *
+     * @return number of checks
+     */
+    @TestMethod("timeOut")
+    public long getCheckCount() {
+        return checks;
+    }
+}
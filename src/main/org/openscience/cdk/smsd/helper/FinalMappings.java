@@ -33,7 +33,9 @@ import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.smsd.interfaces.IFinalMapping;
 
 /**
- * Class that stores raw mapping(s) after each algorithm is executed.
+ * Class that stores raw mapping(s) after each algorithm is executed. Each
+ * thread has its own instance, searches running on different threads do not
+ * see each others mappings.
  * @cdk.module smsd
  * @cdk.githash
  * @author Syed Asad Rahman <asad@ebi.ac.uk>
@@ -41,8 +43,12 @@ import org.openscience.cdk.smsd.interfaces.IFinalMapping;
 @TestClass("org.openscience.cdk.smsd.helper.FinalMappingsTest")
 public class FinalMappings implements IFinalMapping {
 
-    private static List<Map<Integer, Integer>> mappings = null;
-    private static FinalMappings instance = null;
+    private final List<Map<Integer, Integer>> mappings;
+    private static final ThreadLocal<FinalMappings> instance = new ThreadLocal<FinalMappings>() {
+        @Override protected FinalMappings initialValue() {
+            return new FinalMappings();
+        }
+    };
 
     protected FinalMappings() {
         mappings = new ArrayList<Map<Integer, Integer>>();
@@ -50,14 +56,11 @@ public class FinalMappings implements IFinalMapping {
 
     /**
      * Stores mapping solutions
-     * @return instance of this object
+     * @return instance of this object for the current thread
      */
     @TestMethod("testGetInstance")
-    synchronized public static FinalMappings getInstance() {
-        if (instance == null) {
-            instance = new FinalMappings();
-        }
-        return instance;
+    public static FinalMappings getInstance() {
+        return instance.get();
     }
 
     /**
@@ -95,7 +98,7 @@ public class FinalMappings implements IFinalMapping {
      */
     @TestMethod("testClear")
     synchronized public void clear() {
-        FinalMappings.mappings.clear();
+        mappings.clear();
     }
 
     /**
@@ -0,0 +1,71 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.tools;
+
+import java.util.concurrent.ExecutionException;
+
+import org.openscience.cdk.annotations.TestClass;
+import org.openscience.cdk.annotations.TestMethod;
+
+/**
+ * Helpers for the methods which run their work on a caller provided
+ * {@link java.util.concurrent.ExecutorService}. Such an executor belongs to
+ * the caller, it is used but never shut down.
+ *
+ * @cdk.module core
+ * @cdk.githash
+ */
+@TestClass("org.openscience.cdk.tools.FuturesTest")
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Unwrap the failure of a task. An unchecked exception or error thrown
+     * by the task is rethrown as is, any other cause is wrapped in an
+     * {@link IllegalStateException} which is returned for the caller to
+     * throw:
+     *
+     * <blockquote><pre>
+     * try {
+     *     future.get();
+     * } catch (ExecutionException e) {
+     *     throw Futures.unwrap(e);
+     * }
+     * </pre></blockquote>
+     *
+     * @param e the failure of a task
+     * @return the unchecked exception to throw
+     * @throws Error the task failed with an error
+     */
+    @TestMethod("unwrap,unwrapError")
+    public static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException)
+            return (RuntimeException) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+        return new IllegalStateException(cause);
+    }
+}
@@ -21,13 +21,20 @@
 package org.openscience.cdk.tools;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.annotations.TestClass;
 import org.openscience.cdk.annotations.TestMethod;
 import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
 import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.hash.AtomEncoder;
+import org.openscience.cdk.hash.HashGeneratorMaker;
+import org.openscience.cdk.hash.MoleculeHashGenerator;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
@@ -66,6 +73,9 @@ import org.openscience.cdk.reaction.type.parameters.SetReactionCenter;
  * <p>Moreover you must put the parameter as true</p>
  * <p>If the reactive center is not localized then the reaction process will
  * try to find automatically the possible reactive center.</p>
+ * <p>By default every new structure is compared to all structures found
+ * before. With {@link #setHashDeduplication(boolean)} duplicates are found
+ * with a hash instead, which is much faster when there are many structures.</p>
  *  
  * @author       Miguel Rojas
  * @cdk.created  2006-5-05
@@ -84,6 +94,16 @@ public class StructureResonanceGenerator {
 	private boolean lookingSymmetry;
 	/** TODO: REACT: some time takes too much time. At the moment fixed to 50 structures*/
 	private int maxStructures = 50;
+	/** Index the structures by their hash to find duplicates*/
+	private boolean hashDeduplication = false;
+	/** Encodes the element and charge of an atom, the atomic number may not be set
+	 *  and an unset charge is matched as 0 (as SymbolAndChargeQueryAtom does)*/
+	private static final AtomEncoder SYMBOL_AND_CHARGE = new AtomEncoder() {
+		@Override public int encode(IAtom atom, IAtomContainer container) {
+			Integer charge = atom.getFormalCharge();
+			return 31 * atom.getSymbol().hashCode() + (charge != null ? charge : 0);
+		}
+	};
 	/**
 	 * Construct an instance of StructureResonanceGenerator. Default restrictions 
 	 * are initiated.
@@ -150,6 +170,34 @@ public class StructureResonanceGenerator {
 	public int getMaximalStructures(){
 		return maxStructures;
 	}
+	/**
+	 * Set whether duplicate structures are found with a hash. Without looking
+	 * at the symmetry two structures are the same if every atom has the same
+	 * element and charge and every bond the same order, the hash of these is
+	 * the only comparison. Looking at the symmetry the structures are indexed
+	 * by a molecular hash of the elements and charges and a new structure is
+	 * only matched to the structures with the same hash.
+	 * 
+	 * <p>The structures found are the same as without the hash, except for
+	 * an (unlikely) collision of two different structures. The aromaticity
+	 * of a structure is only detected when it is matched to another, the
+	 * aromatic flags of the structures may therefore differ.</p>
+	 * 
+	 * @param hashDeduplication use the hash
+	 */
+	@TestMethod("testSetHashDeduplication_boolean")
+	public void setHashDeduplication(boolean hashDeduplication){
+		this.hashDeduplication = hashDeduplication;
+	}
+	/**
+	 * Get whether duplicate structures are found with a molecular hash.
+	 * 
+	 * @return the hash is used
+	 */
+	@TestMethod("testSetHashDeduplication_boolean")
+	public boolean getHashDeduplication(){
+		return hashDeduplication;
+	}
 	/**
 	 * Set the default reactions that must be presents to generate the resonance.
 	 *
@@ -232,6 +280,21 @@ public class StructureResonanceGenerator {
     	IAtomContainerSet setOfMol = molecule.getBuilder().newInstance(IAtomContainerSet.class);
 		setOfMol.addAtomContainer(molecule);
 		
+		/*the structures found, by hash*/
+		MoleculeHashGenerator generator = null;
+		Map<Long,IAtomContainerSet> setsOfHash = null;
+		Set<Long> hashes = null;
+		if(hashDeduplication){
+			if(lookingSymmetry){
+				generator = new HashGeneratorMaker().depth(8).encode(SYMBOL_AND_CHARGE).molecular();
+				setsOfHash = new HashMap<Long,IAtomContainerSet>();
+				setOfHash(setsOfHash, generator.generate(molecule), molecule).addAtomContainer(molecule);
+			}else{
+				hashes = new HashSet<Long>();
+				hashes.add(positionalHash(molecule));
+			}
+		}
+		
 		for(int i = 0 ; i < setOfMol.getAtomContainerCount() ; i++){
 			IAtomContainer mol = setOfMol.getAtomContainer(i);
             for (IReactionProcess aReactionsList : reactionsList) {
@@ -245,7 +308,18 @@ public class StructureResonanceGenerator {
                             for (int j = 0; j < setOfReactions.getReaction(k).getProducts().getAtomContainerCount(); j++)
                             {
                                 IAtomContainer product = setOfReactions.getReaction(k).getProducts().getAtomContainer(j);
-                                if (!existAC(setOfMol, product)) {
+                                boolean exist;
+                                if (hashes != null) {
+                                    exist = !hashes.add(positionalHash(product));
+                                } else if (setsOfHash != null) {
+                                    IAtomContainerSet setOfSame = setOfHash(setsOfHash, generator.generate(product), product);
+                                    exist = existAC(setOfSame, product);
+                                    if (!exist)
+                                        setOfSame.addAtomContainer(product);
+                                } else {
+                                    exist = existAC(setOfMol, product);
+                                }
+                                if (!exist) {
                                     setOfMol.addAtomContainer(product);
                                     countStructure++;
                                     if (countStructure > maxStructures)
@@ -403,6 +477,59 @@ public class StructureResonanceGenerator {
     	
     	return null;
 	}
+	/**
+	 * Hash the elements and charges of the atoms and the orders of the bonds
+	 * by their position in the structure, two structures have the same hash
+	 * when {@link #existAC} without looking at the symmetry matches them.
+	 * 
+	 * @param molecule the structure
+	 * @return         the hash
+	 */
+	private static long positionalHash(IAtomContainer molecule) {
+		long hash = molecule.getAtomCount();
+		for(int i = 0 ; i < molecule.getAtomCount(); i++){
+			IAtom atom = molecule.getAtom(i);
+			Integer charge = atom.getFormalCharge(); /*an unset charge is not matched as 0*/
+			hash = mix(hash + atom.getSymbol().hashCode());
+			hash = mix(hash + (charge != null ? charge : Integer.MIN_VALUE));
+		}
+		long bonds = 0; /*the bonds are summed, their order in the structure does not matter*/
+		for(IBond bond : molecule.bonds()){
+			long u = molecule.getAtomNumber(bond.getAtom(0));
+			long v = molecule.getAtomNumber(bond.getAtom(1));
+			IBond.Order order = bond.getOrder();
+			bonds += mix(mix(Math.min(u, v) << 32 | Math.max(u, v)) + (order != null ? order.ordinal() : -1));
+		}
+		return mix(hash + bonds);
+	}
+	/**
+	 * Mix the bits of a value (the finalizer of MurmurHash3).
+	 * 
+	 * @param x the value
+	 * @return  the mixed value
+	 */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+		x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return x ^ (x >>> 33);
+	}
+	/**
+	 * Get the set of structures with a given hash, the set is created if
+	 * there are no structures with the hash.
+	 * 
+	 * @param setsOfHash the sets of structures by hash
+	 * @param hash       the hash
+	 * @param molecule   a structure, used to create the set
+	 * @return           the structures with the hash
+	 */
+	private IAtomContainerSet setOfHash(Map<Long,IAtomContainerSet> setsOfHash, long hash, IAtomContainer molecule) {
+		IAtomContainerSet setOfSame = setsOfHash.get(hash);
+		if(setOfSame == null){
+			setOfSame = molecule.getBuilder().newInstance(IAtomContainerSet.class);
+			setsOfHash.put(hash, setOfSame);
+		}
+		return setOfSame;
+	}
 	/**
 	 * Search if the setOfAtomContainer contains the atomContainer
 	 *  
@@ -412,6 +539,8 @@ public class StructureResonanceGenerator {
 	 * @return   			 True, if the atomContainer is contained
 	 */
 	private boolean existAC(IAtomContainerSet set, IAtomContainer atomContainer) {
+		if(set.getAtomContainerCount() == 0)
+			return false;
 
 		IAtomContainer acClone = null;
     	try {
@@ -96,4 +96,45 @@ public class AtomContainerTest extends AbstractAtomContainerTest {
         Assert.assertEquals(4, container.getAtomCount());
         Assert.assertEquals(3, container.getBondCount());
     }
+
+    /**
+     * A bond rewired while in the container notifies it, the connected bonds
+     * of each atom must reflect the new atoms.
+     */
+    @Test public void testLookupsAfterRewiring_LargeContainer() throws Exception {
+        IAtomContainer chain = new AtomContainer();
+        IAtom[] atoms = new IAtom[40];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = chain.getBuilder().newInstance(IAtom.class, "C");
+            chain.addAtom(atoms[i]);
+        }
+        for (int i = 0; i < atoms.length - 1; i++)
+            chain.addBond(chain.getBuilder().newInstance(IBond.class, atoms[i], atoms[i + 1]));
+
+        // build the index, then rewire 20-21 to 20-30 and 30-31 to 0-31
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[21]));
+        IBond bond = chain.getBond(atoms[20], atoms[21]);
+        bond.setAtom(atoms[30], 1);
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[21]));
+        Assert.assertEquals(3, chain.getConnectedBondsCount(atoms[30]));
+        Assert.assertEquals(bond, chain.getBond(atoms[20], atoms[30]));
+        Assert.assertNull(chain.getBond(atoms[20], atoms[21]));
+
+        bond = chain.getBond(atoms[30], atoms[31]);
+        bond.setAtoms(new IAtom[]{atoms[0], atoms[31]});
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[0]));
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[30]));
+        Assert.assertTrue(chain.getConnectedAtomsList(atoms[31]).contains(atoms[0]));
+
+        // the index of a clone is also kept up to date
+        IAtomContainer clone = (IAtomContainer) chain.clone();
+        Assert.assertEquals(2, clone.getConnectedBondsCount(clone.getAtom(5)));
+        clone.getBond(5).setAtom(clone.getAtom(39), 1);
+        Assert.assertEquals(1, clone.getConnectedBondsCount(clone.getAtom(6)));
+        Assert.assertEquals(2, clone.getConnectedBondsCount(clone.getAtom(39)));
+
+        chain.removeBond(bond);
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[0]));
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[31]));
+    }
 }
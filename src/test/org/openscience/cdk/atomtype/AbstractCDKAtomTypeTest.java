@@ -20,7 +20,12 @@
  */
 package org.openscience.cdk.atomtype;
 
+import java.util.Map;
+
+import org.junit.Assert;
 import org.openscience.cdk.config.AtomTypeFactory;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomType;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
@@ -52,4 +57,21 @@ abstract public class AbstractCDKAtomTypeTest extends AbstractAtomTypeTest {
 	public IAtomTypeMatcher getAtomTypeMatcher(IChemObjectBuilder builder) {
 		return CDKAtomTypeMatcher.getInstance(builder);
 	}
+
+	/**
+	 * Also checks that typing the whole molecule at once perceives the same
+	 * atom types as typing each atom.
+	 */
+	@Override
+	public void assertAtomTypes(Map<String, Integer> testedAtomTypes, String[] expectedTypes, IAtomContainer mol) throws Exception {
+		IAtomTypeMatcher atm = getAtomTypeMatcher(mol.getBuilder());
+		IAtomType[] types = atm.findMatchingAtomTypes(mol);
+		for (int i=0; i<types.length; i++) {
+			Assert.assertSame(
+				"Different perception for atom " + i + " when typing the molecule",
+				atm.findMatchingAtomType(mol, mol.getAtom(i)), types[i]
+			);
+		}
+		super.assertAtomTypes(testedAtomTypes, expectedTypes, mol);
+	}
 }
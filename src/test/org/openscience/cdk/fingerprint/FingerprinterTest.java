@@ -25,6 +25,10 @@ package org.openscience.cdk.fingerprint;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -35,6 +39,8 @@ import org.openscience.cdk.Reaction;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.graph.AtomContainerAtomPermutor;
 import org.openscience.cdk.graph.AtomContainerBondPermutor;
+import org.openscience.cdk.graph.PathTools;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IChemFile;
@@ -243,6 +249,48 @@ public class FingerprinterTest extends AbstractFixedLengthFingerprinterTest {
         }
     }
 
+    /**
+     * The path hashes must be the same as hashing the path strings - the
+     * greater of the string and its reverse.
+     */
+    @Test
+    public void testFindPathes_StringHashes() throws Exception {
+        Fingerprinter fp = new Fingerprinter();
+        for (IAtomContainer mol : new IAtomContainer[]{MoleculeFactory.makeIndole(),
+                                                       MoleculeFactory.makeAlphaPinene(),
+                                                       makePropylAmine()}) {
+            fp.getBitFingerprint(mol); // perceive
+            Set<Integer> expected = new TreeSet<Integer>();
+            for (IAtom start : mol.atoms()) {
+                for (List<IAtom> path : PathTools.getLimitedPathsOfLengthUpto(mol, start, 8, 150)) {
+                    StringBuilder sb = new StringBuilder(path.get(0).getSymbol());
+                    for (int i = 1; i < path.size(); i++) {
+                        sb.append(fp.getBondSymbol(mol.getBond(path.get(i - 1), path.get(i))));
+                        sb.append(path.get(i).getSymbol());
+                    }
+                    String fwd = sb.toString();
+                    String rev = sb.reverse().toString();
+                    expected.add(fwd.compareTo(rev) > 0 ? fwd.hashCode() : rev.hashCode());
+                }
+            }
+            Set<Integer> actual = new TreeSet<Integer>();
+            for (int hash : fp.findPathes(mol, 8))
+                actual.add(hash);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRandomIndex() {
+        Random rnd = new Random(1);
+        for (int size : new int[]{1024, 1000, 881, 64, 7}) {
+            for (int i = 0; i < 1000; i++) {
+                int hash = rnd.nextInt();
+                Assert.assertEquals(new Random(hash).nextInt(size), Fingerprinter.randomIndex(hash, size));
+            }
+        }
+    }
+
     public static IAtomContainer makeFragment1()
 	{
 		IAtomContainer mol = DefaultChemObjectBuilder.getInstance().newInstance(IAtomContainer.class);
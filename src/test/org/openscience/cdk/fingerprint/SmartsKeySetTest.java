@@ -0,0 +1,92 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.fingerprint;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.graph.ConnectedComponents;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.smiles.smarts.SMARTSQueryTool;
+
+import java.util.BitSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-fingerprint
+ */
+public class SmartsKeySetTest extends CDKTestCase {
+
+    private static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    private static final String[] SMARTS = {"[Cl,Br]", "c1ccccc1", "[#7]C=O", "[!#1]S", "[$(C=O)]O",
+                                            "C.O", "(C.O)", "[CH3]CCCCCCCCCC", null};
+
+    @Test public void screen() throws Exception {
+        SmartsKeySet keys = new SmartsKeySet(SMARTS, builder);
+        assertThat(keys.size(), is(SMARTS.length));
+        // no halogens, nitrogen or sulfur, too few atoms for the decyl chain
+        assertThat(keys.screen(smi("OC(=O)c1ccccc1")), is(asBitSet(1, 4, 5, 6)));
+        assertThat(keys.screen(smi("ClCCNC(=O)CS")), is(asBitSet(0, 1, 2, 3, 4, 5, 6)));
+    }
+
+    @Test public void matches() throws Exception {
+        SmartsKeySet keys = new SmartsKeySet(SMARTS, builder);
+        SMARTSQueryTool sqt = new SMARTSQueryTool("C", builder);
+        for (String smi : new String[]{"OC(=O)c1ccccc1", "ClCCNC(=O)CS", "CCO.CC=O", "CCCCCCCCCCCC"}) {
+            IAtomContainer container = smi(smi);
+            SmartsMatchers.prepare(container, true);
+            ConnectedComponents[] cc = new ConnectedComponents[1];
+            for (int i = 0; i < SMARTS.length - 1; i++) {
+                sqt.setSmarts(SMARTS[i]);
+                assertThat(smi + " " + SMARTS[i], keys.matches(i, container, cc), is(sqt.matches(container)));
+            }
+            assertThat(keys.matches(SMARTS.length - 1, container, cc), is(false));
+        }
+    }
+
+    @Test public void shared() throws Exception {
+        assertThat(SmartsKeySet.of(SMARTS, builder), is(sameInstance(SmartsKeySet.of(SMARTS, builder))));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void invalidSmarts() throws Exception {
+        new SmartsKeySet(new String[]{"C(C"}, builder);
+    }
+
+    static IAtomContainer smi(String smi) throws Exception {
+        return new SmilesParser(builder).parseSmiles(smi);
+    }
+
+    static BitSet asBitSet(int... xs) {
+        BitSet bs = new BitSet();
+        for (int x : xs)
+            bs.set(x);
+        return bs;
+    }
+}
@@ -0,0 +1,91 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.geometry.surface;
+
+import org.junit.Test;
+import org.openscience.cdk.ChemFile;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.io.HINReader;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.ChemFileManipulator;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @cdk.module test-qsarmolecular
+ */
+public class NumericalSurfaceTest {
+
+    /** The first atom placed in a box was not reported as a neighbor. */
+    @Test public void neighborsInSameBox() throws Exception {
+        IAtom[] atoms = AtomContainerManipulator.getAtomArray(read("data/hin/benzene.hin"));
+        NeighborList neighbors = new NeighborList(atoms, 2.0);
+        for (int i = 0; i < atoms.length; i++) {
+            int[] expected = new int[atoms.length];
+            int n = 0;
+            for (int j = 0; j < atoms.length; j++) {
+                if (j != i && atoms[i].getPoint3d().distance(atoms[j].getPoint3d()) < 4.0)
+                    expected[n++] = j;
+            }
+            int[] actual = neighbors.getNeighbors(i);
+            Arrays.sort(actual);
+            assertArrayEquals(Arrays.copyOf(expected, n), actual);
+        }
+    }
+
+    @Test public void benzene() throws Exception {
+        NumericalSurface surface = new NumericalSurface(read("data/hin/benzene.hin"));
+        surface.calculateSurface();
+        assertEquals(231.6618, surface.getTotalSurfaceArea(), 0.0001);
+    }
+
+    @Test public void parallel() throws Exception {
+        IAtomContainer container = read("data/hin/gravindex.hin");
+        NumericalSurface sequential = new NumericalSurface(container);
+        sequential.calculateSurface();
+        NumericalSurface parallel = new NumericalSurface(container);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            parallel.calculateSurface(executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertArrayEquals(sequential.getAllSurfaceAreas(), parallel.getAllSurfaceAreas(), 0);
+        assertEquals(sequential.getAllSurfacePoints().length, parallel.getAllSurfacePoints().length);
+    }
+
+    private IAtomContainer read(String path) throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(path);
+        HINReader reader = new HINReader(in);
+        ChemFile content = reader.read(new ChemFile());
+        reader.close();
+        return ChemFileManipulator.getAllAtomContainers(content).get(0);
+    }
+}
@@ -0,0 +1,150 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.graph;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.Atom;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.silent.Bond;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @cdk.module test-core
+ */
+public class GraphSnapshotTest {
+
+    @Test public void csr() {
+        IAtomContainer container = simple();
+        GraphSnapshot g = GraphSnapshot.of(container);
+        assertThat(g.order(), is(5));
+        assertThat(g.size(), is(4));
+        assertThat(g.degree(1), is(3));
+        assertThat(g.offset(1), is(1));
+        assertThat(g.offset(5), is(8));
+        assertThat(g.neighbour(g.offset(1) + 2), is(4));
+        assertThat(g.bondIndex(g.offset(1) + 2), is(3));
+        assertThat(g.bondOrder(1), is(2));
+        assertThat(g.element(0), is(6));
+        assertThat(g.element(4), is(8));
+        assertThat(g.bond(2, 1), is(sameInstance(container.getBond(1))));
+        assertNull(g.bond(0, 4));
+    }
+
+    @Test public void adjList() {
+        IAtomContainer container = simple();
+        int[][] adjacent = GraphSnapshot.of(container).toAdjList();
+        int[][] expected = GraphUtil.toAdjList(container);
+        assertThat(adjacent.length, is(expected.length));
+        for (int v = 0; v < expected.length; v++)
+            assertArrayEquals(expected[v], adjacent[v]);
+    }
+
+    @Test public void bondMap() {
+        IAtomContainer container = simple();
+        GraphUtil.EdgeToBondMap map = GraphSnapshot.of(container).bondMap();
+        for (IBond bond : container.bonds()) {
+            int u = container.getAtomNumber(bond.getAtom(0));
+            int v = container.getAtomNumber(bond.getAtom(1));
+            assertThat(map.get(u, v), is(sameInstance(bond)));
+            assertThat(map.get(v, u), is(sameInstance(bond)));
+        }
+    }
+
+    @Test public void cached() {
+        IAtomContainer container = simple();
+        GraphSnapshot g = GraphSnapshot.of(container);
+        assertThat(GraphSnapshot.of(container), is(sameInstance(g)));
+        assertThat(g.isSnapshotOf(container), is(true));
+        assertThat(g.isSnapshotOf(simple()), is(false));
+    }
+
+    @Test public void modifiedBondOrder() {
+        IAtomContainer container = simple();
+        GraphSnapshot g = GraphSnapshot.of(container);
+        container.getBond(0).setOrder(IBond.Order.DOUBLE);
+        assertThat(g.isSnapshotOf(container), is(false));
+        GraphSnapshot h = GraphSnapshot.of(container);
+        assertThat(h, is(not(sameInstance(g))));
+        assertThat(h.bondOrder(0), is(2));
+    }
+
+    @Test public void modifiedAtoms() {
+        IAtomContainer container = simple();
+        GraphSnapshot g = GraphSnapshot.of(container);
+        // rewire a bond in place, the container is not notified
+        container.getBond(3).setAtom(container.getAtom(0), 0);
+        assertThat(g.isSnapshotOf(container), is(false));
+        int[][] adjacent = GraphSnapshot.of(container).toAdjList();
+        assertArrayEquals(new int[]{1, 4}, adjacent[0]);
+        assertArrayEquals(new int[]{0, 2}, adjacent[1]);
+
+        container.removeBond(0);
+        assertThat(GraphSnapshot.of(container).size(), is(3));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullContainer() {
+        GraphSnapshot.of(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingAtom() {
+        IAtomContainer container = simple();
+        container.removeAtom(4);
+        GraphSnapshot.of(container);
+    }
+
+    /** C-C(=C-C)-O, bond 1 is the double bond. */
+    private static IAtomContainer simple() {
+        IAtomContainer container = new AtomContainer();
+        IAtom a = new Atom("C");
+        IAtom b = new Atom("C");
+        IAtom c = new Atom("C");
+        IAtom d = new Atom("C");
+        IAtom e = new Atom("O");
+        a.setAtomicNumber(6);
+        b.setAtomicNumber(6);
+        c.setAtomicNumber(6);
+        d.setAtomicNumber(6);
+        e.setAtomicNumber(8);
+        container.addAtom(a);
+        container.addAtom(b);
+        container.addAtom(c);
+        container.addAtom(d);
+        container.addAtom(e);
+        container.addBond(new Bond(a, b, IBond.Order.SINGLE));
+        container.addBond(new Bond(b, c, IBond.Order.DOUBLE));
+        container.addBond(new Bond(c, d, IBond.Order.SINGLE));
+        container.addBond(new Bond(b, e, IBond.Order.SINGLE));
+        return container;
+    }
+}
@@ -40,6 +40,7 @@ import org.openscience.cdk.DefaultChemObjectBuilder;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.exception.InvalidSmilesException;
 import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.graph.matrix.AdjacencyMatrix;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
 import org.openscience.cdk.interfaces.IBond.Order;
@@ -227,6 +228,22 @@ public class PathToolsTest extends CDKTestCase {
         Assert.assertEquals(5, PathTools.getMolecularGraphDiameter(atomContainer));
     }
 
+    @Test
+    public void testGetMolecularGraphRadius_arrayintint() throws Exception {
+        IAtomContainer atomContainer = sp.parseSmiles("c12ccccc1cccc2");
+        int[][] distances = PathTools.computeFloydAPSP(AdjacencyMatrix.getMatrix(atomContainer));
+        Assert.assertEquals(3, PathTools.getMolecularGraphRadius(distances));
+        Assert.assertEquals(1, PathTools.getMolecularGraphRadius(new int[][]{{0, 1, 1}, {1, 0, 2}, {1, 2, 0}}));
+    }
+
+    @Test
+    public void testGetMolecularGraphDiameter_arrayintint() throws Exception {
+        IAtomContainer atomContainer = sp.parseSmiles("c12ccccc1cccc2");
+        int[][] distances = PathTools.computeFloydAPSP(AdjacencyMatrix.getMatrix(atomContainer));
+        Assert.assertEquals(5, PathTools.getMolecularGraphDiameter(distances));
+        Assert.assertEquals(2, PathTools.getMolecularGraphDiameter(new int[][]{{0, 1, 1}, {1, 0, 2}, {1, 2, 0}}));
+    }
+
     @Test
     public void testComputeFloydAPSP_arrayintint() {
     	int[][] start = new int[5][5]; // default to all zeros
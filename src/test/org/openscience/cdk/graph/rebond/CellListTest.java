@@ -0,0 +1,69 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.graph.rebond;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openscience.cdk.CDKTestCase;
+
+/**
+ * @cdk.module test-standard
+ */
+public class CellListTest extends CDKTestCase {
+
+    // points 0 and 1 share a cell, 2 is in the adjacent cell and 3 is far away
+    private final CellList cells = new CellList(new double[]{0.1, 0.9, 1.5, 10.0},
+                                                new double[]{0.1, 0.2, 0.5, 0.0},
+                                                new double[]{-0.5, -0.5, -0.5, 0.0},
+                                                1.0);
+
+    @Test
+    public void testCells() {
+        Assert.assertEquals(3, cells.size());
+        int cell = cells.cellOf(0);
+        Assert.assertEquals(2, cells.end(cell) - cells.begin(cell));
+        Assert.assertEquals(0, cells.member(cells.begin(cell)));
+        Assert.assertEquals(1, cells.member(cells.begin(cell) + 1));
+    }
+
+    @Test
+    public void testCellOf() {
+        Assert.assertEquals(cells.cellOf(0), cells.cellOf(1));
+        Assert.assertTrue(cells.cellOf(0) != cells.cellOf(2));
+        for (int i = 0; i < 4; i++) {
+            int cell = cells.cellOf(i);
+            boolean found = false;
+            for (int k = cells.begin(cell); k < cells.end(cell); k++)
+                found |= cells.member(k) == i;
+            Assert.assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testAdjacent() {
+        int[] adjacent = new int[27];
+        Assert.assertEquals(2, cells.adjacent(cells.cellOf(0), adjacent));
+        Assert.assertEquals(1, cells.adjacent(cells.cellOf(3), adjacent));
+        Assert.assertEquals(cells.cellOf(3), adjacent[0]);
+    }
+}
@@ -24,6 +24,12 @@
  */
 package org.openscience.cdk.graph.rebond;
 
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import javax.vecmath.Point3d;
 
 import org.junit.Assert;
@@ -32,7 +38,10 @@ import org.openscience.cdk.Atom;
 import org.openscience.cdk.AtomContainer;
 import org.openscience.cdk.CDKTestCase;
 import org.openscience.cdk.config.AtomTypeFactory;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
 
 /**
  * Checks the functionality of the RebondTool.
@@ -74,4 +83,60 @@ public class RebondToolTest extends CDKTestCase {
 		Assert.assertEquals(5, methane.getAtomCount());
 		Assert.assertEquals(4, methane.getBondCount());
 	}
+
+    @Test
+    public void testRebond_IAtomContainer_ExecutorService() throws Exception {
+		// random cloud of carbons and hydrogens, about one atom per 6 A^3
+		IAtomContainer container = new AtomContainer();
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			container.addAtom(new Atom(random.nextInt(3) == 0 ? "H" : "C",
+			                           new Point3d(40 * random.nextDouble() - 20,
+			                                       40 * random.nextDouble() - 20,
+			                                       20 * random.nextDouble())));
+		}
+		AtomTypeFactory factory = AtomTypeFactory.getInstance("org/openscience/cdk/config/data/jmol_atomtypes.txt",
+				container.getBuilder());
+		for (IAtom atom : container.atoms())
+			factory.configure(atom);
+
+		RebondTool rebonder = new RebondTool(2.0, 0.5, 0.5);
+		rebonder.rebond(container);
+		Set<String> expected = bonds(container);
+		Assert.assertTrue(expected.size() > 1000);
+
+		rebonder.rebond(container, null);
+		Assert.assertEquals(expected, bonds(container));
+		for (int i = 1; i < container.getBondCount(); i++) {
+			Assert.assertTrue(container.getAtomNumber(container.getBond(i - 1).getAtom(0))
+			                  <= container.getAtomNumber(container.getBond(i).getAtom(0)));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			rebonder.rebond(container, executor);
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(expected, bonds(container));
+	}
+
+    @Test(expected=CDKException.class)
+    public void testRebond_IAtomContainer_ExecutorService_noRadius() throws Exception {
+		IAtomContainer container = new AtomContainer();
+		container.addAtom(new Atom("C", new Point3d(0.0, 0.0, 0.0)));
+		new RebondTool(2.0, 0.5, 0.5).rebond(container, null);
+	}
+
+	/** The bonds as pairs of atom indices, independent of bond order and direction. */
+	private static Set<String> bonds(IAtomContainer container) {
+		Set<String> bonds = new HashSet<String>();
+		for (IBond bond : container.bonds()) {
+			int i = container.getAtomNumber(bond.getAtom(0));
+			int j = container.getAtomNumber(bond.getAtom(1));
+			bonds.add(Math.min(i, j) + "-" + Math.max(i, j));
+		}
+		Assert.assertEquals(container.getBondCount(), bonds.size());
+		return bonds;
+	}
 }
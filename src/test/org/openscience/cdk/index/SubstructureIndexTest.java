@@ -0,0 +1,146 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.index;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.aromaticity.CDKHueckelAromaticityDetector;
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.iterator.IteratingSDFReader;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-extra
+ */
+public class SubstructureIndexTest extends CDKTestCase {
+
+    private static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    private static File sdf, idx;
+
+    private static List<IAtomContainer> records = new ArrayList<IAtomContainer>();
+
+    @BeforeClass public static void indexFile() throws Exception {
+        sdf = File.createTempFile("cdk-index-test", ".sdf");
+        idx = File.createTempFile("cdk-index-test", ".fpi");
+        InputStream in = SubstructureIndexTest.class.getResourceAsStream("/data/mdl/pcoretest1.sdf");
+        OutputStream out = new FileOutputStream(sdf);
+        byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) > 0)
+            out.write(buf, 0, len);
+        in.close();
+        out.close();
+
+        IteratingSDFReader reader = new IteratingSDFReader(new FileInputStream(sdf), builder);
+        while (reader.hasNext()) {
+            IAtomContainer container = reader.next();
+            AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(container);
+            CDKHueckelAromaticityDetector.detectAromaticity(container);
+            records.add(container);
+        }
+        reader.close();
+    }
+
+    @AfterClass public static void deleteFiles() {
+        sdf.delete();
+        idx.delete();
+    }
+
+    @Test public void search() throws Exception {
+        assertThat(SubstructureIndex.build(sdf, idx, builder), is(records.size()));
+        SubstructureIndex index = SubstructureIndex.open(sdf, idx, builder);
+        try {
+            assertThat(index.size(), is(records.size()));
+            for (String smi : Arrays.asList("c1ccccc1", "C=O", "CN", "c1ccncc1", "CCCCCC", "Br")) {
+                int[] hits = index.search(smi(smi));
+                assertThat(smi, hits, is(bruteForce(smi)));
+                int[] candidates = index.candidates(smi(smi));
+                assertTrue(candidates.length >= hits.length);
+            }
+            assertThat(index.read(5).getAtomCount(), is(records.get(5).getAtomCount()));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test public void fingerprint() throws Exception {
+        SubstructureIndex.build(sdf, idx, builder, 512, 6);
+        SubstructureIndex index = SubstructureIndex.open(sdf, idx, builder);
+        try {
+            Fingerprinter fingerprinter = new Fingerprinter(512, 6);
+            for (int i = 0; i < records.size(); i++)
+                assertThat(index.fingerprint(i), is(fingerprinter.getBitFingerprint(records.get(i)).asBitSet()));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test(expected = IOException.class) public void outOfDate() throws Exception {
+        File copy = File.createTempFile("cdk-index-test", ".sdf");
+        try {
+            SubstructureIndex.build(sdf, idx, builder);
+            SubstructureIndex.open(copy, idx, builder);
+        } finally {
+            copy.delete();
+        }
+    }
+
+    int[] bruteForce(String smi) throws Exception {
+        Pattern pattern = Pattern.findSubstructure(smi(smi));
+        int[] hits = new int[records.size()];
+        int n = 0;
+        for (int i = 0; i < records.size(); i++)
+            if (pattern.matches(records.get(i)))
+                hits[n++] = i;
+        return Arrays.copyOf(hits, n);
+    }
+
+    static IAtomContainer smi(String smi) throws Exception {
+        IAtomContainer container = new SmilesParser(builder).parseSmiles(smi);
+        AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(container);
+        CDKHueckelAromaticityDetector.detectAromaticity(container);
+        return container;
+    }
+}
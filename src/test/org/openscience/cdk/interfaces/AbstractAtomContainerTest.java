@@ -2536,4 +2536,74 @@ public abstract class AbstractAtomContainerTest extends AbstractChemObjectTest {
 
     }
 
+    /**
+     * Neighbour, bond and position lookups on a container large enough to
+     * use the lookup indices must stay consistent under modification.
+     */
+    @Test public void testLookupsAfterModification_LargeContainer() {
+        IAtomContainer chain = (IAtomContainer) newChemObject();
+        IAtom[] atoms = new IAtom[40];
+        IBond[] bonds = new IBond[39];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = chain.getBuilder().newInstance(IAtom.class, "C");
+            chain.addAtom(atoms[i]);
+        }
+        for (int i = 0; i < bonds.length; i++) {
+            bonds[i] = chain.getBuilder().newInstance(IBond.class, atoms[i], atoms[i + 1]);
+            chain.addBond(bonds[i]);
+        }
+
+        Assert.assertEquals(2, chain.getConnectedAtomsCount(atoms[20]));
+        Assert.assertEquals(bonds[19], chain.getBond(atoms[20], atoms[19]));
+        Assert.assertEquals(bonds[20], chain.getBond(atoms[20], atoms[21]));
+        Assert.assertNull(chain.getBond(atoms[20], atoms[22]));
+        Assert.assertEquals(30, chain.getAtomNumber(atoms[30]));
+        Assert.assertEquals(30, chain.getBondNumber(bonds[30]));
+
+        chain.removeBond(bonds[20]);
+        Assert.assertEquals(1, chain.getConnectedAtomsCount(atoms[20]));
+        Assert.assertEquals(atoms[19], chain.getConnectedAtomsList(atoms[20]).get(0));
+        Assert.assertNull(chain.getBond(atoms[20], atoms[21]));
+        Assert.assertEquals(29, chain.getBondNumber(bonds[30]));
+        Assert.assertEquals(-1, chain.getBondNumber(bonds[20]));
+
+        chain.removeAtomAndConnectedElectronContainers(atoms[10]);
+        Assert.assertEquals(-1, chain.getAtomNumber(atoms[10]));
+        Assert.assertFalse(chain.contains(atoms[10]));
+        Assert.assertEquals(29, chain.getAtomNumber(atoms[30]));
+        Assert.assertEquals(1, chain.getConnectedAtomsCount(atoms[9]));
+        Assert.assertEquals(1, chain.getConnectedAtomsCount(atoms[11]));
+
+        IBond ring = chain.getBuilder().newInstance(IBond.class, atoms[39], atoms[0]);
+        chain.addBond(ring);
+        Assert.assertEquals(ring, chain.getBond(atoms[0], atoms[39]));
+        Assert.assertEquals(2, chain.getConnectedBondsList(atoms[0]).size());
+        Assert.assertEquals(chain.getBondCount() - 1, chain.getBondNumber(ring));
+    }
+
+    /**
+     * A bond removed, rewired and added again must be found from its new
+     * atoms once the lookup indices are in use.
+     */
+    @Test public void testLookupsAfterReaddingRewiredBond_LargeContainer() {
+        IAtomContainer chain = (IAtomContainer) newChemObject();
+        IAtom[] atoms = new IAtom[40];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = chain.getBuilder().newInstance(IAtom.class, "C");
+            chain.addAtom(atoms[i]);
+        }
+        for (int i = 0; i < atoms.length - 1; i++)
+            chain.addBond(chain.getBuilder().newInstance(IBond.class, atoms[i], atoms[i + 1]));
+
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[21]));
+        IBond bond = chain.getBond(atoms[20], atoms[21]);
+        chain.removeBond(bond);
+        bond.setAtom(atoms[30], 1);
+        chain.addBond(bond);
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[21]));
+        Assert.assertEquals(3, chain.getConnectedBondsCount(atoms[30]));
+        Assert.assertEquals(bond, chain.getBond(atoms[20], atoms[30]));
+        Assert.assertNull(chain.getBond(atoms[20], atoms[21]));
+    }
+
 }
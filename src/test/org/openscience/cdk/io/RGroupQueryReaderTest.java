@@ -40,6 +40,7 @@ import org.openscience.cdk.isomorphism.matchers.RGroup;
 import org.openscience.cdk.isomorphism.matchers.RGroupList;
 import org.openscience.cdk.isomorphism.matchers.RGroupQuery;
 import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
 import org.openscience.cdk.tools.ILoggingTool;
 import org.openscience.cdk.tools.LoggingToolFactory;
 
@@ -352,6 +353,30 @@ public class RGroupQueryReaderTest extends SimpleChemObjectReaderTest {
         Assert.assertEquals(rGroupQuery.getAllConfigurations().size(), 17820);
     }
 
+    /**
+     * The root of rgfile.5.mol has 20 bonds, its bonds are rewired to the
+     * substitutes in clones of the silent container. The bonds found from
+     * each atom of the configurations must match the bonds of the atom.
+     */
+    @Test
+    public void testRgroupQueryFile5_Silent() throws Exception {
+        String filename = "data/mdl/rgfile.5.mol";
+        InputStream ins = this.getClass().getClassLoader().getResourceAsStream(filename);
+        RGroupQueryReader reader = new RGroupQueryReader(ins);
+        RGroupQuery rGroupQuery = (RGroupQuery)reader.read(new RGroupQuery(SilentChemObjectBuilder.getInstance()));
+        List<IAtomContainer> configurations = rGroupQuery.getAllConfigurations();
+        Assert.assertEquals(17820, configurations.size());
+        for (IAtomContainer configuration : configurations) {
+            for (IAtom atom : configuration.atoms()) {
+                List<IBond> connected = configuration.getConnectedBondsList(atom);
+                for (IBond bond : connected)
+                    Assert.assertTrue(bond.contains(atom));
+                for (IBond bond : configuration.bonds())
+                    Assert.assertEquals(bond.contains(atom), connected.contains(bond));
+            }
+        }
+    }
+
     /**
      * Test parsing of RGFile rgfile.6.mol.
      * This RGFile is incomplete, RGP lines are missing. We still want to 
@@ -41,6 +41,7 @@ import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.geometry.GeometryTools;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.IChemObjectReaderErrorHandler;
 import org.openscience.cdk.io.formats.MDLV2000Format;
 import org.openscience.cdk.io.listener.IChemObjectIOListener;
 import org.openscience.cdk.io.listener.PropertiesListener;
@@ -331,4 +332,37 @@ public class IteratingSDFReaderTest extends CDKTestCase {
 
     }
 
+    /**
+     * An error handler set after the first molecule is read is used by the
+     * MDL reader already created for that molecule.
+     */
+    @Test public void testSetErrorHandler_afterRead() throws Exception {
+        String path                = "data/mdl/molecules_exception.sdf";
+        InputStream in             = getClass().getClassLoader().getResourceAsStream(path);
+        IteratingSDFReader reader  = new IteratingSDFReader(in, DefaultChemObjectBuilder.getInstance());
+        reader.setSkip(true);
+        reader.next();
+
+        final int[] count = new int[1];
+        reader.setErrorHandler(new IChemObjectReaderErrorHandler() {
+            public void handleError(String message) {
+                count[0]++;
+            }
+            public void handleError(String message, Exception exception) {
+                count[0]++;
+            }
+            public void handleError(String message, int row, int colStart, int colEnd) {
+                count[0]++;
+            }
+            public void handleError(String message, int row, int colStart, int colEnd, Exception exception) {
+                count[0]++;
+            }
+        });
+        while (reader.hasNext())
+            reader.next();
+        reader.close();
+
+        Assert.assertTrue(count[0] > 0);
+    }
+
 }
@@ -0,0 +1,197 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.io.iterator;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.IChemObjectReaderErrorHandler;
+import org.openscience.cdk.io.formats.MDLV2000Format;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-io
+ */
+public class ParallelSDFReaderTest extends CDKTestCase {
+
+    private static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    private static ExecutorService executor;
+
+    @BeforeClass public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass public static void stopExecutor() {
+        executor.shutdown();
+    }
+
+    @Test public void ordered() throws Exception {
+        for (String path : new String[]{"data/mdl/test2.sdf", "data/mdl/pcoretest1.sdf",
+                                        "data/mdl/emptyStructures.sdf", "data/mdl/bug682233.mol",
+                                        "data/mdl/singleMol.sdf"}) {
+            ParallelSDFReader reader = new ParallelSDFReader(resource(path), builder, executor);
+            List<String> actual = summarise(reader);
+            assertThat(path, actual, is(summarise(new IteratingSDFReader(resource(path), builder))));
+            assertThat(reader.getFormat(), is((Object) MDLV2000Format.getInstance()));
+            reader.close();
+        }
+    }
+
+    @Test public void unordered() throws Exception {
+        String path = "data/mdl/pcoretest1.sdf";
+        ParallelSDFReader reader = new ParallelSDFReader(resource(path), builder, executor, false);
+        List<String> actual   = summarise(reader);
+        List<String> expected = summarise(new IteratingSDFReader(resource(path), builder));
+        assertThat(actual.size(), is(100));
+        Collections.sort(actual);
+        Collections.sort(expected);
+        assertThat(actual, is(expected));
+        reader.close();
+    }
+
+    @Test public void crlf() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = resource("data/mdl/test2.sdf");
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n')
+                out.write('\r');
+            out.write(b);
+        }
+        ParallelSDFReader reader = new ParallelSDFReader(new ByteArrayInputStream(out.toByteArray()), builder,
+                                                         executor);
+        assertThat(summarise(reader), is(summarise(new IteratingSDFReader(resource("data/mdl/test2.sdf"), builder))));
+    }
+
+    /**
+     * @cdk.bug 3488307
+     */
+    @Test public void skip() throws Exception {
+        ParallelSDFReader reader = new ParallelSDFReader(resource("data/mdl/bug3488307.sdf"), builder, executor);
+        reader.setSkip(true);
+        assertThat(summarise(reader).size(), is(3));
+        reader.close();
+    }
+
+    /**
+     * The error handler and skip are applied to readers pooled from an
+     * earlier input.
+     */
+    @Test public void reconfigure() throws Exception {
+        ParallelSDFReader reader = new ParallelSDFReader(resource("data/mdl/pcoretest1.sdf"), builder, executor);
+        assertThat(summarise(reader).size(), is(100));
+
+        IteratingSDFReader serial = new IteratingSDFReader(resource("data/mdl/molecules_exception.sdf"), builder);
+        CountingErrorHandler expected = new CountingErrorHandler();
+        serial.setErrorHandler(expected);
+        serial.setSkip(true);
+        List<String> molecules = summarise(serial);
+
+        CountingErrorHandler actual = new CountingErrorHandler();
+        reader.setErrorHandler(actual);
+        reader.setSkip(true);
+        reader.setReader(resource("data/mdl/molecules_exception.sdf"));
+        assertThat(summarise(reader), is(molecules));
+        assertThat(expected.count > 0, is(true));
+        assertThat(actual.count, is(expected.count));
+        reader.close();
+    }
+
+    @Test public void dataItems() throws Exception {
+        ParallelSDFReader reader = new ParallelSDFReader(resource("data/mdl/test.sdf"), builder, executor);
+        IAtomContainer m = reader.next();
+        assertThat((String) m.getProperty("E_CAS"), is("553-97-9"));
+        m = reader.next();
+        assertThat((String) m.getProperty("E_CAS"), is("120-78-5"));
+        reader.close();
+    }
+
+    @Test public void close() throws Exception {
+        ParallelSDFReader reader = new ParallelSDFReader(resource("data/mdl/pcoretest1.sdf"), builder, executor);
+        reader.next();
+        reader.close();
+        assertThat(reader.hasNext(), is(false));
+    }
+
+    @Test(expected = CDKException.class) public void characterStream() throws Exception {
+        new ParallelSDFReader(resource("data/mdl/test2.sdf"), builder, executor).setReader(new StringReader(""));
+    }
+
+    private InputStream resource(String path) {
+        return getClass().getClassLoader().getResourceAsStream(path);
+    }
+
+    /**
+     * Title, atom count, bond count and data items of each molecule.
+     */
+    private static List<String> summarise(IIteratingChemObjectReader<IAtomContainer> reader) {
+        List<String> summary = new ArrayList<String>();
+        while (reader.hasNext()) {
+            IAtomContainer m = reader.next();
+            summary.add(m.getProperty(CDKConstants.TITLE) + " " + m.getAtomCount() + " " + m.getBondCount() + " "
+                        + m.getProperties());
+        }
+        return summary;
+    }
+
+    private static final class CountingErrorHandler implements IChemObjectReaderErrorHandler {
+
+        private volatile int count;
+
+        @Override public synchronized void handleError(String message) {
+            count++;
+        }
+
+        @Override public synchronized void handleError(String message, Exception exception) {
+            count++;
+        }
+
+        @Override public synchronized void handleError(String message, int row, int colStart, int colEnd) {
+            count++;
+        }
+
+        @Override public synchronized void handleError(String message, int row, int colStart, int colEnd,
+                                                       Exception exception) {
+            count++;
+        }
+    }
+}
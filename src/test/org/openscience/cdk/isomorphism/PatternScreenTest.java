@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or (at
+ * your option) any later version. All we ask is that proper credit is given
+ * for our work, which includes - but is not limited to - adding the above
+ * copyright notice to the beginning of your source code files, and to any
+ * copyright notice that you may distribute with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 U
+ */
+
+package org.openscience.cdk.isomorphism;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * @cdk.module test-smarts
+ */
+public class PatternScreenTest {
+
+    private static final SmilesParser sp = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+    private final PatternScreen screen = PatternScreen.forSubstructures(smis("c1ccccc1", "CO", "C(=O)O",
+                                                                             "CC(C)(C)C", "Cl"));
+
+    @Test public void screen() throws Exception {
+        assertThat(screen.size(), is(5));
+        assertThat(screen.screen(smi("c1ccccc1CO")), is(bits(0, 1)));
+        assertThat(screen.screen(smi("CC(=O)O")), is(bits(1, 2)));
+        assertThat(screen.screen(smi("CC(C)(C)CCl")), is(bits(3, 4)));
+        assertThat(screen.screen(smi("CCN")), is(bits()));
+    }
+
+    @Test public void prefilter() throws Exception {
+        // the screen must agree with matching each query individually
+        List<IAtomContainer> queries = smis("c1ccccc1", "CO", "C(=O)O", "CC(C)(C)C", "Cl");
+        for (IAtomContainer target : smis("c1ccc2ccccc2c1", "OCCO", "CC(C)(C)C(=O)O", "ClCCl", "C[C@H](O)CC",
+                                          "CC(C)C")) {
+            BitSet hits = screen.screen(target);
+            for (int i = 0; i < queries.size(); i++)
+                assertThat(hits.get(i), is(Pattern.findSubstructure(queries.get(i)).matches(target)));
+        }
+    }
+
+    @Test public void screenParallel() throws Exception {
+        List<IAtomContainer> targets = new ArrayList<IAtomContainer>();
+        for (int i = 0; i < 50; i++) {
+            targets.add(smi("c1ccccc1CO"));
+            targets.add(smi("CC(C)(C)CCl"));
+            targets.add(smi("CCN"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Iterator<BitSet> hits = screen.screen(targets.iterator(), executor);
+            for (int i = 0; i < 50; i++) {
+                assertThat(hits.next(), is(bits(0, 1)));
+                assertThat(hits.next(), is(bits(3, 4)));
+                assertThat(hits.next(), is(bits()));
+            }
+            assertFalse(hits.hasNext());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = NullPointerException.class) public void nullQuery() throws Exception {
+        PatternScreen.forSubstructures(Arrays.asList(smi("CC"), null));
+    }
+
+    static BitSet bits(int... xs) {
+        BitSet bs = new BitSet();
+        for (int x : xs)
+            bs.set(x);
+        return bs;
+    }
+
+    static IAtomContainer smi(String smi) throws Exception {
+        return sp.parseSmiles(smi);
+    }
+
+    static List<IAtomContainer> smis(String... smis) {
+        List<IAtomContainer> containers = new ArrayList<IAtomContainer>();
+        try {
+            for (String smi : smis)
+                containers.add(smi(smi));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+        return containers;
+    }
+}
@@ -25,9 +25,14 @@
 package org.openscience.cdk.isomorphism;
 
 import com.google.common.collect.FluentIterable;
+import com.google.common.primitives.Ints;
 import org.junit.Test;
 import org.openscience.cdk.templates.TestMoleculeFactory;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -78,4 +83,31 @@ public class VentoFoggiaTest {
                                   .size();
         assertThat(count, is(0)); 
     }
+
+    @Test public void matcherSubsearch() throws Exception {
+        int count = FluentIterable.from(VentoFoggia.findSubstructure(TestMoleculeFactory.makeBenzene(),
+                                                                     AtomMatcher.forAny(),
+                                                                     BondMatcher.forAny())
+                                                   .matchAll(TestMoleculeFactory.makeNaphthalene()))
+                                  .size();
+        assertThat(count, is(24));
+    }
+
+    @Test public void orderedSubsearch() throws Exception {
+        int[] order = {3, 4, 5, 0, 1, 2};
+        Set<List<Integer>> expected = new HashSet<List<Integer>>();
+        for (int[] mapping : VentoFoggia.findSubstructure(TestMoleculeFactory.makeBenzene())
+                                        .matchAll(TestMoleculeFactory.makeNaphthalene()))
+            expected.add(Ints.asList(mapping));
+        Set<List<Integer>> actual = new HashSet<List<Integer>>();
+        for (int[] mapping : VentoFoggia.findSubstructure(TestMoleculeFactory.makeBenzene(), order)
+                                        .matchAll(TestMoleculeFactory.makeNaphthalene()))
+            actual.add(Ints.asList(mapping));
+        assertThat(actual, is(expected));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOrder() throws Exception {
+        VentoFoggia.findSubstructure(TestMoleculeFactory.makeBenzene(), new int[]{0, 1, 2, 2, 4, 5});
+    }
 }
@@ -0,0 +1,89 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.isomorphism.matchers.smarts;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.smiles.smarts.SmartsPattern;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-smarts
+ */
+public class RecursiveSmartsAtomTest {
+
+    private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void sharedEnvironment() throws Exception {
+        RecursiveSmartsAtom a = recursive("[$(C=O)]N", 0);
+        RecursiveSmartsAtom b = recursive("O[$(C=O)]", 1);
+        assertThat(a, is(not(sameInstance(b))));
+        assertThat(a.environment(), is(sameInstance(b.environment())));
+    }
+
+    @Test public void differentEnvironment() throws Exception {
+        RecursiveSmartsAtom a = recursive("[$(C=O)]N", 0);
+        RecursiveSmartsAtom b = recursive("[$(C=N)]N", 0);
+        assertThat(a.environment(), is(not(sameInstance(b.environment()))));
+    }
+
+    @Test public void registeredFromSmarts() throws Exception {
+        RecursiveSmartsAtom a = new RecursiveSmartsAtom("C=O", builder);
+        assertThat(a.environment(), is(sameInstance(recursive("[$(C=O)]N", 0).environment())));
+        assertThat(a.environment(), is(not(sameInstance(recursive("[$(C=N)]N", 0).environment()))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSmarts() throws Exception {
+        new RecursiveSmartsAtom("C=(", builder);
+    }
+
+    @Test public void unregistered() throws Exception {
+        IQueryAtomContainer query = SMARTSParser.parse("C=O", builder);
+        assertThat(new RecursiveSmartsAtom(query).environment(),
+                   is(not(sameInstance(new RecursiveSmartsAtom(query).environment()))));
+    }
+
+    @Test public void sharedMatches() throws Exception {
+        SmilesParser sp = new SmilesParser(builder);
+        SmartsPattern amide = SmartsPattern.create("[$(C=O)]N", builder);
+        SmartsPattern acid  = SmartsPattern.create("[$(C=O)][OH]", builder);
+        assertThat(amide.matches(sp.parseSmiles("CC(=O)N")), is(true));
+        assertThat(acid.matches(sp.parseSmiles("CC(=O)N")), is(false));
+        assertThat(amide.matches(sp.parseSmiles("CC(=O)O")), is(false));
+        assertThat(acid.matches(sp.parseSmiles("CC(=O)O")), is(true));
+        assertThat(amide.matches(sp.parseSmiles("CC(O)N")), is(false));
+    }
+
+    private RecursiveSmartsAtom recursive(String smarts, int idx) throws Exception {
+        return (RecursiveSmartsAtom) SMARTSParser.parse(smarts, builder).getAtom(idx);
+    }
+}
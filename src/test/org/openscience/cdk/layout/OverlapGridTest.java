@@ -0,0 +1,138 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.layout;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+import javax.vecmath.Point2d;
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @cdk.module test-sdg
+ */
+public class OverlapGridTest {
+
+    private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void atomPairs() {
+        Random random = new Random(1);
+        IAtomContainer container = randomStructure(random, 400, 0);
+        for (double cutoff : new double[]{0.05, 0.4, 1.5}) {
+            OverlapGrid grid = new OverlapGrid(container, cutoff);
+            long[] expected = atomPairs(container, cutoff);
+            assertThat(grid.pairs(), is(expected));
+            assertThat(grid.size(), is(expected.length));
+        }
+        // nothing overlaps without a positive cutoff
+        assertThat(new OverlapGrid(container, 0).size(), is(0));
+        assertThat(new OverlapGrid(container, Double.NaN).size(), is(0));
+    }
+
+    @Test public void update() {
+        Random random = new Random(2);
+        IAtomContainer container = randomStructure(random, 200, 0);
+        OverlapGrid grid = new OverlapGrid(container, 0.5);
+        for (int step = 0; step < 2000; step++) {
+            int i = random.nextInt(container.getAtomCount());
+            Point2d p = container.getAtom(i).getPoint2d();
+            p.x += random.nextGaussian();
+            p.y += random.nextGaussian();
+            grid.update(i);
+        }
+        long[] expected = atomPairs(container, 0.5);
+        assertThat(grid.pairs(), is(expected));
+        long[] pairs = new long[grid.size()];
+        for (int k = 0; k < pairs.length; k++)
+            pairs[k] = grid.pair(k);
+        Arrays.sort(pairs);
+        assertThat(pairs, is(expected));
+    }
+
+    @Test public void crossingBonds() {
+        Random random = new Random(3);
+        IAtomContainer container = randomStructure(random, 150, 300);
+        long[] expected = crossingBonds(container);
+        assertThat(OverlapGrid.crossingBonds(container, 0.7), is(expected));
+        assertThat(OverlapGrid.crossingBonds(container, 5), is(expected));
+        assertThat(OverlapGrid.crossingBonds(container, 0), is(expected));
+    }
+
+    /** Atoms at random positions in a 10 x 10 square, with random bonds. */
+    private IAtomContainer randomStructure(Random random, int nAtoms, int nBonds) {
+        IAtomContainer container = builder.newInstance(IAtomContainer.class);
+        for (int i = 0; i < nAtoms; i++) {
+            IAtom atom = builder.newInstance(IAtom.class, "C");
+            atom.setPoint2d(new Point2d(10 * random.nextDouble() - 5, 10 * random.nextDouble() - 5));
+            container.addAtom(atom);
+        }
+        // atoms on top of each other
+        container.getAtom(1).setPoint2d(new Point2d(container.getAtom(0).getPoint2d()));
+        while (container.getBondCount() < nBonds) {
+            int u = random.nextInt(nAtoms), v = random.nextInt(nAtoms);
+            if (u != v && container.getBond(container.getAtom(u), container.getAtom(v)) == null)
+                container.addBond(u, v, IBond.Order.SINGLE);
+        }
+        return container;
+    }
+
+    private static long[] atomPairs(IAtomContainer container, double cutoff) {
+        long[] pairs = new long[0];
+        for (int i = 0; i < container.getAtomCount(); i++) {
+            for (int j = i + 1; j < container.getAtomCount(); j++) {
+                if (container.getAtom(i).getPoint2d().distance(container.getAtom(j).getPoint2d()) < cutoff) {
+                    pairs = Arrays.copyOf(pairs, pairs.length + 1);
+                    pairs[pairs.length - 1] = (long) i << 32 | j;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static long[] crossingBonds(IAtomContainer container) {
+        long[] pairs = new long[0];
+        for (int f = 0; f < container.getBondCount(); f++) {
+            for (int g = f + 1; g < container.getBondCount(); g++) {
+                IBond bond1 = container.getBond(f), bond2 = container.getBond(g);
+                if (bond1.isConnectedTo(bond2))
+                    continue;
+                Point2d p1 = bond1.getAtom(0).getPoint2d(), p2 = bond1.getAtom(1).getPoint2d();
+                Point2d p3 = bond2.getAtom(0).getPoint2d(), p4 = bond2.getAtom(1).getPoint2d();
+                if (Line2D.linesIntersect(p1.x, p1.y, p2.x, p2.y, p3.x, p3.y, p4.x, p4.y)) {
+                    pairs = Arrays.copyOf(pairs, pairs.length + 1);
+                    pairs[pairs.length - 1] = (long) f << 32 | g;
+                }
+            }
+        }
+        return pairs;
+    }
+}
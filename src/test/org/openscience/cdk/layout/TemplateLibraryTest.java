@@ -0,0 +1,108 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.layout;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.AtomMatcher;
+import org.openscience.cdk.isomorphism.BondMatcher;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-sdg
+ */
+public class TemplateLibraryTest {
+
+    private static final String[] STRUCTURES = {
+            "C1CCCCC1", "c1ccccc1", "c1ccc2ccccc2c1", "c1ccc2cc3ccccc3cc2c1", "c1ccc2c(c1)ccc1ccccc12",
+            "C1C2CC3CC1CC(C2)C3", "C12C3C4C1C5C2C3C45", "C1C2CC3C4CC5CC(C4)C3C1C5C2",
+            "C1CCC2C(C1)CCC1C2CCC2CCCC12", "C1CC2CC1C1CCCC21", "C1CC11CCCC1", "C1CCC2(CC1)CCCCC2",
+            "C1CCCCCCCCCCC1", "c1cc2ccc3cccc4ccc(c1)c2c34", "CC1(C)C2CCC(C)=C1C2", "C1CC2CCC1CC2",
+            "OCC1OC(O)C(O)C(O)C1O", "CCCCCC", "c1ccc(cc1)-c1ccccc1", "C1CCC2CCCC2C1"
+    };
+
+    private final SmilesParser smipar = new SmilesParser(SilentChemObjectBuilder.getInstance());
+
+    /**
+     * Every template which is a substructure of a molecule is a candidate,
+     * and some of the others are screened out.
+     */
+    @Test public void candidates() throws Exception {
+        TemplateLibrary library = library();
+        assertThat(library.size(), is(STRUCTURES.length));
+
+        int nScreened = 0;
+        for (String smi : STRUCTURES) {
+            IAtomContainer molecule = smipar.parseSmiles(smi);
+            int[] candidates = library.candidates(molecule, false);
+            for (int i = 0; i < library.size(); i++) {
+                boolean found = VentoFoggia.findSubstructure(library.get(i), AtomMatcher.forAny(),
+                                                             BondMatcher.forAny()).matches(molecule);
+                boolean candidate = Arrays.binarySearch(candidates, i) >= 0;
+                if (found)
+                    assertTrue(STRUCTURES[i] + " in " + smi + " was screened out", candidate);
+                else if (!candidate)
+                    nScreened++;
+            }
+        }
+        assertTrue(nScreened > 0);
+
+        // cyclohexane in sterane but neither adamantane nor cubane
+        int[] candidates = library.candidates(smipar.parseSmiles("C1CCC2C(C1)CCC1C2CCC2CCCC12"), false);
+        assertTrue(Arrays.binarySearch(candidates, 0) >= 0);
+        assertTrue(Arrays.binarySearch(candidates, 5) < 0);
+        assertTrue(Arrays.binarySearch(candidates, 6) < 0);
+    }
+
+    @Test public void identical() throws Exception {
+        TemplateLibrary library = library();
+        // benzene and cyclohexane have the same topology
+        assertThat(library.candidates(smipar.parseSmiles("C1CCCCC1"), true), is(new int[]{0, 1}));
+        assertThat(library.candidates(smipar.parseSmiles("C1C2CC3CC1CC(C2)C3"), true), is(new int[]{5}));
+        assertThat(library.candidates(smipar.parseSmiles("C1CCCCC1C"), true).length, is(0));
+    }
+
+    @Test public void remove() throws Exception {
+        TemplateLibrary library = library();
+        IAtomContainer adamantane = library.get(5);
+        assertThat(library.remove(5), is(adamantane));
+        assertThat(library.size(), is(STRUCTURES.length - 1));
+        assertThat(library.candidates(smipar.parseSmiles("C1C2CC3CC1CC(C2)C3"), true).length, is(0));
+    }
+
+    private TemplateLibrary library() throws Exception {
+        TemplateLibrary library = new TemplateLibrary();
+        for (String smi : STRUCTURES)
+            library.add(AtomContainerManipulator.anonymise(smipar.parseSmiles(smi)));
+        return library;
+    }
+}
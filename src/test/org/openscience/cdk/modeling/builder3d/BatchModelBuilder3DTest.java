@@ -0,0 +1,198 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.modeling.builder3d;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.io.SDFWriter;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-builder3d
+ */
+public class BatchModelBuilder3DTest extends CDKTestCase {
+
+    private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void generate() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchModelBuilder3D batch = new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2", builder,
+                                                                executor);
+            batch.setBufferSize(2);
+            assertLayout(batch);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void callingThread() throws Exception {
+        assertLayout(new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2", builder, null));
+    }
+
+    /**
+     * However many layouts time out, every molecule is written to one of the
+     * two writers. The blocked molecule can only be laid out once it is
+     * interrupted and must time out.
+     */
+    @Test(timeout = 60000) public void timeout() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchModelBuilder3D batch = new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2", builder,
+                                                                executor);
+            batch.setTimeout(1, TimeUnit.NANOSECONDS);
+            List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+            for (int i = 0; i < 7; i++)
+                molecules.add(molecule("c1ccccc1CCc1ccccc1", "molecule " + i));
+            IAtomContainer blocked = new BlockedMolecule(molecule("CCO", "blocked"));
+            blocked.setProperty(CDKConstants.TITLE, "blocked");
+            molecules.add(3, blocked);
+            StringWriter out = new StringWriter(), failed = new StringWriter();
+            SDFWriter writer = new SDFWriter(out), failures = new SDFWriter(failed);
+            int nWritten = batch.generate(molecules.iterator(), writer, failures);
+            writer.close();
+            failures.close();
+
+            assertTrue(nWritten < 8);
+            assertThat(count(out.toString()), is(nWritten));
+            assertThat(count(failed.toString()), is(8 - nWritten));
+            assertTrue(failed.toString().contains("blocked"));
+            assertFalse(out.toString().contains("blocked"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * An untitled molecule which could not be laid out is logged without an
+     * exception when logging is enabled.
+     */
+    @Test public void failedWithLogging() throws Exception {
+        String debugging = System.getProperty("cdk.debugging");
+        System.setProperty("cdk.debugging", "true");
+        try {
+            ILoggingTool logger = LoggingToolFactory.createLoggingTool(BatchModelBuilder3D.class);
+            assertTrue(logger.isDebugEnabled());
+            BatchModelBuilder3D.failed(logger, 1, builder.newInstance(IAtomContainer.class), null);
+        } finally {
+            if (debugging == null)
+                System.clearProperty("cdk.debugging");
+            else
+                System.setProperty("cdk.debugging", debugging);
+        }
+    }
+
+    @Test(expected = CDKException.class) public void noForceField() throws Exception {
+        new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "", builder, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void negativeTimeout() throws Exception {
+        new BatchModelBuilder3D(TemplateHandler3D.getInstance(), "mm2", builder, null).setTimeout(-1,
+                                                                                                 TimeUnit.SECONDS);
+    }
+
+    /**
+     * Lay out four molecules, the third is not connected and can not be laid
+     * out.
+     */
+    private void assertLayout(BatchModelBuilder3D batch) throws Exception {
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        molecules.add(molecule("CCO", "ethanol"));
+        molecules.add(molecule("c1ccccc1", "benzene"));
+        molecules.add(molecule("C.C", "methanes"));
+        molecules.add(molecule("CC(=O)O", "acetic acid"));
+        StringWriter out = new StringWriter(), failed = new StringWriter();
+        SDFWriter writer = new SDFWriter(out), failures = new SDFWriter(failed);
+
+        assertThat(batch.generate(molecules.iterator(), writer, failures), is(3));
+        writer.close();
+        failures.close();
+
+        String sdf = out.toString();
+        assertThat(count(sdf), is(3));
+        assertTrue(sdf.indexOf("ethanol") < sdf.indexOf("benzene"));
+        assertTrue(sdf.indexOf("benzene") < sdf.indexOf("acetic acid"));
+        assertThat(count(failed.toString()), is(1));
+        assertTrue(failed.toString().startsWith("methanes"));
+
+        // the coordinates are generated on copies
+        for (IAtom atom : molecules.get(1).atoms())
+            assertThat(atom.getPoint3d(), is(nullValue()));
+    }
+
+    private IAtomContainer molecule(String smiles, String title) throws Exception {
+        IAtomContainer molecule = new SmilesParser(builder).parseSmiles(smiles);
+        addExplicitHydrogens(molecule);
+        molecule.setProperty(CDKConstants.TITLE, title);
+        return molecule;
+    }
+
+    private static int count(String sdf) {
+        int count = 0;
+        for (int i = sdf.indexOf("$$$$"); i >= 0; i = sdf.indexOf("$$$$", i + 1))
+            count++;
+        return count;
+    }
+
+    /**
+     * A molecule whose copy blocks until the copying thread is interrupted.
+     */
+    private static final class BlockedMolecule extends AtomContainer {
+
+        private BlockedMolecule(IAtomContainer molecule) {
+            super(molecule);
+        }
+
+        @Override public IAtomContainer clone() throws CloneNotSupportedException {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new CloneNotSupportedException("interrupted");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.modeling.builder3d;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+import javax.vecmath.Point3d;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @cdk.module test-builder3d
+ */
+public class TemplateStoreTest {
+
+    private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void roundTrip() throws Exception {
+        IAtomContainer ethanol = builder.newInstance(IAtomContainer.class);
+        ethanol.addAtom(atom("C", 6, 0.0, 0.0, 0.0));
+        ethanol.addAtom(atom("C", 6, 1.5234, 0.0, 0.0));
+        ethanol.addAtom(atom("O", 8, 2.0123, -1.3579, 0.1));
+        ethanol.getAtom(2).setFormalCharge(-1);
+        ethanol.getAtom(2).setFlag(CDKConstants.ISINRING, true);
+        ethanol.addBond(0, 1, IBond.Order.SINGLE);
+        ethanol.addBond(1, 2, IBond.Order.SINGLE);
+        ethanol.getBond(1).setStereo(IBond.Stereo.UP);
+        ethanol.getBond(1).setFlag(CDKConstants.ISAROMATIC, true);
+
+        IAtomContainer nitrogen = builder.newInstance(IAtomContainer.class);
+        nitrogen.addAtom(atom("N", 7, -1.0, 2.0, -3.0));
+        nitrogen.addAtom(atom("N", 7, -1.0, 2.0, -1.9));
+        nitrogen.addBond(0, 1, IBond.Order.TRIPLE);
+
+        TemplateStore store = roundTrip(Arrays.asList(ethanol, nitrogen),
+                                        Arrays.asList(bits(1, 3, 64), bits(3)));
+
+        assertThat(store.size(), is(2));
+        assertThat(store.atomCount(0), is(3));
+        assertThat(store.atomCount(1), is(2));
+        assertThat(store.fingerprint(0), is(bits(1, 3, 64)));
+        assertThat(store.fingerprint(1), is(bits(3)));
+
+        IAtomContainer decoded = store.get(0);
+        assertThat(decoded.getAtomCount(), is(3));
+        assertThat(decoded.getBondCount(), is(2));
+        for (int i = 0; i < 3; i++) {
+            IAtom expected = ethanol.getAtom(i), actual = decoded.getAtom(i);
+            assertThat(actual.getSymbol(), is(expected.getSymbol()));
+            assertThat(actual.getAtomicNumber(), is(expected.getAtomicNumber()));
+            assertThat(actual.getFormalCharge(), is(expected.getFormalCharge()));
+            assertThat(actual.getMassNumber(), is(nullValue()));
+            assertThat(actual.getFlag(CDKConstants.ISINRING), is(expected.getFlag(CDKConstants.ISINRING)));
+            assertThat(actual.getPoint3d().distance(expected.getPoint3d()), is(0.0));
+        }
+        assertThat(decoded.getBond(1).getStereo(), is(IBond.Stereo.UP));
+        assertThat(decoded.getBond(1).getFlag(CDKConstants.ISAROMATIC), is(true));
+        assertThat(decoded.getAtomNumber(decoded.getBond(1).getAtom(1)), is(2));
+        assertThat(store.get(1).getBond(0).getOrder(), is(IBond.Order.TRIPLE));
+
+        // decoded once
+        assertThat(store.get(0), is(sameInstance(decoded)));
+    }
+
+    @Test public void candidates() throws Exception {
+        Random random = new Random(42);
+        List<IAtomContainer> templates = new ArrayList<IAtomContainer>();
+        List<BitSet> fingerprints = new ArrayList<BitSet>();
+        for (int i = 0; i < 500; i++) {
+            IAtomContainer template = builder.newInstance(IAtomContainer.class);
+            int n = 1 + random.nextInt(4);
+            for (int j = 0; j < n; j++)
+                template.addAtom(atom("C", 6, j, 0, 0));
+            templates.add(template);
+            BitSet fingerprint = new BitSet();
+            for (int j = 0; j < 20; j++)
+                fingerprint.set(random.nextInt(128));
+            fingerprints.add(fingerprint);
+        }
+        TemplateStore store = roundTrip(templates, fingerprints);
+
+        for (int q = 0; q < 200; q++) {
+            int n = 1 + random.nextInt(4);
+            BitSet query = new BitSet();
+            for (int j = 0; j < 1 + random.nextInt(3); j++)
+                query.set(random.nextInt(128));
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < templates.size(); i++) {
+                BitSet and = (BitSet) query.clone();
+                and.and(fingerprints.get(i));
+                if (templates.get(i).getAtomCount() == n && and.equals(query))
+                    expected.add(i);
+            }
+            List<Integer> actual = new ArrayList<Integer>();
+            for (int i : store.candidates(n, query))
+                actual.add(i);
+            assertThat(actual, is(expected));
+        }
+
+        // no templates of this size, or query bits beyond the fingerprint size
+        assertThat(store.candidates(7, new BitSet()).length, is(0));
+        assertThat(store.candidates(2, bits(128)).length, is(0));
+    }
+
+    @Test(expected = CDKException.class) public void notAStore() throws Exception {
+        new TemplateStore(ByteBuffer.wrap(new byte[16]), builder);
+    }
+
+    @Test(expected = CDKException.class) public void inexactCoordinates() throws Exception {
+        IAtomContainer template = builder.newInstance(IAtomContainer.class);
+        template.addAtom(atom("C", 6, 0.00001, 0, 0));
+        roundTrip(Arrays.asList(template), Arrays.asList(new BitSet()));
+    }
+
+    private TemplateStore roundTrip(List<IAtomContainer> templates, List<BitSet> fingerprints) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateStore.write(templates, fingerprints, 128, out);
+        return TemplateStore.read(new ByteArrayInputStream(out.toByteArray()), builder);
+    }
+
+    private IAtom atom(String symbol, int atomicNumber, double x, double y, double z) {
+        IAtom atom = builder.newInstance(IAtom.class, symbol);
+        atom.setAtomicNumber(atomicNumber);
+        atom.setFormalCharge(0);
+        atom.setPoint3d(new Point3d(x, y, z));
+        return atom;
+    }
+
+    private static BitSet bits(int... bits) {
+        BitSet bitSet = new BitSet();
+        for (int bit : bits)
+            bitSet.set(bit);
+        return bitSet;
+    }
+}
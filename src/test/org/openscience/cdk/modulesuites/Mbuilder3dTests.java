@@ -24,10 +24,12 @@ import org.junit.runners.Suite.SuiteClasses;
 import org.openscience.cdk.coverage.Builder3dCoverageTest;
 import org.openscience.cdk.modeling.builder3d.AtomPlacer3DTest;
 import org.openscience.cdk.modeling.builder3d.AtomTetrahedralLigandPlacer3DTest;
+import org.openscience.cdk.modeling.builder3d.BatchModelBuilder3DTest;
 import org.openscience.cdk.modeling.builder3d.FurtherAtomPlacer3DTest;
 import org.openscience.cdk.modeling.builder3d.FurtherTemplateHandler3DTest;
 import org.openscience.cdk.modeling.builder3d.ModelBuilder3DTest;
 import org.openscience.cdk.modeling.builder3d.TemplateHandler3DTest;
+import org.openscience.cdk.modeling.builder3d.TemplateStoreTest;
 
 /**
  * TestSuite that runs all the sample tests.
@@ -42,6 +44,8 @@ import org.openscience.cdk.modeling.builder3d.TemplateHandler3DTest;
     FurtherAtomPlacer3DTest.class,
     AtomTetrahedralLigandPlacer3DTest.class,
     AtomPlacer3DTest.class,
-    FurtherTemplateHandler3DTest.class
+    FurtherTemplateHandler3DTest.class,
+    TemplateStoreTest.class,
+    BatchModelBuilder3DTest.class
 })
 public class Mbuilder3dTests {}
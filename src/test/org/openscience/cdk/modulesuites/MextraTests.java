@@ -41,6 +41,7 @@ import org.openscience.cdk.io.ShelXWriterTest;
 import org.openscience.cdk.io.iterator.IteratingMDLConformerReaderTest;
 import org.openscience.cdk.io.random.RandomAccessTest;
 import org.openscience.cdk.iupac.ParserTest;
+import org.openscience.cdk.protein.ProteinPocketFinderTest;
 import org.openscience.cdk.reaction.ReactionChainTest;
 import org.openscience.cdk.tools.BremserPredictorTest;
 import org.openscience.cdk.tools.DeAromatizationToolTest;
@@ -75,5 +76,6 @@ import org.openscience.cdk.tools.HOSECodeAnalyserTest;
     ParserTest.class,
     ReactionChainTest.class,
     EquivalentClassPartitionerTest.class,
+    ProteinPocketFinderTest.class,
 })
 public class MextraTests {}
@@ -23,6 +23,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.openscience.cdk.coverage.QsarmolecularCoverageTest;
+import org.openscience.cdk.geometry.surface.NumericalSurfaceTest;
 import org.openscience.cdk.graph.matrix.TopologicalMatrixTest;
 import org.openscience.cdk.qsar.DescriptorEngineTest;
 import org.openscience.cdk.qsar.DescriptorNamesTest;
@@ -89,6 +90,7 @@ import org.openscience.cdk.qsar.descriptors.molecular.ZagrebIndexDescriptorTest;
     ChiIndexUtilsTest.class,
     DescriptorEngineTest.class,
     DescriptorNamesTest.class,
+    NumericalSurfaceTest.class,
 
 //      from cdk.test.qsar.molecular
     AcidicGroupCountDescriptorTest.class,
@@ -22,6 +22,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 import org.openscience.cdk.coverage.RenderawtCoverageTest;
+import org.openscience.cdk.renderer.BatchDepictorTest;
 import org.openscience.cdk.renderer.visitor.AWTDrawVisitorTest;
 import org.openscience.cdk.renderer.visitor.AbstractAWTDrawVisitorTest;
 
@@ -35,6 +36,7 @@ import org.openscience.cdk.renderer.visitor.AbstractAWTDrawVisitorTest;
 @SuiteClasses({
 	RenderawtCoverageTest.class,
 	AbstractAWTDrawVisitorTest.class,
-	AWTDrawVisitorTest.class
+	AWTDrawVisitorTest.class,
+	BatchDepictorTest.class
 })
 public class MrenderawtTests {}
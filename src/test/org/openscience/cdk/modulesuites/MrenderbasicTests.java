@@ -45,6 +45,7 @@ import org.openscience.cdk.renderer.generators.BasicBondGeneratorTest;
 import org.openscience.cdk.renderer.generators.BasicGeneratorTest;
 import org.openscience.cdk.renderer.generators.BasicSceneGeneratorTest;
 import org.openscience.cdk.renderer.generators.RingGeneratorTest;
+import org.openscience.cdk.renderer.visitor.SVGDrawVisitorTest;
 
 /**
  * TestSuite that runs all the tests for the CDK <code>renderbasic</code>
@@ -77,6 +78,7 @@ import org.openscience.cdk.renderer.generators.RingGeneratorTest;
 	CubicToTest.class,
 	MoveToTest.class,
 	QuadToTest.class,
-	BoundsCalculatorTest.class
+	BoundsCalculatorTest.class,
+	SVGDrawVisitorTest.class
 })
 public class MrenderbasicTests {}
@@ -28,9 +28,11 @@ import org.openscience.cdk.layout.AtomPlacerTest;
 import org.openscience.cdk.layout.CorrectGeometricConfigurationTest;
 import org.openscience.cdk.layout.HydrogenPlacerTest;
 import org.openscience.cdk.layout.NonPlanarBondsTest;
+import org.openscience.cdk.layout.OverlapGridTest;
 import org.openscience.cdk.layout.OverlapResolverTest;
 import org.openscience.cdk.layout.StructureDiagramGeneratorTest;
 import org.openscience.cdk.layout.TemplateHandlerTest;
+import org.openscience.cdk.layout.TemplateLibraryTest;
 
 /**
  * TestSuite that runs all the tests for the sdg module.
@@ -43,7 +45,9 @@ import org.openscience.cdk.layout.TemplateHandlerTest;
     StructureDiagramGeneratorTest.class,
     HydrogenPlacerTest.class,
     OverlapResolverTest.class,
+    OverlapGridTest.class,
     TemplateHandlerTest.class,
+    TemplateLibraryTest.class,
     AtomPlacerTest.class,
     NonPlanarBondsTest.class,
     CorrectGeometricConfigurationTest.class
@@ -0,0 +1,157 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.protein;
+
+import org.junit.Test;
+import org.openscience.cdk.ChemFile;
+import org.openscience.cdk.interfaces.IBioPolymer;
+import org.openscience.cdk.io.PDBReader;
+
+import javax.vecmath.Point3d;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-extra
+ */
+public class ProteinPocketFinderTest {
+
+    /** The solvent points between two protein points are incremented. */
+    @Test public void axisScan() {
+        double[][][] lattice = new double[1][1][7];
+        lattice[0][0][1] = -1;
+        lattice[0][0][5] = -2;
+        PocketGrid grid = PocketGrid.of(lattice);
+        grid.axisScanZ(0, 0, 6, null);
+        grid.copyTo(lattice);
+        assertArrayEquals(new double[]{0, -1, 1, 1, 1, -2, 0}, lattice[0][0], 0);
+    }
+
+    /**
+     * The public scans count the events on a flat grid and add them to the
+     * lattice, the fractional values are kept.
+     */
+    @Test public void axisScanLattice() {
+        double[][][] lattice = new double[1][1][7];
+        lattice[0][0] = new double[]{0.5, -0.5, 0.25, 1, 0, -2, 0};
+        ProteinPocketFinder finder = new ProteinPocketFinder((IBioPolymer) null, lattice);
+        finder.axisScanZ(0, 0, 6);
+        assertArrayEquals(new double[]{0.5, -0.5, 1.25, 2, 1, -2, 0}, lattice[0][0], 0);
+    }
+
+    /** Large pockets are clustered without recursion. */
+    @Test public void largePocket() {
+        double[][][] lattice = new double[100][100][100];
+        for (double[][] plane : lattice)
+            for (double[] line : plane)
+                Arrays.fill(line, 2);
+        PocketGrid grid = PocketGrid.of(lattice);
+        List<List<Point3d>> pockets = grid.pockets(2, 2, 1, 100);
+        assertEquals(1, pockets.size());
+        assertEquals(1000000, pockets.get(0).size());
+    }
+
+    /**
+     * A fractional linkage radius is applied like clusterPSPPocket: from x
+     * the points (int)(x - 1.5) to (int)(x + 1.5) are linked.
+     */
+    @Test public void fractionalLinkage() {
+        double[][][] lattice = new double[2][2][6];
+        lattice[0][0][0] = 2;
+        lattice[0][0][2] = 2;
+        lattice[0][0][4] = 2;
+        List<List<Point3d>> pockets = PocketGrid.of(lattice).pockets(2, 2, 1.5, 1);
+        assertEquals(3, pockets.size());
+        pockets = PocketGrid.of(lattice).pockets(2, 2, 2, 1);
+        assertEquals(1, pockets.size());
+        assertEquals(3, pockets.get(0).size());
+    }
+
+    /**
+     * The pocket size counts each point once, three linked points are not a
+     * pocket of size 4 (the recursive clustering counted 2 * 3 - 1 = 5).
+     */
+    @Test public void pocketSize() {
+        double[][][] lattice = new double[2][2][4];
+        lattice[0][0][0] = 2;
+        lattice[0][0][1] = 2;
+        lattice[0][0][2] = 2;
+        assertEquals(0, PocketGrid.of(lattice).pockets(2, 2, 1, 4).size());
+        List<List<Point3d>> pockets = PocketGrid.of(lattice).pockets(2, 2, 1, 3);
+        assertEquals(1, pockets.size());
+        assertEquals(3, pockets.get(0).size());
+    }
+
+    @Test public void parallel() throws Exception {
+        ProteinPocketFinder sequential = finder();
+        sequential.sitefinder();
+        ProteinPocketFinder parallel = finder();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            parallel.sitefinder(executor);
+        } finally {
+            executor.shutdown();
+        }
+        double[][][] a = sequential.getGrid(), b = parallel.getGrid();
+        for (int x = 0; x < a.length; x++)
+            for (int y = 0; y < a[x].length; y++)
+                assertArrayEquals(a[x][y], b[x][y], 0);
+        List<List<Point3d>> expected = sequential.getPockets(), actual = parallel.getPockets();
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).size(), actual.get(i).size());
+            for (int j = 0; j < expected.get(i).size(); j++)
+                assertEquals(0, expected.get(i).get(j).distance(actual.get(i).get(j)), 0);
+        }
+        for (List<Point3d> pocket : expected)
+            assertEquals(pocket.size(), new HashSet<String>(toStrings(pocket)).size());
+    }
+
+    private static List<String> toStrings(List<Point3d> points) {
+        List<String> strs = new ArrayList<String>(points.size());
+        for (Point3d p : points)
+            strs.add(p.toString());
+        return strs;
+    }
+
+    private ProteinPocketFinder finder() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream("data/pdb/1CRN.pdb");
+        PDBReader reader = new PDBReader(in);
+        ChemFile chemFile = reader.read(new ChemFile());
+        reader.close();
+        IBioPolymer protein = (IBioPolymer) chemFile.getChemSequence(0).getChemModel(0).getMoleculeSet().getAtomContainer(0);
+        ProteinPocketFinder finder = new ProteinPocketFinder(protein, null);
+        finder.createCubicGrid();
+        return finder;
+    }
+}
@@ -0,0 +1,149 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.qsar;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.silent.AtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @cdk.module test-qsar
+ */
+public class DescriptorContextTest extends CDKTestCase {
+
+    private static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void open() throws Exception {
+        IAtomContainer container = smi("CCO");
+        DescriptorContext context = DescriptorContext.open(container);
+        try {
+            assertThat(context.container(), is(sameInstance(container)));
+            assertThat(DescriptorContext.of(container), is(sameInstance(context)));
+        } finally {
+            context.close();
+        }
+        assertThat(DescriptorContext.of(container), is(not(sameInstance(context))));
+    }
+
+    @Test public void notOpen() throws Exception {
+        IAtomContainer container = smi("CCO");
+        assertThat(DescriptorContext.of(container), is(not(sameInstance(DescriptorContext.of(container)))));
+    }
+
+    @Test public void otherMolecule() throws Exception {
+        IAtomContainer container = smi("CCO");
+        DescriptorContext context = DescriptorContext.open(container);
+        try {
+            assertThat(DescriptorContext.of(container.clone()), is(not(sameInstance(context))));
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test public void heavyAtoms() throws Exception {
+        IAtomContainer container = smi("[H]OC([H])([H])C");
+        DescriptorContext context = DescriptorContext.of(container);
+        assertThat(context.heavyAtoms().getAtomCount(), is(3));
+        assertThat(context.heavyAtoms(), is(sameInstance(context.heavyAtoms())));
+        assertThat(container.getAtomCount(), is(6));
+    }
+
+    @Test public void heavyAtomDistances() throws Exception {
+        DescriptorContext context = DescriptorContext.of(smi("[H]OC([H])([H])C"));
+        int[][] distances = context.heavyAtomDistances();
+        assertThat(distances, is(new int[][]{{0, 1, 2}, {1, 0, 1}, {2, 1, 0}}));
+        assertThat(context.heavyAtomDistances(), is(sameInstance(distances)));
+    }
+
+    @Test public void aromatic() throws Exception {
+        IAtomContainer container = smi("C1=CC=CC=C1O");
+        DescriptorContext context = DescriptorContext.of(container);
+        IAtomContainer aromatic = context.aromatic();
+        assertThat(aromatic, is(not(sameInstance(container))));
+        assertTrue(aromatic.getAtom(0).getFlag(CDKConstants.ISAROMATIC));
+        assertFalse(aromatic.getAtom(6).getFlag(CDKConstants.ISAROMATIC));
+        assertFalse(container.getAtom(0).getFlag(CDKConstants.ISAROMATIC));
+        assertThat(context.aromatic(), is(sameInstance(aromatic)));
+    }
+
+    @Test public void aromaticFailure() throws Exception {
+        IAtomContainer container = new AtomContainer() {
+            @Override public IAtomContainer clone() throws CloneNotSupportedException {
+                throw new CloneNotSupportedException();
+            }
+        };
+        DescriptorContext context = DescriptorContext.of(container);
+        CDKException failure = null;
+        try {
+            context.aromatic();
+        } catch (CDKException e) {
+            failure = e;
+        }
+        assertNotNull(failure);
+        try {
+            context.aromatic();
+            fail("failure should be remembered");
+        } catch (CDKException e) {
+            assertThat(e, is(sameInstance(failure)));
+        }
+    }
+
+    @Test public void modified() throws Exception {
+        IAtomContainer container = smi("C1=CC=CC=C1O");
+        DescriptorContext context = DescriptorContext.of(container);
+        IAtomContainer heavyAtoms = context.heavyAtoms();
+        IAtomContainer aromatic = context.aromatic();
+        int[][] distances = context.heavyAtomDistances();
+
+        // perceiving the aromaticity of the molecule itself changes its flags
+        container.getAtom(0).setFlag(CDKConstants.ISAROMATIC, true);
+        assertThat(context.heavyAtoms(), is(not(sameInstance(heavyAtoms))));
+        assertThat(context.heavyAtoms(), is(sameInstance(context.heavyAtoms())));
+
+        // the ring is opened, the distances and aromaticity change
+        container.removeBond(container.getAtom(0), container.getAtom(5));
+        assertThat(context.heavyAtomDistances(), is(not(sameInstance(distances))));
+        assertThat(context.heavyAtomDistances()[0][5], is(5));
+        assertThat(context.aromatic(), is(not(sameInstance(aromatic))));
+        assertFalse(context.aromatic().getAtom(0).getFlag(CDKConstants.ISAROMATIC));
+    }
+
+    static IAtomContainer smi(String smi) throws Exception {
+        return new SmilesParser(builder).parseSmiles(smi);
+    }
+}
@@ -26,12 +26,23 @@ package org.openscience.cdk.qsar;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.IImplementationSpecification;
 import org.openscience.cdk.DefaultChemObjectBuilder;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.modeling.builder3d.ModelBuilder3D;
 import org.openscience.cdk.modeling.builder3d.TemplateHandler3D;
+import org.openscience.cdk.qsar.result.DoubleArrayResult;
+import org.openscience.cdk.qsar.result.DoubleResult;
+import org.openscience.cdk.qsar.result.IDescriptorResult;
+import org.openscience.cdk.qsar.result.IntegerResult;
 import org.openscience.cdk.smiles.SmilesParser;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * TestSuite that runs all tests for the DescriptorEngine.
  *
@@ -139,5 +150,102 @@ public class DescriptorEngineTest extends CDKTestCase {
     	Assert.assertEquals(loadedDescriptors, engine.getDescriptorClassNames().size());
     	Assert.assertEquals(loadedDescriptors, engine.getDescriptorSpecifications().size());
     }
-}
 
+    private static final List<String> BATCH_DESCRIPTORS = Arrays.asList(
+            "org.openscience.cdk.qsar.descriptors.molecular.AtomCountDescriptor",
+            "org.openscience.cdk.qsar.descriptors.molecular.WeightDescriptor",
+            "org.openscience.cdk.qsar.descriptors.molecular.KappaShapeIndicesDescriptor",
+            "org.openscience.cdk.qsar.descriptors.molecular.ZagrebIndexDescriptor");
+
+    private static final String[] BATCH_SMILES = {"CCO", "c1ccccc1O", "CC(=O)Nc1ccc(O)cc1", "C1CCC1", "C", "CCCCCCN"};
+
+    @Test
+    public void testMolecularDescriptorNames() {
+        DescriptorEngine engine = new DescriptorEngine(BATCH_DESCRIPTORS, DefaultChemObjectBuilder.getInstance());
+        Assert.assertArrayEquals(new String[]{"nAtom", "MW", "Kier1", "Kier2", "Kier3", "Zagreb"},
+                                 engine.getMolecularDescriptorNames());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        DescriptorEngine engine = new DescriptorEngine(BATCH_DESCRIPTORS, DefaultChemObjectBuilder.getInstance());
+        RowCollector rows = new RowCollector();
+        Assert.assertEquals(BATCH_SMILES.length, engine.process(molecules().iterator(), rows));
+        Assert.assertArrayEquals(engine.getMolecularDescriptorNames(), rows.names);
+
+        // same values as storing the descriptors as properties
+        List<IAtomContainer> molecules = molecules();
+        for (int i = 0; i < molecules.size(); i++) {
+            IAtomContainer molecule = molecules.get(i);
+            engine.process(molecule);
+            List<Double> expected = new ArrayList<Double>();
+            for (IImplementationSpecification spec : engine.getDescriptorSpecifications())
+                expected.addAll(values(((DescriptorValue) molecule.getProperty(spec)).getValue()));
+            Assert.assertEquals(expected.size(), rows.rows.get(i).length);
+            for (int j = 0; j < expected.size(); j++)
+                Assert.assertEquals(expected.get(j), rows.rows.get(i)[j], 1e-10);
+        }
+    }
+
+    @Test
+    public void testBatchParallel() throws Exception {
+        DescriptorEngine engine = new DescriptorEngine(BATCH_DESCRIPTORS, DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (int i = 0; i < 50; i++)
+            molecules.addAll(molecules());
+        RowCollector serial = new RowCollector();
+        RowCollector parallel = new RowCollector();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            engine.process(molecules.iterator(), serial);
+            Assert.assertEquals(molecules.size(), engine.process(molecules.iterator(), parallel, executor));
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(molecules.size(), parallel.rows.size());
+        for (int i = 0; i < molecules.size(); i++) {
+            Assert.assertSame(molecules.get(i), parallel.molecules.get(i));
+            Assert.assertArrayEquals(serial.rows.get(i), parallel.rows.get(i), 0);
+        }
+    }
+
+    private static List<IAtomContainer> molecules() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (String smi : BATCH_SMILES)
+            molecules.add(sp.parseSmiles(smi));
+        return molecules;
+    }
+
+    private static List<Double> values(IDescriptorResult result) {
+        List<Double> values = new ArrayList<Double>();
+        if (result instanceof IntegerResult)
+            values.add((double) ((IntegerResult) result).intValue());
+        else if (result instanceof DoubleResult)
+            values.add(((DoubleResult) result).doubleValue());
+        else if (result instanceof DoubleArrayResult)
+            for (int i = 0; i < result.length(); i++)
+                values.add(((DoubleArrayResult) result).get(i));
+        return values;
+    }
+
+    /** Holds the rows of a batch run in memory. */
+    private static final class RowCollector extends DescriptorSink {
+        String[] names;
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        List<double[]> rows = new ArrayList<double[]>();
+
+        @Override public void header(String[] names) {
+            this.names = names;
+        }
+
+        @Override public void row(int index, IAtomContainer molecule, double[] values) {
+            Assert.assertEquals(rows.size(), index);
+            molecules.add(molecule);
+            rows.add(values);
+        }
+
+        @Override public void close() {
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.qsar;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-qsarmolecular
+ */
+public class DescriptorSinkTest extends CDKTestCase {
+
+    @Test public void csv() throws Exception {
+        StringWriter sw = new StringWriter();
+        DescriptorSink sink = DescriptorSink.csv(sw);
+        sink.header(new String[]{"nAtom", "MW"});
+        sink.row(0, null, new double[]{3, 46.07});
+        sink.row(1, null, new double[]{7, Double.NaN});
+        sink.close();
+        String nl = System.getProperty("line.separator");
+        assertThat(sw.toString(), is("nAtom,MW" + nl + "3.0,46.07" + nl + "7.0,NaN" + nl));
+    }
+
+    @Test public void binary() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DescriptorSink sink = DescriptorSink.binary(out);
+        sink.header(new String[]{"nAtom", "MW"});
+        sink.row(0, null, new double[]{3, 46.07});
+        sink.close();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(in.readInt(), is(2));
+        assertThat(in.readUTF(), is("nAtom"));
+        assertThat(in.readUTF(), is("MW"));
+        assertThat(in.readDouble(), is(3d));
+        assertThat(in.readDouble(), is(46.07));
+        assertThat(in.read(), is(-1));
+    }
+}
@@ -0,0 +1,236 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.renderer;
+
+import org.junit.Test;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.renderer.elements.ElementGroup;
+import org.openscience.cdk.renderer.elements.IRenderingElement;
+import org.openscience.cdk.renderer.generators.BasicBondGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.BackgroundColor;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.BondLength;
+import org.openscience.cdk.renderer.generators.IGenerator;
+import org.openscience.cdk.renderer.generators.IGeneratorParameter;
+import org.openscience.cdk.renderer.generators.RingGenerator;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.ILoggingTool;
+import org.openscience.cdk.tools.LoggingToolFactory;
+
+import javax.imageio.ImageIO;
+import javax.vecmath.Point2d;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-renderawt
+ */
+public class BatchDepictorTest {
+
+    private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    @Test public void svg() throws Exception {
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (int n = 3; n < 12; n++)
+            molecules.add(ring(n, "N"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String> svgs = new BatchDepictor(executor).toSVG(molecules, 120, 100);
+            BatchDepictor depictor = new BatchDepictor(null);
+            assertThat(svgs.size(), is(molecules.size()));
+            for (int i = 0; i < molecules.size(); i++) {
+                String svg = svgs.get(i);
+                assertTrue(svg.contains("width=\"120\" height=\"100\""));
+                assertTrue(svg.contains(">N</text>"));
+                assertTrue(svg.endsWith("</svg>\n"));
+                // the same document on the calling thread
+                assertThat(depictor.toSVG(molecules.get(i), 120, 100), is(svg));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void cache() throws Exception {
+        BatchDepictor depictor = new BatchDepictor(Arrays.<Class<? extends IGenerator<IAtomContainer>>> asList(
+                BasicSceneGenerator.class, BasicBondGenerator.class, CountingGenerator.class), 100, null);
+        IAtomContainer ring = ring(6, "C");
+        CountingGenerator.count.set(0);
+        String svg = depictor.toSVG(ring, 100, 100);
+        assertThat(depictor.toSVG(ring, 100, 100), is(svg));
+        assertThat(CountingGenerator.count.get(), is(1));
+        // an identical molecule
+        assertThat(depictor.toSVG(ring(6, "C"), 100, 100), is(svg));
+        assertThat(CountingGenerator.count.get(), is(1));
+        // a different size is only drawn differently
+        assertThat(depictor.toSVG(ring, 200, 200), is(not(svg)));
+        assertThat(CountingGenerator.count.get(), is(1));
+
+        // another atom, coordinates, bond order or setting
+        depictor.toSVG(ring(6, "O"), 100, 100);
+        assertThat(CountingGenerator.count.get(), is(2));
+        ring.getAtom(0).getPoint2d().x += 0.1;
+        depictor.toSVG(ring, 100, 100);
+        assertThat(CountingGenerator.count.get(), is(3));
+        ring.getBond(0).setOrder(IBond.Order.DOUBLE);
+        depictor.toSVG(ring, 100, 100);
+        assertThat(CountingGenerator.count.get(), is(4));
+        depictor.set(BondLength.class, 20.0);
+        depictor.toSVG(ring, 100, 100);
+        assertThat(CountingGenerator.count.get(), is(5));
+        depictor.toSVG(ring, 100, 100);
+        assertThat(CountingGenerator.count.get(), is(5));
+    }
+
+    @Test public void grid() throws Exception {
+        List<IAtomContainer> molecules = new ArrayList<IAtomContainer>();
+        for (int n = 3; n < 8; n++)
+            molecules.add(ring(n, "C"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchDepictor depictor = new BatchDepictor(executor);
+            depictor.set(BackgroundColor.class, Color.YELLOW);
+            BufferedImage image = depictor.toImage(molecules, 3, 50, 40);
+            assertThat(image.getWidth(), is(150));
+            assertThat(image.getHeight(), is(80));
+            for (int i = 0; i < 6; i++) {
+                int x = (i % 3) * 50, y = (i / 3) * 40;
+                // every molecule is drawn in its cell, the last cell is empty
+                assertThat(i + ": " + drawn(image, x, y, 50, 40, Color.YELLOW), is(i + ": " + (i < 5)));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            depictor.writePNG(molecules, 2, 50, 40, out);
+            BufferedImage png = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            assertThat(png.getWidth(), is(100));
+            assertThat(png.getHeight(), is(120));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test public void noCoordinates() throws Exception {
+        IAtomContainer molecule = ring(6, "C");
+        for (IAtom atom : molecule.atoms())
+            atom.setPoint2d(null);
+        List<IAtomContainer> molecules = Arrays.asList(ring(5, "C"), molecule, ring(7, "C"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            BatchDepictor depictor = new BatchDepictor(executor);
+            List<String> svgs = depictor.toSVG(molecules, 100, 100);
+            assertThat(svgs.get(0), is(not(nullValue())));
+            assertThat(svgs.get(1), is(nullValue()));
+            assertThat(svgs.get(2), is(not(nullValue())));
+            BufferedImage image = depictor.toImage(molecules, 3, 50, 50);
+            assertTrue(drawn(image, 0, 0, 50, 50, Color.WHITE));
+            assertTrue(!drawn(image, 50, 0, 50, 50, Color.WHITE));
+            assertTrue(drawn(image, 100, 0, 50, 50, Color.WHITE));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * An untitled molecule which can not be depicted is logged without an
+     * exception when logging is enabled.
+     */
+    @Test public void failedWithLogging() {
+        String debugging = System.getProperty("cdk.debugging");
+        System.setProperty("cdk.debugging", "true");
+        try {
+            ILoggingTool logger = LoggingToolFactory.createLoggingTool(BatchDepictor.class);
+            assertTrue(logger.isDebugEnabled());
+            BatchDepictor.failed(logger, 1, builder.newInstance(IAtomContainer.class), new NullPointerException());
+        } finally {
+            if (debugging == null)
+                System.clearProperty("cdk.debugging");
+            else
+                System.setProperty("cdk.debugging", debugging);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownParameter() {
+        new BatchDepictor(null).set(RingGenerator.RingProportion.class, 0.5);
+    }
+
+    /** A regular polygon with a bond length of 1.5. */
+    private IAtomContainer ring(int n, String symbol) {
+        IAtomContainer ring = builder.newInstance(IAtomContainer.class);
+        double radius = 0.75 / Math.sin(Math.PI / n);
+        for (int i = 0; i < n; i++) {
+            IAtom atom = builder.newInstance(IAtom.class, i == 0 ? symbol : "C");
+            atom.setImplicitHydrogenCount(i == 0 ? 1 : 2);
+            atom.setPoint2d(new Point2d(radius * Math.cos(2 * Math.PI * i / n),
+                                        radius * Math.sin(2 * Math.PI * i / n)));
+            ring.addAtom(atom);
+        }
+        for (int i = 0; i < n; i++)
+            ring.addBond(i, (i + 1) % n, IBond.Order.SINGLE);
+        return ring;
+    }
+
+    /** Whether a part of an image has pixels which differ from the background. */
+    private static boolean drawn(BufferedImage image, int x0, int y0, int width, int height, Color background) {
+        for (int x = x0; x < x0 + width; x++) {
+            for (int y = y0; y < y0 + height; y++) {
+                if (image.getRGB(x, y) != background.getRGB())
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /** Counts the molecules it generates elements for. */
+    public static final class CountingGenerator implements IGenerator<IAtomContainer> {
+
+        static final AtomicInteger count = new AtomicInteger();
+
+        @Override public List<IGeneratorParameter<?>> getParameters() {
+            return Collections.emptyList();
+        }
+
+        @Override public IRenderingElement generate(IAtomContainer container, RendererModel model) {
+            count.incrementAndGet();
+            return new ElementGroup();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.renderer.visitor;
+
+import org.junit.Test;
+import org.openscience.cdk.renderer.RendererModel;
+import org.openscience.cdk.renderer.elements.AtomSymbolElement;
+import org.openscience.cdk.renderer.elements.ElementGroup;
+import org.openscience.cdk.renderer.elements.LineElement;
+import org.openscience.cdk.renderer.elements.OvalElement;
+import org.openscience.cdk.renderer.elements.RectangleElement;
+import org.openscience.cdk.renderer.elements.TextElement;
+import org.openscience.cdk.renderer.elements.WedgeLineElement;
+import org.openscience.cdk.renderer.elements.path.PathBuilder;
+import org.openscience.cdk.renderer.font.AWTFontManager;
+import org.openscience.cdk.renderer.generators.BasicBondGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator;
+import org.openscience.cdk.renderer.generators.BasicSceneGenerator.BackgroundColor;
+
+import javax.vecmath.Point2d;
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-renderbasic
+ */
+public class SVGDrawVisitorTest {
+
+    @Test public void document() {
+        RendererModel model = new RendererModel();
+        model.registerParameters(new BasicSceneGenerator());
+        model.set(BackgroundColor.class, new Color(255, 255, 0, 128));
+        SVGDrawVisitor visitor = new SVGDrawVisitor(200, 150.5);
+        visitor.setRendererModel(model);
+        visitor.setTransform(new AffineTransform());
+        String svg = visitor.toString();
+        assertTrue(svg.startsWith("<?xml"));
+        assertTrue(svg.contains("width=\"200\" height=\"150.5\" viewBox=\"0 0 200 150.5\""));
+        assertTrue(svg.contains("<rect width=\"100%\" height=\"100%\" fill=\"#ffff00\" fill-opacity=\"0.5\"/>"));
+        assertTrue(svg.endsWith("</svg>\n"));
+    }
+
+    @Test public void lines() {
+        SVGDrawVisitor visitor = new SVGDrawVisitor(100, 100);
+        // y-up model coordinates to y-down screen coordinates
+        AffineTransform transform = new AffineTransform();
+        transform.translate(50, 50);
+        transform.scale(10, -10);
+        visitor.setTransform(transform);
+        ElementGroup group = new ElementGroup();
+        group.add(new LineElement(0, 0, 1.2345, -2, 0.5, Color.RED));
+        group.add(new LineElement(-1, 0, 0, 0, 0.01, Color.BLUE));
+        visitor.visit(group);
+        String svg = visitor.toString();
+        assertTrue(svg.contains("<line x1=\"50\" y1=\"50\" x2=\"62.35\" y2=\"70\" stroke=\"#ff0000\" stroke-width=\"5\""));
+        // minimum width
+        assertTrue(svg.contains("<line x1=\"40\" y1=\"50\" x2=\"50\" y2=\"50\" stroke=\"#0000ff\" stroke-width=\"1.5\""));
+    }
+
+    @Test public void text() {
+        SVGDrawVisitor visitor = new SVGDrawVisitor(100, 100);
+        visitor.setTransform(new AffineTransform());
+        AWTFontManager fontManager = new AWTFontManager();
+        fontManager.setFontForZoom(1);
+        visitor.setFontManager(fontManager);
+        visitor.visit(new TextElement(10, 20, "R&D <1>", Color.BLACK));
+        visitor.visit(new AtomSymbolElement(30, 40, "N", 1, 0, 1, Color.BLUE));
+        String svg = visitor.toString();
+        assertTrue(svg.contains(">R&amp;D &lt;1&gt;</text>"));
+        assertTrue(svg.contains("text-anchor=\"middle\" font-family=\"Arial\" font-size=\""
+                + fontManager.getFont().getSize() + "\" fill=\"#0000ff\">N</text>"));
+        // the charge
+        assertTrue(svg.contains("fill=\"#0000ff\">+</text>"));
+        assertThat(count(svg, "<text"), is(3));
+    }
+
+    @Test public void shapes() {
+        SVGDrawVisitor visitor = new SVGDrawVisitor(100, 100);
+        visitor.setTransform(new AffineTransform());
+        visitor.visit(new OvalElement(10, 10, 5, true, Color.GREEN));
+        visitor.visit(new RectangleElement(0, 0, 20, -10, Color.BLACK));
+        PathBuilder path = new PathBuilder(Color.BLACK).moveTo(new Point2d(0, 0)).lineTo(new Point2d(10, 0))
+                                                       .quadTo(new Point2d(10, 10), new Point2d(0, 10));
+        path.close();
+        visitor.visit(path.createPath());
+        String svg = visitor.toString();
+        assertTrue(svg.contains("<circle cx=\"10\" cy=\"10\" r=\"5\" fill=\"#00ff00\"/>"));
+        assertTrue(svg.contains("<rect x=\"0\" y=\"-10\" width=\"20\" height=\"10\" stroke=\"#000000\" fill=\"none\"/>"));
+        assertTrue(svg.contains("<path d=\"M0 0L10 0Q10 10 0 10Z\""));
+    }
+
+    @Test public void wedges() {
+        RendererModel model = new RendererModel();
+        model.registerParameters(new BasicSceneGenerator());
+        model.registerParameters(new BasicBondGenerator());
+        SVGDrawVisitor visitor = new SVGDrawVisitor(100, 100);
+        visitor.setRendererModel(model);
+        visitor.setTransform(new AffineTransform());
+        visitor.visit(new WedgeLineElement(0, 0, 10, 0, 1, WedgeLineElement.TYPE.WEDGED,
+                                           WedgeLineElement.Direction.toSecond, Color.BLACK));
+        visitor.visit(new WedgeLineElement(0, 0, 10, 0, 1, WedgeLineElement.TYPE.DASHED,
+                                           WedgeLineElement.Direction.toSecond, Color.BLACK));
+        String svg = visitor.toString();
+        assertTrue(svg.contains("<polygon points=\"10,2 10,-2 0,0\""));
+        assertThat(count(svg, "<line"), is(10));
+    }
+
+    private static int count(String str, String substr) {
+        int n = 0;
+        for (int i = str.indexOf(substr); i >= 0; i = str.indexOf(substr, i + 1))
+            n++;
+        return n;
+    }
+}
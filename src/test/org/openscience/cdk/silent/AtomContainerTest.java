@@ -135,4 +135,38 @@ public class AtomContainerTest extends AbstractAtomContainerTest {
     @Test public void testSetAtoms_removeListener() {
         ChemObjectTestHelper.testSetAtoms_removeListener(newChemObject());
     }
+
+    /**
+     * The container is not notified when the atoms of one of its bonds are
+     * set in place, a lookup must not return the bond for an atom it no
+     * longer contains.
+     */
+    @Test public void testLookupsAfterRewiringInPlace_LargeContainer() {
+        IAtomContainer chain = new AtomContainer();
+        IAtom[] atoms = new IAtom[40];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = chain.getBuilder().newInstance(IAtom.class, "C");
+            chain.addAtom(atoms[i]);
+        }
+        for (int i = 0; i < atoms.length - 1; i++)
+            chain.addBond(chain.getBuilder().newInstance(IBond.class, atoms[i], atoms[i + 1]));
+
+        // build the index, then rewire 20-21 to 20-30
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[21]));
+        IBond bond = chain.getBond(atoms[20], atoms[21]);
+        bond.setAtom(atoms[30], 1);
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[21]));
+        Assert.assertFalse(chain.getConnectedAtomsList(atoms[21]).contains(atoms[20]));
+        Assert.assertEquals(3, chain.getConnectedBondsCount(atoms[30]));
+        Assert.assertEquals(bond, chain.getBond(atoms[20], atoms[30]));
+        Assert.assertNull(chain.getBond(atoms[20], atoms[21]));
+
+        // removing the rewired bond leaves no entry for its old atom
+        bond = chain.getBond(atoms[30], atoms[31]);
+        bond.setAtom(atoms[0], 0);
+        chain.removeBond(bond);
+        Assert.assertEquals(2, chain.getConnectedBondsCount(atoms[30]));
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[0]));
+        Assert.assertEquals(1, chain.getConnectedBondsCount(atoms[31]));
+    }
 }
@@ -0,0 +1,204 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.similarity;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.CDKTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-fingerprint
+ */
+public class FingerprintStoreTest extends CDKTestCase {
+
+    private static final int N_BITS = 256;
+
+    private static File          file;
+    private static List<BitSet>  fps = new ArrayList<BitSet>();
+    private static Random        rnd = new Random(42);
+
+    @BeforeClass public static void createStore() throws Exception {
+        file = File.createTempFile("cdk-fps-test", ".fps");
+        FingerprintStore.Writer writer = FingerprintStore.create(file, N_BITS);
+        for (int i = 0; i < 2000; i++) {
+            BitSet fp = random(rnd.nextDouble() * 0.5);
+            fps.add(fp);
+            assertThat(writer.add(fp), is(i));
+        }
+        writer.add(new BitSet()); // empty fingerprint
+        fps.add(new BitSet());
+        writer.close();
+    }
+
+    @AfterClass public static void deleteStore() {
+        file.delete();
+    }
+
+    @Test public void nearest() throws Exception {
+        FingerprintStore store = FingerprintStore.open(file);
+        try {
+            assertThat(store.size(), is(fps.size()));
+            assertThat(store.length(), is(N_BITS));
+            for (int i = 0; i < 20; i++) {
+                BitSet query = random(rnd.nextDouble() * 0.5);
+                assertHits(store.nearest(query, 15), bruteForce(query, 15, 0));
+            }
+            // query in the store is its own nearest neighbour
+            assertThat(store.nearest(fps.get(7), 1).get(0).similarity(), is(1.0));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test public void threshold() throws Exception {
+        FingerprintStore store = FingerprintStore.open(file);
+        try {
+            for (int i = 0; i < 20; i++) {
+                BitSet query = random(rnd.nextDouble() * 0.5);
+                assertHits(store.threshold(query, 0.3), bruteForce(query, fps.size(), 0.3));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test public void parallel() throws Exception {
+        FingerprintStore store = FingerprintStore.open(file);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 10; i++) {
+                BitSet query = random(rnd.nextDouble() * 0.5);
+                assertHits(store.nearest(query, 10, executor), bruteForce(query, 10, 0));
+                assertHits(store.threshold(query, 0.4, executor), bruteForce(query, fps.size(), 0.4));
+            }
+        } finally {
+            executor.shutdown();
+            store.close();
+        }
+    }
+
+    /** An aborted writer leaves no store and no temporary files. */
+    @Test public void abort() throws Exception {
+        File dir = File.createTempFile("cdk-fps-test", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        try {
+            File path = new File(dir, "aborted.fps");
+            FingerprintStore.Writer writer = FingerprintStore.create(path, N_BITS);
+            writer.add(fps.get(0));
+            writer.abort();
+            writer.close();
+            Assert.assertEquals(0, dir.list().length);
+
+            writer = FingerprintStore.create(path, N_BITS);
+            writer.add(fps.get(0));
+            writer.close();
+            writer.abort();
+            Assert.assertArrayEquals(new String[]{"aborted.fps"}, dir.list());
+            FingerprintStore store = FingerprintStore.open(path);
+            try {
+                assertThat(store.size(), is(1));
+            } finally {
+                store.close();
+            }
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void queryTooLong() throws Exception {
+        FingerprintStore store = FingerprintStore.open(file);
+        try {
+            BitSet query = new BitSet();
+            query.set(N_BITS);
+            store.nearest(query, 1);
+        } finally {
+            store.close();
+        }
+    }
+
+    static void assertHits(List<FingerprintStore.Hit> actual, List<String> expected) {
+        List<String> hits = new ArrayList<String>();
+        for (FingerprintStore.Hit hit : actual)
+            hits.add(hit.id() + ":" + hit.similarity());
+        assertThat(hits, is(expected));
+    }
+
+    /** Linear search for the expected hits, most similar then lowest id first. */
+    static List<String> bruteForce(BitSet query, int k, double threshold) throws Exception {
+        List<double[]> scored = new ArrayList<double[]>();
+        for (int i = 0; i < fps.size(); i++) {
+            BitSet fp = fps.get(i);
+            BitSet common = (BitSet) query.clone();
+            common.and(fp);
+            int c = common.cardinality();
+            int union = query.cardinality() + fp.cardinality() - c;
+            double sim = union == 0 ? 0 : (double) c / union;
+            if (union > 0)
+                Assert.assertEquals(Tanimoto.calculate(padded(query), padded(fp)), sim, 1e-6);
+            if (sim >= threshold)
+                scored.add(new double[]{i, sim});
+        }
+        Collections.sort(scored, new Comparator<double[]>() {
+            @Override public int compare(double[] a, double[] b) {
+                if (a[1] != b[1])
+                    return a[1] > b[1] ? -1 : +1;
+                return Double.compare(a[0], b[0]);
+            }
+        });
+        List<String> hits = new ArrayList<String>();
+        for (double[] s : scored.subList(0, Math.min(k, scored.size())))
+            hits.add((int) s[0] + ":" + s[1]);
+        return hits;
+    }
+
+    static BitSet padded(BitSet bs) {
+        BitSet padded = new BitSet(N_BITS);
+        padded.or(bs);
+        return padded;
+    }
+
+    static BitSet random(double density) {
+        BitSet fp = new BitSet(N_BITS);
+        for (int i = 0; i < N_BITS; i++)
+            if (rnd.nextDouble() < density)
+                fp.set(i);
+        return fp;
+    }
+}
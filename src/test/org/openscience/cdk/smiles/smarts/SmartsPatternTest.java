@@ -0,0 +1,147 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smiles.smarts;
+
+import org.junit.Test;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.CDKTestCase;
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @cdk.module test-smarts
+ */
+public class SmartsPatternTest extends CDKTestCase {
+
+    private static final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    private static final String[] SMARTS = {"c1ccccc1", "[#7]C=O", "[$(C=O)]O", "C.O", "(C.O)", "[R2]",
+                                            "[OH]c", "F/C=C/F", "[x2]", "*~*~*", "[C;!$(C=O)]"};
+
+    private static final String[] SMILES = {"OC(=O)c1ccccc1", "ClCCNC(=O)CS", "CCO.CC=O", "F/C=C/F", "F/C=C\\F",
+                                            "c1ccc2ccccc2c1", "C1CC2CCC1CC2", "Oc1ccncc1"};
+
+    @Test public void matchesQueryTool() throws Exception {
+        SMARTSQueryTool sqt = new SMARTSQueryTool("C", builder);
+        for (String smarts : SMARTS) {
+            SmartsPattern pattern = SmartsPattern.create(smarts, builder);
+            assertThat(pattern.smarts(), is(smarts));
+            sqt.setSmarts(smarts);
+            for (String smi : SMILES) {
+                IAtomContainer container = smi(smi);
+                boolean found = sqt.matches(container);
+                assertThat(smarts + " " + smi, pattern.matches(container), is(found));
+                assertThat(smarts + " " + smi, pattern.matchAll(container).count(), is(sqt.countMatches()));
+            }
+        }
+    }
+
+    @Test public void match() throws Exception {
+        SmartsPattern pattern = SmartsPattern.create("C=O", builder);
+        assertThat(pattern.match(smi("CC(=O)O")), is(new int[]{1, 2}));
+        assertThat(pattern.match(smi("CCO")), is(new int[0]));
+    }
+
+    /** a prepared target is not perceived again when matched */
+    @Test public void selectiveOrder() throws Exception {
+        IQueryAtomContainer query = SMARTSParser.parse("CCC(N)CBr", builder);
+        assertThat(SmartsMatchers.matchOrder(query), is(new int[]{5, 4, 2, 1, 3, 0}));
+        SmartsPattern pattern = SmartsPattern.create("CCC(N)CBr", builder);
+        assertThat(pattern.match(smi("BrCC(N)CC")), is(new int[]{5, 4, 2, 3, 1, 0}));
+    }
+
+    @Test public void prepare() throws Exception {
+        IAtomContainer container = smi("c1ccccc1O");
+        SmartsPattern.prepare(container);
+        SmartsPattern aromatic = SmartsPattern.create("c", builder);
+        assertThat(aromatic.matchAll(container).count(), is(6));
+        for (IAtom atom : container.atoms())
+            atom.setFlag(CDKConstants.ISAROMATIC, false);
+        for (IBond bond : container.bonds())
+            bond.setFlag(CDKConstants.ISAROMATIC, false);
+        assertThat(aromatic.matches(container), is(false));
+        SmartsPattern.prepare(container);
+        assertThat(aromatic.matches(container), is(true));
+    }
+
+    @Test public void prepareWithModel() throws Exception {
+        // furan is not aromatic when only pi bonds contribute electrons
+        IAtomContainer container = smi("o1cccc1");
+        SmartsPattern aromatic = SmartsPattern.create("o", builder);
+        SmartsPattern.prepare(container, new Aromaticity(ElectronDonation.piBonds(), Cycles.all()));
+        assertThat(aromatic.matches(container), is(false));
+        SmartsPattern.prepare(container);
+        assertThat(aromatic.matches(container), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void invalidSmarts() throws Exception {
+        SmartsPattern.create("C(C", builder);
+    }
+
+    /** one pattern is shared by many threads, each with its own targets */
+    @Test public void shared() throws Exception {
+        final SmartsPattern pattern = SmartsPattern.create("[$(C=O)]O", builder);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 16; i++) {
+                counts.add(executor.submit(new Callable<Integer>() {
+                    @Override public Integer call() throws Exception {
+                        int count = 0;
+                        for (int j = 0; j < 50; j++)
+                            count += pattern.matchAll(smi("OC(=O)CC(=O)OC")).count();
+                        return count;
+                    }
+                }));
+            }
+            for (Future<Integer> count : counts)
+                assertThat(count.get(), is(100));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static IAtomContainer smi(String smi) throws Exception {
+        return new SmilesParser(builder).parseSmiles(smi);
+    }
+}
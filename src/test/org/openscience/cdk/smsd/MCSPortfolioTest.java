@@ -0,0 +1,91 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smsd;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.smsd.global.SearchContext;
+import org.openscience.cdk.smsd.interfaces.Algorithm;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @cdk.module test-smsd
+ */
+public class MCSPortfolioTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass public static void setUpClass() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass public static void tearDownClass() {
+        executor.shutdown();
+    }
+
+    @Test public void first() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("C1=CC=CC=C1");
+        IAtomContainer target = sp.parseSmiles("C1=CC2=C(C=C1)C=CC=C2");
+        MCSPortfolio portfolio = new MCSPortfolio(executor, true);
+        portfolio.setPreparation(true, true);
+        Isomorphism comparison = portfolio.first(query, target);
+        assertNotNull(comparison);
+        assertFalse(comparison.isTimeOut());
+        assertEquals(6, comparison.getFirstAtomMapping().size());
+        assertNull(SearchContext.current());
+    }
+
+    @Test public void best() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CC(=O)OC1=CC=CC=C1C(=O)O");
+        IAtomContainer target = sp.parseSmiles("OC(=O)C1=CC=CC=C1O");
+        Isomorphism comparison = new MCSPortfolio(executor, false).best(query, target);
+
+        Isomorphism sequential = new Isomorphism(Algorithm.DEFAULT, false);
+        sequential.init(query, target, true, true);
+        assertEquals(sequential.getFirstAtomMapping().size(), comparison.getFirstAtomMapping().size());
+    }
+
+    @Test public void timeOut() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        IAtomContainer query = sp.parseSmiles("CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCC");
+        IAtomContainer target = sp.parseSmiles("CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCCC");
+        MCSPortfolio portfolio = new MCSPortfolio(executor, false);
+        portfolio.setTimeOut(0.0001);
+        Isomorphism comparison = portfolio.first(query, target);
+        assertNotNull(comparison);
+        assertNull(SearchContext.current());
+    }
+}
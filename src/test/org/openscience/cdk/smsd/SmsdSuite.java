@@ -40,6 +40,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({org.openscience.cdk.smsd.SMSDTest.class,
     org.openscience.cdk.smsd.SMSDBondSensitiveTest.class,
     org.openscience.cdk.smsd.SMSDBondInsensitiveTest.class,
+    org.openscience.cdk.smsd.MCSPortfolioTest.class,
     org.openscience.cdk.smsd.global.GlobalSuite.class,
     org.openscience.cdk.smsd.helper.HelperSuite.class,
     //        org.openscience.cdk.smsd.interfaces.InterfacesSuite.class,
@@ -0,0 +1,159 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smsd.global;
+
+import org.junit.Test;
+import org.openscience.cdk.DefaultChemObjectBuilder;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smiles.SmilesParser;
+import org.openscience.cdk.smsd.Isomorphism;
+import org.openscience.cdk.smsd.interfaces.Algorithm;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @cdk.module test-smsd
+ */
+public class SearchContextTest {
+
+    @Test public void timeOut() throws Exception {
+        SearchContext context = SearchContext.open(0.001); // 60 ms
+        try {
+            assertSame(context, SearchContext.current());
+            assertEquals(0.001, context.getTimeOut(), 0.0001);
+            assertFalse(SearchContext.isCurrentTimeOut());
+            assertFalse(context.isTimeOutFlag());
+            Thread.sleep(100);
+            assertTrue(context.getElapsedTimeInMilliSeconds() >= 100);
+            assertTrue(context.getElapsedTimeInMinutes() > 0.001);
+            assertTrue(SearchContext.isCurrentTimeOut());
+            assertTrue(context.isTimeOutFlag());
+            assertEquals(2, context.getCheckCount());
+        } finally {
+            context.close();
+        }
+        assertNull(SearchContext.current());
+        assertFalse(SearchContext.isCurrentTimeOut());
+    }
+
+    @Test public void nested() throws Exception {
+        SearchContext outer = SearchContext.open(-1);
+        SearchContext inner = SearchContext.open(-1);
+        assertSame(inner, SearchContext.current());
+        inner.close();
+        assertSame(outer, SearchContext.current());
+        outer.close();
+        assertNull(SearchContext.current());
+    }
+
+    @Test public void cancel() {
+        SearchContext context = SearchContext.open(-1);
+        try {
+            assertFalse(SearchContext.isCurrentTimeOut());
+            context.cancel();
+            assertTrue(context.isCancelled());
+            assertTrue(SearchContext.isCurrentTimeOut());
+            assertTrue(context.isTimeOutFlag());
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test public void cancelParent() throws Exception {
+        final SearchContext parent = SearchContext.open(-1);
+        parent.close();
+        final boolean[] stopped = new boolean[2];
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                SearchContext context = SearchContext.open(-1, parent);
+                try {
+                    stopped[0] = context.isTimeOut();
+                    parent.cancel();
+                    stopped[1] = context.isTimeOut();
+                } finally {
+                    context.close();
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertFalse(stopped[0]);
+        assertTrue(stopped[1]);
+        assertTrue(parent.isCancelled());
+    }
+
+    /**
+     * Two searches running at the same time each get their own context and
+     * handler state, and find the same mappings as when run alone.
+     */
+    @Test public void concurrentSearches() throws Exception {
+        SmilesParser sp = new SmilesParser(DefaultChemObjectBuilder.getInstance());
+        final IAtomContainer[][] pairs = {
+            {sp.parseSmiles("C1=CC=CC=C1"), sp.parseSmiles("C1=CC2=C(C=C1)C=CC=C2")},
+            {sp.parseSmiles("CC(=O)OC1=CC=CC=C1C(=O)O"), sp.parseSmiles("OC(=O)C1=CC=CC=C1O")}
+        };
+        int[] expected = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++)
+            expected[i] = search(pairs[i][0], pairs[i][1]);
+
+        final CyclicBarrier barrier = new CyclicBarrier(pairs.length);
+        ExecutorService executor = Executors.newFixedThreadPool(pairs.length);
+        try {
+            for (int repeat = 0; repeat < 10; repeat++) {
+                Future<?>[] results = new Future<?>[pairs.length];
+                for (int i = 0; i < pairs.length; i++) {
+                    final IAtomContainer[] pair = pairs[i];
+                    results[i] = executor.submit(new Callable<Integer>() {
+                        @Override public Integer call() throws Exception {
+                            barrier.await();
+                            return search(pair[0], pair[1]);
+                        }
+                    });
+                }
+                for (int i = 0; i < pairs.length; i++)
+                    assertEquals(expected[i], results[i].get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertNull(SearchContext.current());
+    }
+
+    private static int search(IAtomContainer query, IAtomContainer target) throws Exception {
+        Isomorphism comparison = new Isomorphism(Algorithm.CDKMCS, true);
+        comparison.init(query, target, true, true);
+        assertFalse(comparison.isTimeOut());
+        assertNull(SearchContext.current());
+        return comparison.getFirstAtomMapping().size();
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright (C) 2013  The Chemistry Development Kit (CDK) project
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ * All we ask is that proper credit is given for our work, which includes
+ * - but is not limited to - adding the above copyright notice to the beginning
+ * of your source code files, and to any copyright notice that you may distribute
+ * with programs based on this work.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.tools;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @cdk.module test-core
+ */
+public class FuturesTest {
+
+    @Test public void unwrap() {
+        IllegalArgumentException unchecked = new IllegalArgumentException();
+        Assert.assertSame(unchecked, Futures.unwrap(new ExecutionException(unchecked)));
+        IOException checked = new IOException();
+        RuntimeException wrapped = Futures.unwrap(new ExecutionException(checked));
+        Assert.assertTrue(wrapped instanceof IllegalStateException);
+        Assert.assertSame(checked, wrapped.getCause());
+    }
+
+    @Test(expected = StackOverflowError.class) public void unwrapError() {
+        Futures.unwrap(new ExecutionException(new StackOverflowError()));
+    }
+}
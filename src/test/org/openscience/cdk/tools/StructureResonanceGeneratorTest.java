@@ -1542,6 +1542,65 @@ public class StructureResonanceGeneratorTest  extends CDKTestCase{
 		Assert.assertEquals(1,gRI.getMaximalStructures());
 		
 	}
+
+	@Test public void testSetHashDeduplication_boolean() throws Exception {
+		StructureResonanceGenerator gRI = new StructureResonanceGenerator();
+		Assert.assertFalse(gRI.getHashDeduplication());
+		gRI.setHashDeduplication(true);
+		Assert.assertTrue(gRI.getHashDeduplication());
+	}
+
+	/**
+	 * The structures found with the hash are the same, in the same order, as
+	 * the structures found by comparing with all structures: [CH2+]c1ccccc1,
+	 * [O-]c1ccccc1 and Nc1ccccc1
+	 */
+	@Test public void testHashDeduplication() throws Exception {
+		int[][] counts = {{5, 3}, {5, 3}, {5, 3}};
+		for (int m = 0; m < counts.length; m++) {
+			for (int s = 0; s < 2; s++) {
+				boolean lookingSymmetry = s == 1;
+				IAtomContainerSet expected = substitutedBenzeneStructures(m, lookingSymmetry, false);
+				IAtomContainerSet actual = substitutedBenzeneStructures(m, lookingSymmetry, true);
+				Assert.assertEquals(counts[m][s], expected.getAtomContainerCount());
+				Assert.assertEquals(expected.getAtomContainerCount(), actual.getAtomContainerCount());
+				for (int i = 0; i < expected.getAtomContainerCount(); i++) {
+					IAtomContainer a = expected.getAtomContainer(i), b = actual.getAtomContainer(i);
+					for (int j = 0; j < a.getBondCount(); j++)
+						Assert.assertEquals(a.getBond(j).getOrder(), b.getBond(j).getOrder());
+					for (int j = 0; j < a.getAtomCount(); j++)
+						Assert.assertEquals(a.getAtom(j).getFormalCharge(), b.getAtom(j).getFormalCharge());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The resonance structures of a charged or neutral substituted benzene.
+	 * 
+	 * @param substituent [CH2+], [O-] or N
+	 */
+	private IAtomContainerSet substitutedBenzeneStructures(int substituent, boolean lookingSymmetry, boolean hashDeduplication) throws Exception {
+		IAtomContainer molecule = builder.newInstance(IAtomContainer.class);
+		molecule.addAtom(builder.newInstance(IAtom.class, new String[]{"C", "O", "N"}[substituent]));
+		molecule.getAtom(0).setFormalCharge(new int[]{1, -1, 0}[substituent]);
+		for (int i = 0; i < 6; i++)
+			molecule.addAtom(builder.newInstance(IAtom.class,"C"));
+		molecule.addBond(0, 1, IBond.Order.SINGLE);
+		molecule.addBond(1, 2, IBond.Order.DOUBLE);
+		molecule.addBond(2, 3, IBond.Order.SINGLE);
+		molecule.addBond(3, 4, IBond.Order.DOUBLE);
+		molecule.addBond(4, 5, IBond.Order.SINGLE);
+		molecule.addBond(5, 6, IBond.Order.DOUBLE);
+		molecule.addBond(6, 1, IBond.Order.SINGLE);
+		addExplicitHydrogens(molecule);
+		AtomContainerManipulator.percieveAtomTypesAndConfigureAtoms(molecule);
+		lpcheck.saturate(molecule);
+
+		StructureResonanceGenerator gRI = new StructureResonanceGenerator(lookingSymmetry);
+		gRI.setHashDeduplication(hashDeduplication);
+		return gRI.getStructures(molecule);
+	}
 	
 	/**
 	 * A unit test suite for JUnit: c1ccccc1CN